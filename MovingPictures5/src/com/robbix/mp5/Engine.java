@@ -1,56 +1,107 @@
 package com.robbix.mp5;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.Iterator;
-import javax.swing.Timer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
 
 import com.robbix.mp5.map.Entity;
 import com.robbix.mp5.map.LayeredMap;
 import com.robbix.mp5.ui.DisplayPanel;
 import com.robbix.mp5.ui.ani.AmbientAnimation;
-import com.robbix.mp5.unit.Unit;
-import com.robbix.utils.RIterator;
 
+/**
+ * Runs the simulation on a dedicated thread at a fixed timestep.
+ *
+ * Each tick advances the Game by exactly one frame. Ticks are scheduled by
+ * an accumulator, so a slow tick is made up for by running the next ones
+ * back-to-back instead of stretching game time.
+ *
+ * Rendering is not part of the tick. Displays are notified through an
+ * EngineListener after a tick completes and repaint on the EDT whenever
+ * they get to it, sampling whatever frame was completed last. An Engine
+ * for a Game without any DisplayPanels runs the simulation headless.
+ *
+ * Ticks hold the Game's monitor. Input shouldn't wait on it, so commands
+ * from the EDT are submitted to the Game, and run at the start of the next
+ * tick, or straight away on the Engine's thread while it's paused. Displays
+ * paint units from the UnitViews captured when a tick completes, rather
+ * than from the units themselves.
+ *
+ * Units are always stepped by a RegionStepper, region by region. Unless
+ * one with worker threads is set, the Engine steps them through one with
+ * a single thread, on its own thread, which gives exactly the same ticks.
+ */
 public class Engine
 {
 	private static final int DEFAULT_DELAY = 10;
 	
-	private boolean paused;
+	/**
+	 * Maximum number of ticks run back-to-back to catch up after a stall.
+	 * Beyond this, game time is allowed to fall behind wall-clock time.
+	 */
+	private static final int MAX_CATCH_UP = 5;
+	
+	/**
+	 * Node expansions the PathService is allowed each tick.
+	 */
+	public static final int DEFAULT_PATH_BUDGET = 20000;
+	
+	private volatile boolean paused;
+	private volatile boolean disposed;
+	private volatile int delay;
+	private volatile int pathBudget;
+	private volatile int completedFrame;
+	private volatile double fps;
+	private volatile RegionStepper stepper;
+	
 	private Game game;
 	private LayeredMap map;
-	private DisplayPanel panel;
+	private Thread thread;
 	private Runnable animationCycle;
-	private Timer timer;
 	private int frame;
 	
+	private EngineListener.Helper listenerHelper = new EngineListener.Helper();
+	private DisplayRefresher displayRefresher = new DisplayRefresher();
+	private TickMetrics metrics = new TickMetrics();
+	
 	public Engine(Game game)
 	{
 		this.game = game;
 		map = game.getMap();
-		panel = game.getDisplay();
 		paused = true;
+		delay = DEFAULT_DELAY;
+		pathBudget = DEFAULT_PATH_BUDGET;
 		animationCycle = new AnimationCycle();
-		timer = new Timer(DEFAULT_DELAY, new ThreadCycle());
 		frame = 0;
+		completedFrame = -1;
+		addEngineListener(displayRefresher);
+		game.setEngine(this);
 	}
 	
 	public synchronized void play()
 	{
 		paused = false;
 		
-		if (!timer.isRunning())
-			timer.start();
+		if (thread == null)
+		{
+			thread = new Thread(new ThreadCycle(), "Engine");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		notifyAll();
 	}
 	
-	public void stop()
+	public synchronized void stop()
 	{
 		paused = true;
 	}
 	
-	public void pause()
+	public synchronized void pause()
 	{
 		paused = !paused;
+		notifyAll();
 	}
 	
 	public boolean isRunning()
@@ -66,24 +117,59 @@ public class Engine
 		animationCycle.run();
 	}
 	
-	public void dispose()
+	/**
+	 * Runs the given number of ticks on the calling thread as fast as
+	 * possible. Intended for headless soak tests and servers.
+	 */
+	public void step(int frames)
 	{
-		pause();
+		for (int i = 0; i < frames; ++i)
+			step();
+	}
+	
+	public synchronized void dispose()
+	{
+		paused = true;
+		disposed = true;
+		notifyAll();
+		
+		if (stepper != null)
+			stepper.dispose();
 	}
 	
 	public int getDelay()
 	{
-		return timer.getDelay();
+		return delay;
 	}
 	
 	public void setDelay(int delay)
 	{
-		timer.setDelay(delay);
+		if (delay < 0)
+			throw new IllegalArgumentException("delay must be non-negative");
+		
+		this.delay = delay;
+	}
+	
+	public int getPathBudget()
+	{
+		return pathBudget;
+	}
+	
+	/**
+	 * Sets the number of node expansions pathfinding may use each tick, or
+	 * 0 to find every requested path in the tick after it's requested.
+	 */
+	public void setPathBudget(int pathBudget)
+	{
+		if (pathBudget < 0)
+			throw new IllegalArgumentException("pathBudget must be non-negative");
+		
+		this.pathBudget = pathBudget;
 	}
 	
 	public boolean isThrottled()
 	{
-		return timer.getDelay() > 0;
+		return delay > 0;
 	}
 	
 	public int getTime()
@@ -91,26 +177,176 @@ public class Engine
 		return frame;
 	}
 	
-	private class ThreadCycle implements ActionListener
+	/**
+	 * Gets the number of the last frame to finish simulating,
+	 * or -1 if none have yet.
+	 */
+	public int getCompletedFrame()
+	{
+		return completedFrame;
+	}
+	
+	public double getFrameRate()
+	{
+		return fps;
+	}
+	
+	/**
+	 * Sets the RegionStepper used to step units, or null to step them on
+	 * the Engine's thread with a single-threaded one. Takes effect from the
+	 * next tick. The Engine disposes of the RegionStepper along with itself.
+	 */
+	public void setRegionStepper(RegionStepper stepper)
+	{
+		this.stepper = stepper;
+	}
+	
+	public RegionStepper getRegionStepper()
 	{
-		public void actionPerformed(ActionEvent e)
+		return stepper;
+	}
+	
+	/**
+	 * Gets the timings of this Engine's ticks. A tick is counted as an
+	 * overrun if it takes longer than the delay, or than the default delay
+	 * while running unthrottled.
+	 */
+	public TickMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	public void addEngineListener(EngineListener listener)
+	{
+		listenerHelper.add(listener);
+	}
+	
+	public void removeEngineListener(EngineListener listener)
+	{
+		listenerHelper.remove(listener);
+	}
+	
+	/**
+	 * Wakes the simulation thread if it's paused, to run commands submitted
+	 * to the Game.
+	 */
+	synchronized void commandSubmitted()
+	{
+		if (paused)
+			notifyAll();
+	}
+	
+	/**
+	 * Blocks the simulation thread while the Engine is paused, until it's
+	 * played or commands are submitted to the Game.
+	 *
+	 * Returns false if the Engine has been disposed.
+	 */
+	private synchronized boolean awaitPlay()
+	{
+		while (paused && !disposed && !game.hasCommands())
 		{
-			if (!paused)
+			try
 			{
-				animationCycle.run();
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				disposed = true;
+			}
+		}
+		
+		return !disposed;
+	}
+	
+	private class ThreadCycle implements Runnable
+	{
+		public void run()
+		{
+			long previous = System.nanoTime();
+			long accumulator = 0;
+			
+			while (!disposed)
+			{
+				if (paused)
+				{
+					if (!awaitPlay())
+						return;
+					
+					if (paused)
+					{
+						runCommands();
+						continue;
+					}
+					
+					previous = System.nanoTime();
+					accumulator = 0;
+				}
+				
+				long period = delay * 1000000L;
+				
+				if (period <= 0)
+				{
+					animationCycle.run();
+					Thread.yield();
+					continue;
+				}
+				
+				long now = System.nanoTime();
+				accumulator += now - previous;
+				previous = now;
+				
+				if (accumulator > period * MAX_CATCH_UP)
+					accumulator = period * MAX_CATCH_UP;
+				
+				while (accumulator >= period && !paused)
+				{
+					animationCycle.run();
+					accumulator -= period;
+				}
+				
+				long remaining = period - accumulator;
+				
+				if (remaining <= 0)
+					continue;
+				
+				try
+				{
+					Thread.sleep(remaining / 1000000L, (int) (remaining % 1000000L));
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Runs the commands submitted to the Game between ticks, while paused,
+	 * and shows what they've done.
+	 */
+	private void runCommands()
+	{
+		synchronized (game)
+		{
+			game.runCommands();
+			
+			if (!game.getDisplays().isEmpty())
+				game.getUnitViews().capture(map);
+		}
+		
+		displayRefresher.frameCompleted(this, completedFrame);
+	}
+	
 	private class AnimationCycle implements Runnable
 	{
 		long prevTime;
 		int framePeriod = 32;
-		double fps = 0.0;
 		
 		public void run()
 		{
-			synchronized (Engine.this)
+			synchronized (game)
 			{
 				game.setFrame(frame);
 				
@@ -122,7 +358,19 @@ public class Engine
 				}
 				
 				prevTime = time;
-				panel.showFrameNumber(frame, fps);
+				metrics.startTick();
+				
+				/*
+				 * Commands, from input
+				 */
+				game.runCommands();
+				metrics.endPhase(TickMetrics.Phase.COMMANDS);
+				
+				/*
+				 * Paths, within the budget
+				 */
+				game.deliverPaths(pathBudget, metrics);
+				metrics.endPhase(TickMetrics.Phase.PATHS);
 				
 				/*
 				 * Triggers
@@ -133,47 +381,115 @@ public class Engine
 						trigger.step(Game.game, frame);
 				}
 				
+				metrics.endPhase(TickMetrics.Phase.TRIGGERS);
+				
 				/*
 				 * Mechanics
 				 */
-				for (Unit unit : map.getUnitIterator())
-					if (!unit.isDead() && !unit.isFloating())
-						unit.step();
+				map.getUnitIndex().publishStamps();
+				RegionStepper regionStepper = stepper;
+				
+				if (regionStepper == null)
+				{
+					regionStepper = new RegionStepper(map, game.getUnitFactory(), 1);
+					stepper = regionStepper;
+				}
+				
+				regionStepper.step(frame);
 				
-				RIterator<Entity> entityItr = game.getFreeEntities();
+				metrics.recordTargetScans(map.getUnitIndex().getSearchCount());
+				metrics.endPhase(TickMetrics.Phase.UNITS);
 				
-				for (Entity entity : entityItr)
+				List<Entity> entities = game.getFreeEntities();
+				
+				for (int i = 0; i < entities.size(); ++i)
+				{
+					Entity entity = entities.get(i);
+					
 					if (entity.isAlive())
 						entity.step();
 					else
 						game.removeEntity(entity);
+				}
+				
+				metrics.endPhase(TickMetrics.Phase.ENTITIES);
 				
 				/*
 				 * Animation
+				 * Finished animations are compacted out in place.
 				 */
-				synchronized (panel.getAnimations())
+				List<AmbientAnimation> animations = game.getAnimations();
+				
+				synchronized (animations)
 				{
-					Iterator<AmbientAnimation> animationItr =
-						panel.getAnimations().iterator();
+					int kept = 0;
 					
-					while (animationItr.hasNext())
+					for (int i = 0; i < animations.size(); ++i)
 					{
-						AmbientAnimation animation = animationItr.next();
+						AmbientAnimation animation = animations.get(i);
 						animation.step();
 						
-						if (animation.isDone())
-							animationItr.remove();
+						if (!animation.isDone())
+							animations.set(kept++, animation);
 					}
+					
+					for (int i = animations.size() - 1; i >= kept; --i)
+						animations.remove(i);
 				}
 				
-				for (Runnable doRun : game.getAndClearDoLaters())
-					doRun.run();
+				metrics.endPhase(TickMetrics.Phase.ANIMATIONS);
+				
+				List<Runnable> doLaters = game.getAndClearDoLaters();
+				
+				for (int i = 0; i < doLaters.size(); ++i)
+					doLaters.get(i).run();
 				
-				for (DisplayPanel panel : game.getDisplays())
-					panel.repaint();
+				metrics.endPhase(TickMetrics.Phase.DO_LATERS);
 				
+				game.resolveSplashDamage();
+				metrics.endPhase(TickMetrics.Phase.SPLASH);
+				metrics.endTick((isThrottled() ? delay : DEFAULT_DELAY) * 1000000L);
+				
+				if (!game.getDisplays().isEmpty())
+					game.getUnitViews().capture(map);
+				
+				completedFrame = frame;
 				frame++;
 			}
+			
+			listenerHelper.fireFrameCompleted(Engine.this, completedFrame);
+		}
+	}
+	
+	/**
+	 * Repaints all of the Game's displays on the EDT. Requests are coalesced,
+	 * so if the EDT falls behind, frames are skipped rather than queued up.
+	 */
+	private class DisplayRefresher implements EngineListener, Runnable
+	{
+		private AtomicBoolean pending = new AtomicBoolean();
+		
+		public void frameCompleted(Engine engine, int frame)
+		{
+			if (game.getDisplays().isEmpty())
+				return;
+			
+			if (pending.compareAndSet(false, true))
+				SwingUtilities.invokeLater(this);
+		}
+		
+		public void run()
+		{
+			pending.set(false);
+			
+			List<DisplayPanel> panels = game.getDisplays();
+			
+			for (int i = 0; i < panels.size(); ++i)
+			{
+				DisplayPanel panel = panels.get(i);
+				panel.showFrameNumber(completedFrame, fps);
+				panel.repaint();
+			}
 		}
 	}
 }
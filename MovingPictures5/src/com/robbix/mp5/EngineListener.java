@@ -0,0 +1,43 @@
+package com.robbix.mp5;
+
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Listener for progress of the simulation. Called on the Engine's thread,
+ * outside of the tick, so implementations should hand off any heavy work.
+ */
+public interface EngineListener
+{
+	public void frameCompleted(Engine engine, int frame);
+	
+	public static class Helper
+	{
+		private CopyOnWriteArraySet<EngineListener> listeners;
+		
+		public Helper()
+		{
+			listeners = new CopyOnWriteArraySet<EngineListener>();
+		}
+		
+		public boolean add(EngineListener listener)
+		{
+			return listeners.add(listener);
+		}
+		
+		public boolean remove(EngineListener listener)
+		{
+			return listeners.remove(listener);
+		}
+		
+		public int size()
+		{
+			return listeners.size();
+		}
+		
+		public void fireFrameCompleted(Engine engine, int frame)
+		{
+			for (EngineListener listener : listeners)
+				listener.frameCompleted(engine, frame);
+		}
+	}
+}
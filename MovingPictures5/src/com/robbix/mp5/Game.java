@@ -15,15 +15,28 @@ import java.util.Map;
 import java.util.Set;
 
 import com.robbix.mp5.ai.AStar;
+import com.robbix.mp5.ai.FlowField;
+import com.robbix.mp5.ai.FlowFieldCache;
+import com.robbix.mp5.ai.HierarchicalPathfinder;
+import com.robbix.mp5.ai.JumpPointSearch;
+import com.robbix.mp5.ai.PathRequest;
+import com.robbix.mp5.ai.PathService;
+import com.robbix.mp5.ai.PathSmoother;
+import com.robbix.mp5.ai.Pathfinder;
+import com.robbix.mp5.ai.Replanner;
+import com.robbix.mp5.ai.ReservationTable;
+import com.robbix.mp5.ai.SearchSelector;
 import com.robbix.mp5.ai.task.AttackTask;
 import com.robbix.mp5.ai.task.BuildTask;
 import com.robbix.mp5.ai.task.EarthworkerConstructTask;
+import com.robbix.mp5.ai.task.FlowTask;
 import com.robbix.mp5.ai.task.PathTask;
 import com.robbix.mp5.ai.task.RotateTask;
 import com.robbix.mp5.ai.task.SteerTask;
 import com.robbix.mp5.map.Entity;
 import com.robbix.mp5.map.Fixture;
 import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.map.RadiusVisitor;
 import com.robbix.mp5.map.TileSet;
 import com.robbix.mp5.player.Player;
 import com.robbix.mp5.ui.CursorSet;
@@ -31,6 +44,7 @@ import com.robbix.mp5.ui.DisplayPanel;
 import com.robbix.mp5.ui.SoundBank;
 import com.robbix.mp5.ui.SpriteLibrary;
 import com.robbix.mp5.ui.ani.AcidCloudAnimation;
+import com.robbix.mp5.ui.ani.AmbientAnimation;
 import com.robbix.mp5.ui.ani.LaserAnimation;
 import com.robbix.mp5.ui.ani.MicrowaveAnimation;
 import com.robbix.mp5.ui.ani.RPGAnimation;
@@ -42,6 +56,7 @@ import com.robbix.mp5.unit.HealthBracket;
 import com.robbix.mp5.unit.Meteor;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.mp5.unit.UnitFactory;
+import com.robbix.mp5.unit.UnitViews;
 import com.robbix.utils.CostMap;
 import com.robbix.utils.Direction;
 import com.robbix.utils.Position;
@@ -75,6 +90,25 @@ public class Game
 		return game;
 	}
 	
+	/**
+	 * Loads a Game without any displays or cursors, for running the
+	 * simulation on a server or in a soak test. Sprites are still loaded
+	 * lazily as weapon animations depend on sprite metrics.
+	 */
+	public static Game loadHeadless(File root, String mapName, String tileSetName)
+	throws IOException
+	{
+		Game game = new Game();
+		
+		game.factory = UnitFactory.load(new File(root, "units"));
+		game.tileSet = TileSet.load(new File(root, "tileset"), tileSetName);
+		game.map = LayeredMap.load(new File(root, "terrain"), mapName, game.tileSet);
+		game.spriteLib = SpriteLibrary.load(new File(root, "sprites"), true);
+		game.sounds = SoundBank.load(new File(root, "sounds"), true);
+		
+		return game;
+	}
+	
 	public static Game of(Object... stuff)
 	{
 		Game game = new Game();
@@ -97,8 +131,25 @@ public class Game
 	private CursorSet cursorSet;
 	private Set<Trigger> triggers;
 	private List<Runnable> pendingDoLaters;
+	private List<Runnable> takenDoLaters;
+	private Object doLaterLock = new Object();
+	private List<AmbientAnimation> animations;
+	
+	private List<Runnable> pendingCommands;
+	private List<Runnable> takenCommands;
+	private Object commandLock = new Object();
+	private volatile Engine engine;
+	private UnitViews unitViews = new UnitViews();
+	
+	private List<Splash> pendingSplashes;
+	private List<Splash> takenSplashes;
+	private Object splashLock = new Object();
+	private SplashVisitor splashVisitor = new SplashVisitor();
 	
-	private Collection<Entity> entities;
+	private List<Entity> entities;
+	private List<Entity> entitySnapshot;
+	
+	private volatile List<DisplayPanel> displayView;
 	
 	private int frame = 0;
 	
@@ -106,6 +157,30 @@ public class Game
 	
 	private boolean soundOn;
 	
+	private ThreadLocal<AStar> aStars = new ThreadLocal<AStar>()
+	{
+		protected AStar initialValue()
+		{
+			return new AStar();
+		}
+	};
+	
+	private ThreadLocal<JumpPointSearch> jumps = new ThreadLocal<JumpPointSearch>()
+	{
+		protected JumpPointSearch initialValue()
+		{
+			return new JumpPointSearch();
+		}
+	};
+	
+	private SearchSelector selector = new SearchSelector();
+	private FlowFieldCache flowFields = new FlowFieldCache(8);
+	private HierarchicalPathfinder pathfinder;
+	private Object pathfinderLock = new Object();
+	private PathService pathService;
+	private Replanner replanner;
+	private ReservationTable reservations;
+	
 	private Game()
 	{
 		displays = Collections.synchronizedList(new ArrayList<DisplayPanel>());
@@ -114,7 +189,15 @@ public class Game
 		players.put(0, defaultPlayer);
 		triggers = Collections.synchronizedSet(new HashSet<Trigger>());
 		pendingDoLaters = new ArrayList<Runnable>();
+		takenDoLaters = new ArrayList<Runnable>();
+		pendingCommands = new ArrayList<Runnable>();
+		takenCommands = new ArrayList<Runnable>();
+		pendingSplashes = new ArrayList<Splash>();
+		takenSplashes = new ArrayList<Splash>();
+		animations = new ArrayList<AmbientAnimation>();
 		entities = new ArrayList<Entity>();
+		entitySnapshot = new ArrayList<Entity>();
+		displayView = Collections.emptyList();
 		Game.game = this;
 	}
 	
@@ -142,9 +225,99 @@ public class Game
 		return frame;
 	}
 	
-	public void doLater(Runnable doRun)
+	public void doLater(final Runnable doRun)
 	{
-		pendingDoLaters.add(doRun);
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					doLater(doRun);
+				}
+			});
+			return;
+		}
+		
+		synchronized (doLaterLock)
+		{
+			pendingDoLaters.add(doRun);
+		}
+	}
+	
+	/**
+	 * Queues command to be run by the Engine at the start of the next tick,
+	 * or straight away if it's paused. Input is handled on the EDT, so
+	 * anything it changes in the Game goes through here rather than waiting
+	 * on a tick or changing the Game in the middle of one. With no Engine,
+	 * command is run on the calling thread.
+	 */
+	public void submit(Runnable command)
+	{
+		Engine engine = this.engine;
+		
+		if (engine == null)
+		{
+			synchronized (this)
+			{
+				command.run();
+			}
+			
+			return;
+		}
+		
+		synchronized (commandLock)
+		{
+			pendingCommands.add(command);
+		}
+		
+		engine.commandSubmitted();
+	}
+	
+	public boolean hasCommands()
+	{
+		synchronized (commandLock)
+		{
+			return !pendingCommands.isEmpty();
+		}
+	}
+	
+	/**
+	 * Runs the commands submitted since the last call. Called by the Engine
+	 * while holding the Game's monitor.
+	 */
+	public void runCommands()
+	{
+		List<Runnable> commands;
+		
+		synchronized (commandLock)
+		{
+			commands = pendingCommands;
+			pendingCommands = takenCommands;
+			takenCommands = commands;
+		}
+		
+		for (int i = 0; i < commands.size(); ++i)
+			commands.get(i).run();
+		
+		commands.clear();
+	}
+	
+	/**
+	 * Called by an Engine for this Game when it's made, so that submitted
+	 * commands are handed to it.
+	 */
+	void setEngine(Engine engine)
+	{
+		this.engine = engine;
+	}
+	
+	/**
+	 * Gets the UnitViews the displays paint units from.
+	 */
+	public UnitViews getUnitViews()
+	{
+		return unitViews;
 	}
 	
 	public void playSoundLater(final String sound, final Position pos)
@@ -169,31 +342,69 @@ public class Game
 		});
 	}
 	
-	public RIterator<Runnable> getAndClearDoLaters()
+	/**
+	 * Takes all pending doLaters. doLaters queued after this call are kept
+	 * for the next one.
+	 *
+	 * The pending and returned lists are swapped rather than copied, so the
+	 * returned list is only valid until the next call.
+	 */
+	public List<Runnable> getAndClearDoLaters()
 	{
-		try
-		{
-			return RIterator.iterate(new ArrayList<Runnable>(pendingDoLaters));
-		}
-		finally
+		synchronized (doLaterLock)
 		{
+			List<Runnable> taken = pendingDoLaters;
+			pendingDoLaters = takenDoLaters;
 			pendingDoLaters.clear();
+			takenDoLaters = taken;
+			return taken;
 		}
 	}
 	
-	public void addEntity(Entity e)
+	public void addEntity(final Entity e)
 	{
-		entities.add(e);
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					addEntity(e);
+				}
+			});
+			return;
+		}
+		
+		synchronized (entities)
+		{
+			entities.add(e);
+		}
 	}
 	
 	public void removeEntity(Entity e)
 	{
-		entities.remove(e);
+		synchronized (entities)
+		{
+			entities.remove(e);
+		}
 	}
 	
-	public RIterator<Entity> getFreeEntities()
+	/**
+	 * Gets the free Entities. Like LayeredMap.getUnitSnapshot(), the
+	 * returned list is refilled on every call instead of copied, and is
+	 * only meant for the thread stepping the Game.
+	 */
+	public List<Entity> getFreeEntities()
 	{
-		return RIterator.iterate(new ArrayList<Entity>(entities));
+		synchronized (entities)
+		{
+			entitySnapshot.clear();
+			
+			for (int i = 0; i < entities.size(); ++i)
+				entitySnapshot.add(entities.get(i));
+			
+			return entitySnapshot;
+		}
 	}
 	
 	public RIterator<Runnable> getDoLaters()
@@ -203,7 +414,42 @@ public class Game
 	
 	public void clearDoLaters()
 	{
-		pendingDoLaters.clear();
+		synchronized (doLaterLock)
+		{
+			pendingDoLaters.clear();
+		}
+	}
+	
+	/**
+	 * Queues an animation to be stepped by the Engine. Animations are owned
+	 * by the Game rather than a DisplayPanel since weapon animations drive
+	 * when damage is dealt, even when nothing is being displayed.
+	 */
+	public void cueAnimation(final AmbientAnimation animation)
+	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					cueAnimation(animation);
+				}
+			});
+			return;
+		}
+		
+		animation.setDisplay(getDisplay());
+		
+		synchronized (animations)
+		{
+			animations.add(animation);
+		}
+	}
+	
+	public List<AmbientAnimation> getAnimations()
+	{
+		return animations;
 	}
 	
 	public void setSoundOn(boolean soundOn)
@@ -219,8 +465,20 @@ public class Game
 		return soundOn;
 	}
 	
-	public void playSound(String name)
+	public void playSound(final String name)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					playSound(name);
+				}
+			});
+			return;
+		}
+		
 		if (soundOn)
 			sounds.play(name);
 	}
@@ -230,9 +488,21 @@ public class Game
 		playSound(name, pos.x, pos.y);
 	}
 	
-	public void playSound(String name, int x, int y)
+	public void playSound(final String name, final int x, final int y)
 	{
-		if (!soundOn)
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					playSound(name, x, y);
+				}
+			});
+			return;
+		}
+		
+		if (!soundOn || displays.isEmpty())
 			return;
 		
 		Region displayRegion = getDisplay().getDisplayRegion();
@@ -264,24 +534,42 @@ public class Game
 	
 	public void removeDisplay(DisplayPanel panel)
 	{
-		displays.remove(panel);
+		synchronized (displays)
+		{
+			displays.remove(panel);
+			updateDisplayView();
+		}
 	}
 	
 	public void addDisplay(DisplayPanel panel)
 	{
-		displays.add(panel);
+		synchronized (displays)
+		{
+			displays.add(panel);
+			updateDisplayView();
+		}
 	}
 	
 	public DisplayPanel newDisplay()
 	{
 		DisplayPanel panel = new DisplayPanel(this);
-		displays.add(panel);
+		addDisplay(panel);
 		return panel;
 	}
 	
+	/**
+	 * Gets an unmodifiable snapshot of the displays. Snapshots are only
+	 * made when a display is added or removed, so this is safe to iterate
+	 * over from any thread and doesn't allocate.
+	 */
 	public List<DisplayPanel> getDisplays()
 	{
-		return new ArrayList<DisplayPanel>(displays);
+		return displayView;
+	}
+	
+	private void updateDisplayView()
+	{
+		displayView = Collections.unmodifiableList(new ArrayList<DisplayPanel>(displays));
 	}
 	
 	public DisplayPanel getDisplay(int index)
@@ -289,9 +577,13 @@ public class Game
 		return displays.get(index);
 	}
 	
+	/**
+	 * Gets the primary display, or null if this Game is running headless.
+	 */
 	public DisplayPanel getDisplay()
 	{
-		return getDisplay(0);
+		List<DisplayPanel> view = displayView;
+		return view.isEmpty() ? null : view.get(0);
 	}
 	
 	public SpriteLibrary getSpriteLibrary()
@@ -375,11 +667,23 @@ public class Game
 		
 		attacker.assignNow(new AttackTask(target, fireAnimation));
 		
-		getDisplay().cueAnimation(fireAnimation);
+		cueAnimation(fireAnimation);
 	}
 	
-	public void doDamage(Unit attacker, Unit target, double amount)
+	public void doDamage(final Unit attacker, final Unit target, final double amount)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					doDamage(attacker, target, amount);
+				}
+			});
+			return;
+		}
+		
 		int hp = target.getHP();
 		
 		if (hp == 0)
@@ -389,9 +693,9 @@ public class Game
 		
 		HealthBracket bracket = target.getHealthBracket();
 		
-		amount += Utils.randInt((int)-(amount/8), (int)amount/8);
+		double damage = amount + Utils.randInt((int)-(amount/8), (int)amount/8);
 		
-		hp -= (int) amount;
+		hp -= (int) damage;
 		
 		if (hp < 0)
 		{
@@ -421,71 +725,76 @@ public class Game
 		}
 	}
 	
-	public void doSplashDamage(Position pos, double amount, double range)
+	/**
+	 * Queues damage to the units, walls and tubes within range of pos, to
+	 * be done by resolveSplashDamage() at the end of the tick.
+	 */
+	public void doSplashDamage(final Position pos, final double amount, final double range)
 	{
-		if (range <= 0 || amount <= 0)
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					doSplashDamage(pos, amount, range);
+				}
+			});
 			return;
+		}
 		
-		int spotSize = map.getSpotSize();
-		
-		int absX = pos.x * spotSize;
-		int absY = pos.y * spotSize;
-		
-		int rangeInt = (int)Math.ceil(range);
-		
-		int xMin = Math.max(pos.x - rangeInt, 0);
-		int yMin = Math.max(pos.y - rangeInt, 0);
-		int xMax = Math.min(pos.x + rangeInt, map.getWidth() - 1);
-		int yMax = Math.min(pos.y + rangeInt, map.getHeight() - 1);
+		if (range <= 0 || amount <= 0)
+			return;
 		
-		Set<Unit> affectedUnits = new HashSet<Unit>();
+		synchronized (splashLock)
+		{
+			pendingSplashes.add(new Splash(pos, amount, range));
+		}
+	}
+	
+	/**
+	 * Does all the splash damage queued since the last call, and any that
+	 * sets off in turn, like guard posts exploding, in one go. The area
+	 * damaged is then redrawn once. Called by the Engine at the end of
+	 * each tick.
+	 */
+	public void resolveSplashDamage()
+	{
+		Region damaged = null;
 		
-		for (int x = xMin; x <= xMax; ++x)
-		for (int y = yMin; y <= yMax; ++y)
+		while (true)
 		{
-			Position current = new Position(x, y);
-			Unit unit = map.getUnit(current);
+			List<Splash> splashes;
 			
-			if (unit != null)
+			synchronized (splashLock)
 			{
-				int unitAbsX = unit.getX() * spotSize + unit.getXOffset();
-				int unitAbsY = unit.getY() * spotSize + unit.getYOffset();
-				
-				double absDist = Math.hypot(unitAbsX - absX, unitAbsY - absY);
+				if (pendingSplashes.isEmpty())
+					break;
 				
-				if (absDist <= (range * spotSize))
-				{
-					affectedUnits.add(unit);
-				}
+				splashes = pendingSplashes;
+				pendingSplashes = takenSplashes;
+				takenSplashes = splashes;
 			}
 			
-			double absDist = current.getDistance(pos);
-			
-			if (absDist <= (range * spotSize))
+			for (int i = 0; i < splashes.size(); ++i)
 			{
-				if (map.hasWall(current) || map.hasTube(current))
-				{
-					int fixtureHP = map.getFixtureHP(current);
-					fixtureHP -= (int) amount;
-					
-					if (fixtureHP <= 0)
-					{
-						map.bulldoze(current);
-					}
-					else
-					{
-						map.setFixtureHP(current, fixtureHP);
-					}
-				}
+				Splash splash = splashes.get(i);
+				splashVisitor.splash(splash);
+				
+				Region area = new Region(splash.pos).stretch((int) Math.ceil(splash.range));
+				damaged = damaged == null ? area : damaged.getUnion(area);
 			}
+			
+			splashes.clear();
 		}
 		
-		for (Unit unit : affectedUnits)
-		{
-			doDamage(null, unit, amount);
-		}
+		if (damaged == null)
+			return;
 		
-		getDisplay().refresh();
+		damaged = damaged.getIntersection(map.getBounds());
+		
+		for (DisplayPanel panel : getDisplays())
+			panel.refresh(damaged);
 	}
 	
 	public void doEarthworkerBuildRow(Unit unit, List<Position> row, Fixture fixture)
@@ -528,42 +837,88 @@ public class Game
 	
 	public void doMove(Unit unit, Position pos, boolean interrupt, double distance)
 	{
-		if (unit.isStructure() || unit.getType().isGuardPostType() || unit.isDead())
+		doMove(unit, pos, interrupt, distance, PathRequest.Priority.ORDER);
+	}
+	
+	/**
+	 * Moves unit to pos once the PathService has found a path. Moves made
+	 * by tasks on their own, rather than ordered by a player, should be
+	 * BACKGROUND priority so they don't hold up orders. Trucks are routed
+	 * away from walls, where they tend to jam.
+	 *
+	 * Requests to the PathService are shared and queued in the order they
+	 * come, so moves made while a region is stepping are made at the end of
+	 * the phase, in region order.
+	 */
+	public void doMove(
+		final Unit unit,
+		final Position pos,
+		final boolean interrupt,
+		final double distance,
+		final PathRequest.Priority priority)
+	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					doMove(unit, pos, interrupt, distance, priority);
+				}
+			});
 			return;
+		}
 		
-		CostMap costMap = map.getTerrainCostMap();
-		
-		if (costMap.isInfinite(pos))
+		if (unit.isStructure() || unit.getType().isGuardPostType() || unit.isDead() || unit.isFloating())
 			return;
 		
-		List<Position> path = new AStar().getPath(costMap, unit.getPosition(), pos, distance);
+		CostMap costMap = unit.isTruck()
+			? map.getClearance().getRouteCostMap()
+			: map.getTerrainCostMap();
 		
-		if (path == null)
+		if (!map.isReachable(unit.getPosition(), pos))
 			return;
 		
-		PathTask task = new PathTask(path);
+		PathTask task = new PathTask(
+			getPathService().request(costMap, unit.getPosition(), pos, distance, priority)
+		);
 		
 		if (interrupt) unit.assignNow(task);
 		          else unit.assignNext(task);
 	}
 	
+	/**
+	 * Unlike doMove(), finds the path right away, as the Unit has to face
+	 * pos from wherever the path ends. The path is found by whichever of
+	 * JPS, AStar and the HierarchicalPathfinder the SearchSelector picks.
+	 */
 	public void doApproach(Unit unit, Position pos)
 	{
 		if (unit.isStructure() || unit.getType().isGuardPostType() || unit.isDead())
 			return;
 		
-		List<Position> path = new AStar().getPath(
-			map.getTerrainCostMap(),
-			unit.getPosition(),
-			pos,
-			1
-		);
+		if (!map.isReachable(unit.getPosition(), pos))
+			return;
+		
+		CostMap course = map.getTerrainCostMap();
+		Position start = unit.getPosition();
+		Pathfinder pathfinder;
+		
+		if (selector.useJumpPoints(course, start, pos))
+			pathfinder = jumps.get();
+		else if (selector.useHierarchy(course, start, pos))
+			pathfinder = getPathfinder();
+		else
+			pathfinder = getAStar();
+		
+		List<Position> path = pathfinder.getPath(course, start, pos, 1);
 		
 		if (path == null)
 			return;
 		
 		if (path.size() > 0)
 		{
+			path = PathSmoother.smooth(map.getTerrainCostMap(), path);
 			unit.assignNext(new PathTask(path));
 		}
 		
@@ -575,11 +930,163 @@ public class Game
 		}
 	}
 	
+	/**
+	 * Gets an AStar for the calling thread. AStars keep their search arrays
+	 * between searches, but can't be shared between threads.
+	 */
+	private AStar getAStar()
+	{
+		return aStars.get();
+	}
+	
+	/**
+	 * Gets the HierarchicalPathfinder for the map's terrain, which is built
+	 * the first time it's needed and kept up to date as the terrain
+	 * changes. It hands short paths to an AStar.
+	 */
+	public Pathfinder getPathfinder()
+	{
+		if (map == null)
+			return getAStar();
+		
+		/*
+		 * Not synchronized on the Game, which the Engine holds while units
+		 * are being stepped on other threads.
+		 */
+		synchronized (pathfinderLock)
+		{
+			if (pathfinder == null || pathfinder.getCourse() != map.getTerrainCostMap())
+			{
+				if (pathfinder != null)
+					map.removeTerrainListener(pathfinder);
+				
+				pathfinder = new HierarchicalPathfinder(map.getTerrainCostMap());
+				map.addTerrainListener(pathfinder);
+			}
+			
+			return pathfinder;
+		}
+	}
+	
+	/**
+	 * Gets the Replanner that repairs paths blocked by changes to the map.
+	 * It's made the first time it's needed, and from then on is told of
+	 * changes to the map.
+	 */
+	public Replanner getReplanner()
+	{
+		synchronized (pathfinderLock)
+		{
+			if (replanner == null || replanner.getMap() != map)
+			{
+				if (replanner != null)
+					replanner.getMap().removeTerrainListener(replanner);
+				
+				replanner = new Replanner(map);
+				map.addTerrainListener(replanner);
+			}
+			
+			return replanner;
+		}
+	}
+	
+	/**
+	 * Gets the ReservationTable that moving units plan their next few moves
+	 * around. A new one is made when a map of a different size is loaded.
+	 */
+	public ReservationTable getReservationTable()
+	{
+		synchronized (pathfinderLock)
+		{
+			if (reservations == null
+					|| reservations.getWidth() != map.getWidth()
+					|| reservations.getHeight() != map.getHeight())
+				reservations = new ReservationTable(map.getWidth(), map.getHeight());
+			
+			return reservations;
+		}
+	}
+	
+	/**
+	 * Gets the PathService that finds paths for doMove() in the background.
+	 */
+	public PathService getPathService()
+	{
+		synchronized (pathfinderLock)
+		{
+			if (pathService == null)
+			{
+				int threads = Runtime.getRuntime().availableProcessors() / 2;
+				pathService = new PathService(Math.max(threads, 1));
+			}
+			
+			return pathService;
+		}
+	}
+	
+	/**
+	 * Runs up to budget node expansions of the PathService's searches and
+	 * delivers the paths found, recording its cache counts to metrics.
+	 * Called by the Engine at the start of each tick.
+	 */
+	public void deliverPaths(int budget, TickMetrics metrics)
+	{
+		PathService service;
+		
+		synchronized (pathfinderLock)
+		{
+			service = pathService;
+		}
+		
+		if (service == null)
+			return;
+		
+		service.deliver(budget);
+		
+		if (metrics != null)
+			metrics.recordPathCache(service.getCacheHitCount(), service.getCacheMissCount());
+	}
+	
+	/**
+	 * Moves a group of units to pos. Rather than searching for a path for
+	 * each unit, the units all follow one FlowField for pos, which is
+	 * cached for later orders to the same spot.
+	 */
 	public void doGroupMove(Set<Unit> units, Position pos)
 	{
+		if (units.size() == 1)
+		{
+			doMove(units.iterator().next(), pos);
+			return;
+		}
+		
+		CostMap costMap = map.getTerrainCostMap();
+		
+		if (costMap.isInfinite(pos))
+			return;
+		
+		/*
+		 * Don't bother making a field if none of them can get there.
+		 */
+		boolean reachable = false;
+		
+		for (Unit unit : units)
+			reachable |= map.isReachable(unit.getPosition(), pos);
+		
+		if (!reachable)
+			return;
+		
+		FlowField field = flowFields.get(costMap, pos);
+		
 		for (Unit unit : units)
 		{
-			doMove(unit, pos);
+			if (unit.isStructure() || unit.getType().isGuardPostType() || unit.isDead())
+				continue;
+			
+			if (!field.isReachable(unit.getPosition()))
+				continue;
+			
+			unit.assignNow(new FlowTask(flowFields, field));
 		}
 	}
 	
@@ -592,11 +1099,26 @@ public class Game
 		Game.game.playSound("structureBuild", pos);
 	}
 	
-	public void kill(Unit unit)
+	public void kill(final Unit unit)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					kill(unit);
+				}
+			});
+			return;
+		}
+		
 		unit.setHP(0);
 		Position pos = unit.getPosition();
-		getDisplay().addDisplayObject(new UnitDeathDisplayObject(unit, frame));
+		
+		for (DisplayPanel panel : getDisplays())
+			panel.addDisplayObject(new UnitDeathDisplayObject(unit, frame));
+		
 		map.remove(unit);
 		
 		if (unit.getType().isGuardPostType())
@@ -620,8 +1142,24 @@ public class Game
 	
 	public void selfDestruct(Unit unit)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			final Unit doomed = unit;
+			
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					selfDestruct(doomed);
+				}
+			});
+			return;
+		}
+		
 		unit.setHP(0);
-		getDisplay().addDisplayObject(new UnitDeathDisplayObject(unit, frame, true));
+		
+		for (DisplayPanel panel : getDisplays())
+			panel.addDisplayObject(new UnitDeathDisplayObject(unit, frame, true));
 		
 		if (unit.isStructure() || unit.getType().isGuardPostType())
 		{
@@ -664,9 +1202,99 @@ public class Game
 	public void doSpawnMeteor(Position pos)
 	{
 		Meteor meteor = new Meteor(pos, frame);
-		entities.add(meteor);
+		addEntity(meteor);
 		
-		for (DisplayPanel panel : displays)
+		for (DisplayPanel panel : getDisplays())
 			panel.addDisplayObject(new MeteorDisplayObject(meteor));
 	}
+	
+	private static class Splash
+	{
+		private final Position pos;
+		private final double amount;
+		private final double range;
+		
+		private Splash(Position pos, double amount, double range)
+		{
+			this.pos = pos;
+			this.amount = amount;
+			this.range = range;
+		}
+	}
+	
+	/**
+	 * Damages the walls and tubes within range of a splash as they're
+	 * visited, and then the units whose sprites are, once the map is done
+	 * visiting. Kept and reused for every splash.
+	 *
+	 * A moving unit is drawn up to a position away from where it stands, so
+	 * the map is asked for the units a little further out than the range,
+	 * and they're measured by where they're drawn. As before, only those
+	 * standing in the square around the splash are counted.
+	 */
+	private class SplashVisitor extends RadiusVisitor
+	{
+		private static final double SPRITE_SLACK = 1.5;
+		
+		private List<Unit> affectedUnits = new ArrayList<Unit>();
+		private Position center;
+		private int absX, absY;
+		private double range, absRange;
+		private int square;
+		private double amount;
+		
+		public void splash(Splash splash)
+		{
+			int spotSize = map.getSpotSize();
+			center = splash.pos;
+			absX = center.x * spotSize;
+			absY = center.y * spotSize;
+			range = splash.range;
+			absRange = range * spotSize;
+			square = (int) Math.ceil(range);
+			amount = splash.amount;
+			
+			map.visitRadius(center, range + SPRITE_SLACK, this);
+			
+			for (int i = 0; i < affectedUnits.size(); ++i)
+				doDamage(null, affectedUnits.get(i), amount);
+			
+			affectedUnits.clear();
+		}
+		
+		public void visitUnit(Unit unit)
+		{
+			if (Math.abs(unit.getX() - center.x) > square
+			 || Math.abs(unit.getY() - center.y) > square)
+				return;
+			
+			int spotSize = map.getSpotSize();
+			int unitAbsX = unit.getX() * spotSize + unit.getXOffset();
+			int unitAbsY = unit.getY() * spotSize + unit.getYOffset();
+			
+			if (Math.hypot(unitAbsX - absX, unitAbsY - absY) <= absRange)
+				affectedUnits.add(unit);
+		}
+		
+		public void visitFixture(Position pos)
+		{
+			if (pos.getDistance(center) > range)
+				return;
+			
+			if (!map.hasWall(pos) && !map.hasTube(pos))
+				return;
+			
+			int fixtureHP = map.getFixtureHP(pos);
+			fixtureHP -= (int) amount;
+			
+			if (fixtureHP <= 0)
+			{
+				map.bulldoze(pos);
+			}
+			else
+			{
+				map.setFixtureHP(pos, fixtureHP);
+			}
+		}
+	}
 }
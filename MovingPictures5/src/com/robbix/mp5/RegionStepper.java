@@ -0,0 +1,347 @@
+package com.robbix.mp5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.robbix.mp5.ai.CooperativeAStar;
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.mp5.unit.UnitFactory;
+import com.robbix.utils.Utils;
+
+/**
+ * Steps the units on a LayeredMap in parallel.
+ *
+ * The map is cut into square regions, each wider than the furthest a unit
+ * can see or reach in a single tick, and the regions are 2x2-coloured so
+ * that no two regions of the same colour are adjacent. Each tick runs four
+ * phases, one per colour. Within a phase the regions are stepped
+ * concurrently, each one's units in serial order.
+ *
+ * While a region is stepping, changes to anything shared between regions
+ * - placing and removing units or fixtures, moving units between UnitIndex
+ * buckets, damage, path requests, animations, sounds, doLaters and so on -
+ * are not applied but recorded against the region by the Game and
+ * LayeredMap. When all regions in a phase are done, the recorded changes
+ * are replayed on the calling thread in region order. What a region does
+ * change directly - its units, the spots and reservations around them -
+ * no other region of its colour can see or touch. Utils' random numbers
+ * are drawn from a generator seeded by frame and region.
+ *
+ * Together, this makes the result independent of the number of threads
+ * and of how they're scheduled: a RegionStepper with a single thread,
+ * which steps the regions one after another on the calling thread,
+ * performs exactly the same tick as one with many. The Engine steps units
+ * through a single-threaded RegionStepper when it hasn't been given one,
+ * so serial and parallel runs of a Game match exactly. StepperCheck runs
+ * a Game both ways and compares the units.
+ */
+public class RegionStepper
+{
+	private static final int MIN_REGION_SIZE = 16;
+	private static final int COLORS = 4;
+	
+	private static final ThreadLocal<Bucket> context = new ThreadLocal<Bucket>();
+	
+	private LayeredMap map;
+	private int regionSize;
+	private int cols;
+	private int rows;
+	private int threads;
+	
+	private Bucket[] buckets;
+	private List<List<Bucket>> phases;
+	private ExecutorService executor;
+	
+	/**
+	 * Creates a RegionStepper with regions sized for the given UnitFactory's
+	 * longest attack range.
+	 */
+	public RegionStepper(LayeredMap map, UnitFactory factory, int threads)
+	{
+		this(map, getRegionSize(factory), threads);
+	}
+	
+	public RegionStepper(LayeredMap map, int regionSize, int threads)
+	{
+		if (regionSize < 1)
+			throw new IllegalArgumentException("regionSize must be positive");
+		
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive");
+		
+		this.map = map;
+		this.regionSize = regionSize;
+		this.threads = threads;
+		
+		cols = (map.getWidth() + regionSize - 1) / regionSize;
+		rows = (map.getHeight() + regionSize - 1) / regionSize;
+		
+		buckets = new Bucket[cols * rows];
+		phases = new ArrayList<List<Bucket>>(COLORS);
+		
+		for (int c = 0; c < COLORS; ++c)
+			phases.add(new ArrayList<Bucket>());
+		
+		for (int ry = 0; ry < rows; ++ry)
+		for (int rx = 0; rx < cols; ++rx)
+		{
+			Bucket bucket = new Bucket(rx + ry * cols);
+			buckets[bucket.index] = bucket;
+			phases.get((rx % 2) + (ry % 2) * 2).add(bucket);
+		}
+		
+		if (threads > 1)
+			executor = Executors.newFixedThreadPool(threads, new StepperThreadFactory());
+	}
+	
+	/**
+	 * Gets a region size large enough that a unit stepping in one region
+	 * can't see or touch anything in another region of the same colour.
+	 * A unit can stand one spot outside its region by the time it's stepped,
+	 * reserve one spot beyond that, and look as far as its attack range, or
+	 * plan its moves as far as CooperativeAStar's window.
+	 */
+	public static int getRegionSize(UnitFactory factory)
+	{
+		int range = (int) Math.ceil(factory.getMaxAttackRange());
+		int reach = Math.max(range, CooperativeAStar.WINDOW) + 3;
+		return Math.max(MIN_REGION_SIZE, reach);
+	}
+	
+	public int getRegionSize()
+	{
+		return regionSize;
+	}
+	
+	public int getThreadCount()
+	{
+		return threads;
+	}
+	
+	/**
+	 * Returns true if the calling thread is currently stepping a region,
+	 * in which case changes with effects outside of the unit's own
+	 * surroundings should be passed to defer() instead of applied.
+	 */
+	public static boolean isDeferring()
+	{
+		return context.get() != null;
+	}
+	
+	/**
+	 * Records a change to be applied once the current phase is done.
+	 *
+	 * Throws IllegalStateException if the calling thread isn't stepping
+	 * a region.
+	 */
+	public static void defer(Runnable change)
+	{
+		Bucket bucket = context.get();
+		
+		if (bucket == null)
+			throw new IllegalStateException("not stepping a region");
+		
+		bucket.deferred.add(change);
+	}
+	
+	/**
+	 * Steps all units on the map once. Must be called from the thread that
+	 * owns the tick, with the Game's monitor held.
+	 */
+	public void step(int frame)
+	{
+		for (Bucket bucket : buckets)
+			bucket.units.clear();
+		
+		List<Unit> units = map.getUnitSnapshot();
+		
+		for (int i = 0; i < units.size(); ++i)
+		{
+			Unit unit = units.get(i);
+			
+			if (unit.isFloating())
+				continue;
+			
+			int rx = clamp(unit.getX() / regionSize, cols - 1);
+			int ry = clamp(unit.getY() / regionSize, rows - 1);
+			
+			buckets[rx + ry * cols].units.add(unit);
+		}
+		
+		for (Bucket bucket : buckets)
+		{
+			sortBySerial(bucket.units);
+			bucket.rng.setSeed(frame * 31L * buckets.length + bucket.index);
+		}
+		
+		for (int p = 0; p < phases.size(); ++p)
+		{
+			List<Bucket> phase = phases.get(p);
+			runPhase(phase);
+			
+			for (int i = 0; i < phase.size(); ++i)
+				phase.get(i).commit();
+		}
+	}
+	
+	/**
+	 * Stops the worker threads. The RegionStepper can't be used afterwards.
+	 */
+	public void dispose()
+	{
+		if (executor != null)
+			executor.shutdownNow();
+	}
+	
+	private void runPhase(List<Bucket> phase)
+	{
+		if (executor == null)
+		{
+			for (int i = 0; i < phase.size(); ++i)
+				phase.get(i).call();
+			
+			return;
+		}
+		
+		List<Future<Object>> results;
+		
+		try
+		{
+			results = executor.invokeAll(phase);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while stepping", e);
+		}
+		
+		for (Future<Object> result : results)
+		{
+			try
+			{
+				result.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while stepping", e);
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				
+				if (cause instanceof Error)
+					throw (Error) cause;
+				
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+	
+	/**
+	 * Insertion sort, which doesn't allocate and is linear for the nearly
+	 * sorted lists the map hands out, since units are mostly placed in the
+	 * order they were made.
+	 */
+	private static void sortBySerial(List<Unit> units)
+	{
+		for (int i = 1; i < units.size(); ++i)
+		{
+			Unit unit = units.get(i);
+			int j = i - 1;
+			
+			while (j >= 0 && units.get(j).getSerial() > unit.getSerial())
+			{
+				units.set(j + 1, units.get(j));
+				--j;
+			}
+			
+			units.set(j + 1, unit);
+		}
+	}
+	
+	private static int clamp(int i, int max)
+	{
+		return i < 0 ? 0 : (i > max ? max : i);
+	}
+	
+	private static class Bucket implements Callable<Object>
+	{
+		final int index;
+		final List<Unit> units = new ArrayList<Unit>();
+		final List<Runnable> deferred = new ArrayList<Runnable>();
+		final Random rng = new Random();
+		
+		Bucket(int index)
+		{
+			this.index = index;
+		}
+		
+		public Object call()
+		{
+			if (units.isEmpty())
+				return null;
+			
+			context.set(this);
+			Random previous = Utils.setThreadRandom(rng);
+			
+			try
+			{
+				for (int i = 0; i < units.size(); ++i)
+				{
+					Unit unit = units.get(i);
+					
+					if (!unit.isDead() && !unit.isFloating())
+						unit.step();
+				}
+			}
+			finally
+			{
+				context.remove();
+				Utils.setThreadRandom(previous);
+			}
+			
+			return null;
+		}
+		
+		void commit()
+		{
+			if (deferred.isEmpty())
+				return;
+			
+			try
+			{
+				for (int i = 0; i < deferred.size(); ++i)
+					deferred.get(i).run();
+			}
+			finally
+			{
+				deferred.clear();
+			}
+		}
+	}
+	
+	private static class StepperThreadFactory implements ThreadFactory
+	{
+		private AtomicInteger count = new AtomicInteger();
+		
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "RegionStepper-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
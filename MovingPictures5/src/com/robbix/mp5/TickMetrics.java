@@ -0,0 +1,329 @@
+package com.robbix.mp5;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.robbix.utils.Histogram;
+
+/**
+ * Times each phase of the Engine's ticks, counts how often paths are found
+ * in the PathService's cache, and how often units search for targets.
+ *
+ * A tick that takes longer than the Engine's delay is an overrun. Overruns
+ * are counted in total and against whichever phase took longest in that
+ * tick, to point at what blew the budget.
+ *
+ * Ticks are timed on the Engine's thread, while REPAINT is recorded by
+ * DisplayPanels on the EDT and isn't part of the tick.
+ */
+public class TickMetrics implements TickMetricsMBean
+{
+	public static enum Phase
+	{
+		COMMANDS,
+		PATHS,
+		TRIGGERS,
+		UNITS,
+		ENTITIES,
+		ANIMATIONS,
+		DO_LATERS,
+		SPLASH,
+		REPAINT;
+	}
+	
+	private static final Phase[] PHASES = Phase.values();
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	private EnumMap<Phase, Histogram> phases;
+	private Histogram ticks;
+	private volatile long overruns;
+	private long[] phaseOverruns;
+	
+	private long tickStart;
+	private long phaseStart;
+	private long[] tickPhases;
+	
+	private volatile long pathCacheHits;
+	private volatile long pathCacheMisses;
+	private volatile long pathCacheHitBase;
+	private volatile long pathCacheMissBase;
+	
+	private volatile long targetScans;
+	private volatile long targetScanBase;
+	
+	public TickMetrics()
+	{
+		phases = new EnumMap<Phase, Histogram>(Phase.class);
+		
+		for (Phase phase : PHASES)
+			phases.put(phase, new Histogram());
+		
+		ticks = new Histogram();
+		phaseOverruns = new long[PHASES.length];
+		tickPhases = new long[PHASES.length];
+	}
+	
+	/**
+	 * Registers these TickMetrics with the platform MBeanServer under
+	 * com.robbix.mp5:type=TickMetrics,name=<name>.
+	 */
+	public ObjectName register(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName(
+			"com.robbix.mp5:type=TickMetrics,name=" + ObjectName.quote(name)
+		);
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+	
+	/**
+	 * Starts timing a tick, and its first phase.
+	 */
+	public void startTick()
+	{
+		tickStart = phaseStart = System.nanoTime();
+		
+		for (int i = 0; i < tickPhases.length; ++i)
+			tickPhases[i] = 0;
+	}
+	
+	/**
+	 * Ends the current phase of the tick, and starts the next one.
+	 */
+	public void endPhase(Phase phase)
+	{
+		long now = System.nanoTime();
+		long elapsed = now - phaseStart;
+		phaseStart = now;
+		tickPhases[phase.ordinal()] += elapsed;
+		record(phase, elapsed);
+	}
+	
+	/**
+	 * Ends the tick. If it took longer than budget nanoseconds, and budget
+	 * is positive, it's counted as an overrun.
+	 */
+	public void endTick(long budget)
+	{
+		long elapsed = phaseStart - tickStart;
+		ticks.record(elapsed);
+		
+		if (budget <= 0 || elapsed <= budget)
+			return;
+		
+		int worst = 0;
+		
+		for (int i = 1; i < tickPhases.length; ++i)
+			if (tickPhases[i] > tickPhases[worst])
+				worst = i;
+		
+		synchronized (phaseOverruns)
+		{
+			phaseOverruns[worst]++;
+			overruns++;
+		}
+	}
+	
+	/**
+	 * Records the time taken by a phase outside of the tick.
+	 */
+	public void record(Phase phase, long nanos)
+	{
+		phases.get(phase).record(nanos);
+	}
+	
+	/**
+	 * Records the PathService's running totals of cache hits and misses.
+	 * Counts are reported from the last reset.
+	 */
+	public void recordPathCache(long hits, long misses)
+	{
+		pathCacheHits = hits;
+		pathCacheMisses = misses;
+	}
+	
+	public long getPathCacheHitCount()
+	{
+		return pathCacheHits - pathCacheHitBase;
+	}
+	
+	public long getPathCacheMissCount()
+	{
+		return pathCacheMisses - pathCacheMissBase;
+	}
+	
+	/**
+	 * Gets the fraction of path requests answered from the cache, or 0 if
+	 * there haven't been any.
+	 */
+	public double getPathCacheHitRate()
+	{
+		long hits = getPathCacheHitCount();
+		long total = hits + getPathCacheMissCount();
+		
+		return total == 0 ? 0 : hits / (double) total;
+	}
+	
+	/**
+	 * Records the map's running total of searches for targets. Counts are
+	 * reported from the last reset.
+	 */
+	public void recordTargetScans(long scans)
+	{
+		targetScans = scans;
+	}
+	
+	public long getTargetScanCount()
+	{
+		return targetScans - targetScanBase;
+	}
+	
+	/**
+	 * Gets the average number of searches for targets per tick, or 0 if
+	 * there haven't been any ticks.
+	 */
+	public double getTargetScansPerTick()
+	{
+		long tickCount = getTickCount();
+		
+		return tickCount == 0 ? 0 : getTargetScanCount() / (double) tickCount;
+	}
+	
+	public Histogram getHistogram(Phase phase)
+	{
+		return phases.get(phase);
+	}
+	
+	public Histogram getTickHistogram()
+	{
+		return ticks;
+	}
+	
+	public long getOverrunCount(Phase phase)
+	{
+		synchronized (phaseOverruns)
+		{
+			return phaseOverruns[phase.ordinal()];
+		}
+	}
+	
+	public long getTickCount()
+	{
+		return ticks.getCount();
+	}
+	
+	public long getOverrunCount()
+	{
+		return overruns;
+	}
+	
+	public double getTickP50()
+	{
+		return ticks.getPercentile(0.50) / NANOS_PER_MILLI;
+	}
+	
+	public double getTickP99()
+	{
+		return ticks.getPercentile(0.99) / NANOS_PER_MILLI;
+	}
+	
+	public double getTickMax()
+	{
+		return ticks.getMax() / NANOS_PER_MILLI;
+	}
+	
+	/**
+	 * Gets one line per phase, plus one for the whole tick, with
+	 * p50/p99/max times in milliseconds and overrun counts, then a line of
+	 * path cache hits and misses and one of target searches.
+	 */
+	public String[] getPhaseSummary()
+	{
+		List<String> lines = new ArrayList<String>(PHASES.length + 1);
+		
+		for (Phase phase : PHASES)
+		{
+			lines.add(format(
+				phase.toString(),
+				phases.get(phase),
+				phase == Phase.REPAINT ? -1 : getOverrunCount(phase)
+			));
+		}
+		
+		lines.add(format("TICK", ticks, overruns));
+		lines.add(String.format(
+			"%-10s hits %d  misses %d  (%.0f%%)",
+			"PATHCACHE",
+			getPathCacheHitCount(),
+			getPathCacheMissCount(),
+			getPathCacheHitRate() * 100
+		));
+		lines.add(String.format(
+			"%-10s total %d  (%.1f per tick)",
+			"SCANS",
+			getTargetScanCount(),
+			getTargetScansPerTick()
+		));
+		return lines.toArray(new String[lines.size()]);
+	}
+	
+	public double getPhaseP50(String phase)
+	{
+		return getHistogram(Phase.valueOf(phase)).getPercentile(0.50) / NANOS_PER_MILLI;
+	}
+	
+	public double getPhaseP99(String phase)
+	{
+		return getHistogram(Phase.valueOf(phase)).getPercentile(0.99) / NANOS_PER_MILLI;
+	}
+	
+	public double getPhaseMax(String phase)
+	{
+		return getHistogram(Phase.valueOf(phase)).getMax() / NANOS_PER_MILLI;
+	}
+	
+	public long getPhaseOverrunCount(String phase)
+	{
+		return getOverrunCount(Phase.valueOf(phase));
+	}
+	
+	public void reset()
+	{
+		for (Histogram histogram : phases.values())
+			histogram.reset();
+		
+		ticks.reset();
+		pathCacheHitBase = pathCacheHits;
+		pathCacheMissBase = pathCacheMisses;
+		targetScanBase = targetScans;
+		
+		synchronized (phaseOverruns)
+		{
+			for (int i = 0; i < phaseOverruns.length; ++i)
+				phaseOverruns[i] = 0;
+			
+			overruns = 0;
+		}
+	}
+	
+	private static String format(String name, Histogram histogram, long overruns)
+	{
+		String line = String.format(
+			"%-10s p50 %6.2f  p99 %6.2f  max %7.2f ms",
+			name,
+			histogram.getPercentile(0.50) / NANOS_PER_MILLI,
+			histogram.getPercentile(0.99) / NANOS_PER_MILLI,
+			histogram.getMax() / NANOS_PER_MILLI
+		);
+		
+		return overruns < 0 ? line : line + "  over " + overruns;
+	}
+}
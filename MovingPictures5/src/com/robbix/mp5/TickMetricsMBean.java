@@ -0,0 +1,28 @@
+package com.robbix.mp5;
+
+/**
+ * JMX view of an Engine's TickMetrics. Times are in milliseconds.
+ */
+public interface TickMetricsMBean
+{
+	public long getTickCount();
+	public long getOverrunCount();
+	public double getTickP50();
+	public double getTickP99();
+	public double getTickMax();
+	public String[] getPhaseSummary();
+	
+	public double getPhaseP50(String phase);
+	public double getPhaseP99(String phase);
+	public double getPhaseMax(String phase);
+	public long getPhaseOverrunCount(String phase);
+	
+	public long getPathCacheHitCount();
+	public long getPathCacheMissCount();
+	public double getPathCacheHitRate();
+	
+	public long getTargetScanCount();
+	public double getTargetScansPerTick();
+	
+	public void reset();
+}
@@ -2,26 +2,60 @@ package com.robbix.mp5.ai;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import com.robbix.utils.CostMap;
-import com.robbix.utils.Direction;
 import com.robbix.utils.Position;
+import com.robbix.utils.PositionCache;
 
-public class AStar// implements Pathfinder
+/**
+ * A* search over a CostMap.
+ *
+ * Search state is kept in flat arrays indexed by cell (x + y * w) and sized
+ * to the CostMap, and the open set is an indexed binary heap of cells, so a
+ * search doesn't allocate anything per node. The arrays are kept between
+ * searches and stamped with a search number instead of being cleared, so
+ * an AStar should be reused. It is not thread-safe - use one per thread.
+ *
+ * A search can also be run in slices with start() and resume(), which
+ * keep its open and closed sets until the next call.
+ */
+public class AStar implements Pathfinder, ResumableSearch
 {
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	
 	/**
 	 * The heuristic used by this algoritm to project potential paths.
 	 */
 	private Heuristic heuristic;
 	
+	private int w, h;
+	private double[] g;
+	private double[] f;
+	private int[] parent;
+	private int[] openStamp;
+	private int[] closedStamp;
+	private int[] heapIndex;
+	private int[] heap;
+	private PositionCache positions;
+	private int heapSize;
+	private int search;
+	private int expansions;
+	
+	/*
+	 * The search in progress.
+	 */
+	private CostMap course;
+	private int ex, ey;
+	private int startIndex, endIndex;
+	private boolean done, found;
+	
 	/**
 	 * Constructs a new AStar algoritm using default Euclidean Distance
 	 * heuristic.
@@ -42,6 +76,22 @@ public class AStar// implements Pathfinder
 		this.heuristic = heuristic;
 	}
 	
+	public Heuristic getHeuristic()
+	{
+		return heuristic;
+	}
+	
+	/**
+	 * Sets the Heuristic used by searches started from now on.
+	 */
+	public void setHeuristic(Heuristic heuristic)
+	{
+		if (heuristic == null)
+			throw new NullPointerException();
+		
+		this.heuristic = heuristic;
+	}
+	
 	public List<Position> getPath(CostMap course, Position start, Position end)
 	{
 		return getPath(course, start, end, 0);
@@ -52,7 +102,9 @@ public class AStar// implements Pathfinder
 	 * CostMap. The CostMap can simply be the terrain texture from
 	 * TerrainLayer.getCostMap() or it can be a combination of
 	 * terrain, enemy positions, friendly postions, etc.
-	 * 
+	 *
+	 * If distance is 1, the path stops one short of end.
+	 *
 	 * Returns null if a path cannot be found.
 	 */
 	public List<Position> getPath(
@@ -61,217 +113,289 @@ public class AStar// implements Pathfinder
 		Position end,
 		double distance)
 	{
+		start(course, start, end);
+		resume(Integer.MAX_VALUE);
+		return getPath(distance);
+	}
+	
+	/**
+	 * Starts a search from start to end that can be run a few expansions
+	 * at a time with resume(), so that it can be spread over several ticks.
+	 * The CostMap mustn't change until the search is done.
+	 */
+	public void start(CostMap course, Position start, Position end)
+	{
+		this.course = course;
+		this.ex = end.x;
+		this.ey = end.y;
+		
+		done = false;
+		found = false;
+		
 		/*
-		 * Go ahead and return null now if end is an unreachable spot.
+		 * Go ahead and finish now if end is an unreachable spot.
 		 */
 		if (course.isInfinite(start) || course.isInfinite(end))
-			return null;
+		{
+			done = true;
+			expansions = 0;
+			return;
+		}
 		
-		/*
-		 * Get complete search tree. If it's null, then no path could be
-		 * found, so return null.
-		 */
-		List<PosPair> nodes = getNodes(course, start, end, distance);
+		prepare(course.w, course.h);
+		
+		startIndex = start.x + start.y * w;
+		endIndex = end.x + end.y * w;
+		
+		g[startIndex] = 0;
+		f[startIndex] = heuristic.project(course, start.x, start.y, ex, ey);
+		parent[startIndex] = -1;
+		push(startIndex);
+	}
+	
+	/**
+	 * Runs the search begun by start() for up to budget more expansions.
+	 * Returns true once the search is done, whether or not a path was found.
+	 */
+	public boolean resume(int budget)
+	{
+		if (!done)
+			search(budget);
 		
-		if (nodes == null)
+		return done;
+	}
+	
+	public boolean isDone()
+	{
+		return done;
+	}
+	
+	/**
+	 * Gets the path found by the last search, or null if it hasn't finished
+	 * or a path cannot be found. If distance is 1, the path stops one short
+	 * of the end.
+	 */
+	public List<Position> getPath(double distance)
+	{
+		if (!found)
 			return null;
 		
 		/*
-		 * Retrace the path from the search tree. Start with the end Position
-		 * and find the Position that leads to that and add it to the end of
-		 * the path. Repeat until the Position at the end of the path is
-		 * the start point. Path is end->start so reverse before returning.
+		 * Retrace the path by following parent pointers back from the end,
+		 * counting first so the path can be filled in start->end order.
 		 */
-		int manhattanDistance = Math.abs(start.x - end.x)
-							  + Math.abs(start.y - end.y); 
-		List<Position> path = new ArrayList<Position>(manhattanDistance);
-		path.add(end);
+		int length = 1;
 		
-		while (!path.get(path.size() - 1).equals(start))
-		{
-			PosPair pair = getNodePointingTo(nodes, path.get(path.size() - 1));
-			path.add(pair.from);
-		}
+		for (int i = endIndex; i != startIndex; i = parent[i])
+			length++;
+		
+		Position[] steps = new Position[length];
 		
-		Collections.reverse(path);
+		for (int i = endIndex, s = length - 1; s >= 0; i = parent[i], --s)
+			steps[s] = positions.get(i);
+		
+		List<Position> path = new ArrayList<Position>(Arrays.asList(steps));
 		
 		if (distance == 1)
-			path = path.subList(0, path.size() - 1);
+			path.remove(path.size() - 1);
 		
 		return path;
 	}
 	
 	/**
-	 * Gets a list of nodes that make up the search tree.
-	 * The last node will be the one that goes from the
-	 * second-to-last postion to the destination.
-	 * 
-	 * Returns null if all alternative paths were exhausted and one could not
-	 * be found.
+	 * Gets the number of cells expanded by the last search.
 	 */
-	private List<PosPair> getNodes(
-		CostMap course,
-		Position start,
-		Position end,
-		double distance)
+	public int getExpansionCount()
+	{
+		return expansions;
+	}
+	
+	/**
+	 * Runs the search for up to budget expansions, leaving parent pointers
+	 * behind for retracing the path. The search is done when the end is
+	 * reached, or when all alternative paths were exhausted and one could
+	 * not be found.
+	 */
+	private void search(int budget)
 	{
-		Map<Position, Cost> openSet = new HashMap<Position, Cost>(64);
-		Set<Position> closedSet = new HashSet<Position>(128);
-		List<PosPair> nodes = new LinkedList<PosPair>();
-		
-		double startF = heuristic.project(course, start, end);
-		openSet.put(start, new Cost(0, startF));
-		
 		/*
 		 * Loop while there are still potential positions to branch into
 		 * and explore. If this loop ends before the destination is found,
-		 * then there isn't any way to reach the destination and the method
-		 * returns null.
+		 * then there isn't any way to reach the destination.
 		 */
-		while (!openSet.isEmpty())
+		while (heapSize > 0)
 		{
-			Position current = null;
-			double lowestFCost = Double.POSITIVE_INFINITY;
+			if (budget-- <= 0)
+				return;
 			
-			/*
-			 * Find the position in the open set with the lowest f-value,
-			 * we'll branch from there.
-			 */
-			for (Map.Entry<Position, Cost> entry : openSet.entrySet())
-				if (entry.getValue().f < lowestFCost)
-				{
-					lowestFCost = entry.getValue().f;
-					current = entry.getKey();
-				}
+			int current = pop();
 			
-			/*
-			 * If we found the end, we're done.
-			 */
-			if (end.equals(current))
-				return Arrays.asList(nodes.toArray(new PosPair[0]));
+			if (current == endIndex)
+			{
+				found = true;
+				done = true;
+				return;
+			}
 			
-			/*
-			 * Add current position to the closed set so it doesn't
-			 * get visited again.
-			 */
-			Cost currentCost = openSet.remove(current);
-			closedSet.add(current);
+			closedStamp[current] = search;
+			expansions++;
+			
+			int cx = current % w;
+			int cy = current / w;
+			double currentG = g[current];
 			
 			/*
-			 * Check neighbor in each of 8 directions to see if it is
-			 * on the map, passable, and hasn't been added to the closed set.
-			 * 
-			 * Neighbor will also be ignored if there is already a position
-			 * in the open set of lesser or equal g (measured) value.
+			 * Consider each neighbour that is on the map, passable and not
+			 * closed. It's ignored if it is already open with a lesser or
+			 * equal g (measured) value.
 			 */
-			for (Direction dir : Direction.getIterator(Direction.E, 2))
+			for (int d = 0; d < 8; ++d)
 			{
-				Position neighbor = dir.apply(current);
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
 				
-				/*
-				 * Consider neighbor only if it is on the map,
-				 * it is not in the closed set of already considered nodes
-				 * and is passable.
-				 */
-				if ((!course.getBounds().contains(neighbor))
-				|| closedSet.contains(neighbor)
-				|| Double.isInfinite(course.get(neighbor)))
+				if (nx < 0 || ny < 0 || nx >= w || ny >= h)
 					continue;
 				
-				double moveFactor = dir.isDiagonal() ? 1.414 : 1;
-				Cost neighborCost = new Cost(
-					currentCost.g + course.get(neighbor) * moveFactor,
-					heuristic.project(course, neighbor, end)
-				);
+				int neighbor = nx + ny * w;
 				
-				/*
-				 * Add neighbor to openSet and current->neighbor to node list
-				 * if the node hasn't been visited yet or it has and the
-				 * g value this time around is less than it was last time.
-				 */
-				if (!openSet.containsKey(neighbor)
-				|| neighborCost.g < openSet.get(neighbor).g)
-				{
-					/*
-					 * Remove the old from->to PosPair from the nodes list as
-					 * this way is cheaper and we don't want the old way
-					 * being traced with the path is constructed.
-					 */
-					Iterator<PosPair> nodeIterator = nodes.iterator();
-					
-					while (nodeIterator.hasNext())
-					{
-						PosPair oldPair = nodeIterator.next();
-						
-						if (oldPair.to.equals(neighbor))
-							nodeIterator.remove();
-					}
-					
-					nodes.add(new PosPair(current, neighbor));
-					openSet.put(neighbor, neighborCost);
-				}
+				if (closedStamp[neighbor] == search)
+					continue;
+				
+				double cost = course.getAt(neighbor);
+				
+				if (Double.isInfinite(cost))
+					continue;
+				
+				double moveFactor = (d & 1) == 1 ? DIAGONAL_FACTOR : 1;
+				double neighborG = currentG + cost * moveFactor;
+				boolean open = openStamp[neighbor] == search;
+				
+				if (open && neighborG >= g[neighbor])
+					continue;
+				
+				g[neighbor] = neighborG;
+				f[neighbor] = neighborG + heuristic.project(course, nx, ny, ex, ey);
+				parent[neighbor] = current;
+				
+				if (open)
+					siftUp(heapIndex[neighbor]);
+				else
+					push(neighbor);
 			}
 		}
 		
-		return null;
+		done = true;
 	}
 	
 	/**
-	 * Finds which node in the list of Position pairs leads to the given
-	 * Position.
-	 * 
-	 * Returns null if such a node is not present.
+	 * Sizes the search arrays for a w by h CostMap and starts a new search
+	 * number, so that state left by previous searches is ignored.
 	 */
-	private static PosPair getNodePointingTo(List<PosPair> pairs, Position pos)
+	private void prepare(int w, int h)
 	{
-		for (PosPair pair : pairs)
-			if (pair.to.equals(pos))
-				return pair;
+		if (g == null || this.w != w || this.h != h)
+		{
+			int area = w * h;
+			this.w = w;
+			this.h = h;
+			g = new double[area];
+			f = new double[area];
+			parent = new int[area];
+			openStamp = new int[area];
+			closedStamp = new int[area];
+			heapIndex = new int[area];
+			heap = new int[area];
+			positions = PositionCache.getInstance(w, h);
+			search = 0;
+		}
+		
+		if (++search == Integer.MAX_VALUE)
+		{
+			Arrays.fill(openStamp, 0);
+			Arrays.fill(closedStamp, 0);
+			search = 1;
+		}
 		
-		return null;
+		heapSize = 0;
+		expansions = 0;
 	}
 	
-	/**
-	 * Simple value-pair that represents g (measured cost) and f
-	 * (measured + projected cost).
-	 * 
-	 * Constructor takes g and h as aruguments, producing f = g + h.
-	 * Doesn't store h as it is never called for later.
+	/*------------------------------------------------------------------------------------------[*]
+	 * Indexed binary min-heap of cells, ordered by f. Ties go to the cell
+	 * with the greater g, which is the one nearer the goal.
 	 */
-	private static class Cost
+	
+	private boolean before(int a, int b)
 	{
-		/*
-		 * Only necessary to remember measured cost up to that
-		 * point and measured cost plus heuristic predicted cost.
-		 */
-		public double f, g;
+		return f[a] < f[b] || (f[a] == f[b] && g[a] > g[b]);
+	}
+	
+	private void push(int cell)
+	{
+		openStamp[cell] = search;
+		heap[heapSize] = cell;
+		heapIndex[cell] = heapSize;
+		siftUp(heapSize++);
+	}
+	
+	private int pop()
+	{
+		int top = heap[0];
+		openStamp[top] = 0;
+		heapSize--;
 		
-		public Cost(double g, double h)
+		if (heapSize > 0)
 		{
-			this.f = g + h;
-			this.g = g;
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
 		}
+		
+		return top;
 	}
 	
-	/**
-	 * Represents a branch in the search tree.
-	 */
-	private static class PosPair
+	private void siftUp(int i)
 	{
-		public final Position from, to;
+		int cell = heap[i];
 		
-		public PosPair(Position from, Position to)
+		while (i > 0)
 		{
-			this.from = from;
-			this.to = to;
+			int p = (i - 1) >> 1;
+			
+			if (!before(cell, heap[p]))
+				break;
+			
+			heap[i] = heap[p];
+			heapIndex[heap[i]] = i;
+			i = p;
 		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
 	}
 	
-	/**
-	 * Finds the square of the straight-line distance.
-	 */
-//	private static double sqDistance(Position a, Position b)
-//	{
-//		return (a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y);
-//	}
+	private void siftDown(int i)
+	{
+		int cell = heap[i];
+		int half = heapSize >> 1;
+		
+		while (i < half)
+		{
+			int c = (i << 1) + 1;
+			
+			if (c + 1 < heapSize && before(heap[c + 1], heap[c]))
+				c++;
+			
+			if (!before(heap[c], cell))
+				break;
+			
+			heap[i] = heap[c];
+			heapIndex[heap[i]] = i;
+			i = c;
+		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
+	}
 }
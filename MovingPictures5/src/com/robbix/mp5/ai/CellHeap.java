@@ -0,0 +1,118 @@
+package com.robbix.mp5.ai;
+
+/**
+ * Indexed binary min-heap of cells (x + y * w indices), ordered by an array
+ * of keys that the caller owns and updates. After lowering the key of a
+ * cell that is already in the heap, call update() to restore the order.
+ *
+ * Capacity is fixed to the length of the key array, so a cell can only be
+ * in the heap once.
+ */
+public class CellHeap
+{
+	private double[] keys;
+	private int[] heap;
+	private int[] heapIndex;
+	private int size;
+	
+	public CellHeap(double[] keys)
+	{
+		this.keys = keys;
+		this.heap = new int[keys.length];
+		this.heapIndex = new int[keys.length];
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public void clear()
+	{
+		size = 0;
+	}
+	
+	public void push(int cell)
+	{
+		heap[size] = cell;
+		heapIndex[cell] = size;
+		siftUp(size++);
+	}
+	
+	/**
+	 * Removes and returns the cell with the least key.
+	 */
+	public int pop()
+	{
+		int top = heap[0];
+		size--;
+		
+		if (size > 0)
+		{
+			heap[0] = heap[size];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		
+		return top;
+	}
+	
+	/**
+	 * Moves a cell that's in the heap up after its key has been lowered.
+	 */
+	public void update(int cell)
+	{
+		siftUp(heapIndex[cell]);
+	}
+	
+	private void siftUp(int i)
+	{
+		int cell = heap[i];
+		double key = keys[cell];
+		
+		while (i > 0)
+		{
+			int p = (i - 1) >> 1;
+			
+			if (keys[heap[p]] <= key)
+				break;
+			
+			heap[i] = heap[p];
+			heapIndex[heap[i]] = i;
+			i = p;
+		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
+	}
+	
+	private void siftDown(int i)
+	{
+		int cell = heap[i];
+		double key = keys[cell];
+		int half = size >> 1;
+		
+		while (i < half)
+		{
+			int c = (i << 1) + 1;
+			
+			if (c + 1 < size && keys[heap[c + 1]] < keys[heap[c]])
+				c++;
+			
+			if (keys[heap[c]] >= key)
+				break;
+			
+			heap[i] = heap[c];
+			heapIndex[heap[i]] = i;
+			i = c;
+		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
+	}
+}
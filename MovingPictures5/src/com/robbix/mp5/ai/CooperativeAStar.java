@@ -0,0 +1,303 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Position;
+
+/**
+ * Windowed cooperative A*. Plans a unit's next few moves in space and time,
+ * around the moves other units have reserved in a ReservationTable.
+ *
+ * Each step of a plan is a move to a neighbouring position or a wait in
+ * place, and takes the unit's step time in frames (diagonal moves a bit
+ * longer). A unit counts as being in the position it's moving to from
+ * halfway through the move, as it does on the map. The search looks at most WINDOW steps ahead, for a target that
+ * should be along a path found without regard to other units, and finds
+ * the plan that gets closest to it soonest. Units that aren't planning
+ * their moves are treated as fixed obstacles.
+ *
+ * The search covers (2 * WINDOW + 1)^2 positions around the unit over
+ * WINDOW steps, and its arrays are kept between searches, as is the Plan
+ * it returns, which is only good until the next search. It is not
+ * thread-safe - use one per thread.
+ */
+public class CooperativeAStar
+{
+	/**
+	 * How many steps ahead units plan. Regions stepped at the same time by
+	 * a RegionStepper are at least 16 positions apart, so a unit's plan
+	 * can't reach any position that another region's units can.
+	 */
+	public static final int WINDOW = 6;
+	
+	/*
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives,
+	 * followed by waiting in place.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1,  0};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1,  0};
+	private static final int WAIT = 8;
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	private static final int SIZE = 2 * WINDOW + 1;
+	
+	private int[] time;
+	private int[] parent;
+	private int[] stamp;
+	private double[] f;
+	private CellHeap open;
+	private int search;
+	private Plan plan = new Plan();
+	
+	public CooperativeAStar()
+	{
+		int states = SIZE * SIZE * (WINDOW + 1);
+		time = new int[states];
+		parent = new int[states];
+		stamp = new int[states];
+		f = new double[states];
+		open = new CellHeap(f);
+	}
+	
+	/**
+	 * Plans up to WINDOW steps for owner from start toward target, starting
+	 * at frame now. The plan ends early if it reaches target. Returns null
+	 * if owner can neither move nor wait where it is.
+	 *
+	 * @param stepTime the frames owner takes to move to the next position.
+	 * @param priority the least priority of reservations to plan around.
+	 */
+	public Plan plan(
+		LayeredMap map,
+		ReservationTable table,
+		Unit owner,
+		Position start,
+		Position target,
+		int now,
+		int stepTime,
+		int priority)
+	{
+		if (++search == Integer.MAX_VALUE)
+		{
+			Arrays.fill(stamp, 0);
+			search = 1;
+		}
+		
+		open.clear();
+		
+		int diagonalTime = (int) Math.ceil(stepTime * DIAGONAL_FACTOR);
+		int first = index(0, WINDOW, WINDOW);
+		stamp[first] = search;
+		time[first] = now;
+		parent[first] = -1;
+		f[first] = project(start.x, start.y, target, stepTime);
+		open.push(first);
+		
+		while (!open.isEmpty())
+		{
+			int state = open.pop();
+			int k = state / (SIZE * SIZE);
+			int lx = state % SIZE;
+			int ly = (state / SIZE) % SIZE;
+			int x = start.x + lx - WINDOW;
+			int y = start.y + ly - WINDOW;
+			int t = time[state];
+			
+			if (k == WINDOW || (x == target.x && y == target.y))
+				return retrace(map, state, start);
+			
+			for (int d = 0; d <= WAIT; ++d)
+			{
+				int nx = x + DX[d];
+				int ny = y + DY[d];
+				int duration = d == WAIT ? stepTime : (d & 1) == 1 ? diagonalTime : stepTime;
+				
+				if (nx < 0 || ny < 0 || nx >= map.getWidth() || ny >= map.getHeight())
+					continue;
+				
+				if (!canEnter(map, table, owner, priority, x, y, nx, ny, t, duration, now))
+					continue;
+				
+				int next = index(k + 1, lx + DX[d], ly + DY[d]);
+				int nt = t + duration;
+				
+				if (stamp[next] == search && time[next] <= nt)
+					continue;
+				
+				boolean queued = stamp[next] == search;
+				stamp[next] = search;
+				time[next] = nt;
+				parent[next] = state;
+				f[next] = nt + project(nx, ny, target, stepTime);
+				
+				if (queued)
+					open.update(next);
+				else
+					open.push(next);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Plans for owner to follow positions, which start where it is now, if
+	 * it can do so from frame now without waiting for anyone. Returns null
+	 * if it can't.
+	 *
+	 * @param stepTime the frames owner takes to move to the next position.
+	 * @param priority the least priority of reservations to plan around.
+	 */
+	public Plan follow(
+		LayeredMap map,
+		ReservationTable table,
+		Unit owner,
+		List<Position> positions,
+		int now,
+		int stepTime,
+		int priority)
+	{
+		int diagonalTime = (int) Math.ceil(stepTime * DIAGONAL_FACTOR);
+		plan.reset(positions.size());
+		plan.set(0, positions.get(0), now);
+		
+		for (int i = 1; i < positions.size(); ++i)
+		{
+			Position from = positions.get(i - 1);
+			Position to = positions.get(i);
+			int t = plan.getTime(i - 1);
+			int duration = from.x != to.x && from.y != to.y ? diagonalTime : stepTime;
+			
+			if (!canEnter(map, table, owner, priority, from.x, from.y, to.x, to.y, t, duration, now))
+				return null;
+			
+			plan.set(i, to, t + duration);
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Returns true if owner can go (or stay) from x, y into nx, ny, taking
+	 * duration frames from frame t.
+	 */
+	private static boolean canEnter(
+		LayeredMap map,
+		ReservationTable table,
+		Unit owner,
+		int priority,
+		int x, int y,
+		int nx, int ny,
+		int t,
+		int duration,
+		int now)
+	{
+		if (map.isBlocked(nx, ny))
+			return false;
+		
+		Unit occupant = map.getUnit(nx, ny);
+		
+		if (occupant != null && occupant != owner && !table.isHeldBy(nx, ny, occupant, now))
+			return false;
+		
+		if (nx == x && ny == y)
+			return table.isFree(x, y, t, t + duration, owner, priority, now);
+		
+		int half = t + duration / 2;
+		
+		return table.isFree(nx, ny, half, t + duration, owner, priority, now)
+			&& table.isFree(x, y, t, half, owner, priority, now);
+	}
+	
+	/**
+	 * The least time it could take to get from x, y to target.
+	 */
+	private static double project(int x, int y, Position target, int stepTime)
+	{
+		int dx = Math.abs(x - target.x);
+		int dy = Math.abs(y - target.y);
+		int diagonal = Math.min(dx, dy);
+		
+		return (dx + dy - 2 * diagonal + diagonal * DIAGONAL_FACTOR) * stepTime;
+	}
+	
+	private static int index(int k, int lx, int ly)
+	{
+		return (k * SIZE + ly) * SIZE + lx;
+	}
+	
+	private Plan retrace(LayeredMap map, int state, Position start)
+	{
+		int steps = state / (SIZE * SIZE);
+		plan.reset(steps + 1);
+		
+		for (int s = state, i = steps; i >= 0; s = parent[s], --i)
+		{
+			int lx = s % SIZE;
+			int ly = (s / SIZE) % SIZE;
+			Position pos = map.getPositionCache().get(start.x + lx - WINDOW, start.y + ly - WINDOW);
+			plan.set(i, pos, time[s]);
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Where a unit plans to be, and from when. The first step is where it
+	 * is now.
+	 */
+	public static class Plan
+	{
+		private Position[] positions = new Position[WINDOW + 1];
+		private int[] times = new int[WINDOW + 1];
+		private int size;
+		
+		private Plan()
+		{
+		}
+		
+		private void reset(int size)
+		{
+			if (size > times.length)
+			{
+				positions = new Position[size];
+				times = new int[size];
+			}
+			
+			this.size = size;
+		}
+		
+		private void set(int step, Position pos, int time)
+		{
+			positions[step] = pos;
+			times[step] = time;
+		}
+		
+		public int size()
+		{
+			return size;
+		}
+		
+		public Position getPosition(int step)
+		{
+			return positions[step];
+		}
+		
+		/**
+		 * Gets the frame the unit should arrive at the step's position.
+		 */
+		public int getTime(int step)
+		{
+			return times[step];
+		}
+		
+		public List<Position> getPositions()
+		{
+			return new ArrayList<Position>(Arrays.asList(positions).subList(0, size));
+		}
+	}
+}
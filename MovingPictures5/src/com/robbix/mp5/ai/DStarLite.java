@@ -0,0 +1,459 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Position;
+import com.robbix.utils.Region;
+
+/**
+ * D* Lite search for one unit's path to a goal, which is kept up to date
+ * as the unit moves and the map changes, instead of being searched for
+ * again from scratch.
+ *
+ * The search runs backwards from the goal, so the costs it has found to
+ * the goal stay good as the unit moves along. When positions are reported
+ * changed, only the costs that depended on them are corrected, and most
+ * of the earlier search is kept. Positions with walls and the like, or
+ * with structures on them, are impassable.
+ *
+ * The path is read off by walking downhill through the costs to the goal,
+ * which would go round in circles over free terrain. So every step costs
+ * at least MIN_STEP, and the heuristic is kept to half of what that
+ * guarantees, so that rounding can't make a position look settled before
+ * it is.
+ *
+ * The search only covers a window of the map, which the Replanner picks
+ * around the unit, its goal and the path it was following, so its arrays
+ * are sized to the window rather than the whole map. Changes outside the
+ * window are ignored, and getPath() gives up on a start outside it. If
+ * the only way to the goal leaves the window, no path is found, and a
+ * search over the whole map has to be made instead.
+ *
+ * A DStarLite is made by a Replanner, which passes on changes to the map
+ * to the ones it keeps.
+ */
+public class DStarLite
+{
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	private static final double MIN_STEP = 0.01;
+	private static final double INF = Double.POSITIVE_INFINITY;
+	
+	private LayeredMap map;
+	private Unit owner;
+	private Region window;
+	private int x0, y0;
+	private int w, h;
+	private int stamp;
+	private int goal;
+	private int start;
+	private int last;
+	private double km;
+	
+	private double[] g;
+	private double[] rhs;
+	private double[] k1;
+	private double[] k2;
+	private int[] heap;
+	private int[] heapIndex;
+	private int heapSize;
+	private int expansions;
+	
+	/*
+	 * Positions reported changed since the last search.
+	 */
+	private boolean[] changed;
+	private int[] changes;
+	private int changeCount;
+	
+	DStarLite(LayeredMap map, Unit owner, Position start, Position goal, Region window, int stamp)
+	{
+		this.map = map;
+		this.owner = owner;
+		this.window = window;
+		this.stamp = stamp;
+		this.x0 = window.x;
+		this.y0 = window.y;
+		this.w = window.w;
+		this.h = window.h;
+		
+		int area = w * h;
+		g = new double[area];
+		rhs = new double[area];
+		k1 = new double[area];
+		k2 = new double[area];
+		heap = new int[area];
+		heapIndex = new int[area];
+		changed = new boolean[area];
+		changes = new int[area];
+		
+		Arrays.fill(g, INF);
+		Arrays.fill(rhs, INF);
+		Arrays.fill(heapIndex, -1);
+		
+		this.goal = index(goal);
+		this.start = this.last = index(start);
+		
+		rhs[this.goal] = 0;
+		setKey(this.goal);
+		push(this.goal);
+	}
+	
+	public Position getGoal()
+	{
+		return map.getPositionCache().get(x0 + goal % w, y0 + goal / w);
+	}
+	
+	/**
+	 * Returns true if this search covers the whole map.
+	 */
+	public boolean isWholeMap()
+	{
+		return w == map.getWidth() && h == map.getHeight();
+	}
+	
+	Unit getOwner()
+	{
+		return owner;
+	}
+	
+	/**
+	 * Gets the Replanner's change count when this was made.
+	 */
+	int getStamp()
+	{
+		return stamp;
+	}
+	
+	/**
+	 * Gets the number of positions expanded by this search so far.
+	 */
+	public synchronized int getExpansionCount()
+	{
+		return expansions;
+	}
+	
+	/**
+	 * Notes that pos has become passable or impassable, or its cost has
+	 * changed. The search is corrected the next time a path is asked for.
+	 */
+	public synchronized void changed(Position pos)
+	{
+		if (!window.contains(pos))
+			return;
+		
+		int cell = index(pos);
+		
+		if (!changed[cell])
+		{
+			changed[cell] = true;
+			changes[changeCount++] = cell;
+		}
+	}
+	
+	/**
+	 * Gets the best path from pos to the goal, starting with pos, or null
+	 * if the goal can't be reached from there without leaving the window.
+	 */
+	public synchronized List<Position> getPath(Position pos)
+	{
+		if (!window.contains(pos))
+			return null;
+		
+		start = index(pos);
+		
+		if (changeCount > 0)
+		{
+			/*
+			 * Keys in the queue were worked out from where the unit was
+			 * then. Rather than working them all out again, every key
+			 * from now on is raised by how far the unit has come since.
+			 */
+			km += project(last, start);
+			last = start;
+			
+			for (int i = 0; i < changeCount; ++i)
+			{
+				int cell = changes[i];
+				changed[cell] = false;
+				int cx = cell % w;
+				int cy = cell / w;
+				
+				/*
+				 * Only the cost of moving into cell has changed, which
+				 * is from each of its neighbours.
+				 */
+				for (int d = 0; d < 8; ++d)
+				{
+					int nx = cx + DX[d];
+					int ny = cy + DY[d];
+					
+					if (nx >= 0 && ny >= 0 && nx < w && ny < h)
+						updateVertex(nx + ny * w);
+				}
+			}
+			
+			changeCount = 0;
+		}
+		
+		search();
+		
+		if (g[start] == INF)
+			return null;
+		
+		/*
+		 * Walk downhill from the start to the goal.
+		 */
+		List<Position> path = new ArrayList<Position>();
+		int cell = start;
+		path.add(pos);
+		
+		while (cell != goal)
+		{
+			int next = -1;
+			double best = INF;
+			int cx = cell % w;
+			int cy = cell / w;
+			
+			for (int d = 0; d < 8; ++d)
+			{
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				
+				if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+					continue;
+				
+				int neighbor = nx + ny * w;
+				double through = cost(cell, neighbor, d) + g[neighbor];
+				
+				if (through < best)
+				{
+					best = through;
+					next = neighbor;
+				}
+			}
+			
+			if (next == -1 || path.size() > g.length)
+				return null;
+			
+			cell = next;
+			path.add(map.getPositionCache().get(x0 + cell % w, y0 + cell / w));
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * Expands positions until the start's cost to the goal is settled.
+	 */
+	private void search()
+	{
+		while (heapSize > 0)
+		{
+			int top = heap[0];
+			double startK1 = Math.min(g[start], rhs[start]) + km;
+			double startK2 = Math.min(g[start], rhs[start]);
+			
+			if (!less(k1[top], k2[top], startK1, startK2) && rhs[start] == g[start])
+				break;
+			
+			double oldK1 = k1[top];
+			double oldK2 = k2[top];
+			setKey(top);
+			
+			if (less(oldK1, oldK2, k1[top], k2[top]))
+			{
+				siftDown(0);
+				continue;
+			}
+			
+			expansions++;
+			remove(top);
+			
+			int cx = top % w;
+			int cy = top / w;
+			
+			if (g[top] > rhs[top])
+			{
+				g[top] = rhs[top];
+			}
+			else
+			{
+				g[top] = INF;
+				updateVertex(top);
+			}
+			
+			for (int d = 0; d < 8; ++d)
+			{
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				
+				if (nx >= 0 && ny >= 0 && nx < w && ny < h)
+					updateVertex(nx + ny * w);
+			}
+		}
+	}
+	
+	/**
+	 * Works out the cost to the goal through cell's best neighbour, and
+	 * queues cell if that doesn't match its cost so far.
+	 */
+	private void updateVertex(int cell)
+	{
+		if (cell != goal)
+		{
+			double best = INF;
+			int cx = cell % w;
+			int cy = cell / w;
+			
+			for (int d = 0; d < 8; ++d)
+			{
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				
+				if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+					continue;
+				
+				int neighbor = nx + ny * w;
+				best = Math.min(best, cost(cell, neighbor, d) + g[neighbor]);
+			}
+			
+			rhs[cell] = best;
+		}
+		
+		if (heapIndex[cell] != -1)
+			remove(cell);
+		
+		if (g[cell] != rhs[cell])
+		{
+			setKey(cell);
+			push(cell);
+		}
+	}
+	
+	/**
+	 * The cost of moving from one cell to its neighbour in direction d.
+	 */
+	private double cost(int from, int to, int d)
+	{
+		int x = x0 + to % w;
+		int y = y0 + to / w;
+		
+		if (map.isBlocked(x, y))
+			return INF;
+		
+		double cost = map.getTerrainCostMap().get(x, y) + MIN_STEP;
+		return (d & 1) == 1 ? cost * DIAGONAL_FACTOR : cost;
+	}
+	
+	/**
+	 * Estimates the cost of getting from one cell to another, as the least
+	 * it could cost over free terrain.
+	 */
+	private double project(int from, int to)
+	{
+		int dx = Math.abs(from % w - to % w);
+		int dy = Math.abs(from / w - to / w);
+		int diagonal = Math.min(dx, dy);
+		
+		return (dx + dy - 2 * diagonal + diagonal * DIAGONAL_FACTOR) * MIN_STEP / 2;
+	}
+	
+	private int index(Position pos)
+	{
+		return (pos.x - x0) + (pos.y - y0) * w;
+	}
+	
+	private void setKey(int cell)
+	{
+		double min = Math.min(g[cell], rhs[cell]);
+		k1[cell] = min + project(start, cell) + km;
+		k2[cell] = min;
+	}
+	
+	private static boolean less(double a1, double a2, double b1, double b2)
+	{
+		return a1 < b1 || (a1 == b1 && a2 < b2);
+	}
+	
+	private boolean less(int a, int b)
+	{
+		return less(k1[a], k2[a], k1[b], k2[b]);
+	}
+	
+	private void push(int cell)
+	{
+		heap[heapSize] = cell;
+		heapIndex[cell] = heapSize;
+		siftUp(heapSize++);
+	}
+	
+	private void remove(int cell)
+	{
+		int i = heapIndex[cell];
+		heapIndex[cell] = -1;
+		heapSize--;
+		
+		if (i == heapSize)
+			return;
+		
+		int moved = heap[heapSize];
+		heap[i] = moved;
+		heapIndex[moved] = i;
+		siftUp(i);
+		siftDown(heapIndex[moved]);
+	}
+	
+	private void siftUp(int i)
+	{
+		int cell = heap[i];
+		
+		while (i > 0)
+		{
+			int p = (i - 1) >> 1;
+			
+			if (!less(cell, heap[p]))
+				break;
+			
+			heap[i] = heap[p];
+			heapIndex[heap[i]] = i;
+			i = p;
+		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
+	}
+	
+	private void siftDown(int i)
+	{
+		int cell = heap[i];
+		int half = heapSize >> 1;
+		
+		while (i < half)
+		{
+			int c = (i << 1) + 1;
+			
+			if (c + 1 < heapSize && less(heap[c + 1], heap[c]))
+				c++;
+			
+			if (!less(heap[c], cell))
+				break;
+			
+			heap[i] = heap[c];
+			heapIndex[heap[i]] = i;
+			i = c;
+		}
+		
+		heap[i] = cell;
+		heapIndex[cell] = i;
+	}
+}
@@ -9,5 +9,9 @@ public class EuclideanDistance implements Heuristic
 	{
 		return start.getDistance(end);
 	}
-
+	
+	public double project(CostMap course, int x0, int y0, int x1, int y1)
+	{
+		return Math.hypot(x0 - x1, y0 - y1);
+	}
 }
@@ -0,0 +1,192 @@
+package com.robbix.mp5.ai;
+
+import java.util.Arrays;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Direction;
+import com.robbix.utils.Position;
+
+/**
+ * Flow field leading to one goal over a CostMap.
+ *
+ * The integration field holds the cost of the cheapest path from each cell
+ * to the goal, found by a single Dijkstra search outwards from the goal.
+ * The direction field then points each cell at the neighbour its cheapest
+ * path goes through. Any number of units headed for the same goal can
+ * follow one FlowField from wherever they are, instead of each running its
+ * own search.
+ *
+ * Step costs are the same as AStar's - the cost of the cell being entered,
+ * times 1.414 for diagonal steps - so following the field from a cell gives
+ * the same cost path AStar would find with an admissible heuristic.
+ *
+ * A FlowField is a snapshot of the CostMap at the time it was made. Use
+ * isCurrent() to tell if the CostMap has changed since.
+ */
+public class FlowField
+{
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final Direction[] DIRS = {
+		Direction.E,  Direction.NE, Direction.N, Direction.NW,
+		Direction.W,  Direction.SW, Direction.S, Direction.SE
+	};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	
+	/**
+	 * Direction field value for cells with no way to the goal, and for the
+	 * goal itself.
+	 */
+	private static final byte NONE = -1;
+	
+	private CostMap course;
+	private int version;
+	private Position goal;
+	private int w, h;
+	
+	private double[] costs;
+	private byte[] dirs;
+	
+	/**
+	 * Generates the integration and direction fields leading to goal over
+	 * the given CostMap.
+	 */
+	public FlowField(CostMap course, Position goal)
+	{
+		if (!course.getBounds().contains(goal))
+			throw new IndexOutOfBoundsException(goal.toString());
+		
+		this.course = course;
+		this.version = course.getVersion();
+		this.goal = goal;
+		this.w = course.w;
+		this.h = course.h;
+		
+		costs = new double[w * h];
+		dirs = new byte[w * h];
+		Arrays.fill(costs, Double.POSITIVE_INFINITY);
+		Arrays.fill(dirs, NONE);
+		
+		if (!course.isInfinite(goal))
+			integrate();
+	}
+	
+	public Position getGoal()
+	{
+		return goal;
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	/**
+	 * Returns true if this FlowField was made from the given CostMap, and
+	 * the CostMap hasn't changed since.
+	 */
+	public boolean isCurrent(CostMap course)
+	{
+		return this.course == course && version == course.getVersion();
+	}
+	
+	/**
+	 * Returns true if the goal can be reached from pos.
+	 */
+	public boolean isReachable(Position pos)
+	{
+		return !Double.isInfinite(getCost(pos));
+	}
+	
+	/**
+	 * Gets the cost of the cheapest path from pos to the goal, or infinity
+	 * if there is none.
+	 */
+	public double getCost(Position pos)
+	{
+		if (pos.x < 0 || pos.y < 0 || pos.x >= w || pos.y >= h)
+			return Double.POSITIVE_INFINITY;
+		
+		return costs[pos.x + pos.y * w];
+	}
+	
+	/**
+	 * Gets the Direction to step in from pos to get closer to the goal, or
+	 * null if pos is the goal or the goal can't be reached from pos.
+	 */
+	public Direction getDirection(Position pos)
+	{
+		if (pos.x < 0 || pos.y < 0 || pos.x >= w || pos.y >= h)
+			return null;
+		
+		byte d = dirs[pos.x + pos.y * w];
+		return d == NONE ? null : DIRS[d];
+	}
+	
+	/**
+	 * Gets the Position to step to from pos to get closer to the goal, or
+	 * null if pos is the goal or the goal can't be reached from pos.
+	 */
+	public Position getNext(Position pos)
+	{
+		Direction dir = getDirection(pos);
+		return dir == null ? null : dir.apply(pos);
+	}
+	
+	/**
+	 * Runs Dijkstra's algorithm outwards from the goal. Moving from a cell
+	 * to its neighbour costs the neighbour's cost, so a cell reached from
+	 * the current one costs current + cost(current) * factor, and points
+	 * back at the current cell.
+	 */
+	private void integrate()
+	{
+		CellHeap open = new CellHeap(costs);
+		int goalIndex = goal.x + goal.y * w;
+		costs[goalIndex] = 0;
+		open.push(goalIndex);
+		
+		while (!open.isEmpty())
+		{
+			int current = open.pop();
+			int cx = current % w;
+			int cy = current / w;
+			double stepCost = course.getAt(current);
+			double currentCost = costs[current];
+			
+			for (int d = 0; d < 8; ++d)
+			{
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				
+				if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+					continue;
+				
+				int neighbor = nx + ny * w;
+				
+				if (Double.isInfinite(course.getAt(neighbor)))
+					continue;
+				
+				double moveFactor = (d & 1) == 1 ? DIAGONAL_FACTOR : 1;
+				double neighborCost = currentCost + stepCost * moveFactor;
+				
+				if (neighborCost >= costs[neighbor])
+					continue;
+				
+				boolean seen = !Double.isInfinite(costs[neighbor]);
+				costs[neighbor] = neighborCost;
+				dirs[neighbor] = (byte) ((d + 4) & 7);
+				
+				if (seen)
+					open.update(neighbor);
+				else
+					open.push(neighbor);
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.robbix.mp5.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Keeps the FlowFields for the most recently used goals, so that repeated
+ * orders to the same goal don't generate the field again. A cached field is
+ * thrown out and generated again once its CostMap has changed.
+ *
+ * All methods are synchronized, so a FlowFieldCache can be shared between
+ * threads.
+ */
+public class FlowFieldCache
+{
+	private Map<Position, FlowField> fields;
+	private int hits;
+	private int misses;
+	
+	/**
+	 * Creates a FlowFieldCache that holds up to capacity fields, dropping
+	 * the least recently used one when it's full.
+	 */
+	public FlowFieldCache(final int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		
+		fields = new LinkedHashMap<Position, FlowField>(capacity * 2, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			protected boolean removeEldestEntry(Map.Entry<Position, FlowField> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Gets a FlowField leading to goal over course, generating it if there
+	 * isn't a current one cached.
+	 */
+	public synchronized FlowField get(CostMap course, Position goal)
+	{
+		FlowField field = fields.get(goal);
+		
+		if (field != null && field.isCurrent(course))
+		{
+			hits++;
+			return field;
+		}
+		
+		misses++;
+		field = new FlowField(course, goal);
+		fields.put(goal, field);
+		return field;
+	}
+	
+	public synchronized void clear()
+	{
+		fields.clear();
+	}
+	
+	public synchronized int getHitCount()
+	{
+		return hits;
+	}
+	
+	public synchronized int getMissCount()
+	{
+		return misses;
+	}
+}
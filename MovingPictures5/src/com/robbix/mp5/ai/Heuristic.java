@@ -10,4 +10,10 @@ public interface Heuristic
 	 * course. Return value must be non-negative and finite.
 	 */
 	public double project(CostMap course, Position start, Position end);
+	
+	/**
+	 * Same as project(CostMap, Position, Position), taking coordinates
+	 * so searches don't need to make a Position for every node.
+	 */
+	public double project(CostMap course, int x0, int y0, int x1, int y1);
 }
@@ -0,0 +1,852 @@
+package com.robbix.mp5.ai;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.robbix.mp5.map.TerrainListener;
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+import com.robbix.utils.PositionCache;
+import com.robbix.utils.Region;
+
+/**
+ * Hierarchical path-finding A* (HPA*) over a CostMap.
+ *
+ * The CostMap is split into square clusters. Wherever a run of passable
+ * cells meets a run on the other side of a cluster border, one or two
+ * entrances are placed, and the cheapest paths between all the entrances
+ * of each cluster are found in advance. A search then runs over this
+ * small graph of entrances instead of over the whole grid, and the cells
+ * of each leg are only filled in as the returned path is read.
+ *
+ * Terrain is often free to cross, which would leave every path between two
+ * entrances equally cheap, however roundabout. So, as in DStarLite, every
+ * step costs at least MIN_STEP, which makes the cheapest paths the
+ * shortest ones over free terrain. The abstract search is guided by the
+ * octile distance at MIN_STEP a step, which is never more than the cost
+ * of the path it estimates.
+ *
+ * Paths are usually within a few percent of optimal. Searches between
+ * positions in the same or neighbouring clusters aren't worth the extra
+ * work, and go to a plain AStar instead, as do searches over any CostMap
+ * other than the one this was built for. Where a SearchSelector picks it,
+ * those go to a JumpPointSearch instead.
+ *
+ * As a TerrainListener, it marks the cluster around a changed position as
+ * out of date, and that cluster and any neighbours whose shared entrances
+ * changed are rebuilt before the next search.
+ */
+public class HierarchicalPathfinder implements Pathfinder, TerrainListener
+{
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	private static final double MIN_STEP = 0.01;
+	
+	/**
+	 * Runs of open border at least this long get an entrance at each end
+	 * instead of one in the middle.
+	 */
+	private static final int LONG_ENTRANCE = 6;
+	
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+	
+	private CostMap course;
+	private PositionCache positions;
+	private int clusterSize;
+	private int w, h;
+	private int cw, ch;
+	
+	private Cluster[] clusters;
+	private Node[] nodeAt;
+	
+	/**
+	 * Cells on the west/north side of each entrance across the east and
+	 * south border of each cluster. The cell on the other side is one to
+	 * the east or one to the south.
+	 */
+	private int[][] eastEntrances;
+	private int[][] southEntrances;
+	
+	private boolean dirty;
+	private int search;
+	
+	private ThreadLocal<AStar> aStars = new ThreadLocal<AStar>()
+	{
+		protected AStar initialValue()
+		{
+			return new AStar();
+		}
+	};
+	
+	private ThreadLocal<JumpPointSearch> jumps = new ThreadLocal<JumpPointSearch>()
+	{
+		protected JumpPointSearch initialValue()
+		{
+			return new JumpPointSearch();
+		}
+	};
+	
+	private SearchSelector selector = new SearchSelector();
+	
+	public HierarchicalPathfinder(CostMap course)
+	{
+		this(course, DEFAULT_CLUSTER_SIZE);
+	}
+	
+	public HierarchicalPathfinder(CostMap course, int clusterSize)
+	{
+		if (clusterSize < 2)
+			throw new IllegalArgumentException("Cluster size must be at least 2");
+		
+		this.course = course;
+		this.clusterSize = clusterSize;
+		this.w = course.w;
+		this.h = course.h;
+		this.positions = PositionCache.getInstance(w, h);
+		this.cw = (w + clusterSize - 1) / clusterSize;
+		this.ch = (h + clusterSize - 1) / clusterSize;
+		
+		clusters = new Cluster[cw * ch];
+		nodeAt = new Node[w * h];
+		eastEntrances = new int[cw * ch][];
+		southEntrances = new int[cw * ch][];
+		
+		for (int cy = 0; cy < ch; ++cy)
+		for (int cx = 0; cx < cw; ++cx)
+		{
+			clusters[cx + cy * cw] = new Cluster(
+				cx * clusterSize,
+				cy * clusterSize,
+				Math.min(clusterSize, w - cx * clusterSize),
+				Math.min(clusterSize, h - cy * clusterSize)
+			);
+		}
+		
+		for (int i = 0; i < clusters.length; ++i)
+		{
+			eastEntrances[i] = findEastEntrances(i);
+			southEntrances[i] = findSouthEntrances(i);
+		}
+		
+		for (int i = 0; i < clusters.length; ++i)
+			buildCluster(i);
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	public int getClusterSize()
+	{
+		return clusterSize;
+	}
+	
+	/**
+	 * Gets the number of entrances in the abstract graph.
+	 */
+	public synchronized int getEntranceCount()
+	{
+		update();
+		
+		int count = 0;
+		
+		for (Cluster cluster : clusters)
+			count += cluster.nodes.length;
+		
+		return count;
+	}
+	
+	public synchronized void costChanged(Position pos)
+	{
+		if (pos.x < 0 || pos.y < 0 || pos.x >= w || pos.y >= h)
+			return;
+		
+		clusters[getClusterIndex(pos.x, pos.y)].dirty = true;
+		dirty = true;
+	}
+	
+	/**
+	 * Paths are found over terrain only, like AStar's, so structures are
+	 * left for units to steer around.
+	 */
+	public void structureChanged(Region region)
+	{
+	}
+	
+	public List<Position> getPath(CostMap course, Position start, Position end)
+	{
+		return getPath(course, start, end, 0);
+	}
+	
+	/**
+	 * Gets a path from start to end through the given CostMap.
+	 *
+	 * If distance is 1, the path stops one short of end.
+	 *
+	 * Returns null if a path cannot be found.
+	 */
+	public List<Position> getPath(
+		CostMap course,
+		Position start,
+		Position end,
+		double distance)
+	{
+		if (course != this.course || isNear(start, end))
+		{
+			Pathfinder near = selector.useJumpPoints(course, start, end) ? jumps.get() : aStars.get();
+			return near.getPath(course, start, end, distance);
+		}
+		
+		if (course.isInfinite(start) || course.isInfinite(end))
+			return null;
+		
+		synchronized (this)
+		{
+			update();
+			return search(start, end, distance == 1);
+		}
+	}
+	
+	/**
+	 * Returns true if start and end are in the same or neighbouring
+	 * clusters.
+	 */
+	private boolean isNear(Position start, Position end)
+	{
+		return Math.abs(start.x / clusterSize - end.x / clusterSize) <= 1
+			&& Math.abs(start.y / clusterSize - end.y / clusterSize) <= 1;
+	}
+	
+	private int getClusterIndex(int x, int y)
+	{
+		return (x / clusterSize) + (y / clusterSize) * cw;
+	}
+	
+	/*------------------------------------------------------------------------------------------[*]
+	 * Abstract search.
+	 */
+	
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>()
+	{
+		public int compare(Entry a, Entry b)
+		{
+			return Double.compare(a.f, b.f);
+		}
+	};
+	
+	private List<Position> search(Position start, Position end, boolean stopShort)
+	{
+		if (++search == Integer.MAX_VALUE)
+		{
+			for (Cluster cluster : clusters)
+				for (Node node : cluster.nodes)
+					node.stamp = 0;
+			
+			search = 1;
+		}
+		
+		Cluster startCluster = clusters[getClusterIndex(start.x, start.y)];
+		Cluster endCluster = clusters[getClusterIndex(end.x, end.y)];
+		Tree startTree = new Tree(startCluster, start.x, start.y, false);
+		Tree endTree = new Tree(endCluster, end.x, end.y, true);
+		
+		PriorityQueue<Entry> open = new PriorityQueue<Entry>(64, ENTRY_ORDER);
+		Node endNode = null;
+		double endG = Double.POSITIVE_INFINITY;
+		
+		for (Node node : startCluster.nodes)
+		{
+			double g = startTree.getCost(node.x, node.y);
+			
+			if (!Double.isInfinite(g))
+				relax(open, node, null, g, end);
+		}
+		
+		while (!open.isEmpty())
+		{
+			Entry entry = open.poll();
+			Node node = entry.node;
+			
+			if (node == null)
+				break;
+			
+			if (node.closed || entry.g > node.g)
+				continue;
+			
+			node.closed = true;
+			
+			for (int i = 0; i < node.to.length; ++i)
+				relax(open, node.to[i], node, node.g + node.cost[i], end);
+			
+			for (int i = 0; i < node.crossings.length; ++i)
+			{
+				int cell = node.crossings[i];
+				relax(open, nodeAt[cell], node, node.g + course.getAt(cell) + MIN_STEP, end);
+			}
+			
+			if (node.cluster == endCluster)
+			{
+				double g = node.g + endTree.getCost(node.x, node.y);
+				
+				if (g < endG)
+				{
+					endG = g;
+					endNode = node;
+					open.add(new Entry(null, g, g));
+				}
+			}
+		}
+		
+		if (endNode == null)
+			return null;
+		
+		/*
+		 * Lay out the legs of the path: from start to the first entrance,
+		 * between entrances, and from the last entrance to end.
+		 */
+		List<Node> nodes = new ArrayList<Node>();
+		
+		for (Node node = endNode; node != null; node = node.parent)
+			nodes.add(node);
+		
+		int legCount = nodes.size() + 1;
+		Leg[] legs = new Leg[legCount];
+		Node first = nodes.get(nodes.size() - 1);
+		legs[0] = new Leg(startTree, first.x, first.y);
+		
+		for (int i = nodes.size() - 1, l = 1; i > 0; --i, ++l)
+		{
+			Node from = nodes.get(i);
+			Node to = nodes.get(i - 1);
+			
+			legs[l] = from.cluster == to.cluster
+				? new Leg(from.tree, to.x, to.y)
+				: new Leg(to.x, to.y);
+		}
+		
+		legs[legCount - 1] = new Leg(endTree, endNode.x, endNode.y);
+		
+		return new HierarchicalPath(positions, start, legs, stopShort);
+	}
+	
+	private void relax(PriorityQueue<Entry> open, Node node, Node parent, double g, Position end)
+	{
+		if (node.stamp != search)
+		{
+			node.stamp = search;
+			node.g = Double.POSITIVE_INFINITY;
+			node.parent = null;
+			node.closed = false;
+		}
+		
+		if (node.closed || g >= node.g)
+			return;
+		
+		node.g = g;
+		node.parent = parent;
+		open.add(new Entry(node, g, g + estimate(node.x, node.y, end)));
+	}
+	
+	private static double estimate(int x, int y, Position end)
+	{
+		int dx = Math.abs(x - end.x);
+		int dy = Math.abs(y - end.y);
+		int diagonal = Math.min(dx, dy);
+		
+		return (dx + dy - 2 * diagonal + diagonal * DIAGONAL_FACTOR) * MIN_STEP;
+	}
+	
+	private static class Entry
+	{
+		Node node;
+		double g, f;
+		
+		Entry(Node node, double g, double f)
+		{
+			this.node = node;
+			this.g = g;
+			this.f = f;
+		}
+	}
+	
+	/*------------------------------------------------------------------------------------------[*]
+	 * Building the abstract graph.
+	 */
+	
+	/**
+	 * Rebuilds the out of date clusters, and their neighbours where the
+	 * entrances between them have changed.
+	 */
+	private void update()
+	{
+		if (!dirty)
+			return;
+		
+		dirty = false;
+		boolean[] rebuild = new boolean[clusters.length];
+		
+		for (int i = 0; i < clusters.length; ++i)
+		{
+			if (!clusters[i].dirty)
+				continue;
+			
+			clusters[i].dirty = false;
+			rebuild[i] = true;
+			
+			int cx = i % cw;
+			int cy = i / cw;
+			
+			if (cx + 1 < cw) updateEast(i, i + 1, rebuild);
+			if (cx > 0)      updateEast(i - 1, i, rebuild);
+			if (cy + 1 < ch) updateSouth(i, i + cw, rebuild);
+			if (cy > 0)      updateSouth(i - cw, i, rebuild);
+		}
+		
+		for (int i = 0; i < clusters.length; ++i)
+			if (rebuild[i])
+				buildCluster(i);
+	}
+	
+	private void updateEast(int west, int east, boolean[] rebuild)
+	{
+		int[] entrances = findEastEntrances(west);
+		
+		if (!Arrays.equals(entrances, eastEntrances[west]))
+		{
+			eastEntrances[west] = entrances;
+			rebuild[west] = rebuild[east] = true;
+		}
+	}
+	
+	private void updateSouth(int north, int south, boolean[] rebuild)
+	{
+		int[] entrances = findSouthEntrances(north);
+		
+		if (!Arrays.equals(entrances, southEntrances[north]))
+		{
+			southEntrances[north] = entrances;
+			rebuild[north] = rebuild[south] = true;
+		}
+	}
+	
+	private int[] findEastEntrances(int index)
+	{
+		Cluster cluster = clusters[index];
+		int x = cluster.x + cluster.w - 1;
+		
+		if (x + 1 >= w)
+			return new int[0];
+		
+		int[] cells = new int[cluster.h];
+		
+		for (int i = 0; i < cluster.h; ++i)
+			cells[i] = x + (cluster.y + i) * w;
+		
+		return findEntrances(cells, 1);
+	}
+	
+	private int[] findSouthEntrances(int index)
+	{
+		Cluster cluster = clusters[index];
+		int y = cluster.y + cluster.h - 1;
+		
+		if (y + 1 >= h)
+			return new int[0];
+		
+		int[] cells = new int[cluster.w];
+		
+		for (int i = 0; i < cluster.w; ++i)
+			cells[i] = (cluster.x + i) + y * w;
+		
+		return findEntrances(cells, w);
+	}
+	
+	/**
+	 * Places entrances along a border, given the cells on the near side of
+	 * it and the offset to the cells on the far side. Each run of cells
+	 * that are passable on both sides gets an entrance in the middle, or
+	 * one at each end if it's long.
+	 */
+	private int[] findEntrances(int[] cells, int across)
+	{
+		int[] entrances = new int[cells.length];
+		int count = 0;
+		int runStart = -1;
+		
+		for (int i = 0; i <= cells.length; ++i)
+		{
+			boolean open = i < cells.length
+				&& !isInfinite(cells[i])
+				&& !isInfinite(cells[i] + across);
+			
+			if (open && runStart == -1)
+			{
+				runStart = i;
+			}
+			else if (!open && runStart != -1)
+			{
+				int runEnd = i - 1;
+				
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE)
+				{
+					entrances[count++] = cells[runStart];
+					entrances[count++] = cells[runEnd];
+				}
+				else
+				{
+					entrances[count++] = cells[(runStart + runEnd) / 2];
+				}
+				
+				runStart = -1;
+			}
+		}
+		
+		return Arrays.copyOf(entrances, count);
+	}
+	
+	private boolean isInfinite(int cell)
+	{
+		return Double.isInfinite(course.getAt(cell));
+	}
+	
+	/**
+	 * Makes the Nodes for the entrances on all sides of a cluster, and
+	 * finds the cheapest paths between them within the cluster.
+	 */
+	private void buildCluster(int index)
+	{
+		Cluster cluster = clusters[index];
+		int cx = index % cw;
+		int cy = index / cw;
+		
+		for (Node node : cluster.nodes)
+			nodeAt[node.x + node.y * w] = null;
+		
+		Map<Integer, List<Integer>> crossings = new LinkedHashMap<Integer, List<Integer>>();
+		
+		addCrossings(crossings, eastEntrances[index], 1);
+		addCrossings(crossings, southEntrances[index], w);
+		
+		if (cx > 0)
+			addCrossings(crossings, shift(eastEntrances[index - 1], 1), -1);
+		
+		if (cy > 0)
+			addCrossings(crossings, shift(southEntrances[index - cw], w), -w);
+		
+		Node[] nodes = new Node[crossings.size()];
+		int n = 0;
+		
+		for (Map.Entry<Integer, List<Integer>> entry : crossings.entrySet())
+		{
+			int cell = entry.getKey();
+			Node node = new Node(cluster, cell % w, cell / w);
+			node.crossings = new int[entry.getValue().size()];
+			
+			for (int i = 0; i < node.crossings.length; ++i)
+				node.crossings[i] = entry.getValue().get(i);
+			
+			nodes[n++] = node;
+			nodeAt[cell] = node;
+		}
+		
+		for (Node node : nodes)
+		{
+			node.tree = new Tree(cluster, node.x, node.y, false);
+			List<Node> to = new ArrayList<Node>(nodes.length);
+			
+			for (Node other : nodes)
+				if (other != node && !Double.isInfinite(node.tree.getCost(other.x, other.y)))
+					to.add(other);
+			
+			node.to = to.toArray(new Node[to.size()]);
+			node.cost = new double[node.to.length];
+			
+			for (int i = 0; i < node.to.length; ++i)
+				node.cost[i] = node.tree.getCost(node.to[i].x, node.to[i].y);
+			
+			node.tree.costs = null;
+		}
+		
+		cluster.nodes = nodes;
+	}
+	
+	private static void addCrossings(Map<Integer, List<Integer>> crossings, int[] cells, int across)
+	{
+		for (int cell : cells)
+		{
+			List<Integer> list = crossings.get(cell);
+			
+			if (list == null)
+			{
+				list = new ArrayList<Integer>(2);
+				crossings.put(cell, list);
+			}
+			
+			list.add(cell + across);
+		}
+	}
+	
+	private static int[] shift(int[] cells, int offset)
+	{
+		int[] shifted = new int[cells.length];
+		
+		for (int i = 0; i < cells.length; ++i)
+			shifted[i] = cells[i] + offset;
+		
+		return shifted;
+	}
+	
+	private static class Cluster
+	{
+		final int x, y, w, h;
+		Node[] nodes = new Node[0];
+		boolean dirty;
+		
+		Cluster(int x, int y, int w, int h)
+		{
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+	}
+	
+	/**
+	 * An entrance cell in the abstract graph. Edges to other entrances in
+	 * the same cluster are in to and cost, and crossings are the cells
+	 * across cluster borders it connects to.
+	 */
+	private static class Node
+	{
+		final Cluster cluster;
+		final int x, y;
+		Node[] to;
+		double[] cost;
+		int[] crossings;
+		Tree tree;
+		
+		int stamp;
+		double g;
+		Node parent;
+		boolean closed;
+		
+		Node(Cluster cluster, int x, int y)
+		{
+			this.cluster = cluster;
+			this.x = x;
+			this.y = y;
+		}
+	}
+	
+	/*------------------------------------------------------------------------------------------[*]
+	 * Cheapest paths within a cluster.
+	 */
+	
+	/**
+	 * Shortest path tree rooted at one cell of a cluster, found by Dijkstra's
+	 * algorithm without leaving the cluster. An outward tree holds the paths
+	 * from the root to every cell, an inward tree the paths from every cell
+	 * to the root. Either way, dirs points each cell at its neighbour that
+	 * is one step closer to the root, and steps counts the steps to it.
+	 *
+	 * Trees aren't changed once built, so paths can keep using them after
+	 * the cluster they were made for has been rebuilt.
+	 */
+	private class Tree
+	{
+		final int x0, y0, tw, th;
+		final boolean inward;
+		final byte[] dirs;
+		final short[] steps;
+		double[] costs;
+		
+		Tree(Cluster cluster, int rootX, int rootY, boolean inward)
+		{
+			this.x0 = cluster.x;
+			this.y0 = cluster.y;
+			this.tw = cluster.w;
+			this.th = cluster.h;
+			this.inward = inward;
+			
+			int area = tw * th;
+			dirs = new byte[area];
+			steps = new short[area];
+			costs = new double[area];
+			Arrays.fill(dirs, (byte) -1);
+			Arrays.fill(costs, Double.POSITIVE_INFINITY);
+			
+			CellHeap open = new CellHeap(costs);
+			int root = (rootX - x0) + (rootY - y0) * tw;
+			costs[root] = 0;
+			open.push(root);
+			
+			while (!open.isEmpty())
+			{
+				int current = open.pop();
+				int cx = current % tw;
+				int cy = current / tw;
+				double currentCost = course.getAt(course.index(x0 + cx, y0 + cy));
+				
+				for (int d = 0; d < 8; ++d)
+				{
+					int nx = cx + DX[d];
+					int ny = cy + DY[d];
+					
+					if (nx < 0 || ny < 0 || nx >= tw || ny >= th)
+						continue;
+					
+					double neighborCost = course.getAt(course.index(x0 + nx, y0 + ny));
+					
+					if (Double.isInfinite(neighborCost))
+						continue;
+					
+					int neighbor = nx + ny * tw;
+					double moveFactor = (d & 1) == 1 ? DIAGONAL_FACTOR : 1;
+					double cost = costs[current]
+						+ ((inward ? currentCost : neighborCost) + MIN_STEP) * moveFactor;
+					
+					if (cost >= costs[neighbor])
+						continue;
+					
+					boolean seen = !Double.isInfinite(costs[neighbor]);
+					costs[neighbor] = cost;
+					dirs[neighbor] = (byte) ((d + 4) & 7);
+					steps[neighbor] = (short) (steps[current] + 1);
+					
+					if (seen)
+						open.update(neighbor);
+					else
+						open.push(neighbor);
+				}
+			}
+		}
+		
+		double getCost(int x, int y)
+		{
+			return costs[(x - x0) + (y - y0) * tw];
+		}
+	}
+	
+	/**
+	 * One leg of a path - either the cells between the root of a Tree and
+	 * another cell, or a single step across a cluster border.
+	 */
+	private static class Leg
+	{
+		final Tree tree;
+		final int x, y;
+		
+		Leg(Tree tree, int x, int y)
+		{
+			this.tree = tree;
+			this.x = x;
+			this.y = y;
+		}
+		
+		Leg(int x, int y)
+		{
+			this(null, x, y);
+		}
+		
+		int getLength()
+		{
+			return tree == null ? 1 : tree.steps[(x - tree.x0) + (y - tree.y0) * tree.tw];
+		}
+		
+		/**
+		 * Fills in the cells of this leg, not counting the one it starts on.
+		 */
+		void fill(PositionCache positions, Position[] path, int offset)
+		{
+			if (tree == null)
+			{
+				path[offset] = positions.get(x, y);
+				return;
+			}
+			
+			int length = getLength();
+			int cx = x - tree.x0;
+			int cy = y - tree.y0;
+			
+			/*
+			 * An outward leg goes from the root to (x, y), so following the
+			 * tree back from (x, y) gives its cells last to first. An inward
+			 * leg goes from (x, y) to the root, in the same order as the
+			 * tree is followed.
+			 */
+			for (int i = 0; i < length; ++i)
+			{
+				if (!tree.inward)
+					path[offset + length - 1 - i] = positions.get(tree.x0 + cx, tree.y0 + cy);
+				
+				int d = tree.dirs[cx + cy * tree.tw];
+				cx += DX[d];
+				cy += DY[d];
+				
+				if (tree.inward)
+					path[offset + i] = positions.get(tree.x0 + cx, tree.y0 + cy);
+			}
+		}
+	}
+	
+	/**
+	 * Path made of Legs that are only filled in as they're read.
+	 */
+	private static class HierarchicalPath extends AbstractList<Position>
+	{
+		private PositionCache positions;
+		private Position[] cells;
+		private Leg[] legs;
+		private int size;
+		private int filled;
+		private int nextLeg;
+		
+		HierarchicalPath(PositionCache positions, Position start, Leg[] legs, boolean stopShort)
+		{
+			this.positions = positions;
+			
+			int length = 1;
+			
+			for (Leg leg : legs)
+				length += leg.getLength();
+			
+			this.cells = new Position[length];
+			this.legs = legs;
+			this.size = stopShort ? length - 1 : length;
+			cells[0] = start;
+			filled = 1;
+		}
+		
+		public Position get(int index)
+		{
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			
+			while (filled <= index)
+			{
+				Leg leg = legs[nextLeg++];
+				leg.fill(positions, cells, filled);
+				filled += leg.getLength();
+			}
+			
+			return cells[index];
+		}
+		
+		public int size()
+		{
+			return size;
+		}
+	}
+}
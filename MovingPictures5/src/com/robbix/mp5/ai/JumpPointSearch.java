@@ -0,0 +1,449 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Jump point search (JPS) over a CostMap of uniform cost.
+ *
+ * Over open ground where every position costs the same, there are a great
+ * many equally short paths between two positions, and A* expands nearly
+ * all of them. JPS only expands positions where a shortest path might have
+ * to turn, beside the corners of walls, and jumps straight or diagonally
+ * between them. The moves are the same eight as AStar's, and diagonal
+ * moves past the corners of walls are allowed as they are there.
+ *
+ * JPS only works where every passable position costs the same, so it
+ * takes the cost of the start position and treats positions of any other
+ * cost as walls. If that leaves no path, and there are positions of other
+ * costs on the map, the search is handed over to a plain AStar over the
+ * real costs. Paths found over one cost are the shortest there are, which
+ * AStar doesn't promise where that cost is 0.
+ *
+ * Expansions count jump points, and expanding one can scan a long way
+ * across the map, so the scans look up which positions are passable in
+ * an array with a border of walls around the map, rather than checking
+ * bounds at every step. All the search arrays are indexed the same way.
+ * As with AStar, they're kept between searches, so a JumpPointSearch
+ * should be reused. It is not thread-safe - use one per thread.
+ */
+public class JumpPointSearch implements Pathfinder, ResumableSearch
+{
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	
+	private int w, h;
+	private int pw;
+	private double[] g;
+	private double[] f;
+	private int[] parent;
+	private int[] openStamp;
+	private int[] closedStamp;
+	private CellHeap open;
+	private int search;
+	private int expansions;
+	
+	/*
+	 * Which positions have the cost being searched over. Only worked out
+	 * again when the course, its version or that cost changes.
+	 */
+	private boolean[] passable;
+	private CostMap passableCourse;
+	private int passableVersion;
+	private double passableCost;
+	private boolean weighted;
+	
+	/*
+	 * The search in progress. Indices are into the bordered arrays.
+	 */
+	private CostMap course;
+	private int ex, ey;
+	private int startIndex, endIndex;
+	private boolean done, found;
+	
+	private AStar fallback;
+	private boolean fallingBack;
+	
+	public List<Position> getPath(CostMap course, Position start, Position end)
+	{
+		return getPath(course, start, end, 0);
+	}
+	
+	/**
+	 * Gets a shortest path from start to end through the given CostMap, or
+	 * an optimal one from AStar if the costs in the way aren't uniform.
+	 *
+	 * If distance is 1, the path stops one short of end.
+	 *
+	 * Returns null if a path cannot be found.
+	 */
+	public List<Position> getPath(
+		CostMap course,
+		Position start,
+		Position end,
+		double distance)
+	{
+		start(course, start, end);
+		resume(Integer.MAX_VALUE);
+		return getPath(distance);
+	}
+	
+	public void start(CostMap course, Position start, Position end)
+	{
+		this.course = course;
+		this.ex = end.x;
+		this.ey = end.y;
+		
+		done = false;
+		found = false;
+		fallingBack = false;
+		
+		if (course.isInfinite(start) || course.isInfinite(end))
+		{
+			done = true;
+			expansions = 0;
+			return;
+		}
+		
+		prepare(course, course.get(start.x, start.y));
+		
+		startIndex = index(start.x, start.y);
+		endIndex = index(end.x, end.y);
+		
+		g[startIndex] = 0;
+		f[startIndex] = project(start.x - ex, start.y - ey);
+		parent[startIndex] = -1;
+		openStamp[startIndex] = search;
+		open.push(startIndex);
+	}
+	
+	public boolean resume(int budget)
+	{
+		if (!fallingBack)
+		{
+			if (done)
+				return true;
+			
+			int before = expansions;
+			search(budget);
+			
+			if (!done || found || !weighted)
+				return done;
+			
+			/*
+			 * No path over the one cost, but there could be one through
+			 * other costs.
+			 */
+			if (fallback == null)
+				fallback = new AStar();
+			
+			fallingBack = true;
+			fallback.start(course, getPosition(startIndex), new Position(ex, ey));
+			budget -= expansions - before;
+		}
+		
+		return fallback.resume(budget);
+	}
+	
+	public boolean isDone()
+	{
+		return fallingBack ? fallback.isDone() : done;
+	}
+	
+	/**
+	 * Returns true if the last search was handed over to AStar.
+	 */
+	public boolean isFallingBack()
+	{
+		return fallingBack;
+	}
+	
+	public int getExpansionCount()
+	{
+		return fallingBack ? expansions + fallback.getExpansionCount() : expansions;
+	}
+	
+	public List<Position> getPath(double distance)
+	{
+		if (fallingBack)
+			return fallback.getPath(distance);
+		
+		if (!found)
+			return null;
+		
+		/*
+		 * Parent pointers lead from jump point to jump point, each in a
+		 * straight or diagonal line from the last, so the positions in
+		 * between are filled in.
+		 */
+		int length = 1;
+		
+		for (int i = endIndex; i != startIndex; i = parent[i])
+		{
+			int p = parent[i];
+			length += Math.max(Math.abs(i % pw - p % pw), Math.abs(i / pw - p / pw));
+		}
+		
+		Position[] steps = new Position[length];
+		int s = length - 1;
+		
+		for (int i = endIndex; i != startIndex; i = parent[i])
+		{
+			int p = parent[i];
+			int step = Integer.signum(p % pw - i % pw) + Integer.signum(p / pw - i / pw) * pw;
+			
+			for (int j = i; j != p; j += step)
+				steps[s--] = getPosition(j);
+		}
+		
+		steps[0] = getPosition(startIndex);
+		
+		List<Position> path = new ArrayList<Position>(Arrays.asList(steps));
+		
+		if (distance == 1)
+			path.remove(path.size() - 1);
+		
+		return path;
+	}
+	
+	private void search(int budget)
+	{
+		while (!open.isEmpty())
+		{
+			if (budget-- <= 0)
+				return;
+			
+			int current = open.pop();
+			openStamp[current] = 0;
+			
+			if (current == endIndex)
+			{
+				found = true;
+				done = true;
+				return;
+			}
+			
+			closedStamp[current] = search;
+			expansions++;
+			
+			int p = parent[current];
+			
+			if (p == -1)
+			{
+				for (int d = 0; d < 8; ++d)
+					jumpFrom(current, DX[d], DY[d]);
+				
+				continue;
+			}
+			
+			/*
+			 * Only carry on the way the path came, and turn where a wall
+			 * beside it has just ended, as any other way would be as short
+			 * from the parent.
+			 */
+			int dx = Integer.signum(current % pw - p % pw);
+			int dy = Integer.signum(current / pw - p / pw);
+			
+			if (dx != 0 && dy != 0)
+			{
+				jumpFrom(current, dx, 0);
+				jumpFrom(current, 0, dy);
+				jumpFrom(current, dx, dy);
+				
+				if (!passable[current - dx])
+					jumpFrom(current, -dx, dy);
+				
+				if (!passable[current - dy * pw])
+					jumpFrom(current, dx, -dy);
+			}
+			else if (dx != 0)
+			{
+				jumpFrom(current, dx, 0);
+				
+				if (!passable[current + pw])
+					jumpFrom(current, dx, 1);
+				
+				if (!passable[current - pw])
+					jumpFrom(current, dx, -1);
+			}
+			else
+			{
+				jumpFrom(current, 0, dy);
+				
+				if (!passable[current + 1])
+					jumpFrom(current, 1, dy);
+				
+				if (!passable[current - 1])
+					jumpFrom(current, -1, dy);
+			}
+		}
+		
+		done = true;
+	}
+	
+	/**
+	 * Jumps from current in direction dx, dy, and opens the jump point
+	 * found, if any.
+	 */
+	private void jumpFrom(int current, int dx, int dy)
+	{
+		int next = jump(current, dx, dy);
+		
+		if (next == -1 || closedStamp[next] == search)
+			return;
+		
+		int nx = next % pw - 1;
+		int ny = next / pw - 1;
+		double nextG = g[current] + project(next % pw - current % pw, next / pw - current / pw);
+		boolean queued = openStamp[next] == search;
+		
+		if (queued && nextG >= g[next])
+			return;
+		
+		g[next] = nextG;
+		f[next] = nextG + project(nx - ex, ny - ey);
+		parent[next] = current;
+		
+		if (queued)
+		{
+			open.update(next);
+		}
+		else
+		{
+			openStamp[next] = search;
+			open.push(next);
+		}
+	}
+	
+	/**
+	 * Steps from cell in direction dx, dy until reaching the end or a
+	 * position where a path might have to turn, and returns it, or -1 if
+	 * a wall or the edge of the map comes first.
+	 */
+	private int jump(int cell, int dx, int dy)
+	{
+		int step = dx + dy * pw;
+		int across = dy * pw;
+		
+		while (true)
+		{
+			cell += step;
+			
+			if (!passable[cell])
+				return -1;
+			
+			if (cell == endIndex)
+				return cell;
+			
+			if (dx != 0 && dy != 0)
+			{
+				if ((passable[cell - dx + across] && !passable[cell - dx])
+						|| (passable[cell + dx - across] && !passable[cell - across]))
+					return cell;
+				
+				/*
+				 * A diagonal stops wherever a straight jump from it would.
+				 */
+				if (jump(cell, dx, 0) != -1 || jump(cell, 0, dy) != -1)
+					return cell;
+			}
+			else if (dx != 0)
+			{
+				if ((passable[cell + dx + pw] && !passable[cell + pw])
+						|| (passable[cell + dx - pw] && !passable[cell - pw]))
+					return cell;
+			}
+			else
+			{
+				if ((passable[cell + 1 + across] && !passable[cell + 1])
+						|| (passable[cell - 1 + across] && !passable[cell - 1]))
+					return cell;
+			}
+		}
+	}
+	
+	private int index(int x, int y)
+	{
+		return (x + 1) + (y + 1) * pw;
+	}
+	
+	private Position getPosition(int cell)
+	{
+		return new Position(cell % pw - 1, cell / pw - 1);
+	}
+	
+	/**
+	 * The length of the shortest path over open ground between two
+	 * positions dx, dy apart.
+	 */
+	private static double project(int dx, int dy)
+	{
+		dx = Math.abs(dx);
+		dy = Math.abs(dy);
+		int diagonal = Math.min(dx, dy);
+		
+		return Math.max(dx, dy) - diagonal + diagonal * DIAGONAL_FACTOR;
+	}
+	
+	/**
+	 * Sizes the search arrays for course, works out which positions cost
+	 * cost if that's changed, and starts a new search number.
+	 */
+	private void prepare(CostMap course, double cost)
+	{
+		if (g == null || this.w != course.w || this.h != course.h)
+		{
+			this.w = course.w;
+			this.h = course.h;
+			this.pw = w + 2;
+			int area = pw * (h + 2);
+			g = new double[area];
+			f = new double[area];
+			parent = new int[area];
+			openStamp = new int[area];
+			closedStamp = new int[area];
+			passable = new boolean[area];
+			open = new CellHeap(f);
+			passableCourse = null;
+			search = 0;
+		}
+		
+		int version = course.getVersion();
+		
+		if (passableCourse != course || passableVersion != version || passableCost != cost)
+		{
+			weighted = false;
+			
+			for (int y = 0; y < h; ++y)
+			for (int x = 0; x < w; ++x)
+			{
+				double c = course.get(x, y);
+				passable[index(x, y)] = c == cost;
+				weighted |= c != cost && !Double.isInfinite(c);
+			}
+			
+			passableCourse = course;
+			passableVersion = version;
+			passableCost = cost;
+		}
+		
+		if (++search == Integer.MAX_VALUE)
+		{
+			Arrays.fill(openStamp, 0);
+			Arrays.fill(closedStamp, 0);
+			search = 1;
+		}
+		
+		open.clear();
+		expansions = 0;
+	}
+}
@@ -0,0 +1,544 @@
+package com.robbix.mp5.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Landmark heuristic (ALT - A*, landmarks and the triangle inequality)
+ * over one CostMap.
+ *
+ * A few landmark positions are picked around the edge of the passable
+ * area, and the cost of the cheapest path from each landmark to every
+ * position and back is worked out in advance. Whatever the walls in the
+ * way, the cost from start to end can't be less than the cost from a
+ * landmark to end less the cost from that landmark to start, nor less than
+ * the cost from start to the landmark less the cost from end to it. The
+ * estimate is the largest of those bounds over all the landmarks, or the
+ * base heuristic's if that's larger, so it's never looser than the base.
+ *
+ * Costs are the same as AStar's, so the bounds never overestimate while
+ * the tables are current. Where the CostMap has costs of 0 the bounds are
+ * 0 too, and the base heuristic does all the work.
+ *
+ * Searches are run over snapshots of the CostMap, and the tables are made
+ * from those same snapshots, as they're handed to setSnapshot(). Each
+ * later snapshot is compared with the one the tables were made from, and
+ * if costs have only gone up, the tables keep serving searches over it.
+ * Paths can only have got dearer, so the bounds still hold, and as no
+ * step has got cheaper, they still never drop by more than a step costs
+ * from one position to the next, which AStar needs to find the cheapest
+ * path. Where any cost has come down, neither holds, and searches get
+ * the base heuristic until there are new tables. So do searches over a
+ * version that isn't one of the last few snapshots, or a CostMap of a
+ * different size.
+ *
+ * New tables are only worked out once the latest snapshot differs from
+ * the one the tables were made from in REBUILD_CHANGES positions, or a
+ * cost in it has come down. They're worked out one set at a time on a
+ * single background thread shared by all LandmarkHeuristics, and are put
+ * into service by update() a fixed number of calls later.
+ */
+public class LandmarkHeuristic implements Heuristic
+{
+	/**
+	 * Neighbour offsets, in the order Direction.getIterator(E, 2) gives.
+	 */
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final double DIAGONAL_FACTOR = 1.414;
+	
+	public static final int DEFAULT_LANDMARKS = 4;
+	
+	/**
+	 * How many calls to update() new tables are put into service after
+	 * they were started, whether or not they were ready sooner.
+	 */
+	public static final int REBUILD_DELAY = 4;
+	
+	/**
+	 * How many positions the latest snapshot has to differ in from the one
+	 * the tables were made from before new tables are worked out.
+	 */
+	public static final int REBUILD_CHANGES = 64;
+	
+	/**
+	 * How many of the latest snapshots the tables serve searches over.
+	 */
+	private static final int SERVED_VERSIONS = 4;
+	
+	private static ExecutorService rebuilds;
+	
+	private CostMap course;
+	private int landmarkCount;
+	private Heuristic base;
+	
+	private volatile Serving serving;
+	private CostMap snapshot;
+	private Future<Tables> rebuild;
+	private int rebuildAge;
+	private int rebuildCount;
+	
+	public LandmarkHeuristic(CostMap course)
+	{
+		this(course, DEFAULT_LANDMARKS, new EuclideanDistance());
+	}
+	
+	public LandmarkHeuristic(CostMap course, int landmarkCount, Heuristic base)
+	{
+		if (landmarkCount < 1)
+			throw new IllegalArgumentException("Landmark count must be positive");
+		
+		if (base == null)
+			throw new NullPointerException();
+		
+		this.course = course;
+		this.landmarkCount = landmarkCount;
+		this.base = base;
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	/**
+	 * Gets the landmarks the current tables were made from, or an empty
+	 * array if there aren't any tables yet.
+	 */
+	public Position[] getLandmarks()
+	{
+		Serving serving = this.serving;
+		
+		if (serving == null)
+			return new Position[0];
+		
+		Tables tables = serving.tables;
+		Position[] landmarks = new Position[tables.landmarks.length];
+		
+		for (int i = 0; i < landmarks.length; ++i)
+		{
+			int cell = tables.landmarks[i];
+			landmarks[i] = new Position(cell % tables.w, cell / tables.w);
+		}
+		
+		return landmarks;
+	}
+	
+	/**
+	 * Gets the number of times the tables have been worked out.
+	 */
+	public synchronized int getRebuildCount()
+	{
+		return rebuildCount;
+	}
+	
+	/**
+	 * Returns true if new tables are being worked out.
+	 */
+	public synchronized boolean isRebuilding()
+	{
+		return rebuild != null;
+	}
+	
+	/**
+	 * Works out the tables now, on the calling thread.
+	 */
+	public synchronized void rebuild()
+	{
+		if (rebuild != null)
+		{
+			rebuild.cancel(false);
+			rebuild = null;
+		}
+		
+		serve(new Tables(course.copy(), landmarkCount));
+	}
+	
+	/**
+	 * Sets the latest snapshot of the CostMap that searches are run over,
+	 * which new tables are made from. It mustn't be changed afterwards.
+	 */
+	public synchronized void setSnapshot(CostMap snapshot)
+	{
+		this.snapshot = snapshot;
+		
+		Serving serving = this.serving;
+		
+		if (serving != null && !serving.isServing(snapshot.getVersion()))
+			this.serving = serving.adding(snapshot);
+	}
+	
+	/**
+	 * Puts the tables being worked out into service on the REBUILD_DELAY'th
+	 * call after they were started, waiting for them only if they've taken
+	 * longer than that. Then starts working out new tables from the latest
+	 * snapshot, if it's changed enough from the one the tables in service
+	 * were made from. So which tables are used from one call to the next
+	 * only depends on how the CostMap has changed, not on how long they
+	 * took.
+	 *
+	 * Meant to be called once a tick, while no searches are running.
+	 */
+	public synchronized void update()
+	{
+		if (rebuild != null)
+		{
+			if (++rebuildAge < REBUILD_DELAY)
+				return;
+			
+			try
+			{
+				serve(rebuild.get());
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (ExecutionException ee)
+			{
+				throw new RuntimeException(ee.getCause());
+			}
+			finally
+			{
+				rebuild = null;
+			}
+		}
+		
+		if (snapshot == null)
+			return;
+		
+		Serving serving = this.serving;
+		
+		if (serving != null && serving.changes < REBUILD_CHANGES && !serving.fell)
+			return;
+		
+		final CostMap from = snapshot;
+		rebuild = getRebuilds().submit(new Callable<Tables>()
+		{
+			public Tables call()
+			{
+				return new Tables(from, landmarkCount);
+			}
+		});
+		rebuildAge = 0;
+	}
+	
+	/**
+	 * Puts tables into service, for the latest snapshot as well if they
+	 * weren't made from it.
+	 */
+	private void serve(Tables tables)
+	{
+		Serving serving = new Serving(tables);
+		
+		if (snapshot != null && !serving.isServing(snapshot.getVersion()))
+			serving = serving.adding(snapshot);
+		
+		this.serving = serving;
+		rebuildCount++;
+	}
+	
+	public double project(CostMap course, Position start, Position end)
+	{
+		return project(course, start.x, start.y, end.x, end.y);
+	}
+	
+	public double project(CostMap course, int x0, int y0, int x1, int y1)
+	{
+		double estimate = base.project(course, x0, y0, x1, y1);
+		Serving serving = this.serving;
+		
+		if (serving == null)
+			return estimate;
+		
+		Tables tables = serving.tables;
+		
+		if (!serving.isServing(course.getVersion()) || tables.w != course.w || tables.h != course.h)
+			return estimate;
+		
+		int start = x0 + y0 * tables.w;
+		int end = x1 + y1 * tables.w;
+		
+		for (int i = 0; i < tables.landmarks.length; ++i)
+		{
+			double[] from = tables.from[i];
+			double[] to = tables.to[i];
+			
+			/*
+			 * Infinite differences are left out - if either position can't
+			 * be reached from the landmark, or can't reach it, that
+			 * landmark says nothing about them.
+			 */
+			double bound = from[end] - from[start];
+			
+			if (bound > estimate && !Double.isInfinite(bound))
+				estimate = bound;
+			
+			bound = to[start] - to[end];
+			
+			if (bound > estimate && !Double.isInfinite(bound))
+				estimate = bound;
+		}
+		
+		return estimate;
+	}
+	
+	/**
+	 * Gets the thread new tables are worked out on, which is started the
+	 * first time it's needed and kept from then on.
+	 */
+	private static synchronized ExecutorService getRebuilds()
+	{
+		if (rebuilds == null)
+		{
+			rebuilds = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Landmarks");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		
+		return rebuilds;
+	}
+	
+	/**
+	 * Tables in service, and the snapshot versions they serve. Replaced
+	 * whole rather than changed, so searches can read it without locking.
+	 */
+	private static class Serving
+	{
+		private final Tables tables;
+		private final int[] versions;
+		
+		/*
+		 * How many positions the latest snapshot differs in from the one
+		 * the tables were made from, and whether any cost came down.
+		 */
+		private final int changes;
+		private final boolean fell;
+		
+		private Serving(Tables tables)
+		{
+			this.tables = tables;
+			this.versions = new int[] { tables.version };
+			this.changes = 0;
+			this.fell = false;
+		}
+		
+		private Serving(Serving serving, int version, int changes, boolean fell)
+		{
+			int[] versions = serving.versions;
+			
+			if (!fell)
+			{
+				int kept = Math.min(versions.length, SERVED_VERSIONS - 1);
+				int from = versions.length - kept;
+				versions = Arrays.copyOfRange(versions, from, from + kept + 1);
+				versions[kept] = version;
+			}
+			
+			this.tables = serving.tables;
+			this.versions = versions;
+			this.changes = changes;
+			this.fell = fell;
+		}
+		
+		/**
+		 * Compares snapshot with the one the tables were made from, and
+		 * serves it too if no cost in it has come down.
+		 */
+		private Serving adding(CostMap snapshot)
+		{
+			CostMap source = tables.source;
+			
+			if (source.w != snapshot.w || source.h != snapshot.h)
+				return new Serving(this, snapshot.getVersion(), 0, true);
+			
+			int changes = 0;
+			boolean fell = false;
+			
+			for (int cell = 0; cell < source.w * source.h; ++cell)
+			{
+				double was = source.getAt(cell);
+				double is = snapshot.getAt(cell);
+				
+				if (was != is)
+				{
+					changes++;
+					fell |= is < was;
+				}
+			}
+			
+			return new Serving(this, snapshot.getVersion(), changes, fell);
+		}
+		
+		private boolean isServing(int version)
+		{
+			for (int i = 0; i < versions.length; ++i)
+				if (versions[i] == version)
+					return true;
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Landmarks and the costs of paths from and to each of them, made from
+	 * a snapshot of the CostMap.
+	 */
+	private static class Tables
+	{
+		private final CostMap source;
+		private final int w, h;
+		private final int version;
+		private final int[] landmarks;
+		private final double[][] from;
+		private final double[][] to;
+		
+		private Tables(CostMap course, int landmarkCount)
+		{
+			this.source = course;
+			this.w = course.w;
+			this.h = course.h;
+			this.version = course.getVersion();
+			this.landmarks = pickLandmarks(course, landmarkCount);
+			this.from = new double[landmarks.length][];
+			this.to = new double[landmarks.length][];
+			
+			for (int i = 0; i < landmarks.length; ++i)
+			{
+				from[i] = integrate(course, landmarks[i], true);
+				to[i] = integrate(course, landmarks[i], false);
+			}
+		}
+		
+		/**
+		 * Picks passable positions as far from each other as they can be,
+		 * starting with the one furthest from the middle of the map. These
+		 * end up around the edge of the passable area, where the bounds
+		 * they give are tightest.
+		 */
+		private static int[] pickLandmarks(CostMap course, int count)
+		{
+			int w = course.w;
+			int h = course.h;
+			double[] nearest = new double[w * h];
+			int[] landmarks = new int[count];
+			int picked = 0;
+			
+			for (int y = 0; y < h; ++y)
+			for (int x = 0; x < w; ++x)
+			{
+				double dx = x - (w - 1) / 2.0;
+				double dy = y - (h - 1) / 2.0;
+				nearest[x + y * w] = Double.isInfinite(course.get(x, y))
+					? -1
+					: dx * dx + dy * dy;
+			}
+			
+			while (picked < count)
+			{
+				int best = -1;
+				
+				for (int cell = 0; cell < nearest.length; ++cell)
+					if (nearest[cell] > 0 && (best == -1 || nearest[cell] > nearest[best]))
+						best = cell;
+				
+				if (best == -1)
+					break;
+				
+				landmarks[picked++] = best;
+				int bx = best % w;
+				int by = best / w;
+				
+				for (int cell = 0; cell < nearest.length; ++cell)
+				{
+					if (nearest[cell] < 0)
+						continue;
+					
+					double dx = cell % w - bx;
+					double dy = cell / w - by;
+					double distance = dx * dx + dy * dy;
+					
+					if (picked == 1 || distance < nearest[cell])
+						nearest[cell] = distance;
+				}
+			}
+			
+			return Arrays.copyOf(landmarks, picked);
+		}
+		
+		/**
+		 * Runs Dijkstra's algorithm outwards from landmark, giving the cost
+		 * of the cheapest path from the landmark to each position if
+		 * outward, or from each position to the landmark if not. Moving
+		 * into a position costs its cost, times 1.414 for diagonal steps.
+		 */
+		private static double[] integrate(CostMap course, int landmark, boolean outward)
+		{
+			int w = course.w;
+			int h = course.h;
+			double[] costs = new double[w * h];
+			Arrays.fill(costs, Double.POSITIVE_INFINITY);
+			
+			CellHeap open = new CellHeap(costs);
+			costs[landmark] = 0;
+			open.push(landmark);
+			
+			while (!open.isEmpty())
+			{
+				int current = open.pop();
+				int cx = current % w;
+				int cy = current / w;
+				double currentStep = course.getAt(current);
+				
+				for (int d = 0; d < 8; ++d)
+				{
+					int nx = cx + DX[d];
+					int ny = cy + DY[d];
+					
+					if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+						continue;
+					
+					int neighbor = nx + ny * w;
+					double neighborStep = course.getAt(neighbor);
+					
+					if (Double.isInfinite(neighborStep))
+						continue;
+					
+					double moveFactor = (d & 1) == 1 ? DIAGONAL_FACTOR : 1;
+					double neighborCost = costs[current]
+						+ (outward ? neighborStep : currentStep) * moveFactor;
+					
+					if (neighborCost >= costs[neighbor])
+						continue;
+					
+					boolean seen = !Double.isInfinite(costs[neighbor]);
+					costs[neighbor] = neighborCost;
+					
+					if (seen)
+						open.update(neighbor);
+					else
+						open.push(neighbor);
+				}
+			}
+			
+			return costs;
+		}
+	}
+}
@@ -9,4 +9,9 @@ public class ManhattanDistance implements Heuristic
 	{
 		return Math.abs(start.x - end.x) + Math.abs(start.y - end.y);
 	}
+	
+	public double project(CostMap course, int x0, int y0, int x1, int y1)
+	{
+		return Math.abs(x0 - x1) + Math.abs(y0 - y1);
+	}
 }
@@ -0,0 +1,253 @@
+package com.robbix.mp5.ai;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Keeps recently found paths, so that units going back and forth between
+ * the same places - trucks on a mining route, say - don't search for the
+ * same path every trip.
+ *
+ * Every position along a cached path is indexed, so a path is also found
+ * from anywhere along an earlier one to the same end, by cutting off the
+ * part already travelled. Any part of a shortest path is itself a shortest
+ * path, so these are as good as new searches.
+ *
+ * Paths over each CostMap are kept apart, each for one version of their
+ * CostMap, and are dropped as soon as it's used at a different version.
+ * So units searching different CostMaps, like trucks and everything else,
+ * don't empty each other's paths.
+ *
+ * All methods are synchronized, so a PathCache can be shared between
+ * threads. Paths handed out are shared, and can't be modified.
+ */
+public class PathCache
+{
+	private int capacity;
+	private Map<CostMap, Course> courses;
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Creates a PathCache that holds up to capacity paths over each
+	 * CostMap, dropping the least recently used one when it's full.
+	 */
+	public PathCache(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		
+		this.capacity = capacity;
+		this.courses = new IdentityHashMap<CostMap, Course>();
+	}
+	
+	/**
+	 * Gets a cached path from start to end over course, or null if there
+	 * isn't one. If distance is 1, the path stops one short of end.
+	 */
+	public synchronized List<Position> get(
+		CostMap course,
+		Position start,
+		Position end,
+		double distance)
+	{
+		Course cached = validate(course);
+		Suffix suffix = cached.suffixes.get(new Key(start, end, distance));
+		
+		if (suffix == null)
+		{
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		
+		/*
+		 * Touch the whole path so it's kept as recently used.
+		 */
+		cached.paths.get(suffix.key);
+		
+		return suffix.index == 0
+			? suffix.path
+			: suffix.path.subList(suffix.index, suffix.path.size());
+	}
+	
+	/**
+	 * Caches a path from start to end found over course as it is now.
+	 */
+	public synchronized void put(
+		CostMap course,
+		Position start,
+		Position end,
+		double distance,
+		List<Position> path)
+	{
+		if (path == null || path.isEmpty())
+			return;
+		
+		Course cached = validate(course);
+		Key key = new Key(start, end, distance);
+		
+		if (cached.paths.containsKey(key))
+			return;
+		
+		path = Collections.unmodifiableList(path);
+		
+		for (int i = 0; i < path.size(); ++i)
+		{
+			Key cellKey = new Key(path.get(i), end, distance);
+			
+			if (!cached.suffixes.containsKey(cellKey))
+				cached.suffixes.put(cellKey, new Suffix(key, path, i));
+		}
+		
+		cached.paths.put(key, path);
+	}
+	
+	public synchronized void clear()
+	{
+		courses.clear();
+	}
+	
+	/**
+	 * Gets the number of paths cached, over all CostMaps.
+	 */
+	public synchronized int size()
+	{
+		int size = 0;
+		
+		for (Course cached : courses.values())
+			size += cached.paths.size();
+		
+		return size;
+	}
+	
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+	
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+	
+	/**
+	 * Gets the paths cached over course, first dropping them if they were
+	 * found on a different version of it.
+	 */
+	private Course validate(CostMap course)
+	{
+		Course cached = courses.get(course);
+		
+		if (cached == null || cached.version != course.getVersion())
+		{
+			cached = new Course(course.getVersion(), capacity);
+			courses.put(course, cached);
+		}
+		
+		return cached;
+	}
+	
+	/**
+	 * The paths cached over one version of one CostMap.
+	 */
+	private static class Course
+	{
+		private int version;
+		private Map<Key, List<Position>> paths;
+		private Map<Key, Suffix> suffixes;
+		
+		private Course(int version, final int capacity)
+		{
+			this.version = version;
+			this.suffixes = new HashMap<Key, Suffix>();
+			this.paths = new LinkedHashMap<Key, List<Position>>(capacity * 2, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+				
+				protected boolean removeEldestEntry(Map.Entry<Key, List<Position>> eldest)
+				{
+					if (size() <= capacity)
+						return false;
+					
+					forget(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+			};
+		}
+		
+		/**
+		 * Removes the index entries pointing into a path that's been dropped.
+		 */
+		private void forget(Key key, List<Position> path)
+		{
+			for (int i = 0; i < path.size(); ++i)
+			{
+				Key cellKey = new Key(path.get(i), key.end, key.distance);
+				Suffix suffix = suffixes.get(cellKey);
+				
+				if (suffix != null && suffix.path == path)
+					suffixes.remove(cellKey);
+			}
+		}
+	}
+	
+	/**
+	 * Where a position falls along a cached path.
+	 */
+	private static class Suffix
+	{
+		private Key key;
+		private List<Position> path;
+		private int index;
+		
+		public Suffix(Key key, List<Position> path, int index)
+		{
+			this.key = key;
+			this.path = path;
+			this.index = index;
+		}
+	}
+	
+	private static class Key
+	{
+		private Position start, end;
+		private double distance;
+		
+		public Key(Position start, Position end, double distance)
+		{
+			this.start = start;
+			this.end = end;
+			this.distance = distance;
+		}
+		
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+			
+			Key that = (Key) obj;
+			
+			return this.start.equals(that.start)
+				&& this.end.equals(that.end)
+				&& this.distance == that.distance;
+		}
+		
+		public int hashCode()
+		{
+			long bits = Double.doubleToLongBits(distance);
+			
+			return (start.hashCode() * 887)
+				^ (end.hashCode() * 28657)
+				^ (int) (bits ^ (bits >>> 32));
+		}
+	}
+}
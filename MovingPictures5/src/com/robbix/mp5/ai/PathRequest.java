@@ -0,0 +1,159 @@
+package com.robbix.mp5.ai;
+
+import java.util.List;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * A path search requested from a PathService. The path is found in the
+ * background and delivered at the start of a later tick, after which
+ * isDelivered() returns true and getPath() returns the path, or null if
+ * there isn't one.
+ *
+ * Identical requests made before delivery share a PathRequest. Each
+ * requester should cancel() it if it no longer wants the path, and the
+ * search is dropped once all of them have.
+ */
+public class PathRequest
+{
+	/**
+	 * Orders given by a player are searched before background requests
+	 * from tasks like mining routes.
+	 */
+	public static enum Priority
+	{
+		ORDER,
+		BACKGROUND;
+	}
+	
+	final Priority priority;
+	final CostMap course;
+	final Position start;
+	final Position end;
+	final double distance;
+	
+	Key key;
+	CostMap snapshot;
+	int requesters;
+	int retries;
+	boolean cancelled;
+	
+	ResumableSearch search;
+	int expanded;
+	boolean running;
+	
+	private PathService service;
+	private volatile boolean delivered;
+	private volatile List<Position> path;
+	
+	PathRequest(
+		PathService service,
+		Priority priority,
+		CostMap course,
+		CostMap snapshot,
+		Position start,
+		Position end,
+		double distance)
+	{
+		this.service = service;
+		this.priority = priority;
+		this.course = course;
+		this.snapshot = snapshot;
+		this.start = start;
+		this.end = end;
+		this.distance = distance;
+		this.key = new Key(course, snapshot.getVersion(), start, end, distance);
+	}
+	
+	public Priority getPriority()
+	{
+		return priority;
+	}
+	
+	public Position getStart()
+	{
+		return start;
+	}
+	
+	public Position getEnd()
+	{
+		return end;
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	public boolean isDelivered()
+	{
+		return delivered;
+	}
+	
+	/**
+	 * Gets the path once delivered, or null if there isn't one or it hasn't
+	 * been delivered yet.
+	 */
+	public List<Position> getPath()
+	{
+		return path;
+	}
+	
+	public void cancel()
+	{
+		service.cancel(this);
+	}
+	
+	void deliver(List<Position> path)
+	{
+		this.path = path;
+		this.delivered = true;
+	}
+	
+	/**
+	 * Identifies identical requests - the same endpoints and distance over
+	 * the same version of the same CostMap.
+	 */
+	static class Key
+	{
+		private CostMap course;
+		private int version;
+		private Position start, end;
+		private double distance;
+		
+		Key(CostMap course, int version, Position start, Position end, double distance)
+		{
+			this.course = course;
+			this.version = version;
+			this.start = start;
+			this.end = end;
+			this.distance = distance;
+		}
+		
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+			
+			Key that = (Key) obj;
+			
+			return this.course == that.course
+				&& this.version == that.version
+				&& this.start.equals(that.start)
+				&& this.end.equals(that.end)
+				&& this.distance == that.distance;
+		}
+		
+		public int hashCode()
+		{
+			long bits = Double.doubleToLongBits(distance);
+			
+			return System.identityHashCode(course)
+				^ (version * 31)
+				^ (start.hashCode() * 887)
+				^ (end.hashCode() * 28657)
+				^ (int) (bits ^ (bits >>> 32));
+		}
+	}
+}
@@ -0,0 +1,616 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Finds paths in slices at the start of each tick, so that however many
+ * units ask for paths at once, pathfinding only takes a bounded share of
+ * any one tick.
+ *
+ * Each search runs over a snapshot of the CostMap taken when it was
+ * requested, which is shared by all requests over that CostMap until it
+ * changes. Searches are resumable, and keep their state between ticks.
+ * They're JumpPointSearches where a SearchSelector picks them, and AStars
+ * everywhere else. AStars are guided by a LandmarkHeuristic for each
+ * CostMap asked about, whose tables are made from the same snapshots the
+ * searches run over, in the background.
+ *
+ * The Engine calls deliver() with a budget of node expansions at the
+ * start of each tick, which is handed out in slices to player orders
+ * first and then to background requests, oldest first. The slices run on
+ * a pool of worker threads while the rest of the tick goes on, and are
+ * collected by the next call to deliver(), which delivers the paths they
+ * finished. Which searches run, and how far, depends only on the budget
+ * and the order of requests, and slices are always collected on the tick
+ * after they were handed out, waiting for them if need be, so the results
+ * don't depend on thread timing.
+ *
+ * If the CostMap has changed by the time a path is found and the path now
+ * runs through something impassable (or there was no path), the search is
+ * started over on a new snapshot, up to MAX_RETRIES times.
+ *
+ * Paths found are kept in a PathCache until the CostMap changes, and
+ * requests that can be answered from it are delivered straight away.
+ */
+public class PathService
+{
+	private static final int MAX_RETRIES = 3;
+	
+	/**
+	 * The most expansions given to one search in one tick.
+	 */
+	public static final int DEFAULT_SLICE = 2048;
+	
+	private static final int CACHE_CAPACITY = 256;
+	
+	/**
+	 * Requests made within a tick arrive in whatever order units were
+	 * stepped on different threads, so they're sorted before being queued.
+	 */
+	private static final Comparator<PathRequest> ARRIVAL_ORDER = new Comparator<PathRequest>()
+	{
+		public int compare(PathRequest a, PathRequest b)
+		{
+			if (a.start.y != b.start.y) return a.start.y < b.start.y ? -1 : 1;
+			if (a.start.x != b.start.x) return a.start.x < b.start.x ? -1 : 1;
+			if (a.end.y   != b.end.y)   return a.end.y   < b.end.y   ? -1 : 1;
+			if (a.end.x   != b.end.x)   return a.end.x   < b.end.x   ? -1 : 1;
+			
+			return Double.compare(a.distance, b.distance);
+		}
+	};
+	
+	private ExecutorService executor;
+	private Map<PathRequest.Key, PathRequest> pending;
+	private PathCache cache;
+	private List<PathRequest> incoming;
+	private List<PathRequest> orders;
+	private List<PathRequest> background;
+	private List<PathRequest> sliced;
+	private List<Callable<Object>> slices;
+	private List<Future<Object>> running;
+	private List<AStar> spareSearches;
+	private List<JumpPointSearch> spareJumps;
+	private SearchSelector selector;
+	private Map<CostMap, LandmarkHeuristic> landmarks;
+	private Heuristic euclidean;
+	private int slice;
+	
+	/**
+	 * The latest snapshot of each CostMap asked about.
+	 */
+	private Map<CostMap, CostMap> snapshots;
+	
+	private int requestCount;
+	private int sharedCount;
+	private int staleCount;
+	private int cancelledCount;
+	private long expansionCount;
+	private int jumpCount;
+	
+	public PathService(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive");
+		
+		if (threads > 1)
+			executor = Executors.newFixedThreadPool(threads, new PathThreadFactory());
+		
+		pending = new HashMap<PathRequest.Key, PathRequest>();
+		cache = new PathCache(CACHE_CAPACITY);
+		incoming = new ArrayList<PathRequest>();
+		orders = new ArrayList<PathRequest>();
+		background = new ArrayList<PathRequest>();
+		sliced = new ArrayList<PathRequest>();
+		slices = new ArrayList<Callable<Object>>();
+		running = new ArrayList<Future<Object>>();
+		spareSearches = new ArrayList<AStar>();
+		spareJumps = new ArrayList<JumpPointSearch>();
+		selector = new SearchSelector();
+		landmarks = new IdentityHashMap<CostMap, LandmarkHeuristic>();
+		snapshots = new IdentityHashMap<CostMap, CostMap>();
+		euclidean = new EuclideanDistance();
+		slice = DEFAULT_SLICE;
+	}
+	
+	public synchronized void setSlice(int slice)
+	{
+		if (slice < 1)
+			throw new IllegalArgumentException("slice must be positive");
+		
+		this.slice = slice;
+	}
+	
+	public synchronized int getSlice()
+	{
+		return slice;
+	}
+	
+	/**
+	 * Requests a path from start to end over course, to be delivered at
+	 * the start of a later tick, or right away if it's cached. If distance
+	 * is 1, the path stops one short of end.
+	 */
+	public synchronized PathRequest request(
+		CostMap course,
+		Position start,
+		Position end,
+		double distance,
+		PathRequest.Priority priority)
+	{
+		requestCount++;
+		
+		List<Position> cached = cache.get(course, start, end, distance);
+		
+		if (cached != null)
+		{
+			PathRequest request = new PathRequest(this, priority, course, course, start, end, distance);
+			request.deliver(cached);
+			return request;
+		}
+		
+		CostMap snapshot = getSnapshot(course);
+		PathRequest.Key key = new PathRequest.Key(
+			course,
+			snapshot.getVersion(),
+			start,
+			end,
+			distance
+		);
+		
+		PathRequest request = pending.get(key);
+		
+		if (request != null && request.priority.compareTo(priority) <= 0)
+		{
+			sharedCount++;
+			request.requesters++;
+			return request;
+		}
+		
+		request = new PathRequest(this, priority, course, snapshot, start, end, distance);
+		request.requesters = 1;
+		pending.put(request.key, request);
+		incoming.add(request);
+		return request;
+	}
+	
+	/**
+	 * Delivers the paths found by the slices handed out last time, and then
+	 * hands out up to budget node expansions worth of the queued searches,
+	 * to be run in the background until the next call. A budget of 0 or
+	 * less runs every search to the end. Called by the Engine at the start
+	 * of each tick.
+	 */
+	public void deliver(int budget)
+	{
+		collectSlices();
+		
+		synchronized (this)
+		{
+			for (LandmarkHeuristic heuristic : landmarks.values())
+				heuristic.update();
+			
+			Collections.sort(incoming, ARRIVAL_ORDER);
+			
+			for (int i = 0; i < incoming.size(); ++i)
+			{
+				PathRequest request = incoming.get(i);
+				
+				if (request.priority == PathRequest.Priority.ORDER)
+					orders.add(request);
+				else
+					background.add(request);
+			}
+			
+			incoming.clear();
+			
+			int remaining = budget > 0 ? budget : Integer.MAX_VALUE;
+			remaining = plan(orders, remaining, budget > 0);
+			remaining = plan(background, remaining, budget > 0);
+		}
+		
+		if (!sliced.isEmpty())
+			submitSlices();
+	}
+	
+	/**
+	 * Waits for the slices handed out last time to finish, if they haven't
+	 * already, and delivers the paths of the searches that are done.
+	 */
+	private void collectSlices()
+	{
+		if (sliced.isEmpty())
+			return;
+		
+		awaitSlices();
+		
+		synchronized (this)
+		{
+			for (int i = 0; i < sliced.size(); ++i)
+			{
+				PathRequest request = sliced.get(i);
+				request.running = false;
+				expansionCount += request.search.getExpansionCount() - request.expanded;
+				
+				if (request.cancelled)
+				{
+					release(request);
+					continue;
+				}
+				
+				if (request.search.isDone())
+					finish(request);
+			}
+			
+			sliced.clear();
+			slices.clear();
+		}
+	}
+	
+	/**
+	 * Hands out slices of the budget to the queued requests in order,
+	 * starting their searches as needed. Returns what's left.
+	 */
+	private int plan(List<PathRequest> queue, int remaining, boolean limited)
+	{
+		for (int i = 0; i < queue.size() && remaining > 0; ++i)
+		{
+			final PathRequest request = queue.get(i);
+			
+			if (request.search == null)
+			{
+				request.search = takeSearch(request);
+				request.search.start(request.snapshot, request.start, request.end);
+			}
+			
+			final int budget = limited ? Math.min(slice, remaining) : Integer.MAX_VALUE;
+			remaining -= limited ? budget : 0;
+			
+			/*
+			 * Expansions are counted up from where the search had got to,
+			 * and the slice taken back off once it's done.
+			 */
+			request.expanded = request.search.getExpansionCount();
+			request.running = true;
+			sliced.add(request);
+			slices.add(new Callable<Object>()
+			{
+				public Object call()
+				{
+					request.search.resume(budget);
+					return null;
+				}
+			});
+		}
+		
+		return remaining;
+	}
+	
+	/**
+	 * Takes a spare search of the kind the selector picks for request.
+	 */
+	private ResumableSearch takeSearch(PathRequest request)
+	{
+		if (selector.useJumpPoints(request.snapshot, request.start, request.end))
+		{
+			jumpCount++;
+			
+			return spareJumps.isEmpty()
+				? new JumpPointSearch()
+				: spareJumps.remove(spareJumps.size() - 1);
+		}
+		
+		AStar search = spareSearches.isEmpty()
+			? new AStar()
+			: spareSearches.remove(spareSearches.size() - 1);
+		
+		LandmarkHeuristic heuristic = landmarks.get(request.course);
+		search.setHeuristic(heuristic == null ? euclidean : heuristic);
+		return search;
+	}
+	
+	/**
+	 * Starts the slices on the worker threads, or runs them right away if
+	 * there aren't any. Either way, they're collected on the next tick.
+	 */
+	private void submitSlices()
+	{
+		if (executor == null)
+		{
+			for (int i = 0; i < slices.size(); ++i)
+				call(slices.get(i));
+			
+			return;
+		}
+		
+		for (int i = 0; i < slices.size(); ++i)
+			running.add(executor.submit(slices.get(i)));
+	}
+	
+	private void awaitSlices()
+	{
+		try
+		{
+			for (Future<Object> result : running)
+			{
+				try
+				{
+					result.get();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted while finding paths", e);
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					
+					if (cause instanceof Error)
+						throw (Error) cause;
+					
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+		finally
+		{
+			running.clear();
+		}
+	}
+	
+	private static void call(Callable<Object> callable)
+	{
+		try
+		{
+			callable.call();
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Delivers the path for a finished search, unless it's gone stale, in
+	 * which case the search is started over.
+	 */
+	private void finish(PathRequest request)
+	{
+		List<Position> path = request.search.getPath(request.distance);
+		
+		if (isStale(request, path) && request.retries < MAX_RETRIES)
+		{
+			staleCount++;
+			pending.remove(request.key);
+			request.retries++;
+			request.snapshot = getSnapshot(request.course);
+			request.key = new PathRequest.Key(
+				request.course,
+				request.snapshot.getVersion(),
+				request.start,
+				request.end,
+				request.distance
+			);
+			
+			if (!pending.containsKey(request.key))
+				pending.put(request.key, request);
+			
+			request.search.start(request.snapshot, request.start, request.end);
+			return;
+		}
+		
+		if (pending.get(request.key) == request)
+			pending.remove(request.key);
+		
+		if (request.snapshot.getVersion() == request.course.getVersion())
+			cache.put(request.course, request.start, request.end, request.distance, path);
+		
+		dequeue(request);
+		release(request);
+		request.deliver(path);
+	}
+	
+	/**
+	 * Called through PathRequest.cancel(). Drops the search once nobody
+	 * wants it.
+	 */
+	synchronized void cancel(PathRequest request)
+	{
+		if (request.cancelled || request.isDelivered())
+			return;
+		
+		if (--request.requesters > 0)
+			return;
+		
+		cancelledCount++;
+		request.cancelled = true;
+		
+		if (pending.get(request.key) == request)
+			pending.remove(request.key);
+		
+		incoming.remove(request);
+		dequeue(request);
+		
+		if (!request.running)
+			release(request);
+	}
+	
+	private void dequeue(PathRequest request)
+	{
+		if (request.priority == PathRequest.Priority.ORDER)
+			orders.remove(request);
+		else
+			background.remove(request);
+	}
+	
+	private void release(PathRequest request)
+	{
+		if (request.search instanceof JumpPointSearch)
+			spareJumps.add((JumpPointSearch) request.search);
+		else if (request.search != null)
+			spareSearches.add((AStar) request.search);
+		
+		request.search = null;
+	}
+	
+	public void dispose()
+	{
+		if (executor != null)
+			executor.shutdownNow();
+	}
+	
+	public synchronized int getRequestCount()
+	{
+		return requestCount;
+	}
+	
+	/**
+	 * Gets the number of requests that were answered by an identical one
+	 * that was already pending.
+	 */
+	public synchronized int getSharedCount()
+	{
+		return sharedCount;
+	}
+	
+	/**
+	 * Gets the number of results thrown out because the CostMap changed
+	 * while they were being found.
+	 */
+	public synchronized int getStaleCount()
+	{
+		return staleCount;
+	}
+	
+	/**
+	 * Gets the number of requests answered from the PathCache.
+	 */
+	public long getCacheHitCount()
+	{
+		return cache.getHitCount();
+	}
+	
+	public long getCacheMissCount()
+	{
+		return cache.getMissCount();
+	}
+	
+	public synchronized int getCancelledCount()
+	{
+		return cancelledCount;
+	}
+	
+	/**
+	 * Gets the number of requests waiting for their paths.
+	 */
+	public synchronized int getQueuedCount()
+	{
+		return incoming.size() + orders.size() + background.size();
+	}
+	
+	/**
+	 * Gets the number of searches that were jump point searches.
+	 */
+	public synchronized int getJumpSearchCount()
+	{
+		return jumpCount;
+	}
+	
+	/**
+	 * Gets the LandmarkHeuristic for course, or null if no paths have been
+	 * asked for over it.
+	 */
+	public synchronized LandmarkHeuristic getLandmarkHeuristic(CostMap course)
+	{
+		return landmarks.get(course);
+	}
+	
+	/**
+	 * Gets the total number of node expansions run so far.
+	 */
+	public synchronized long getExpansionCount()
+	{
+		return expansionCount;
+	}
+	
+	/**
+	 * Gets a copy of course as it is now, reusing the last one if course
+	 * hasn't changed since it was taken.
+	 */
+	private CostMap getSnapshot(CostMap course)
+	{
+		LandmarkHeuristic heuristic = landmarks.get(course);
+		
+		if (heuristic == null)
+		{
+			heuristic = new LandmarkHeuristic(course);
+			landmarks.put(course, heuristic);
+		}
+		
+		CostMap snapshot = snapshots.get(course);
+		
+		if (snapshot == null || snapshot.getVersion() != course.getVersion())
+		{
+			snapshot = course.copy();
+			snapshots.put(course, snapshot);
+			heuristic.setSnapshot(snapshot);
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Returns true if course has changed since the request's snapshot was
+	 * taken, and either there was no path or it's been blocked since.
+	 */
+	private static boolean isStale(PathRequest request, List<Position> path)
+	{
+		if (request.snapshot.getVersion() == request.course.getVersion())
+			return false;
+		
+		if (path == null)
+			return true;
+		
+		for (int i = 0; i < path.size(); ++i)
+			if (request.course.isInfinite(path.get(i)))
+				return true;
+		
+		return false;
+	}
+	
+	private static class PathThreadFactory implements ThreadFactory
+	{
+		private AtomicInteger count = new AtomicInteger();
+		
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "PathService-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Straightens the paths searches find, so units following them turn less.
+ *
+ * A path found by an AStar steps from one position to the next in
+ * whichever of the 8 directions looks best at the time, and over open
+ * ground that makes a staircase - east, north-east, east, north-east -
+ * where a unit has to rotate at every step. Units can only move in the 8
+ * directions, so the straightest way between two positions is all the
+ * diagonal steps first and then all the straight ones, with one turn in
+ * between. That's never longer than any other way between them.
+ *
+ * smooth() pulls the path tight: from each waypoint, it looks up to
+ * MAX_SKIP positions further along the path for the furthest one that can
+ * be walked to that way through passable positions at no more cost than
+ * the path took, and replaces the stretch in between.
+ *
+ * The path that comes back only lists its turning points: where it starts,
+ * each position where it changes direction, and where it ends. Each one
+ * is reached from the one before by a straight run of steps in one of the
+ * 8 directions, which getRunLength() gives the length of, so followers
+ * can walk between them without every position being made.
+ */
+public class PathSmoother
+{
+	private static final double DIAGONAL_FACTOR = 1.414;
+	
+	/**
+	 * How far along the path to look for a waypoint to skip to.
+	 */
+	public static final int MAX_SKIP = 24;
+	
+	private PathSmoother()
+	{
+	}
+	
+	/**
+	 * Returns the turning points of a path with the same ends as path, over
+	 * course, that turns fewer times and costs no more. Paths of two
+	 * positions or fewer are returned as they are.
+	 */
+	public static List<Position> smooth(CostMap course, List<Position> path)
+	{
+		int n = path.size();
+		
+		if (n <= 2)
+			return path;
+		
+		/*
+		 * The cost of the path up to each position, to compare with the
+		 * cost of each shortcut.
+		 */
+		double[] costs = new double[n];
+		
+		for (int i = 1; i < n; ++i)
+			costs[i] = costs[i - 1] + getStepCost(course, path.get(i - 1), path.get(i));
+		
+		List<Position> smoothed = new ArrayList<Position>();
+		smoothed.add(path.get(0));
+		int anchor = 0;
+		
+		while (anchor < n - 1)
+		{
+			Position from = path.get(anchor);
+			int best = anchor + 1;
+			
+			for (int k = Math.min(anchor + MAX_SKIP, n - 1); k > best; --k)
+			{
+				if (getWalkCost(course, from, path.get(k)) <= costs[k] - costs[anchor] + 1e-9)
+				{
+					best = k;
+					break;
+				}
+			}
+			
+			walk(from, path.get(best), smoothed);
+			anchor = best;
+		}
+		
+		return smoothed;
+	}
+	
+	/**
+	 * Gets the cost of walking from a to b diagonally and then straight, or
+	 * infinity if it passes through anything impassable.
+	 */
+	private static double getWalkCost(CostMap course, Position a, Position b)
+	{
+		int dx = b.x - a.x;
+		int dy = b.y - a.y;
+		int sx = Integer.signum(dx);
+		int sy = Integer.signum(dy);
+		int diagonal = Math.min(Math.abs(dx), Math.abs(dy));
+		int straight = Math.max(Math.abs(dx), Math.abs(dy)) - diagonal;
+		int tx = Math.abs(dx) > Math.abs(dy) ? sx : 0;
+		int ty = Math.abs(dx) > Math.abs(dy) ? 0 : sy;
+		
+		int x = a.x;
+		int y = a.y;
+		double total = 0;
+		
+		for (int i = 0; i < diagonal + straight; ++i)
+		{
+			boolean diag = i < diagonal;
+			x += diag ? sx : tx;
+			y += diag ? sy : ty;
+			double cost = course.get(x, y);
+			
+			if (Double.isInfinite(cost))
+				return Double.POSITIVE_INFINITY;
+			
+			total += diag ? cost * DIAGONAL_FACTOR : cost;
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Gets the number of steps in the straight run from a to b, which must
+	 * be in one of the 8 directions from each other.
+	 */
+	public static int getRunLength(Position a, Position b)
+	{
+		return Math.max(Math.abs(b.x - a.x), Math.abs(b.y - a.y));
+	}
+	
+	/**
+	 * Adds the turning points of the walk from a to b, diagonally and then
+	 * straight, not including a.
+	 */
+	private static void walk(Position a, Position b, List<Position> turns)
+	{
+		int dx = b.x - a.x;
+		int dy = b.y - a.y;
+		int sx = Integer.signum(dx);
+		int sy = Integer.signum(dy);
+		int diagonal = Math.min(Math.abs(dx), Math.abs(dy));
+		int straight = Math.max(Math.abs(dx), Math.abs(dy)) - diagonal;
+		
+		if (diagonal > 0 && straight > 0)
+			addTurn(new Position(a.x + sx * diagonal, a.y + sy * diagonal), turns);
+		
+		addTurn(b, turns);
+	}
+	
+	/**
+	 * Adds pos to the turning points, or moves the last one up to it if
+	 * that carries on in the same direction.
+	 */
+	private static void addTurn(Position pos, List<Position> turns)
+	{
+		int n = turns.size();
+		
+		if (n >= 2)
+		{
+			Position a = turns.get(n - 2);
+			Position b = turns.get(n - 1);
+			
+			if (Integer.signum(b.x - a.x) == Integer.signum(pos.x - b.x)
+			 && Integer.signum(b.y - a.y) == Integer.signum(pos.y - b.y))
+			{
+				turns.set(n - 1, pos);
+				return;
+			}
+		}
+		
+		turns.add(pos);
+	}
+	
+	/**
+	 * The cost of stepping from a to its neighbour b, as AStar counts it.
+	 */
+	private static double getStepCost(CostMap course, Position a, Position b)
+	{
+		double cost = course.get(b.x, b.y);
+		
+		return a.x != b.x && a.y != b.y ? cost * DIAGONAL_FACTOR : cost;
+	}
+}
@@ -1,9 +1,21 @@
 package com.robbix.mp5.ai;
 
+import java.util.List;
+
 import com.robbix.utils.CostMap;
 import com.robbix.utils.Position;
 
 public interface Pathfinder
 {
-	public CostMap getPath(CostMap course, Position start, Position end);
+	/**
+	 * Gets a path from start to end through the given CostMap, starting with
+	 * start itself, or null if there isn't one.
+	 */
+	public List<Position> getPath(CostMap course, Position start, Position end);
+	
+	/**
+	 * Same as getPath(CostMap, Position, Position), except that if distance
+	 * is 1, the path stops one short of end.
+	 */
+	public List<Position> getPath(CostMap course, Position start, Position end, double distance);
 }
@@ -0,0 +1,139 @@
+package com.robbix.mp5.ai;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.map.TerrainListener;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Position;
+import com.robbix.utils.Region;
+
+/**
+ * Makes DStarLite planners for units whose paths have been blocked, and
+ * passes changes to the map on to them.
+ *
+ * Each planner only searches a window around the unit, its goal and the
+ * path it was following, WINDOW_MARGIN positions wider on each side. Up
+ * to MAX_PLANNERS of them are kept and told of changes, which costs about
+ * 45 bytes for each position in the window. Past that, planners are only
+ * good for the one search they were made for, and a unit without a kept
+ * planner makes a new one each time its path is blocked.
+ *
+ * A planner is kept until its unit is done with it and calls release(),
+ * or its unit dies. getChangeCount() goes up with every change, so a unit
+ * can tell when to check whether its path is still clear.
+ */
+public class Replanner implements TerrainListener
+{
+	public static final int MAX_PLANNERS = 16;
+	public static final int WINDOW_MARGIN = 16;
+	
+	private LayeredMap map;
+	private List<DStarLite> planners;
+	private volatile int changeCount;
+	
+	public Replanner(LayeredMap map)
+	{
+		this.map = map;
+		this.planners = new ArrayList<DStarLite>();
+	}
+	
+	public LayeredMap getMap()
+	{
+		return map;
+	}
+	
+	/**
+	 * Makes a planner for unit's path to goal, searching a window around
+	 * the unit, the goal and bounds, or the whole map if bounds is null.
+	 * It isn't told of changes to the map unless it's then passed to
+	 * keep().
+	 */
+	public DStarLite plan(Unit unit, Position goal, Region bounds)
+	{
+		Position start = unit.getPosition();
+		Region window = map.getBounds();
+		
+		if (bounds != null)
+		{
+			window = bounds
+				.getUnion(new Region(start, goal))
+				.stretch(WINDOW_MARGIN)
+				.getIntersection(window);
+		}
+		
+		return new DStarLite(map, unit, start, goal, window, changeCount);
+	}
+	
+	/**
+	 * Starts telling planner of changes to the map, unless MAX_PLANNERS
+	 * are already kept or the map has changed since it was made. Returns
+	 * true if it's kept.
+	 *
+	 * As which planners are kept depends on the order they're offered in,
+	 * this shouldn't be called while a RegionStepper is stepping units.
+	 */
+	public synchronized boolean keep(DStarLite planner)
+	{
+		if (planner.getStamp() != changeCount)
+			return false;
+		
+		for (Iterator<DStarLite> itr = planners.iterator(); itr.hasNext();)
+			if (itr.next().getOwner().isDead())
+				itr.remove();
+		
+		if (planners.size() >= MAX_PLANNERS)
+			return false;
+		
+		planners.add(planner);
+		return true;
+	}
+	
+	/**
+	 * Stops telling planner of changes to the map.
+	 */
+	public synchronized void release(DStarLite planner)
+	{
+		planners.remove(planner);
+	}
+	
+	/**
+	 * Gets a number that goes up every time the map changes in a way that
+	 * might block a path.
+	 */
+	public int getChangeCount()
+	{
+		return changeCount;
+	}
+	
+	public synchronized int getPlannerCount()
+	{
+		return planners.size();
+	}
+	
+	public void costChanged(Position pos)
+	{
+		for (DStarLite planner : getPlanners())
+			planner.changed(pos);
+		
+		changeCount++;
+	}
+	
+	public void structureChanged(Region region)
+	{
+		List<DStarLite> planners = getPlanners();
+		
+		for (Position pos : region)
+			for (DStarLite planner : planners)
+				planner.changed(pos);
+		
+		changeCount++;
+	}
+	
+	private synchronized List<DStarLite> getPlanners()
+	{
+		return new ArrayList<DStarLite>(planners);
+	}
+}
@@ -0,0 +1,163 @@
+package com.robbix.mp5.ai;
+
+/**
+ * Records which units mean to be in which positions when, so that units
+ * planning their moves can keep out of each other's way. A reservation is
+ * for a span of frames, and is forgotten once that span is over.
+ *
+ * Reservations have a priority, and a unit planning at some priority only
+ * keeps out of the way of reservations at that priority or higher. This
+ * lets a unit that's been kept waiting push through, while the others
+ * plan around it.
+ *
+ * Each position keeps its own list of reservations, so units far enough
+ * apart can reserve and look up positions at the same time. That's the
+ * case for units in different regions being stepped by a RegionStepper,
+ * as long as they only plan a few positions ahead.
+ */
+public class ReservationTable
+{
+	private int w, h;
+	private Reservation[] cells;
+	
+	public ReservationTable(int w, int h)
+	{
+		this.w = w;
+		this.h = h;
+		this.cells = new Reservation[w * h];
+	}
+	
+	public int getWidth()
+	{
+		return w;
+	}
+	
+	public int getHeight()
+	{
+		return h;
+	}
+	
+	/**
+	 * Returns true if nobody but owner has x, y reserved at priority or
+	 * higher for any of the frames from start to end. Reservations over
+	 * before now are dropped along the way.
+	 */
+	public boolean isFree(int x, int y, int start, int end, Object owner, int priority, int now)
+	{
+		int cell = x + y * w;
+		Reservation prev = null;
+		
+		for (Reservation r = cells[cell]; r != null; r = r.next)
+		{
+			if (r.end < now)
+			{
+				if (prev == null) cells[cell] = r.next;
+				             else prev.next = r.next;
+				continue;
+			}
+			
+			if (r.owner != owner && r.priority >= priority && r.start <= end && start <= r.end)
+				return false;
+			
+			prev = r;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns true if owner has x, y reserved for now or later.
+	 */
+	public boolean isHeldBy(int x, int y, Object owner, int now)
+	{
+		for (Reservation r = cells[x + y * w]; r != null; r = r.next)
+			if (r.owner == owner && r.end >= now)
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Reserves x, y for owner for the frames from start to end, whether or
+	 * not someone else already has them.
+	 */
+	public Reservation reserve(int x, int y, int start, int end, Object owner, int priority)
+	{
+		return reserve(x, y, start, end, owner, priority, null);
+	}
+	
+	/**
+	 * Like reserve(int, int, int, int, Object, int), but fills in spare, if
+	 * it's not null, instead of making a new Reservation. spare must have
+	 * been released, and nothing else may still be holding it.
+	 */
+	public Reservation reserve(
+		int x,
+		int y,
+		int start,
+		int end,
+		Object owner,
+		int priority,
+		Reservation spare)
+	{
+		int cell = x + y * w;
+		Reservation r = spare == null ? new Reservation() : spare;
+		r.owner = owner;
+		r.cell = cell;
+		r.start = start;
+		r.end = end;
+		r.priority = priority;
+		r.next = cells[cell];
+		cells[cell] = r;
+		return r;
+	}
+	
+	/**
+	 * Cancels a reservation made by reserve().
+	 */
+	public void release(Reservation reservation)
+	{
+		Reservation prev = null;
+		
+		for (Reservation r = cells[reservation.cell]; r != null; r = r.next)
+		{
+			if (r == reservation)
+			{
+				if (prev == null) cells[r.cell] = r.next;
+				             else prev.next = r.next;
+				return;
+			}
+			
+			prev = r;
+		}
+	}
+	
+	public static class Reservation
+	{
+		private Object owner;
+		private int cell;
+		private int start;
+		private int end;
+		private int priority;
+		private Reservation next;
+		
+		private Reservation()
+		{
+		}
+		
+		public int getStart()
+		{
+			return start;
+		}
+		
+		public int getEnd()
+		{
+			return end;
+		}
+		
+		public int getPriority()
+		{
+			return priority;
+		}
+	}
+}
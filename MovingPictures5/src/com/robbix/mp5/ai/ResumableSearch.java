@@ -0,0 +1,39 @@
+package com.robbix.mp5.ai;
+
+import java.util.List;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * A path search that can be run a few node expansions at a time, so that
+ * it can be spread over several ticks.
+ */
+public interface ResumableSearch
+{
+	/**
+	 * Starts a search from start to end. The CostMap mustn't change until
+	 * the search is done.
+	 */
+	public void start(CostMap course, Position start, Position end);
+	
+	/**
+	 * Runs the search begun by start() for up to budget more expansions.
+	 * Returns true once the search is done, whether or not a path was found.
+	 */
+	public boolean resume(int budget);
+	
+	public boolean isDone();
+	
+	/**
+	 * Gets the path found by the last search, or null if it hasn't finished
+	 * or a path cannot be found. If distance is 1, the path stops one short
+	 * of the end.
+	 */
+	public List<Position> getPath(double distance);
+	
+	/**
+	 * Gets the number of nodes expanded by the last search.
+	 */
+	public int getExpansionCount();
+}
@@ -3,10 +3,15 @@ package com.robbix.mp5.ai;
 import com.robbix.utils.CostMap;
 import com.robbix.utils.Position;
 
-public class Zero
+public class Zero implements Heuristic
 {
 	public double project(CostMap course, Position start, Position end)
 	{
 		return 0;
 	}
+	
+	public double project(CostMap course, int x0, int y0, int x1, int y1)
+	{
+		return 0;
+	}
 }
@@ -5,6 +5,7 @@ import static com.robbix.mp5.unit.Activity.MOVE;
 import java.util.List;
 
 import com.robbix.mp5.Game;
+import com.robbix.mp5.ai.PathRequest;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.utils.Filter;
 import com.robbix.utils.Position;
@@ -45,7 +46,7 @@ public class BulldozeRegionTask extends Task
 		}
 		else
 		{
-			Game.game.doMove(unit, toDoze, false);
+			Game.game.doMove(unit, toDoze, false, 0, PathRequest.Priority.BACKGROUND);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package com.robbix.mp5.ai.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.robbix.mp5.Game;
+import com.robbix.mp5.ai.CooperativeAStar;
+import com.robbix.mp5.ai.ReservationTable;
+import com.robbix.mp5.ai.CooperativeAStar.Plan;
+import com.robbix.mp5.ai.ReservationTable.Reservation;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Direction;
+import com.robbix.utils.Position;
+
+/**
+ * Picks a moving unit's next position with a CooperativeAStar, and keeps
+ * the unit's reservations for the plan in the Game's ReservationTable.
+ * Used by PathTask and FlowTask, which pick the target a few positions
+ * along their way. Where the way there is given and clear, it's followed
+ * as it is, without a search.
+ *
+ * Units meeting head on in a narrow gap can each end up waiting for the
+ * other. So once a unit has waited in one place for a few moves' time, it
+ * plans and reserves at a higher priority, and the units in its way plan
+ * to get out of it. If even that doesn't get it moving, it gives up on
+ * planning until it's moved on.
+ */
+class CooperativeSteering
+{
+	/**
+	 * How many moves' time a unit waits in one place before it pushes
+	 * through, and before it gives up on planning.
+	 */
+	private static final int INSIST_WAIT_STEPS = 2;
+	private static final int MAX_WAIT_STEPS = 8;
+	
+	private static ThreadLocal<CooperativeAStar> searches = new ThreadLocal<CooperativeAStar>()
+	{
+		protected CooperativeAStar initialValue()
+		{
+			return new CooperativeAStar();
+		}
+	};
+	
+	private ReservationTable table;
+	private List<Reservation> held = new ArrayList<Reservation>();
+	private List<Reservation> spares = new ArrayList<Reservation>();
+	private Position waitingAt;
+	private int waitingSince;
+	
+	/**
+	 * Plans unit's next moves toward target, replacing its earlier plan.
+	 * Returns the position unit should steer to next, its own position if
+	 * it should wait there, or null if it should steer for itself.
+	 */
+	public Position next(Unit unit, Position target)
+	{
+		return next(unit, target, null);
+	}
+	
+	/**
+	 * Like next(Unit, Position), but if route - the positions from unit's
+	 * own to target - can be followed without waiting, the plan is to
+	 * follow it.
+	 */
+	public Position next(Unit unit, Position target, List<Position> route)
+	{
+		release();
+		
+		Position current = unit.getPosition();
+		
+		if (current.equals(target))
+			return null;
+		
+		/*
+		 * Time is only roughly modelled, as the frames it takes to move a
+		 * whole position at the unit's speed now. Turning isn't counted,
+		 * but the plan is made again each time the unit gets somewhere.
+		 */
+		int stepTime = getStepTime(unit);
+		int now = Game.game.getFrame();
+		
+		if (!current.equals(waitingAt))
+		{
+			waitingAt = current;
+			waitingSince = now;
+		}
+		
+		int waited = now - waitingSince;
+		
+		if (waited > MAX_WAIT_STEPS * stepTime)
+			return null;
+		
+		int priority = waited > INSIST_WAIT_STEPS * stepTime ? 1 : 0;
+		table = Game.game.getReservationTable();
+		
+		CooperativeAStar search = searches.get();
+		Plan plan = route == null ? null : search.follow(
+			unit.getMap(),
+			table,
+			unit,
+			route,
+			now,
+			stepTime,
+			priority
+		);
+		
+		if (plan == null)
+		{
+			plan = search.plan(
+				unit.getMap(),
+				table,
+				unit,
+				current,
+				target,
+				now,
+				stepTime,
+				priority
+			);
+		}
+		
+		if (plan == null)
+			return current;
+		
+		/*
+		 * Each position is held from halfway through the move into it to
+		 * halfway through the move out of it.
+		 */
+		for (int i = 0; i < plan.size(); ++i)
+		{
+			Position pos = plan.getPosition(i);
+			int start = i == 0 ? now : (plan.getTime(i - 1) + plan.getTime(i)) / 2;
+			int end = i + 1 < plan.size()
+				? (plan.getTime(i) + plan.getTime(i + 1)) / 2
+				: plan.getTime(i) + stepTime;
+			
+			Reservation spare = spares.isEmpty() ? null : spares.remove(spares.size() - 1);
+			held.add(table.reserve(pos.x, pos.y, start, end, unit, priority, spare));
+		}
+		
+		Position next = plan.getPosition(1);
+		
+		/*
+		 * Wait if the planned position hasn't been left yet.
+		 */
+		if (!next.equals(current)
+				&& !unit.getMap().canMoveUnit(current, Direction.getMoveDirection(current, next)))
+			return current;
+		
+		return next;
+	}
+	
+	/**
+	 * Cancels the reservations made for the unit's plan, and keeps them to
+	 * be filled in for the next plan.
+	 */
+	public void release()
+	{
+		for (int i = 0; i < held.size(); ++i)
+			table.release(held.get(i));
+		
+		spares.addAll(held);
+		held.clear();
+	}
+	
+	private static int getStepTime(Unit unit)
+	{
+		double speed = unit.getSpeed();
+		int spotSize = unit.getMap().getSpotSize();
+		
+		if (speed <= 0)
+			return spotSize;
+		
+		return Math.max(1, (int) Math.ceil(spotSize / speed));
+	}
+}
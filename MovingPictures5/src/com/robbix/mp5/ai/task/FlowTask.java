@@ -0,0 +1,101 @@
+package com.robbix.mp5.ai.task;
+
+import com.robbix.mp5.ai.CooperativeAStar;
+import com.robbix.mp5.ai.FlowField;
+import com.robbix.mp5.ai.FlowFieldCache;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Like PathTask, but follows a FlowField to its goal instead of a path, so
+ * a group of units can share one field. If the terrain changes on the way,
+ * the field for the goal is fetched again from the cache. Moves are planned
+ * around the other units the same way.
+ */
+public class FlowTask extends Task
+{
+	private FlowFieldCache cache;
+	private FlowField field;
+	private Position destination;
+	private CooperativeSteering steering = new CooperativeSteering();
+	
+	public FlowTask(FlowFieldCache cache, FlowField field)
+	{
+		super(true, Task.VEHICLE_ONLY);
+		this.cache = cache;
+		this.field = field;
+		this.destination = field.getGoal();
+	}
+	
+	public void step(Unit unit)
+	{
+		Position current = unit.getPosition();
+		
+		if (current.equals(destination))
+		{
+			complete(unit);
+			return;
+		}
+		
+		CostMap course = unit.getMap().getTerrainCostMap();
+		
+		if (!field.isCurrent(course))
+			field = cache.get(course, destination);
+		
+		Position next = field.getNext(current);
+		
+		// Goal has been cut off
+		if (next == null)
+		{
+			complete(unit);
+			return;
+		}
+		
+		Position planned = steering.next(unit, getLookahead(next));
+		
+		if (planned != null)
+		{
+			if (planned.equals(current))
+				return;
+			
+			next = planned;
+		}
+		
+		unit.assignNext(new SteerTask(next));
+		unit.step();
+	}
+	
+	/**
+	 * Follows the field on from next to get the position to plan the
+	 * unit's next moves toward.
+	 */
+	private Position getLookahead(Position next)
+	{
+		Position target = next;
+		
+		for (int i = 1; i < CooperativeAStar.WINDOW && !target.equals(destination); ++i)
+		{
+			Position further = field.getNext(target);
+			
+			if (further == null)
+				break;
+			
+			target = further;
+		}
+		
+		return target;
+	}
+	
+	private void complete(Unit unit)
+	{
+		steering.release();
+		unit.resetAnimationFrame();
+		unit.completeTask(this);
+	}
+	
+	public void cancel(Unit unit)
+	{
+		steering.release();
+	}
+}
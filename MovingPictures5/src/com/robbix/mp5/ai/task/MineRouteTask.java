@@ -1,6 +1,7 @@
 package com.robbix.mp5.ai.task;
 
 import com.robbix.mp5.Game;
+import com.robbix.mp5.ai.PathRequest;
 import com.robbix.mp5.map.LayeredMap;
 import com.robbix.mp5.map.Ore;
 import com.robbix.mp5.unit.Cargo;
@@ -61,7 +62,7 @@ public class MineRouteTask extends Task
 			}
 			else
 			{
-				Game.game.doMove(unit, mineDock, false);
+				Game.game.doMove(unit, mineDock, false, 0, PathRequest.Priority.BACKGROUND);
 			}
 		}
 		else
@@ -81,7 +82,7 @@ public class MineRouteTask extends Task
 			}
 			else
 			{
-				Game.game.doMove(unit, smelterDock, false);
+				Game.game.doMove(unit, smelterDock, false, 0, PathRequest.Priority.BACKGROUND);
 			}
 		}
 	}
@@ -1,37 +1,182 @@
 package com.robbix.mp5.ai.task;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.robbix.mp5.Game;
+import com.robbix.mp5.RegionStepper;
+import com.robbix.mp5.ai.CooperativeAStar;
+import com.robbix.mp5.ai.DStarLite;
+import com.robbix.mp5.ai.PathRequest;
+import com.robbix.mp5.ai.PathSmoother;
+import com.robbix.mp5.ai.Replanner;
+import com.robbix.mp5.map.LayeredMap;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.utils.Direction;
 import com.robbix.utils.Position;
+import com.robbix.utils.PositionCache;
+import com.robbix.utils.Region;
 
+/**
+ * Follows a path to its end. Whenever the map changes, the rest of the
+ * path is checked, and if it's been blocked, a DStarLite planner repairs
+ * it. If the Replanner has room for it, the planner is kept for the rest
+ * of the trip, so later repairs only redo the part of the search that's
+ * affected.
+ *
+ * Each move is planned a few positions ahead along the path around other
+ * moving units with CooperativeSteering, so units in each other's way
+ * wait or step aside instead of steering into each other. If there's no
+ * such plan, the unit just heads for the next position on the path.
+ *
+ * Paths delivered by a PathService, and repaired ones, are straightened
+ * by a PathSmoother first, so the unit doesn't turn at every step. That
+ * leaves only their turning points, and the positions in between are
+ * worked out as they're needed. Any path given to a PathTask is taken
+ * the same way - a path listing every position is one whose runs are all
+ * a step long.
+ */
 public class PathTask extends Task
 {
 	private List<Position> path;
+	
+	/**
+	 * The steps from the start of the path to each turning point, so
+	 * steps[steps.length - 1] is the number of steps in the whole path.
+	 */
+	private int[] steps;
+	
+	/**
+	 * The step along the path the unit is headed for.
+	 */
 	private int pathIndex;
 	private Position destination;
+	private PositionCache positions;
+	private List<Position> route = new ArrayList<Position>(CooperativeAStar.WINDOW + 1);
+	private PathRequest request;
+	private DStarLite planner;
+	private int changeCount;
+	private CooperativeSteering steering = new CooperativeSteering();
 	
 	public PathTask(List<Position> path)
 	{
 		super(true, Task.VEHICLE_ONLY);
-		this.path = path;
+		setPath(path);
+	}
+	
+	/**
+	 * Creates a PathTask that waits for a path from a PathService before
+	 * following it. If no path is delivered, the task just completes.
+	 */
+	public PathTask(PathRequest request)
+	{
+		super(true, Task.VEHICLE_ONLY);
+		this.request = request;
+	}
+	
+	private void setPath(List<Position> path)
+	{
+		setRoute(path);
 		this.destination = path.get(path.size() - 1);
+		this.changeCount = -1; // Check it's clear on the first step
+	}
+	
+	private void setRoute(List<Position> path)
+	{
+		this.path = path;
+		this.steps = new int[path.size()];
+		
+		for (int i = 1; i < steps.length; ++i)
+			steps[i] = steps[i - 1] + PathSmoother.getRunLength(path.get(i - 1), path.get(i));
 		
 		this.pathIndex = 1; // Skip the first pos, it is current pos
 	}
 	
+	/**
+	 * Gets the position the given number of steps along the path.
+	 */
+	private Position getStep(int step)
+	{
+		int turn = Arrays.binarySearch(steps, step);
+		
+		if (turn >= 0)
+			return path.get(turn);
+		
+		turn = -turn - 1;
+		Position from = path.get(turn - 1);
+		Position to = path.get(turn);
+		int along = step - steps[turn - 1];
+		
+		return positions.get(
+			from.x + Integer.signum(to.x - from.x) * along,
+			from.y + Integer.signum(to.y - from.y) * along
+		);
+	}
+	
+	private int getLastStep()
+	{
+		return steps[steps.length - 1];
+	}
+	
 	public void step(Unit unit)
 	{
+		if (positions == null)
+			positions = unit.getMap().getPositionCache();
+		
+		if (path == null)
+		{
+			if (!request.isDelivered())
+				return;
+			
+			List<Position> found = request.getPath();
+			
+			if (found == null || found.isEmpty())
+			{
+				request = null;
+				unit.completeTask(this);
+				return;
+			}
+			
+			setPath(PathSmoother.smooth(request.getCourse(), found));
+			request = null;
+		}
+		
 		if (unit.getPosition().equals(destination))
 		{
-			unit.resetAnimationFrame();
-			unit.completeTask(this);
+			complete(unit);
 			return;
 		}
 		
-		Position next = path.get(pathIndex++);
+		Replanner replanner = Game.game.getReplanner();
+		
+		if (replanner.getChangeCount() != changeCount)
+		{
+			changeCount = replanner.getChangeCount();
+			
+			if (isBlockedAhead(unit.getMap()) && !replan(unit, replanner))
+			{
+				// Destination has been cut off
+				complete(unit);
+				return;
+			}
+		}
+		
 		Position current = unit.getPosition();
+		Position target = getLookahead(current);
+		Position planned = steering.next(unit, target, getRoute(current));
+		
+		if (planned != null)
+		{
+			if (planned.equals(current))
+				return;
+			
+			unit.assignNext(new SteerTask(planned));
+			unit.step();
+			return;
+		}
+		
+		Position next = getStep(pathIndex++);
 		Direction dir = Direction.getMoveDirection(current, next);
 		
 		if (unit.getMap().canMoveUnit(current, dir) || next.equals(destination))
@@ -47,7 +192,7 @@ public class PathTask extends Task
 			while (!unit.getMap().canMoveUnit(prevNext, dir) && !next.equals(destination))
 			{
 				prevNext = next;
-				next = path.get(pathIndex++);
+				next = getStep(pathIndex++);
 				dir = Direction.getMoveDirection(prevNext, next);
 			}
 			
@@ -55,4 +200,169 @@ public class PathTask extends Task
 			unit.step();
 		}
 	}
+	
+	/**
+	 * Catches up with the unit if it's got further along the path, or
+	 * alongside it, and gets the position on the path to plan its next
+	 * moves toward.
+	 */
+	private Position getLookahead(Position current)
+	{
+		int last = getLastStep();
+		int end = Math.min(pathIndex - 1 + CooperativeAStar.WINDOW, last);
+		
+		for (int i = end; i >= pathIndex; --i)
+		{
+			Position step = getStep(i);
+			
+			if (step.equals(current))
+			{
+				pathIndex = i + 1;
+				break;
+			}
+			
+			if (i > pathIndex && step.getDistance(current) < 1.5)
+			{
+				pathIndex = i;
+				break;
+			}
+		}
+		
+		return getStep(Math.min(pathIndex - 1 + CooperativeAStar.WINDOW, last));
+	}
+	
+	/**
+	 * Gets the path from current up to the lookahead, or null if the unit
+	 * isn't on the path. The list is reused from one step to the next.
+	 */
+	private List<Position> getRoute(Position current)
+	{
+		if (!getStep(pathIndex - 1).equals(current))
+			return null;
+		
+		int end = Math.min(pathIndex - 1 + CooperativeAStar.WINDOW, getLastStep());
+		route.clear();
+		
+		for (int i = pathIndex - 1; i <= end; ++i)
+			route.add(getStep(i));
+		
+		return route;
+	}
+	
+	private void complete(Unit unit)
+	{
+		steering.release();
+		release();
+		unit.resetAnimationFrame();
+		unit.completeTask(this);
+	}
+	
+	/**
+	 * Returns true if anything's in the way on the rest of the path,
+	 * including the position the unit was last headed for.
+	 */
+	private boolean isBlockedAhead(LayeredMap map)
+	{
+		for (int i = Math.max(pathIndex - 1, 1); i <= getLastStep(); ++i)
+			if (map.isBlocked(getStep(i)))
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Finds a new path from where unit is to the destination, returning
+	 * false if there isn't one.
+	 */
+	private boolean replan(Unit unit, Replanner replanner)
+	{
+		LayeredMap map = unit.getMap();
+		
+		if (map.isBlocked(destination) || !map.isReachable(unit.getPosition(), destination))
+			return false;
+		
+		if (planner == null)
+		{
+			planner = replanner.plan(unit, destination, getBounds());
+			keep(replanner, planner);
+		}
+		
+		List<Position> repaired = planner.getPath(unit.getPosition());
+		
+		if (repaired == null && !planner.isWholeMap())
+		{
+			/*
+			 * The way round leaves the planner's window, so search the
+			 * whole map, just this once.
+			 */
+			replanner.release(planner);
+			planner = null;
+			repaired = replanner.plan(unit, destination, null).getPath(unit.getPosition());
+		}
+		
+		if (repaired == null)
+			return false;
+		
+		setRoute(PathSmoother.smooth(map.getTerrainCostMap(), repaired));
+		return true;
+	}
+	
+	/**
+	 * Offers the planner to the Replanner to be kept up to date for later
+	 * repairs, and drops it after this search if it isn't kept. Which
+	 * planners are kept depends on the order they're offered in, so that's
+	 * put off until units are done being stepped.
+	 */
+	private void keep(final Replanner replanner, final DStarLite kept)
+	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					keep(replanner, kept);
+				}
+			});
+			return;
+		}
+		
+		// Dropped already
+		if (planner != kept)
+			return;
+		
+		if (!replanner.keep(kept))
+			planner = null;
+	}
+	
+	/**
+	 * Gets the smallest Region holding the path.
+	 */
+	private Region getBounds()
+	{
+		Region bounds = new Region(path.get(path.size() - 1));
+		
+		for (int i = 0; i < path.size() - 1; ++i)
+			bounds = bounds.getUnion(new Region(path.get(i), path.get(i + 1)));
+		
+		return bounds;
+	}
+	
+	private void release()
+	{
+		if (planner != null)
+		{
+			Game.game.getReplanner().release(planner);
+			planner = null;
+		}
+	}
+	
+	public void cancel(Unit unit)
+	{
+		if (request != null)
+			request.cancel();
+		
+		steering.release();
+		release();
+	}
 }
@@ -7,16 +7,18 @@ import com.robbix.utils.Filter;
 public class SelfDestructAttackTask extends Task
 {
 	private Filter<Unit> targetFilter;
+	private TargetScheduler scheduler;
 	
 	public SelfDestructAttackTask(Filter<Unit> targetFilter)
 	{
 		super(true, Task.TURRET_ONLY);
 		this.targetFilter = targetFilter;
+		this.scheduler = new TargetScheduler(targetFilter);
 	}
 	
 	public void step(Unit unit)
 	{
-		Unit target = unit.getMap().findClosest(unit, targetFilter, 1, unit.getType().getAttackRange());
+		Unit target = scheduler.findTarget(unit, unit.getType().getAttackRange());
 		
 		if (target != null)
 		{
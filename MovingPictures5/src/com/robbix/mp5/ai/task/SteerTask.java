@@ -30,7 +30,7 @@ public class SteerTask extends Task
 		unit.setActivity(MOVE);
 		Position pos = unit.getPosition();
 		Direction dir = Direction.getMoveDirection(pos, destination);
-		Position next = dir.apply(pos);
+		Position next = unit.getMap().getPositionCache().shift(pos, dir);
 		
 		if (unit.getMap().canMoveUnit(pos, dir))
 		{
@@ -51,7 +51,7 @@ public class SteerTask extends Task
 			{
 				for (Direction alt : Direction.getAlternatives(dir))
 				{
-					next = alt.apply(pos);
+					next = unit.getMap().getPositionCache().shift(pos, alt);
 					Position prev = unit.getPreviousPosition();
 					
 					if (unit.getMap().canMoveUnit(pos, alt) && !next.equals(prev))
@@ -63,6 +63,17 @@ public class SteerTask extends Task
 				}
 			}
 			
+			/*
+			 * Don't wait for a wall or structure to move. Leave it to
+			 * whatever gave the order to find another way.
+			 */
+			if (unit.getMap().isBlocked(destination))
+			{
+				unit.resetAnimationFrame();
+				unit.completeTask(this);
+				return;
+			}
+			
 			if (unit.getDirection() != dir)
 			{
 				unit.assignNext(new RotateTask(dir));
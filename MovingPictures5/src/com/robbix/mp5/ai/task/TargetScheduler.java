@@ -0,0 +1,83 @@
+package com.robbix.mp5.ai.task;
+
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Filter;
+
+/**
+ * Decides when a turret or guard post looks for a target, so they don't
+ * all search the map every tick.
+ *
+ * A unit keeps its target for as long as it's alive, still accepted by
+ * the filter and in range as Game.doAttack() measures it, from origin to
+ * origin, and looks for another once it's lost it, or when a unit comes
+ * into one of the UnitIndex's buckets around it, in case that one's
+ * closer. A unit without a target looks again once every SCAN_INTERVAL
+ * ticks, staggered by serial so that only a few units look in any one
+ * tick, or straight away when something comes into those buckets.
+ */
+class TargetScheduler
+{
+	/**
+	 * How many ticks a unit without a target waits between looks, unless
+	 * something comes near.
+	 */
+	public static final int SCAN_INTERVAL = 8;
+	
+	private Filter<Unit> filter;
+	private Unit target;
+	private long stamp = -1;
+	private int age;
+	
+	public TargetScheduler(Filter<Unit> filter)
+	{
+		this.filter = filter;
+	}
+	
+	/**
+	 * Gets the target unit should attack this tick, or null if it hasn't
+	 * got one. Called once a tick.
+	 */
+	public Unit findTarget(Unit unit, double range)
+	{
+		age++;
+		
+		LayeredMap map = unit.getMap();
+		long current = map.getUnitStamp(unit, filter, range);
+		
+		if (target != null && current == stamp && isValid(map, unit, target, range))
+			return target;
+		
+		/*
+		 * A target that's just been lost is looked for again straight away.
+		 */
+		if (target == null && current == stamp
+		 && (age + unit.getSerial()) % SCAN_INTERVAL != 0)
+			return null;
+		
+		stamp = current;
+		target = map.findClosest(unit, filter, 1, range);
+		return target;
+	}
+	
+	/**
+	 * Gets the target last found, which may have been lost since.
+	 */
+	public Unit getTarget()
+	{
+		return target;
+	}
+	
+	private boolean isValid(LayeredMap map, Unit unit, Unit target, double range)
+	{
+		if (target.isDead() || target.isDismissed() || !map.contains(target))
+			return false;
+		
+		if (!filter.accept(target))
+			return false;
+		
+		double distance = unit.getPosition().getDistance(target.getPosition());
+		
+		return distance >= 1 && distance <= range;
+	}
+}
@@ -115,4 +115,12 @@ public abstract class Task
 	}
 	
 	public abstract void step(Unit unit);
+	
+	/**
+	 * Called when this Task is taken off a Unit's task list before it is
+	 * complete, so it can let go of anything it was waiting on.
+	 */
+	public void cancel(Unit unit)
+	{
+	}
 }
@@ -7,17 +7,26 @@ import com.robbix.utils.Utils;
 
 public class TurretTask extends Task
 {
-	private Filter<Unit> targetFilter;
+	private TargetScheduler scheduler;
 	
 	public TurretTask(Filter<Unit> targetFilter)
 	{
 		super(true, Task.TURRET_ONLY);
-		this.targetFilter = targetFilter;
+		this.scheduler = new TargetScheduler(targetFilter);
 	}
 	
 	public void step(Unit unit)
 	{
-		Unit target = unit.getMap().findClosest(unit, targetFilter, 1, unit.getType().getAttackRange());
+		Unit target;
+		
+		/*
+		 * No use looking for a target that can't be fired at yet, so while
+		 * charging, the last one found stands in for it.
+		 */
+		if (unit.getCharge() < unit.getType().getWeaponChargeCost())
+			target = scheduler.getTarget();
+		else
+			target = scheduler.findTarget(unit, unit.getType().getAttackRange());
 		
 		if (target != null)
 		{
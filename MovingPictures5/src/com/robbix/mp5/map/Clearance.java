@@ -0,0 +1,345 @@
+package com.robbix.mp5.map;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.IntGrid;
+import com.robbix.utils.Position;
+import com.robbix.utils.Region;
+
+/**
+ * Holds the clearance of each position of a CostMap - how many steps it
+ * is, in any of the 8 directions, to the nearest impassable position or
+ * the edge of the map. Impassable positions have a clearance of 0, and
+ * the passable ones next to them 1. A position with clearance c is in the
+ * middle of an open square 2c - 1 positions across.
+ *
+ * The clearances are worked out in two passes over the map, and then kept
+ * up to date by costChanged(), which LayeredMap calls as the terrain
+ * changes. Closing a position only lowers the clearances around it, out
+ * to where they're already low enough. Opening one only raises those that
+ * were measured to it, which are all in a square around it, and just that
+ * square is worked out again. If the CostMap is changed without notice,
+ * the clearances are worked out from scratch on the next query.
+ *
+ * Also keeps a copy of the CostMap with a penalty added to the positions
+ * close to impassable ones, so that units that jam easily, like trucks,
+ * can be routed down the middle of passages.
+ */
+public class Clearance
+{
+	/**
+	 * Penalties added to the cost of positions with clearances of 1, 2 and
+	 * so on, over what they cost in the terrain.
+	 */
+	private static final double[] PENALTIES = { 0.5, 0.25 };
+	
+	private CostMap course;
+	private int w, h;
+	private IntGrid clearances;
+	private int version;
+	
+	private CostMap routes;
+	
+	public Clearance(CostMap course)
+	{
+		this.course = course;
+		this.w = course.w;
+		this.h = course.h;
+		this.clearances = new IntGrid(w, h);
+		this.routes = course.copy();
+		rebuild();
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	/**
+	 * Gets the number of steps from x, y to the nearest impassable position
+	 * or the edge of the map, or 0 if x, y is impassable.
+	 */
+	public synchronized int getClearance(int x, int y)
+	{
+		validate();
+		
+		return clearances.getAt(x + y * w);
+	}
+	
+	public int getClearance(Position pos)
+	{
+		return getClearance(pos.x, pos.y);
+	}
+	
+	/**
+	 * Returns true if every position in region is passable. Regions small
+	 * enough to fit in the open square around their middle are answered
+	 * from that one position.
+	 */
+	public synchronized boolean isOpen(Region region)
+	{
+		validate();
+		
+		int mx = region.x + (region.w - 1) / 2;
+		int my = region.y + (region.h - 1) / 2;
+		
+		if (clearances.getAt(mx + my * w) > Math.max(region.w, region.h) / 2)
+			return true;
+		
+		for (int y = region.y; y < region.y + region.h; ++y)
+		for (int x = region.x; x < region.x + region.w; ++x)
+			if (clearances.getAt(x + y * w) == 0)
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Gets a CostMap like the terrain's, but with a penalty for being
+	 * close to something impassable. It's kept up to date along with the
+	 * clearances, and shouldn't be changed.
+	 */
+	public synchronized CostMap getRouteCostMap()
+	{
+		validate();
+		
+		return routes;
+	}
+	
+	/**
+	 * Updates the clearances after the cost of pos has changed.
+	 */
+	public synchronized void costChanged(Position pos)
+	{
+		if (course.getVersion() != version + 1)
+		{
+			rebuild();
+			return;
+		}
+		
+		int cell = pos.x + pos.y * w;
+		boolean open = !Double.isInfinite(course.get(pos.x, pos.y));
+		boolean wasOpen = clearances.getAt(cell) != 0;
+		
+		if (open && !wasOpen)
+		{
+			opened(pos.x, pos.y);
+		}
+		else if (!open && wasOpen)
+		{
+			closed(pos.x, pos.y);
+		}
+		else
+		{
+			updateRoute(pos.x, pos.y);
+		}
+		
+		version = course.getVersion();
+	}
+	
+	/**
+	 * Lowers the clearances of the positions around the newly impassable
+	 * position at x, y. Clearances never differ by more than the distance
+	 * between their positions, so once none in a ring around x, y is
+	 * lowered, none further out can be.
+	 */
+	private void closed(int x, int y)
+	{
+		clearances.setAt(x + y * w, 0);
+		updateRoute(x, y);
+		
+		for (int r = 1; ; ++r)
+		{
+			boolean lowered = false;
+			
+			for (int ry = y - r; ry <= y + r; ++ry)
+			{
+				if (ry < 0 || ry >= h)
+					continue;
+				
+				int step = ry == y - r || ry == y + r ? 1 : 2 * r;
+				
+				for (int rx = x - r; rx <= x + r; rx += step)
+				{
+					if (rx < 0 || rx >= w)
+						continue;
+					
+					int cell = rx + ry * w;
+					
+					if (clearances.getAt(cell) > r)
+					{
+						clearances.setAt(cell, r);
+						updateRoute(rx, ry);
+						lowered = true;
+					}
+				}
+			}
+			
+			if (!lowered)
+				return;
+		}
+	}
+	
+	/**
+	 * Raises the clearances that were measured to the newly passable
+	 * position at x, y. Those are the positions in the rings around it
+	 * whose clearance is their ring's distance, out to the first ring with
+	 * none. The square inside that ring is worked out again from the ring's
+	 * clearances, which haven't changed.
+	 */
+	private void opened(int x, int y)
+	{
+		int r = 1;
+		
+		while (ringHasClearance(x, y, r))
+			r++;
+		
+		int x0 = Math.max(x - r, 0);
+		int y0 = Math.max(y - r, 0);
+		int x1 = Math.min(x + r, w - 1);
+		int y1 = Math.min(y + r, h - 1);
+		
+		for (int sy = y0 + (y0 == y - r ? 1 : 0); sy <= y1 - (y1 == y + r ? 1 : 0); ++sy)
+		for (int sx = x0 + (x0 == x - r ? 1 : 0); sx <= x1 - (x1 == x + r ? 1 : 0); ++sx)
+		{
+			int cell = sx + sy * w;
+			
+			if (!Double.isInfinite(course.get(sx, sy)))
+				clearances.setAt(cell, Integer.MAX_VALUE);
+		}
+		
+		transform(x0, y0, x1, y1);
+		
+		for (int sy = y0; sy <= y1; ++sy)
+		for (int sx = x0; sx <= x1; ++sx)
+			updateRoute(sx, sy);
+	}
+	
+	/**
+	 * Returns true if any position r steps from x, y has a clearance of r.
+	 */
+	private boolean ringHasClearance(int x, int y, int r)
+	{
+		for (int ry = Math.max(y - r, 0); ry <= Math.min(y + r, h - 1); ++ry)
+		{
+			int step = ry == y - r || ry == y + r ? 1 : 2 * r;
+			
+			for (int rx = x - r; rx <= x + r; rx += step)
+				if (rx >= 0 && rx < w && clearances.getAt(rx + ry * w) == r)
+					return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Works out the clearances in the box from x0, y0 to x1, y1, from the
+	 * impassable positions and the clearances already set in it. Positions
+	 * to work out should be set to Integer.MAX_VALUE first. A pass forward
+	 * takes the least over the neighbours before each position, and a pass
+	 * back over the neighbours after it, plus one step.
+	 */
+	private void transform(int x0, int y0, int x1, int y1)
+	{
+		for (int y = y0; y <= y1; ++y)
+		for (int x = x0; x <= x1; ++x)
+		{
+			int cell = x + y * w;
+			int c = clearances.getAt(cell);
+			
+			if (c == 0)
+				continue;
+			
+			c = Math.min(c, edge(x, y));
+			
+			if (x > x0)
+				c = Math.min(c, clearances.getAt(cell - 1) + 1);
+			
+			if (y > y0)
+			{
+				if (x > x0)
+					c = Math.min(c, clearances.getAt(cell - w - 1) + 1);
+				
+				c = Math.min(c, clearances.getAt(cell - w) + 1);
+				
+				if (x < x1)
+					c = Math.min(c, clearances.getAt(cell - w + 1) + 1);
+			}
+			
+			clearances.setAt(cell, c);
+		}
+		
+		for (int y = y1; y >= y0; --y)
+		for (int x = x1; x >= x0; --x)
+		{
+			int cell = x + y * w;
+			int c = clearances.getAt(cell);
+			
+			if (c == 0)
+				continue;
+			
+			if (x < x1)
+				c = Math.min(c, clearances.getAt(cell + 1) + 1);
+			
+			if (y < y1)
+			{
+				if (x < x1)
+					c = Math.min(c, clearances.getAt(cell + w + 1) + 1);
+				
+				c = Math.min(c, clearances.getAt(cell + w) + 1);
+				
+				if (x > x0)
+					c = Math.min(c, clearances.getAt(cell + w - 1) + 1);
+			}
+			
+			clearances.setAt(cell, c);
+		}
+	}
+	
+	/**
+	 * The number of steps from x, y off the edge of the map.
+	 */
+	private int edge(int x, int y)
+	{
+		return Math.min(Math.min(x + 1, w - x), Math.min(y + 1, h - y));
+	}
+	
+	private void updateRoute(int x, int y)
+	{
+		int cell = x + y * w;
+		double cost = course.getAt(cell);
+		int c = clearances.getAt(cell);
+		
+		if (c > 0 && c <= PENALTIES.length)
+			cost += PENALTIES[c - 1];
+		
+		if (routes.getAt(cell) != cost)
+			routes.setAt(cell, cost);
+	}
+	
+	private void validate()
+	{
+		if (version != course.getVersion())
+			rebuild();
+	}
+	
+	/**
+	 * Works out every clearance from scratch.
+	 */
+	private void rebuild()
+	{
+		for (int cell = 0; cell < w * h; ++cell)
+		{
+			clearances.setAt(cell, Double.isInfinite(course.getAt(cell))
+				? 0
+				: Integer.MAX_VALUE);
+		}
+		
+		transform(0, 0, w - 1, h - 1);
+		
+		for (int y = 0; y < h; ++y)
+		for (int x = 0; x < w; ++x)
+			updateRoute(x, y);
+		
+		version = course.getVersion();
+	}
+}
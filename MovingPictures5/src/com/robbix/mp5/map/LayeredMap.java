@@ -7,11 +7,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import com.robbix.mp5.RegionStepper;
+import com.robbix.mp5.player.Player;
 import com.robbix.mp5.ui.DisplayPanel;
 import com.robbix.mp5.ui.obj.GeyserDisplayObject;
 import com.robbix.mp5.ui.obj.MagmaVentDisplayObject;
@@ -22,14 +23,19 @@ import com.robbix.mp5.ui.obj.UnitDisplayObject;
 import com.robbix.mp5.unit.Footprint;
 import com.robbix.mp5.unit.HealthBracket;
 import com.robbix.mp5.unit.Unit;
+import com.robbix.mp5.unit.UnitFactory;
+import com.robbix.utils.ByteGrid;
 import com.robbix.utils.CostMap;
 import com.robbix.utils.Direction;
 import com.robbix.utils.Filter;
-import com.robbix.utils.Grid;
+import com.robbix.utils.IntGrid;
 import com.robbix.utils.Neighbors;
 import com.robbix.utils.Position;
+import com.robbix.utils.PositionCache;
 import com.robbix.utils.RIterator;
 import com.robbix.utils.Region;
+import com.robbix.utils.collect.IntIterator;
+import com.robbix.utils.collect.IntMap;
 
 // TODO: Reassess defensive bounds checking (add checked exception?)
 public class LayeredMap
@@ -44,15 +50,19 @@ public class LayeredMap
 		int h = map.costMap.h;
 		
 		map.tileSet = tileSet;
-		map.grid = new Grid<Spot>(w, h);
-		map.sources = new HashSet<Position>();
-		map.units = new HashSet<Unit>();
+		map.occupants = new Unit[w * h];
+		map.reservants = new Unit[w * h];
+		map.fixtures = new ByteGrid(w, h);
+		map.fixtureHPs = new IntGrid(w, h);
+		map.tiles = new IntGrid(w, h);
+		map.ores = new Ore[w * h];
+		map.network = new TubeNetwork(w, h);
+		map.units = new IntMap<Unit>();
+		map.placed = new ArrayList<Unit>();
+		map.unitSnapshot = new ArrayList<Unit>();
 		map.deposits = new HashSet<Ore>();
 		map.bounds = new Region(0, 0, w, h);
-		
-		for (int x = 0; x < w; ++x)
-		for (int y = 0; y < h; ++y)
-			map.grid.set(x, y, new Spot());
+		map.positions = PositionCache.getInstance(w, h);
 		
 		BufferedReader reader = new BufferedReader(new FileReader(
 			new File(rootDir, mapName + ".txt")
@@ -65,13 +75,13 @@ public class LayeredMap
 				switch (line.charAt(x))
 				{
 				case 'w':
-					map.putWall(new Position(x, y));
+					map.putWall(map.positions.get(x, y));
 					break;
 				case 't':
-					map.putTube(new Position(x, y));
+					map.putTube(map.positions.get(x, y));
 					break;
 				case 'p':
-					map.grid.get(x, y).tileCode = tileSet.getPlainTile();
+					map.setTileCode(map.positions.index(x, y), tileSet.getPlainTile());
 					break;
 				default:
 					throw new IOException("invalid terrain");
@@ -79,48 +89,59 @@ public class LayeredMap
 		
 		reader.close();
 		
+		map.reachability = new Reachability(map.costMap);
+		map.clearance = new Clearance(map.costMap);
+		map.unitIndex = new UnitIndex(w, h);
+		
 		return map;
 	}
 	
 	private static final int WALL_MAX_HP = 500;
 	private static final int TUBE_MAX_HP = 2000;
 	
-	private static class Spot
-	{
-		public Unit occupant;
-		public Unit reservant;
-		public Fixture fixture;
-		public int fixtureHP;
-		public String tileCode;
-		public Ore deposit;
-		public boolean alive;
-		
-		public boolean isTube()
-		{
-			return fixture == Fixture.TUBE || (occupant != null &&
-			(occupant.isStructure() || occupant.getType().isGuardPostType()));
-		}
-		
-		public boolean isConnectionSource()
-		{
-			return occupant != null
-				&& occupant.isConnectionSource();
-		}
-	}
+	private static final Fixture[] FIXTURES = Fixture.values();
 	
-	private Grid<Spot> grid;
-	private Set<Position> sources;
-	private Set<Unit> units;
+	/*
+	 * What's at each position, in arrays and grids indexed by x + (y * w)
+	 * rather than an object per position. Fixtures are kept as their ordinal
+	 * plus one, or 0 for none, and tiles as their TileSet index.
+	 */
+	private Unit[] occupants;
+	private Unit[] reservants;
+	private ByteGrid fixtures;
+	private IntGrid fixtureHPs;
+	private IntGrid tiles;
+	private Ore[] ores;
+	
+	private TubeNetwork network;
+	
+	/**
+	 * The units on the map by serial, and the units placed in the order
+	 * they were placed, which is the order they're stepped in. Removed
+	 * units leave the map straight away, but are dismissed and left in
+	 * placed, to be dropped all at once when the next snapshot is taken, so
+	 * removing a unit doesn't shift the list.
+	 */
+	private IntMap<Unit> units;
+	private List<Unit> placed;
+	private int removedCount;
+	private List<Unit> unitSnapshot;
 	private Set<Ore> deposits;
 	private CostMap costMap;
+	private Reachability reachability;
+	private Clearance clearance;
+	private UnitIndex unitIndex;
 	private TileSet tileSet;
 	private Region bounds;
+	private PositionCache positions;
 	
 	private List<DisplayPanel> panels;
+	private TerrainListener.Helper terrainListeners;
 	
 	private LayeredMap()
 	{
 		panels = new LinkedList<DisplayPanel>();
+		terrainListeners = new TerrainListener.Helper();
 	}
 	
 	public void addDisplayPanel(DisplayPanel panel)
@@ -152,19 +173,57 @@ public class LayeredMap
 		}
 	}
 	
+	public void addTerrainListener(TerrainListener listener)
+	{
+		synchronized (terrainListeners)
+		{
+			terrainListeners.add(listener);
+		}
+	}
+	
+	public void removeTerrainListener(TerrainListener listener)
+	{
+		synchronized (terrainListeners)
+		{
+			terrainListeners.remove(listener);
+		}
+	}
+	
+	private void fireStructureChanged(Region region)
+	{
+		synchronized (terrainListeners)
+		{
+			terrainListeners.fireStructureChanged(region);
+		}
+	}
+	
+	private void fireCostChanged(Position pos)
+	{
+		if (reachability != null)
+			reachability.costChanged(pos);
+		
+		if (clearance != null)
+			clearance.costChanged(pos);
+		
+		synchronized (terrainListeners)
+		{
+			terrainListeners.fireCostChanged(pos);
+		}
+	}
+	
 	public int getWidth()
 	{
-		return grid.w;
+		return positions.w;
 	}
 	
 	public int getHeight()
 	{
-		return grid.h;
+		return positions.h;
 	}
 	
 	public Region getBounds()
 	{
-		return grid.getBounds();
+		return bounds;
 	}
 	
 	/**
@@ -186,14 +245,61 @@ public class LayeredMap
 		if (!bounds.contains(x, y))
 			return null;
 		
-		return grid.get(x, y).tileCode;
+		return tileSet.getTileCode(tiles.getAt(positions.index(x, y)));
+	}
+	
+	/**
+	 * Gets the TileSet index of the tile at x, y, or 0 if it's off the map.
+	 */
+	public int getTileIndex(int x, int y)
+	{
+		if (!bounds.contains(x, y))
+			return 0;
+		
+		return tiles.getAt(positions.index(x, y));
+	}
+	
+	private void setTileCode(int cell, String code)
+	{
+		tiles.setAt(cell, tileSet.getTileIndex(code));
+	}
+	
+	private Fixture getFixture(int cell)
+	{
+		int code = fixtures.getAt(cell);
+		
+		return code == 0 ? null : FIXTURES[code - 1];
+	}
+	
+	private void setFixture(int cell, Fixture fixture)
+	{
+		fixtures.setAt(cell, (byte) (fixture == null ? 0 : fixture.ordinal() + 1));
+	}
+	
+	/**
+	 * Returns true if cell has a tube on it, or a structure or guard post
+	 * standing on it, which tubes connect through.
+	 */
+	private boolean isTube(int cell)
+	{
+		Unit occupant = occupants[cell];
+		
+		return getFixture(cell) == Fixture.TUBE || (occupant != null &&
+		(occupant.isStructure() || occupant.getType().isGuardPostType()));
+	}
+	
+	private boolean isConnectionSource(int cell)
+	{
+		Unit occupant = occupants[cell];
+		
+		return occupant != null && occupant.isConnectionSource();
 	}
 	
 	public boolean canPlaceFixture(Fixture fixture, Position pos)
 	{
 		return bounds.contains(pos)
 			&& (canPlaceUnit(pos) || fixture.passable)
-			&& grid.get(pos).fixture == null;
+			&& fixtures.getAt(positions.index(pos)) == 0;
 	}
 	
 	public Set<Ore> getOres()
@@ -206,10 +312,10 @@ public class LayeredMap
 		if (! bounds.contains(pos))
 			return;
 		
-		if (grid.get(pos).deposit != null)
+		if (ores[positions.index(pos)] != null)
 			throw new IllegalStateException("deposit already set there");
 		
-		grid.get(pos).deposit = deposit;
+		ores[positions.index(pos)] = deposit;
 		deposit.setPosition(pos);
 		deposits.add(deposit);
 		
@@ -222,26 +328,26 @@ public class LayeredMap
 		if (! bounds.contains(pos))
 			return;
 		
-		Ore deposit = grid.get(pos).deposit;
+		Ore deposit = ores[positions.index(pos)];
 		
 		deposits.remove(deposit);
 		deposit.setPosition(null);
-		grid.get(pos).deposit = null;
+		ores[positions.index(pos)] = null;
 	}
 	
 	public Ore getOre(Position pos)
 	{
-		return bounds.contains(pos) ? grid.get(pos).deposit : null;
+		return bounds.contains(pos) ? ores[positions.index(pos)] : null;
 	}
 	
 	public boolean hasOre(Position pos)
 	{
-		return bounds.contains(pos) && grid.get(pos).deposit != null;
+		return bounds.contains(pos) && ores[positions.index(pos)] != null;
 	}
 	
 	public boolean canPutOre(Position pos)
 	{
-		return bounds.contains(pos) && grid.get(pos).deposit == null;
+		return bounds.contains(pos) && ores[positions.index(pos)] == null;
 	}
 	
 	public void putFixture(Fixture fixture, Position pos)
@@ -268,123 +374,176 @@ public class LayeredMap
 		throw new IllegalArgumentException("invalid fixture " + fixture);
 	}
 	
-	public void putWall(Position pos)
+	public void putWall(final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					putWall(pos);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
 		
-		if (spot.fixture != null)
+		if (fixtures.getAt(cell) != 0)
 			throw new IllegalStateException("fixture present " + pos);
 		
-		spot.fixture = Fixture.WALL;
-		spot.fixtureHP = WALL_MAX_HP;
-		spot.tileCode = tileSet.getWallTile(getWallNeighbors(pos));
+		setFixture(cell, Fixture.WALL);
+		fixtureHPs.setAt(cell, WALL_MAX_HP);
+		setTileCode(cell, tileSet.getWallTile(getWallNeighbors(pos)));
 		costMap.setInfinite(pos);
+		fireCostChanged(pos);
 		
-		Position n = pos.shift(+0, -1);
-		Position s = pos.shift(+0, +1);
-		Position w = pos.shift(-1, +0);
-		Position e = pos.shift(+1, +0);
+		Position n = positions.shift(pos, +0, -1);
+		Position s = positions.shift(pos, +0, +1);
+		Position w = positions.shift(pos, -1, +0);
+		Position e = positions.shift(pos, +1, +0);
 		
 		if (bounds.contains(n) && hasWall(n))
-			grid.get(n).tileCode = tileSet.getWallTile(getWallNeighbors(n));
+			setTileCode(positions.index(n), tileSet.getWallTile(getWallNeighbors(n)));
 		
 		if (bounds.contains(s) && hasWall(s))
-			grid.get(s).tileCode = tileSet.getWallTile(getWallNeighbors(s));
+			setTileCode(positions.index(s), tileSet.getWallTile(getWallNeighbors(s)));
 		
 		if (bounds.contains(w) && hasWall(w))
-			grid.get(w).tileCode = tileSet.getWallTile(getWallNeighbors(w));
+			setTileCode(positions.index(w), tileSet.getWallTile(getWallNeighbors(w)));
 		
 		if (bounds.contains(e) && hasWall(e))
-			grid.get(e).tileCode = tileSet.getWallTile(getWallNeighbors(e));
+			setTileCode(positions.index(e), tileSet.getWallTile(getWallNeighbors(e)));
 		
 		refreshPanel(new Region(pos).stretch(1));
 	}
 	
-	public void putTube(Position pos)
+	public void putTube(final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					putTube(pos);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
 		
-		if (spot.fixture != null)
+		if (fixtures.getAt(cell) != 0)
 			throw new IllegalStateException("fixture present " + pos);
 		
-		spot.fixture = Fixture.TUBE;
-		spot.fixtureHP = TUBE_MAX_HP;
-		spot.tileCode = tileSet.getTubeTile(getTubeNeighbors(pos));
+		setFixture(cell, Fixture.TUBE);
+		fixtureHPs.setAt(cell, TUBE_MAX_HP);
+		setTileCode(cell, tileSet.getTubeTile(getTubeNeighbors(pos)));
 		costMap.setZero(pos);
+		fireCostChanged(pos);
 		
-		spot.alive = false;
-		sources.remove(pos);
+		network.setSource(cell, false);
+		network.setTube(cell, true);
 		
-		for (Position adj : pos.get4Neighbors())
+		for (int d = 0; d < 8; d += 2)
 		{
-			if (bounds.contains(adj) && (hasTube(adj) || isOccupied(adj)))
+			int adjCell = positions.neighbor(cell, d);
+			
+			if (adjCell == -1)
+				continue;
+			
+			Position adj = positions.get(adjCell);
+			
+			if (hasTube(adj))
 			{
-				Unit occupant = getUnit(adj);
-				spot.alive |= occupant != null && occupant.carriesConnection() && occupant.isConnected();
-				spot.alive |= grid.get(adj).alive;
-				
-				if (hasTube(adj))
-				{
-					// Refresh tube tile for new neighbor
-					grid.get(adj).tileCode = tileSet.getTubeTile(getTubeNeighbors(adj));
-				}
+				// Refresh tube tile for new neighbor
+				setTileCode(adjCell, tileSet.getTubeTile(getTubeNeighbors(adj)));
 			}
 		}
 		
-		if (spot.alive)
-		{
-			branchConnections(pos);
-		}
-		
 		refreshPanel(new Region(pos).stretch(1));
 	}
 	
-	public void putGeyser(Position pos)
+	public void putGeyser(final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					putGeyser(pos);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
 		
-		if (spot.fixture != null)
+		if (fixtures.getAt(cell) != 0)
 			throw new IllegalStateException("fixture present " + pos);
 		
-		spot.fixture = Fixture.GEYSER;
+		setFixture(cell, Fixture.GEYSER);
 		costMap.setInfinite(pos);
+		fireCostChanged(pos);
 		
 		for (DisplayPanel panel : panels)
 			panel.addDisplayObject(new GeyserDisplayObject(pos));
 	}
 	
-	public void putMagmaVent(Position pos)
+	public void putMagmaVent(final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					putMagmaVent(pos);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
 		
-		if (spot.fixture != null)
+		if (fixtures.getAt(cell) != 0)
 			throw new IllegalStateException("fixture present " + pos);
 		
-		spot.fixture = Fixture.MAGMA;
+		setFixture(cell, Fixture.MAGMA);
 		costMap.setInfinite(pos);
+		fireCostChanged(pos);
 		
 		for (DisplayPanel panel : panels)
 			panel.addDisplayObject(new MagmaVentDisplayObject(pos));
 	}
 	
+	/**
+	 * Returns true if x, y is a connection source, or a tube or structure
+	 * joined to one by tubes and structures.
+	 */
 	public boolean isAlive(int x, int y)
 	{
 		if (!bounds.contains(x, y))
 			return false;
 		
-		return grid.get(x, y).alive;
+		int cell = positions.index(x, y);
+		
+		return isConnectionSource(cell) || network.isPowered(cell);
 	}
 	
 	public boolean isAlive(Position pos)
@@ -392,153 +551,132 @@ public class LayeredMap
 		return isAlive(pos.x, pos.y);
 	}
 	
-	private void assessConnections()
+	public boolean isBulldozed(Position pos)
 	{
-		for (int x = 0; x < getWidth(); ++x)
-		for (int y = 0; y < getHeight(); ++y)
-		{
-			grid.get(x, y).alive = grid.get(x, y).isConnectionSource();
-		}
+		if (!bounds.contains(pos))
+			return false;
 		
-		for (Position sourcePos : sources)
-		{
-			branchConnections(sourcePos);
-		}
+		return costMap.isFree(pos) && tileSet.isBulldozed(getTileCode(pos));
 	}
 	
-	private void branchConnections(Position pos)
+	public void bulldoze(final Position pos)
 	{
-		if (!bounds.contains(pos))
-			return;
-		
-		Set<Position> openSet = new HashSet<Position>();
-		openSet.add(pos);
-		
-		while (!openSet.isEmpty())
+		if (RegionStepper.isDeferring())
 		{
-			Iterator<Position> itr = openSet.iterator();
-			Position current = itr.next();
-			itr.remove();
-			
-			for (Position adj : current.get4Neighbors())
+			RegionStepper.defer(new Runnable()
 			{
-				if (!bounds.contains(adj))
-					continue;
-				
-				Spot neighborSpot = grid.get(adj);
-				
-				if (neighborSpot.isTube() && !neighborSpot.alive)
+				public void run()
 				{
-					neighborSpot.alive = true;
-					openSet.add(adj);
+					bulldoze(pos);
 				}
-			}
+			});
+			return;
 		}
-	}
-	
-	public boolean isBulldozed(Position pos)
-	{
-		if (!bounds.contains(pos))
-			return false;
 		
-		return costMap.isFree(pos) && tileSet.isBulldozed(grid.get(pos).tileCode);
-	}
-	
-	public void bulldoze(Position pos)
-	{
 		if (!bounds.contains(pos))
 			return;
 		
 		clearFixture(pos);
 		costMap.setZero(pos);
-		grid.get(pos).tileCode = tileSet.getBulldozedTile();
+		fireCostChanged(pos);
+		setTileCode(positions.index(pos), tileSet.getBulldozedTile());
 		refreshPanel(new Region(pos).stretch(1));
 	}
 	
-	public void clearFixture(Position pos)
+	public void clearFixture(final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					clearFixture(pos);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
-		spot.fixture = null;
-		spot.fixtureHP = 0;
+		int cell = positions.index(pos);
+		fixtures.setAt(cell, (byte) 0);
+		fixtureHPs.setAt(cell, 0);
+		network.setTube(cell, isTube(cell));
 		
 		Position adj;
-		adj = pos.shift(+0, -1);
+		adj = positions.shift(pos, +0, -1);
 		
 		if (bounds.contains(adj))
 		{
-			spot = grid.get(adj);
+			cell = positions.index(adj);
 			
 			if (hasWall(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putWall(adj);
 			}
 			else if (hasTube(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putTube(adj);
 			}
 		}
 
-		adj = pos.shift(+0, +1);
+		adj = positions.shift(pos, +0, +1);
 		
 		if (bounds.contains(adj))
 		{
-			spot = grid.get(adj);
+			cell = positions.index(adj);
 			
 			if (hasWall(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putWall(adj);
 			}
 			else if (hasTube(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putTube(adj);
 			}
 		}
 
-		adj = pos.shift(+1, +0);
+		adj = positions.shift(pos, +1, +0);
 		
 		if (bounds.contains(adj))
 		{
-			spot = grid.get(adj);
+			cell = positions.index(adj);
 			
 			if (hasWall(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putWall(adj);
 			}
 			else if (hasTube(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putTube(adj);
 			}
 		}
 
-		adj = pos.shift(-1, +0);
+		adj = positions.shift(pos, -1, +0);
 		
 		if (bounds.contains(adj))
 		{
-			spot = grid.get(adj);
+			cell = positions.index(adj);
 			
 			if (hasWall(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putWall(adj);
 			}
 			else if (hasTube(adj))
 			{
-				spot.fixture = null;
+				fixtures.setAt(cell, (byte) 0);
 				putTube(adj);
 			}
 		}
-		
-		spot.alive = false;
-		assessConnections();
 	}
 	
 	public boolean hasFixture(Position pos)
@@ -546,7 +684,7 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return false;
 		
-		return grid.get(pos).fixture != null;
+		return fixtures.getAt(positions.index(pos)) != 0;
 	}
 	
 	public boolean hasWall(Position pos)
@@ -554,7 +692,7 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return false;
 		
-		return grid.get(pos).fixture == Fixture.WALL;
+		return getFixture(positions.index(pos)) == Fixture.WALL;
 	}
 	
 	public boolean hasTube(int x, int y)
@@ -562,7 +700,7 @@ public class LayeredMap
 		if (!bounds.contains(x, y))
 			return false;
 		
-		return grid.get(x, y).fixture == Fixture.TUBE;
+		return getFixture(positions.index(x, y)) == Fixture.TUBE;
 	}
 	
 	public boolean hasTube(Position pos)
@@ -575,7 +713,7 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return false;
 		
-		return grid.get(pos).fixture == Fixture.GEYSER;
+		return getFixture(positions.index(pos)) == Fixture.GEYSER;
 	}
 	
 	public boolean hasMagmaVent(Position pos)
@@ -583,7 +721,7 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return false;
 		
-		return grid.get(pos).fixture == Fixture.MAGMA;
+		return getFixture(positions.index(pos)) == Fixture.MAGMA;
 	}
 	
 	public int getFixtureHP(Position pos)
@@ -591,45 +729,58 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return 0;
 		
-		Spot spot = grid.get(pos);
+		Fixture fixture = getFixture(positions.index(pos));
 		
-		if (!(spot.fixture == Fixture.TUBE || spot.fixture == Fixture.WALL))
+		if (!(fixture == Fixture.TUBE || fixture == Fixture.WALL))
 			throw new IllegalStateException("fixture doesn't have hp");
 		
-		return spot.fixtureHP;
+		return fixtureHPs.getAt(positions.index(pos));
 	}
 	
-	public void setFixtureHP(Position pos, int hp)
+	public void setFixtureHP(final Position pos, final int hp)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					setFixtureHP(pos, hp);
+				}
+			});
+			return;
+		}
+		
 		if (!bounds.contains(pos))
 			return;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
+		Fixture fixture = getFixture(cell);
 		
-		if (!(spot.fixture == Fixture.TUBE || spot.fixture == Fixture.WALL))
+		if (!(fixture == Fixture.TUBE || fixture == Fixture.WALL))
 			throw new IllegalStateException("fixture doesn't have hp");
 		
-		if (spot.fixture == Fixture.WALL)
+		if (fixture == Fixture.WALL)
 		{
 			double hpFactor = hp / (double) WALL_MAX_HP;
-			String[] tileCodeParts = spot.tileCode.split("/");
+			String[] tileCodeParts = tileSet.getTileCode(tiles.getAt(cell)).split("/");
 			String neihborsString = tileCodeParts[tileCodeParts.length - 1];
 			Neighbors neighbors = Neighbors.valueOf(neihborsString);
 			HealthBracket health = HealthBracket.getBracket(hpFactor);
-			spot.tileCode = tileSet.getWallTile(neighbors, health);
+			setTileCode(cell, tileSet.getWallTile(neighbors, health));
 		}
 		
-		spot.fixtureHP = hp;
+		fixtureHPs.setAt(cell, hp);
 	}
 	
 	public Neighbors getWallNeighbors(Position pos)
 	{
 		Neighbors neighbors = Neighbors.NONE;
 		
-		Position n = pos.shift(+0, -1);
-		Position s = pos.shift(+0, +1);
-		Position w = pos.shift(-1, +0);
-		Position e = pos.shift(+1, +0);
+		Position n = positions.shift(pos, +0, -1);
+		Position s = positions.shift(pos, +0, +1);
+		Position w = positions.shift(pos, -1, +0);
+		Position e = positions.shift(pos, +1, +0);
 		
 		if (bounds.contains(n) && hasWall(n))
 			neighbors = neighbors.add(Neighbors.N);
@@ -650,10 +801,10 @@ public class LayeredMap
 	{
 		Neighbors neighbors = Neighbors.NONE;
 		
-		Position n = pos.shift(+0, -1);
-		Position s = pos.shift(+0, +1);
-		Position w = pos.shift(-1, +0);
-		Position e = pos.shift(+1, +0);
+		Position n = positions.shift(pos, +0, -1);
+		Position s = positions.shift(pos, +0, +1);
+		Position w = positions.shift(pos, -1, +0);
+		Position e = positions.shift(pos, +1, +0);
 		
 		if (bounds.contains(n) && (hasTube(n) || structureOccupies(n)))
 			neighbors = neighbors.add(Neighbors.N);
@@ -675,26 +826,96 @@ public class LayeredMap
 		return costMap;
 	}
 	
+	public Reachability getReachability()
+	{
+		return reachability;
+	}
+	
+	/**
+	 * Gets the shared Positions for this map's size.
+	 */
+	public PositionCache getPositionCache()
+	{
+		return positions;
+	}
+	
+	/**
+	 * Gets the index of the units on this map by owner and position.
+	 */
+	public UnitIndex getUnitIndex()
+	{
+		return unitIndex;
+	}
+	
+	/**
+	 * Gets how far each position is from anything impassable, and the
+	 * CostMap trucks are routed over to keep them away from walls.
+	 */
+	public Clearance getClearance()
+	{
+		return clearance;
+	}
+	
+	/**
+	 * Returns true if a ground unit could get from start to end. Answered
+	 * without searching.
+	 */
+	public boolean isReachable(Position start, Position end)
+	{
+		return reachability.isReachable(start, end);
+	}
+	
+	/**
+	 * Returns true if ground units can't go through x, y, because the
+	 * terrain is impassable or there's a structure there.
+	 */
+	public boolean isBlocked(int x, int y)
+	{
+		if (Double.isInfinite(costMap.get(x, y)))
+			return true;
+		
+		Unit occupant = occupants[positions.index(x, y)];
+		
+		return occupant != null
+			&& (occupant.isStructure() || occupant.getType().isGuardPostType());
+	}
+	
+	public boolean isBlocked(Position pos)
+	{
+		return isBlocked(pos.x, pos.y);
+	}
+	
 	public boolean canPlaceUnit(Position pos)
 	{
 		if (!bounds.contains(pos))
 			return false;
 		
-		Spot spot = grid.get(pos);
+		int cell = positions.index(pos);
 		
 		return !costMap.isInfinite(pos)
-			&& spot.occupant == null
-			&& spot.reservant == null;
+			&& occupants[cell] == null
+			&& reservants[cell] == null;
 	}
 	
+	/**
+	 * Returns true if a unit with the given Footprint can be put at pos.
+	 * Whether the terrain is open there is answered from the Clearance,
+	 * and only then is each position checked for units.
+	 */
 	public boolean canPlaceUnit(Position pos, Footprint fp)
 	{
-		if (!bounds.contains(fp.getInnerRegion().move(pos)))
+		Region region = fp.getInnerRegion().move(pos);
+		
+		if (!bounds.contains(region) || !clearance.isOpen(region))
 			return false;
 		
-		for (Position occupied : fp.getInnerRegion().iterator(pos))
-			if (!canPlaceUnit(occupied))
+		for (Position occupied : region)
+		{
+			int cell = positions.index(occupied);
+			
+			if (occupants[cell] != null || reservants[cell] != null)
 				return false;
+		}
 		
 		return true;
 	}
@@ -704,7 +925,7 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return false;
 		
-		pos = pos.shift(1, 0);
+		pos = positions.shift(pos, 1, 0);
 		
 		if (!bounds.contains(pos))
 			return false;
@@ -719,20 +940,47 @@ public class LayeredMap
 			return false;
 		
 		for (Position occupied : fp.iterator(pos))
-			for (Position neighbor : occupied.get4Neighbors())
-				if (bounds.contains(neighbor) && isAlive(neighbor))
-					return true;
+			if (isNextToAlive(occupied))
+				return true;
 		
 		for (Position relativeTubePos : fp.getTubePositions())
-			for (Position neighbor : relativeTubePos.shift(pos.x, pos.y).get4Neighbors())
-				if (bounds.contains(neighbor) && isAlive(neighbor))
-					return true;
+			if (isNextToAlive(positions.shift(relativeTubePos, pos.x, pos.y)))
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Returns true if any of the four positions next to pos are alive.
+	 */
+	private boolean isNextToAlive(Position pos)
+	{
+		for (int d = 0; d < 8; d += 2)
+		{
+			int x = pos.x + PositionCache.getDX(d);
+			int y = pos.y + PositionCache.getDY(d);
+			
+			if (positions.contains(x, y) && isAlive(positions.get(x, y)))
+				return true;
+		}
 		
 		return false;
 	}
 	
-	public void putUnit(Unit unit, Position pos)
+	public void putUnit(final Unit unit, final Position pos)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					putUnit(unit, pos);
+				}
+			});
+			return;
+		}
+		
 		if (!canPlaceUnit(pos, unit.getFootprint()))
 			throw new IllegalStateException("can't place unit " + pos);
 		
@@ -744,19 +992,19 @@ public class LayeredMap
 		
 		for (Position occupied : unit.getFootprint().iterator(pos))
 		{
-			Spot spot = grid.get(occupied);
-			spot.occupant = unit;
+			int cell = positions.index(occupied);
+			occupants[cell] = unit;
 			
 			if (unit.getFootprint() != Footprint.VEHICLE)
 			{
-				spot.alive = false;
-				
-				if (unit.isConnectionSource())
-					sources.add(occupied);
+				network.setSource(cell, unit.isConnectionSource());
+				network.setTube(cell, isTube(cell));
 			}
 		}
 		
-		units.add(unit);
+		units.put(unit.getSerial(), unit);
+		placed.add(unit);
+		unitIndex.add(unit);
 		
 		if (unit.isStructure() || unit.getType().isGuardPostType())
 		{
@@ -775,21 +1023,23 @@ public class LayeredMap
 			
 			for (Position tubePos0 : unit.getFootprint().getTubePositions())
 			{
-				Position tubePos = tubePos0.shift(pos.x, pos.y);
+				Position tubePos = positions.shift(tubePos0, pos.x, pos.y);
 				
 				if (!bounds.contains(tubePos))
 					continue;
 				
 				boolean occupied = isOccupied(tubePos)
-					&& (grid.get(tubePos).occupant.isStructure()
-				|| grid.get(tubePos).occupant.getType().isGuardPostType());
+					&& (occupants[positions.index(tubePos)].isStructure()
+				|| occupants[positions.index(tubePos)].getType().isGuardPostType());
 				
 				if (!occupied && !hasFixture(tubePos))
 					putTube(tubePos);
 			}
 		}
 		
-		assessConnections();
+		if (unit.getFootprint() != Footprint.VEHICLE)
+			fireStructureChanged(unit.getFootprint().getInnerRegion().move(pos));
+		
 		boolean mine = unit.isMine();
 		
 		for (DisplayPanel panel : panels)
@@ -804,24 +1054,24 @@ public class LayeredMap
 	
 	public boolean isOccupied(Position pos)
 	{
-		return grid.get(pos).occupant != null;
+		return occupants[positions.index(pos)] != null;
 	}
 	
 	public boolean isReserved(Position pos)
 	{
-		return grid.get(pos).reservant != null;
+		return reservants[positions.index(pos)] != null;
 	}
 	
 	private boolean structureOccupies(Position pos)
 	{
-		Unit unit = grid.get(pos).occupant;
+		Unit unit = occupants[positions.index(pos)];
 		
 		return unit != null && (unit.isStructure() || unit.getType().isGuardPostType());
 	}
 	
 	public Unit getReservant(Position pos)
 	{
-		return grid.get(pos).reservant;
+		return reservants[positions.index(pos)];
 	}
 	
 	public Unit getUnit(Position pos)
@@ -831,24 +1081,41 @@ public class LayeredMap
 	
 	public Unit getUnit(int x, int y)
 	{
-		return grid.get(x, y).occupant;
+		return occupants[positions.index(x, y)];
 	}
 	
 	public Set<Unit> getUnits(Region region)
 	{
 		region = region.getIntersection(bounds);
 		
-		Set<Unit> occupants = new HashSet<Unit>();
+		Set<Unit> found = new HashSet<Unit>();
 		
-		for (Spot spot : grid.iterator(region))	
-			if (spot.occupant != null)
-				occupants.add(spot.occupant);
+		for (int y = region.y; y < region.getMaxY(); ++y)
+		for (int x = region.x; x < region.getMaxX(); ++x)
+		{
+			Unit occupant = occupants[positions.index(x, y)];
+			
+			if (occupant != null)
+				found.add(occupant);
+		}
 		
-		return occupants;
+		return found;
 	}
 	
-	public void remove(Unit unit)
+	public void remove(final Unit unit)
 	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					remove(unit);
+				}
+			});
+			return;
+		}
+		
 		if (! contains(unit))
 			throw new NoSuchElementException();
 		
@@ -861,22 +1128,28 @@ public class LayeredMap
 		
 		for (Position fpPos : unit.getFootprint().iterator(pos))
 		{
-			grid.get(fpPos).occupant = null;
-			grid.get(fpPos).alive = false;
-			sources.remove(fpPos);
+			int cell = positions.index(fpPos);
+			occupants[cell] = null;
+			network.setSource(cell, false);
+			network.setTube(cell, isTube(cell));
 		}
 		
-		for (Position rPos : unit.getReservations())
+		for (IntIterator itr = unit.getReservations().iterator(); itr.hasNext();)
 		{
-			grid.get(rPos).reservant = null;
+			int rPos = itr.next();
+			reservants[positions.index(Position.unpackX(rPos), Position.unpackY(rPos))] = null;
 		}
 		
 //		unit.setPosition(null);
 //		unit.setContainer(null);
 		unit.dismiss();
 		
-		units.remove(unit);
-		assessConnections();
+		units.remove(unit.getSerial());
+		removedCount++;
+		unitIndex.remove(unit);
+		
+		if (unit.getFootprint() != Footprint.VEHICLE)
+			fireStructureChanged(unit.getFootprint().getInnerRegion().move(pos));
 		
 		if (unit.isStructure())
 		{
@@ -890,7 +1163,7 @@ public class LayeredMap
 	
 	public void clearAllUnits()
 	{
-		for (Unit unit : units.toArray(new Unit[0]))
+		for (Unit unit : getUnitIterator())
 		{
 			remove(unit);
 		}
@@ -906,30 +1179,39 @@ public class LayeredMap
 		return units.size();
 	}
 	
+	/**
+	 * Gets the Unit on this map with the given serial, or null if there
+	 * isn't one.
+	 */
+	public Unit getUnit(int serial)
+	{
+		return units.get(serial);
+	}
+	
 	public boolean canMoveUnit(Position pos, Direction dir)
 	{
-		Position next = dir.apply(pos);
+		Position next = positions.shift(pos, dir);
 		
 		if ((!bounds.contains(next)) || costMap.isInfinite(next))
 			return false;
 		
-		Position dest = dir.apply(pos);
+		Position dest = positions.shift(pos, dir);
 		
 		if (!(bounds.contains(dest)
-				&& grid.get(dest).occupant == null
-				&& grid.get(dest).reservant == null))
+				&& occupants[positions.index(dest)] == null
+				&& reservants[positions.index(dest)] == null))
 			return false;
 		
 		if (!dir.isDiagonal())
 			return true;
 		
-		Position adj1 = dir.rotate(+2).apply(pos);
-		Position adj2 = dir.rotate(-2).apply(pos);
+		Position adj1 = positions.shift(pos, dir.rotate(+2));
+		Position adj2 = positions.shift(pos, dir.rotate(-2));
 		
-		Unit occupier1 = grid.get(adj1).occupant;
-		Unit occupier2 = grid.get(adj2).occupant;
-		Unit reserver1 = grid.get(adj1).reservant;
-		Unit reserver2 = grid.get(adj2).reservant;
+		Unit occupier1 = occupants[positions.index(adj1)];
+		Unit occupier2 = occupants[positions.index(adj2)];
+		Unit reserver1 = reservants[positions.index(adj1)];
+		Unit reserver2 = reservants[positions.index(adj2)];
 		
 		if (occupier1 != null && occupier1.equals(reserver2))
 			return false;
@@ -945,10 +1227,10 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return;
 		
-		if (grid.get(pos).occupant != null)
+		if (occupants[positions.index(pos)] != null)
 			throw new IllegalStateException(pos + " occupied");
 		
-		final Unit holder = grid.get(pos).reservant;
+		final Unit holder = reservants[positions.index(pos)];
 		
 		if (holder != null && !holder.equals(unit))
 			throw new IllegalStateException(pos + " reserved");
@@ -956,22 +1238,54 @@ public class LayeredMap
 		Footprint fp = unit.getFootprint();
 		
 		for (Position occupied : fp.iterator(unit.getPosition()))
-			grid.get(occupied).occupant = null;
+			occupants[positions.index(occupied)] = null;
 		
 		unit.setPosition(pos);
 		
 		for (Position occupied : fp.iterator(unit.getPosition()))
-			grid.get(occupied).occupant = unit;
+			occupants[positions.index(occupied)] = unit;
+		
+		updateIndex(unit);
+	}
+	
+	/**
+	 * Called by Unit when a unit on this map changes hands.
+	 */
+	public void ownerChanged(Unit unit)
+	{
+		updateIndex(unit);
+	}
+	
+	/**
+	 * The UnitIndex is shared by all regions, so while they're stepping it's
+	 * only searched, and units are moved between its buckets once the phase
+	 * is done, in region order.
+	 */
+	private void updateIndex(final Unit unit)
+	{
+		if (RegionStepper.isDeferring())
+		{
+			RegionStepper.defer(new Runnable()
+			{
+				public void run()
+				{
+					unitIndex.update(unit);
+				}
+			});
+			return;
+		}
+		
+		unitIndex.update(unit);
 	}
 	
 	public void shift(Unit unit, int dx, int dy)
 	{
-		move(unit, unit.getPosition().shift(dx, dy));
+		move(unit, positions.shift(unit.getPosition(), dx, dy));
 	}
 	
 	public Unit findClosest(
 		Unit unit,
-		final Filter<Unit> unitFilter,
+		Filter<Unit> unitFilter,
 		double minDistance,
 		double maxDistance)
 	{
@@ -980,28 +1294,71 @@ public class LayeredMap
 		
 		Position pos = unit.getPosition();
 		
-		Filter<Spot> spotFilter = new Filter<Spot>()
-		{
-			public boolean accept(Spot spot)
-			{
-				if (spot == null)
-					return false;
-				
-				return unitFilter.accept(spot.occupant);
-			}
-		};
-		
-		Position closestPos = grid.findClosest(
+		return unitIndex.findClosest(
 			pos,
-			spotFilter,
+			occupants[positions.index(pos)],
+			unitFilter,
+			getExcludedOwner(unitFilter),
 			minDistance,
 			maxDistance
 		);
+	}
+	
+	/**
+	 * Passes the units with a position within radius of center, and then
+	 * the positions within radius of center that have fixtures, to the
+	 * visitor. Nothing is made along the way, so it's cheap to call often.
+	 */
+	public void visitRadius(Position center, double radius, RadiusVisitor visitor)
+	{
+		if (radius < 0)
+			return;
 		
-		if (closestPos == null)
-			return null;
+		unitIndex.visitUnits(center, radius, visitor);
 		
-		return grid.get(closestPos).occupant;
+		int r = (int) Math.min(radius, Math.max(getWidth(), getHeight()));
+		double radiusSq = radius * radius;
+		int y0 = Math.max(center.y - r, 0);
+		int y1 = Math.min(center.y + r, getHeight() - 1);
+		
+		for (int y = y0; y <= y1; ++y)
+		{
+			int dy = y - center.y;
+			int span = (int) Math.sqrt(radiusSq - dy * dy);
+			int x0 = Math.max(center.x - span, 0);
+			int x1 = Math.min(center.x + span, getWidth() - 1);
+			
+			for (int x = x0; x <= x1; ++x)
+				if (fixtures.getAt(positions.index(x, y)) != 0)
+					visitor.visitFixture(positions.get(x, y));
+		}
+	}
+	
+	/**
+	 * Gets a number that changes whenever a unit that unitFilter could
+	 * accept comes near enough to unit that findClosest() might find it
+	 * within maxDistance. It only changes once a tick, when the UnitIndex's
+	 * stamps are published, so a unit that gets the same number as last
+	 * tick and found nothing then needn't look again.
+	 */
+	public long getUnitStamp(Unit unit, Filter<Unit> unitFilter, double maxDistance)
+	{
+		return unitIndex.getStamp(
+			unit.getPosition(),
+			maxDistance,
+			getExcludedOwner(unitFilter)
+		);
+	}
+	
+	/**
+	 * Units on the same team as the one looking are never enemies, so
+	 * their buckets needn't be looked at.
+	 */
+	private static Player getExcludedOwner(Filter<Unit> unitFilter)
+	{
+		return unitFilter instanceof UnitFactory.NotMyTeamFilter
+			? ((UnitFactory.NotMyTeamFilter) unitFilter).getOwner()
+			: null;
 	}
 	
 	public void reserve(Position pos, Unit unit)
@@ -1009,13 +1366,13 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return;
 		
-		final Unit holder = grid.get(pos).reservant;
+		final Unit holder = reservants[positions.index(pos)];
 		
 		if (holder != null && !holder.equals(unit))
 			throw new IllegalStateException("pos reserved");
 		
-		grid.get(pos).reservant = unit;
-		unit.getReservations().add(pos);
+		reservants[positions.index(pos)] = unit;
+		unit.getReservations().add(pos.pack());
 	}
 	
 	public void unreserve(Position pos)
@@ -1023,23 +1380,77 @@ public class LayeredMap
 		if (!bounds.contains(pos))
 			return;
 		
-		final Unit holder = grid.get(pos).reservant;
+		final Unit holder = reservants[positions.index(pos)];
 		
 		if (holder == null)
 			return;
 		
-		grid.get(pos).reservant = null;
-		holder.getReservations().remove(pos);
+		reservants[positions.index(pos)] = null;
+		holder.getReservations().remove(pos.pack());
 	}
 	
 	public Collection<Position> getReservations(Unit unit)
 	{
-		return unit.getReservations();
+		List<Position> reservations = new ArrayList<Position>();
+		
+		for (IntIterator itr = unit.getReservations().iterator(); itr.hasNext();)
+		{
+			int rPos = itr.next();
+			reservations.add(positions.get(Position.unpackX(rPos), Position.unpackY(rPos)));
+		}
+		
+		return reservations;
 	}
 	
 	public RIterator<Unit> getUnitIterator()
 	{
-		return RIterator.iterate(new HashSet<Unit>(units));
+		List<Unit> copy = new ArrayList<Unit>(units.size());
+		
+		for (int i = 0; i < placed.size(); ++i)
+			if (!placed.get(i).isDismissed())
+				copy.add(placed.get(i));
+		
+		return RIterator.iterate(copy);
+	}
+	
+	/**
+	 * Gets the Units currently on the map, in the order they were placed.
+	 *
+	 * The returned list is reused: it is refilled on every call rather than
+	 * copied, so the simulation can iterate over it while units are placed
+	 * and removed without producing garbage every tick. It must not be
+	 * modified, nor held across calls, and is only meant for the thread
+	 * stepping the Game.
+	 */
+	public List<Unit> getUnitSnapshot()
+	{
+		if (removedCount > 0)
+			dropRemovedUnits();
+		
+		unitSnapshot.clear();
+		
+		for (int i = 0; i < placed.size(); ++i)
+			unitSnapshot.add(placed.get(i));
+		
+		return unitSnapshot;
+	}
+	
+	private void dropRemovedUnits()
+	{
+		int kept = 0;
+		
+		for (int i = 0; i < placed.size(); ++i)
+		{
+			Unit unit = placed.get(i);
+			
+			if (!unit.isDismissed())
+				placed.set(kept++, unit);
+		}
+		
+		for (int i = placed.size() - 1; i >= kept; --i)
+			placed.remove(i);
+		
+		removedCount = 0;
 	}
 	
 	// unused - as it should be for optimality's sake
@@ -0,0 +1,33 @@
+package com.robbix.mp5.map;
+
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Position;
+
+/**
+ * Visits the units and fixtures within a radius of a position, for
+ * LayeredMap.visitRadius(). Override whichever of the two are wanted.
+ *
+ * A visitor can be kept and used for any number of visits, so that
+ * looking over an area doesn't have to make any objects.
+ */
+public abstract class RadiusVisitor
+{
+	/**
+	 * Visits a unit standing on a position within the radius. Each unit is
+	 * visited once, however many positions it stands on. Units are visited
+	 * while the map's UnitIndex is locked, so they mustn't be placed, moved
+	 * or removed from here.
+	 */
+	public void visitUnit(Unit unit)
+	{
+	}
+	
+	/**
+	 * Visits a position within the radius that has a fixture. pos is the
+	 * map's shared Position. The fixture can be damaged or removed from
+	 * here.
+	 */
+	public void visitFixture(Position pos)
+	{
+	}
+}
@@ -0,0 +1,338 @@
+package com.robbix.mp5.map;
+
+import java.util.Arrays;
+
+import com.robbix.utils.CostMap;
+import com.robbix.utils.IntGrid;
+import com.robbix.utils.Position;
+
+/**
+ * Labels each passable position of a CostMap with the connected region it
+ * belongs to, so whether one position can be reached from another can be
+ * answered without searching. Units move in all 8 directions, so regions
+ * are 8-connected, and impassable positions have no region.
+ *
+ * The labels are kept up to date by costChanged(), which LayeredMap calls
+ * as the terrain changes. Opening a position merges the regions around it
+ * by relabelling all but the largest. Closing one only relabels when the
+ * passable positions around it aren't already connected to each other,
+ * and might have been split apart. If the CostMap is changed without
+ * notice, the labels are rebuilt from scratch on the next query.
+ */
+public class Reachability
+{
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private CostMap course;
+	private int w, h;
+	private IntGrid labels;
+	private int[] sizes;
+	private int nextLabel;
+	private int version;
+	
+	private int[] queue;
+	private int[] around;
+	
+	public Reachability(CostMap course)
+	{
+		this.course = course;
+		this.w = course.w;
+		this.h = course.h;
+		this.labels = new IntGrid(w, h);
+		this.sizes = new int[16];
+		this.queue = new int[w * h];
+		this.around = new int[8];
+		rebuild();
+	}
+	
+	public CostMap getCourse()
+	{
+		return course;
+	}
+	
+	/**
+	 * Returns true if there is a way from start to end over passable
+	 * positions. Neither can be impassable.
+	 */
+	public synchronized boolean isReachable(Position start, Position end)
+	{
+		validate();
+		
+		int label = labels.getAt(start.x + start.y * w);
+		
+		return label != 0 && label == labels.getAt(end.x + end.y * w);
+	}
+	
+	/**
+	 * Gets the label of the region pos is in, or 0 if it's impassable.
+	 * Labels can change whenever the terrain does.
+	 */
+	public synchronized int getRegion(Position pos)
+	{
+		validate();
+		
+		return labels.getAt(pos.x + pos.y * w);
+	}
+	
+	/**
+	 * Gets the number of positions in the region pos is in.
+	 */
+	public synchronized int getRegionSize(Position pos)
+	{
+		validate();
+		
+		return sizes[labels.getAt(pos.x + pos.y * w)];
+	}
+	
+	/**
+	 * Updates the labels after the cost of pos has changed.
+	 */
+	public synchronized void costChanged(Position pos)
+	{
+		if (course.getVersion() != version + 1)
+		{
+			rebuild();
+			return;
+		}
+		
+		int cell = pos.x + pos.y * w;
+		boolean open = !Double.isInfinite(course.get(pos.x, pos.y));
+		boolean wasOpen = labels.getAt(cell) != 0;
+		
+		if (open && !wasOpen)
+		{
+			opened(pos.x, pos.y);
+		}
+		else if (!open && wasOpen)
+		{
+			closed(pos.x, pos.y);
+		}
+		
+		version = course.getVersion();
+		
+		/*
+		 * Labels aren't reused, so start over once they run on.
+		 */
+		if (nextLabel > w * h)
+			rebuild();
+	}
+	
+	/**
+	 * Joins the newly passable position at x, y to the regions around it.
+	 */
+	private void opened(int x, int y)
+	{
+		int cell = x + y * w;
+		int largest = 0;
+		
+		for (int d = 0; d < 8; ++d)
+		{
+			int label = labelAt(x + DX[d], y + DY[d]);
+			
+			if (label != 0 && sizes[label] > sizes[largest])
+				largest = label;
+		}
+		
+		if (largest == 0)
+		{
+			labels.setAt(cell, newLabel());
+			sizes[labels.getAt(cell)] = 1;
+			return;
+		}
+		
+		labels.setAt(cell, largest);
+		sizes[largest]++;
+		
+		for (int d = 0; d < 8; ++d)
+		{
+			int label = labelAt(x + DX[d], y + DY[d]);
+			
+			if (label != 0 && label != largest)
+			{
+				sizes[largest] += sizes[label];
+				sizes[label] = 0;
+				fill(x + DX[d], y + DY[d], largest);
+			}
+		}
+	}
+	
+	/**
+	 * Splits the region that the newly impassable position at x, y was in,
+	 * if closing it has cut the region in two.
+	 */
+	private void closed(int x, int y)
+	{
+		int cell = x + y * w;
+		int old = labels.getAt(cell);
+		labels.setAt(cell, 0);
+		sizes[old]--;
+		
+		/*
+		 * Group the passable positions around x, y that are next to each
+		 * other. Going around the ring, each is next to the one after it,
+		 * and the orthogonal ones are also diagonally next to each other.
+		 */
+		int groups = 0;
+		
+		for (int d = 0; d < 8; ++d)
+			around[d] = -1;
+		
+		for (int d = 0; d < 8; ++d)
+		{
+			if (labelAt(x + DX[d], y + DY[d]) == 0 || around[d] != -1)
+				continue;
+			
+			spread(x, y, d, groups++);
+		}
+		
+		if (groups <= 1)
+			return;
+		
+		/*
+		 * Might have been split. Fill from each group that the previous
+		 * fills didn't reach, and leave the last group's region with its
+		 * old label.
+		 */
+		int[] reps = new int[groups];
+		
+		for (int d = 7; d >= 0; --d)
+			if (around[d] != -1)
+				reps[around[d]] = (x + DX[d]) + (y + DY[d]) * w;
+		
+		int remaining = sizes[old];
+		
+		for (int g = 0; g < groups - 1 && remaining > 0; ++g)
+		{
+			int rep = reps[g];
+			
+			if (labels.getAt(rep) != old)
+				continue;
+			
+			int label = newLabel();
+			int filled = fill(rep % w, rep / w, label);
+			
+			if (filled == remaining)
+			{
+				/*
+				 * Not split after all. Everything's been relabelled, so
+				 * just swap the old label's count over.
+				 */
+				sizes[label] = filled;
+				sizes[old] = 0;
+				return;
+			}
+			
+			sizes[label] = filled;
+			remaining -= filled;
+		}
+		
+		sizes[old] = remaining;
+	}
+	
+	/**
+	 * Marks ring position d around x, y as being in group g, along with the
+	 * passable ring positions next to it.
+	 */
+	private void spread(int x, int y, int d, int g)
+	{
+		around[d] = g;
+		
+		int[] next = (d & 1) == 0
+			? new int[]{ (d + 1) & 7, (d + 7) & 7, (d + 2) & 7, (d + 6) & 7 }
+			: new int[]{ (d + 1) & 7, (d + 7) & 7 };
+		
+		for (int n : next)
+			if (around[n] == -1 && labelAt(x + DX[n], y + DY[n]) != 0)
+				spread(x, y, n, g);
+	}
+	
+	private int labelAt(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= w || y >= h)
+			return 0;
+		
+		return labels.getAt(x + y * w);
+	}
+	
+	private int newLabel()
+	{
+		if (nextLabel == sizes.length)
+			sizes = Arrays.copyOf(sizes, sizes.length * 2);
+		
+		return nextLabel++;
+	}
+	
+	/**
+	 * Relabels the region containing x, y, returning its size.
+	 */
+	private int fill(int x, int y, int label)
+	{
+		int start = x + y * w;
+		int from = labels.getAt(start);
+		int head = 0, tail = 0;
+		
+		labels.setAt(start, label);
+		queue[tail++] = start;
+		
+		while (head < tail)
+		{
+			int cell = queue[head++];
+			int cx = cell % w;
+			int cy = cell / w;
+			
+			for (int d = 0; d < 8; ++d)
+			{
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				
+				if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+					continue;
+				
+				int neighbor = nx + ny * w;
+				
+				if (labels.getAt(neighbor) != from)
+					continue;
+				
+				labels.setAt(neighbor, label);
+				queue[tail++] = neighbor;
+			}
+		}
+		
+		return tail;
+	}
+	
+	private void validate()
+	{
+		if (version != course.getVersion())
+			rebuild();
+	}
+	
+	/**
+	 * Labels every region from scratch.
+	 */
+	private void rebuild()
+	{
+		/*
+		 * Passable positions are marked -1 until filled. Label 0 is kept
+		 * for impassable ones.
+		 */
+		for (int y = 0; y < h; ++y)
+		for (int x = 0; x < w; ++x)
+			labels.setAt(x + y * w, Double.isInfinite(course.get(x, y)) ? 0 : -1);
+		
+		Arrays.fill(sizes, 0);
+		nextLabel = 1;
+		
+		for (int cell = 0; cell < w * h; ++cell)
+		{
+			if (labels.getAt(cell) != -1)
+				continue;
+			
+			int label = newLabel();
+			sizes[label] = fill(cell % w, cell / w, label);
+		}
+		
+		version = course.getVersion();
+	}
+}
@@ -0,0 +1,66 @@
+package com.robbix.mp5.map;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.robbix.utils.Position;
+import com.robbix.utils.Region;
+
+/**
+ * Listener for changes to the terrain cost of positions on a LayeredMap,
+ * such as walls going up or ground being bulldozed, and to where ground
+ * units can't go because of structures.
+ */
+public interface TerrainListener
+{
+	public void costChanged(Position pos);
+	
+	/**
+	 * Called when a structure is placed on or removed from region. The
+	 * terrain cost there hasn't changed, but structures can't be driven
+	 * through.
+	 */
+	public void structureChanged(Region region);
+	
+	public static class Helper
+	{
+		private Set<TerrainListener> listeners;
+		
+		public Helper()
+		{
+			listeners = new HashSet<TerrainListener>();
+		}
+		
+		public boolean add(TerrainListener listener)
+		{
+			return listeners.add(listener);
+		}
+		
+		public boolean remove(TerrainListener listener)
+		{
+			return listeners.remove(listener);
+		}
+		
+		public Set<TerrainListener> getAll()
+		{
+			return new HashSet<TerrainListener>(listeners);
+		}
+		
+		public int size()
+		{
+			return listeners.size();
+		}
+		
+		public void fireCostChanged(Position pos)
+		{
+			for (TerrainListener listener : listeners)
+				listener.costChanged(pos);
+		}
+		
+		public void fireStructureChanged(Region region)
+		{
+			for (TerrainListener listener : listeners)
+				listener.structureChanged(region);
+		}
+	}
+}
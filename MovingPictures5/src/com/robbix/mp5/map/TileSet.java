@@ -94,12 +94,25 @@ public class TileSet
 	private int bulldozedCount;
 	private int plainCount;
 	
+	/**
+	 * Tile codes numbered in the order they were first asked for, with
+	 * their tiles, so maps can keep an int for each position instead of a
+	 * String. Index 0 is the null code. The arrays are replaced rather
+	 * than changed, so they can be read without locking.
+	 */
+	private Map<String, Integer> indices;
+	private volatile String[] codes;
+	private volatile Tile[] indexedTiles;
+	
 	public TileSet()
 	{
 		tiles = new HashMap<String, Tile>();
 		rand = new Random();
 		bulldozedCount = 0;
 		plainCount = 0;
+		indices = new HashMap<String, Integer>();
+		codes = new String[1];
+		indexedTiles = new Tile[1];
 	}
 	
 	public int getTileSize()
@@ -112,6 +125,47 @@ public class TileSet
 		return tiles.get(code);
 	}
 	
+	/**
+	 * Gets the tile with the given index, from getTileIndex().
+	 */
+	public Tile getTile(int index)
+	{
+		return indexedTiles[index];
+	}
+	
+	/**
+	 * Gets the number for code, numbering it if it hasn't been numbered
+	 * yet. The null code is 0.
+	 */
+	public synchronized int getTileIndex(String code)
+	{
+		if (code == null)
+			return 0;
+		
+		Integer index = indices.get(code);
+		
+		if (index != null)
+			return index;
+		
+		int next = codes.length;
+		String[] newCodes = Arrays.copyOf(codes, next + 1);
+		Tile[] newTiles = Arrays.copyOf(indexedTiles, next + 1);
+		newCodes[next] = code;
+		newTiles[next] = tiles.get(code);
+		indices.put(code, next);
+		indexedTiles = newTiles;
+		codes = newCodes;
+		return next;
+	}
+	
+	/**
+	 * Gets the code with the given index, from getTileIndex().
+	 */
+	public String getTileCode(int index)
+	{
+		return codes[index];
+	}
+	
 	public String getWallTile(Neighbors neighbors)
 	{
 		return getWallTile(neighbors, HealthBracket.GREEN);
@@ -0,0 +1,452 @@
+package com.robbix.mp5.map;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of which tube positions are connected to a connection source,
+ * as tubes and structures come and go, without searching the whole map.
+ *
+ * Positions are numbered by index, x + (y * w). Tube positions - tubes and
+ * the positions structures stand on - are grouped into networks, the sets
+ * of them joined up through their four neighbours, and each network is
+ * labelled with how many positions it has and how many of them are
+ * sources. A position is powered if its network has a source in it and
+ * more than one position, so that the source can reach it.
+ *
+ * Adding a tube position joins it to its neighbours' networks, merging
+ * them if there are several (union-find, by size). Removing one can split
+ * its network, so the networks of its neighbours are searched for each
+ * other, a step at a time from each in turn. As soon as they've met, or
+ * all but one search has run out, the searches stop. Only the parts whose
+ * searches ran out are labelled anew, and the part still being searched
+ * keeps the old label, so the work done is in proportion to the parts
+ * cut off rather than to the whole network.
+ */
+public class TubeNetwork
+{
+	private int w, h;
+	
+	/**
+	 * The label of each position's network, or 0 if it isn't a tube
+	 * position.
+	 */
+	private int[] labels;
+	private boolean[] sources;
+	
+	/**
+	 * For each label, the label it was merged into, or itself if it's the
+	 * root of its network, and for roots, the network's size and source
+	 * count.
+	 */
+	private int[] parents;
+	private int[] sizes;
+	private int[] sourceCounts;
+	private int labelCount = 1;
+	
+	/**
+	 * Searches from the neighbours of a removed position. Each position
+	 * visited is stamped with the search number and which neighbour's
+	 * search got there first.
+	 */
+	private int[][] queues = new int[4][];
+	private int[] heads = new int[4];
+	private int[] tails = new int[4];
+	private int[] groups = new int[4];
+	private int[] stamps;
+	private byte[] finders;
+	private int stamp;
+	
+	public TubeNetwork(int w, int h)
+	{
+		this.w = w;
+		this.h = h;
+		this.labels = new int[w * h];
+		this.sources = new boolean[w * h];
+		this.stamps = new int[w * h];
+		this.finders = new byte[w * h];
+		this.parents = new int[64];
+		this.sizes = new int[64];
+		this.sourceCounts = new int[64];
+		
+		for (int i = 0; i < queues.length; ++i)
+			queues[i] = new int[16];
+	}
+	
+	/**
+	 * Returns true if cell is a tube position in a network with a source
+	 * that can reach it.
+	 */
+	public synchronized boolean isPowered(int cell)
+	{
+		int label = labels[cell];
+		
+		if (label == 0)
+			return false;
+		
+		int root = find(label);
+		
+		return sourceCounts[root] > 0 && sizes[root] > 1;
+	}
+	
+	/**
+	 * Marks whether cell is a source. Sources only power anything while
+	 * they're also tube positions.
+	 */
+	public synchronized void setSource(int cell, boolean source)
+	{
+		if (sources[cell] == source)
+			return;
+		
+		sources[cell] = source;
+		
+		if (labels[cell] != 0)
+			sourceCounts[find(labels[cell])] += source ? 1 : -1;
+	}
+	
+	/**
+	 * Marks whether cell is a tube position, joining it to or cutting it
+	 * from the networks around it.
+	 */
+	public synchronized void setTube(int cell, boolean tube)
+	{
+		if ((labels[cell] != 0) == tube)
+			return;
+		
+		if (labelCount + 4 > parents.length)
+			makeRoom();
+		
+		if (tube)
+		{
+			add(cell);
+		}
+		else
+		{
+			remove(cell);
+		}
+	}
+	
+	private void add(int cell)
+	{
+		int x = cell % w;
+		int y = cell / w;
+		int root = 0;
+		
+		for (int d = 0; d < 4; ++d)
+		{
+			int adj = neighbor(x, y, d);
+			
+			if (adj == -1 || labels[adj] == 0)
+				continue;
+			
+			int adjRoot = find(labels[adj]);
+			root = root == 0 ? adjRoot : union(root, adjRoot);
+		}
+		
+		if (root == 0)
+			root = newLabel();
+		
+		labels[cell] = root;
+		sizes[root]++;
+		
+		if (sources[cell])
+			sourceCounts[root]++;
+	}
+	
+	private void remove(int cell)
+	{
+		int root = find(labels[cell]);
+		labels[cell] = 0;
+		sizes[root]--;
+		
+		if (sources[cell])
+			sourceCounts[root]--;
+		
+		int x = cell % w;
+		int y = cell / w;
+		int fronts = 0;
+		
+		if (++stamp == 0)
+		{
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+		
+		for (int d = 0; d < 4; ++d)
+		{
+			int adj = neighbor(x, y, d);
+			
+			if (adj == -1 || labels[adj] == 0)
+				continue;
+			
+			heads[fronts] = 0;
+			tails[fronts] = 0;
+			groups[fronts] = fronts;
+			push(fronts, adj);
+			fronts++;
+		}
+		
+		/*
+		 * With one neighbour or none, nothing can have been cut off.
+		 */
+		if (fronts <= 1)
+			return;
+		
+		while (true)
+		{
+			int groupCount = 0;
+			int openGroups = 0;
+			
+			for (int f = 0; f < fronts; ++f)
+			{
+				if (groups[f] != f)
+					continue;
+				
+				groupCount++;
+				
+				if (isOpen(f, fronts))
+					openGroups++;
+			}
+			
+			if (groupCount == 1)
+				return;
+			
+			if (openGroups <= 1)
+				break;
+			
+			for (int f = 0; f < fronts; ++f)
+				if (heads[f] < tails[f])
+					step(f, fronts);
+		}
+		
+		/*
+		 * Every group that's run out is a network of its own. If they all
+		 * have, the first keeps the old label.
+		 */
+		boolean kept = false;
+		
+		for (int g = 0; g < fronts; ++g)
+		{
+			if (groups[g] != g)
+				continue;
+			
+			if (isOpen(g, fronts) || !kept && allClosed(fronts))
+			{
+				kept = true;
+				continue;
+			}
+			
+			relabel(g, fronts, root);
+		}
+	}
+	
+	/**
+	 * Takes one position off front f's queue and visits its neighbours.
+	 */
+	private void step(int f, int fronts)
+	{
+		int cell = queues[f][heads[f]++];
+		int x = cell % w;
+		int y = cell / w;
+		
+		for (int d = 0; d < 4; ++d)
+		{
+			int adj = neighbor(x, y, d);
+			
+			if (adj == -1 || labels[adj] == 0)
+				continue;
+			
+			if (stamps[adj] != stamp)
+			{
+				push(f, adj);
+				continue;
+			}
+			
+			int mine = groups[f];
+			int theirs = groups[finders[adj]];
+			
+			if (mine != theirs)
+			{
+				for (int g = 0; g < fronts; ++g)
+					if (groups[g] == theirs)
+						groups[g] = mine;
+			}
+		}
+	}
+	
+	private void push(int f, int cell)
+	{
+		if (tails[f] == queues[f].length)
+			queues[f] = Arrays.copyOf(queues[f], queues[f].length * 2);
+		
+		queues[f][tails[f]++] = cell;
+		stamps[cell] = stamp;
+		finders[cell] = (byte) f;
+	}
+	
+	/**
+	 * Returns true if any front in group g still has positions to visit.
+	 */
+	private boolean isOpen(int g, int fronts)
+	{
+		for (int f = 0; f < fronts; ++f)
+			if (groups[f] == g && heads[f] < tails[f])
+				return true;
+		
+		return false;
+	}
+	
+	private boolean allClosed(int fronts)
+	{
+		for (int f = 0; f < fronts; ++f)
+			if (heads[f] < tails[f])
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Gives the positions found by the fronts in group g a new label,
+	 * taking them out of the network labelled root.
+	 */
+	private void relabel(int g, int fronts, int root)
+	{
+		int label = newLabel();
+		
+		for (int f = 0; f < fronts; ++f)
+		{
+			if (groups[f] != g)
+				continue;
+			
+			int[] queue = queues[f];
+			
+			for (int i = 0; i < tails[f]; ++i)
+			{
+				int cell = queue[i];
+				labels[cell] = label;
+				sizes[label]++;
+				
+				if (sources[cell])
+					sourceCounts[label]++;
+			}
+		}
+		
+		sizes[root] -= sizes[label];
+		sourceCounts[root] -= sourceCounts[label];
+	}
+	
+	private int find(int label)
+	{
+		while (parents[label] != label)
+			label = parents[label];
+		
+		return label;
+	}
+	
+	/**
+	 * Merges the networks with roots a and b, the smaller into the larger,
+	 * and returns the root of the merged network.
+	 */
+	private int union(int a, int b)
+	{
+		if (a == b)
+			return a;
+		
+		if (sizes[a] < sizes[b])
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		
+		parents[b] = a;
+		sizes[a] += sizes[b];
+		sourceCounts[a] += sourceCounts[b];
+		return a;
+	}
+	
+	private int newLabel()
+	{
+		int label = labelCount++;
+		parents[label] = label;
+		sizes[label] = 0;
+		sourceCounts[label] = 0;
+		return label;
+	}
+	
+	/**
+	 * Makes room for more labels. Labels of networks that have been split
+	 * or merged are never used again, so once there are more labels than
+	 * twice the number of positions, every network is labelled again from
+	 * scratch instead.
+	 */
+	private void makeRoom()
+	{
+		if (parents.length < labels.length * 2 + 8)
+		{
+			int length = Math.min(parents.length * 2, labels.length * 2 + 8);
+			parents = Arrays.copyOf(parents, length);
+			sizes = Arrays.copyOf(sizes, length);
+			sourceCounts = Arrays.copyOf(sourceCounts, length);
+			return;
+		}
+		
+		int[] old = labels;
+		labels = new int[old.length];
+		labelCount = 1;
+		
+		for (int cell = 0; cell < old.length; ++cell)
+		{
+			if (old[cell] == 0 || labels[cell] != 0)
+				continue;
+			
+			int label = newLabel();
+			int[] queue = queues[0];
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = cell;
+			labels[cell] = label;
+			
+			while (head < tail)
+			{
+				int current = queue[head++];
+				sizes[label]++;
+				
+				if (sources[current])
+					sourceCounts[label]++;
+				
+				int x = current % w;
+				int y = current / w;
+				
+				for (int d = 0; d < 4; ++d)
+				{
+					int adj = neighbor(x, y, d);
+					
+					if (adj == -1 || old[adj] == 0 || labels[adj] != 0)
+						continue;
+					
+					if (tail == queue.length)
+						queues[0] = queue = Arrays.copyOf(queue, queue.length * 2);
+					
+					queue[tail++] = adj;
+					labels[adj] = label;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the index of the neighbour of x, y that shares an edge with it
+	 * in direction d - east, north, west or south - or -1 if it's off the
+	 * map.
+	 */
+	private int neighbor(int x, int y, int d)
+	{
+		switch (d)
+		{
+		case 0:  return x + 1 < w  ? x + 1 + y * w : -1;
+		case 1:  return y > 0      ? x + (y - 1) * w : -1;
+		case 2:  return x > 0      ? x - 1 + y * w : -1;
+		default: return y + 1 < h  ? x + (y + 1) * w : -1;
+		}
+	}
+}
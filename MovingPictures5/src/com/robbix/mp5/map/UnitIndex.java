@@ -0,0 +1,657 @@
+package com.robbix.mp5.map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.robbix.mp5.player.Player;
+import com.robbix.mp5.unit.Footprint;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Filter;
+import com.robbix.utils.Position;
+import com.robbix.utils.collect.IntMap;
+
+/**
+ * Keeps track of where the units on a LayeredMap are, by owner, so the
+ * units near a position can be found without looking at every spot around
+ * it.
+ *
+ * The map is cut into square buckets BUCKET_SIZE spots across, and each
+ * owner has its own set of buckets, each holding the units whose positions
+ * are in it. Only the buckets that could hold a unit close enough are
+ * looked at, and only those of the owners asked about.
+ *
+ * findClosest() gives exactly the unit Grid.findClosest() would find by
+ * searching the spots around a position ring by ring - the one with the
+ * spot nearest to it, and of those the one the rings would come to first.
+ *
+ * Each bucket also has a stamp for each owner, counting the units of that
+ * owner that have come into it. Turrets compare the stamps around them
+ * to tell when something has come close without searching. Stamps are
+ * read as they were when publishStamps() was last called, once a tick,
+ * so they don't depend on how far other regions have got in the tick.
+ *
+ * LayeredMap keeps this up to date as units are placed, moved and removed.
+ * While a RegionStepper is stepping, those changes are held back until the
+ * end of the phase, so the regions stepping in parallel only search it.
+ * Searches share a read lock, and changes take the write lock, so searches
+ * don't wait on each other. A search only holds the lock while it copies
+ * the units in the buckets it needs, and calls filters and visitors once
+ * it has let go, so they can do what they like, the index included.
+ */
+public class UnitIndex
+{
+	public static final int BUCKET_SIZE = 8;
+	
+	/**
+	 * The owner key of units without an owner.
+	 */
+	private static final int NO_OWNER = -1;
+	
+	private int w, h;
+	private int bw, bh;
+	
+	/**
+	 * Buckets for each owner, by Player ID, and in the order they were
+	 * first needed.
+	 */
+	private IntMap<Owner> owners;
+	private Owner[] ownerList;
+	private int ownerCount;
+	
+	/**
+	 * Where each unit was put, by serial.
+	 */
+	private IntMap<Entry> entries;
+	
+	/**
+	 * The widest and tallest Footprints put in so far, so that units
+	 * positioned outside a range that still reach into it are looked at.
+	 */
+	private int maxWidth = 1;
+	private int maxHeight = 1;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * The Search each thread uses, which has another for each search that
+	 * starts while it's in use, as one started by a filter would.
+	 */
+	private final ThreadLocal<Search> searches = new ThreadLocal<Search>()
+	{
+		protected Search initialValue()
+		{
+			return new Search();
+		}
+	};
+	
+	private final AtomicLong searchCount = new AtomicLong();
+	
+	/**
+	 * The units copied from the buckets looked at by a search, and the best
+	 * candidate so far.
+	 */
+	private static class Search
+	{
+		private Unit[] found = new Unit[16];
+		private int count;
+		private boolean busy;
+		private Search next;
+		
+		private Unit best;
+		private long bestDistSq;
+		private long bestOrder;
+		
+		private void add(Unit[] units, int size)
+		{
+			if (count + size > found.length)
+				found = Arrays.copyOf(found, Math.max(found.length * 2, count + size));
+			
+			System.arraycopy(units, 0, found, count, size);
+			count += size;
+		}
+	}
+	
+	private static class Entry
+	{
+		private int owner;
+		private int bucket;
+	}
+	
+	private static class Owner
+	{
+		private final int key;
+		private final Unit[][] buckets;
+		private final int[] sizes;
+		private final int[] stamps;
+		private final int[] published;
+		
+		private Owner(int key, int bucketCount)
+		{
+			this.key = key;
+			this.buckets = new Unit[bucketCount][];
+			this.sizes = new int[bucketCount];
+			this.stamps = new int[bucketCount];
+			this.published = new int[bucketCount];
+		}
+	}
+	
+	public UnitIndex(int w, int h)
+	{
+		this.w = w;
+		this.h = h;
+		this.bw = (w + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		this.bh = (h + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		this.owners = new IntMap<Owner>();
+		this.ownerList = new Owner[4];
+		this.entries = new IntMap<Entry>();
+	}
+	
+	/**
+	 * Adds unit at its current position.
+	 */
+	public void add(Unit unit)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			if (entries.containsKey(unit.getSerial()))
+				throw new IllegalStateException("Unit already indexed");
+			
+			Entry entry = new Entry();
+			entry.owner = getOwnerKey(unit.getOwner());
+			entry.bucket = getBucket(unit.getPosition());
+			entries.put(unit.getSerial(), entry);
+			insert(entry.owner, entry.bucket, unit);
+			
+			Footprint fp = unit.getFootprint();
+			maxWidth = Math.max(maxWidth, fp.getWidth());
+			maxHeight = Math.max(maxHeight, fp.getHeight());
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes unit, if it's in this index.
+	 */
+	public void remove(Unit unit)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			Entry entry = entries.remove(unit.getSerial());
+			
+			if (entry != null)
+				delete(entry.owner, entry.bucket, unit);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Moves unit to the bucket for its current position and the buckets for
+	 * its current owner, if it's changed either since it was put in.
+	 */
+	public void update(Unit unit)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			Entry entry = entries.get(unit.getSerial());
+			
+			if (entry == null)
+				return;
+			
+			int owner = getOwnerKey(unit.getOwner());
+			int bucket = getBucket(unit.getPosition());
+			
+			if (owner == entry.owner && bucket == entry.bucket)
+				return;
+			
+			delete(entry.owner, entry.bucket, unit);
+			entry.owner = owner;
+			entry.bucket = bucket;
+			insert(owner, bucket, unit);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public void clear()
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			owners.clear();
+			ownerList = new Owner[4];
+			ownerCount = 0;
+			entries.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds the unit accepted by filter with a spot closest to pos, not
+	 * counting units owned by excluded, if that's not null. Spots closer
+	 * than minDistance are skipped by whole rings, as Grid.findClosest()
+	 * skips them, and null is returned if the closest isn't in
+	 * [minDistance, maxDistance].
+	 *
+	 * pos itself is only looked at when minDistance is small enough that
+	 * the search starts at ring 0, as it does for a minDistance of 1. If it
+	 * holds a unit filter accepts then, that unit is found whatever the
+	 * range. occupant is the unit at pos, or null if there isn't one.
+	 */
+	public Unit findClosest(
+		Position pos,
+		Unit occupant,
+		Filter<Unit> filter,
+		Player excluded,
+		double minDistance,
+		double maxDistance)
+	{
+		int minRing = (int) (minDistance * 0.7071);
+		int maxRing =
+			Double.isInfinite(maxDistance) || maxDistance > Math.max(w, h)
+			? Math.max(w, h)
+			: (int) maxDistance;
+		
+		if (minRing == 0)
+		{
+			if (occupant != null && filter.accept(occupant))
+				return occupant;
+			
+			minRing = 1;
+		}
+		
+		searchCount.incrementAndGet();
+		
+		Search search = startSearch();
+		
+		try
+		{
+			gather(search, pos, maxRing, excluded);
+			
+			for (int i = 0; i < search.count; ++i)
+				if (filter.accept(search.found[i]))
+					consider(search, search.found[i], pos, minRing, maxRing);
+			
+			if (search.best == null)
+				return null;
+			
+			double distance = Math.sqrt(search.bestDistSq);
+			
+			return distance >= minDistance && distance <= maxDistance
+				? search.best
+				: null;
+		}
+		finally
+		{
+			endSearch(search);
+		}
+	}
+	
+	/**
+	 * Gets the number of times findClosest() has searched the buckets.
+	 */
+	public long getSearchCount()
+	{
+		return searchCount.get();
+	}
+	
+	/**
+	 * Makes the current stamps the ones getStamp() reads.
+	 */
+	public void publishStamps()
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			for (int o = 0; o < ownerCount; ++o)
+			{
+				Owner owner = ownerList[o];
+				System.arraycopy(owner.stamps, 0, owner.published, 0, owner.stamps.length);
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Gets the sum of the published stamps of the buckets that hold units
+	 * that could be within range of pos, over the owners other than
+	 * excluded. It changes whenever a unit of one of those owners comes
+	 * into one of those buckets.
+	 */
+	public long getStamp(Position pos, double range, Player excluded)
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			int ring = (int) Math.min(range, Math.max(w, h));
+			
+			int x0 = Math.max(pos.x - ring - maxWidth + 1, 0) / BUCKET_SIZE;
+			int y0 = Math.max(pos.y - ring - maxHeight + 1, 0) / BUCKET_SIZE;
+			int x1 = Math.min(pos.x + ring, w - 1) / BUCKET_SIZE;
+			int y1 = Math.min(pos.y + ring, h - 1) / BUCKET_SIZE;
+			int excludedKey = excluded == null ? Integer.MIN_VALUE : excluded.getID();
+			long stamp = 0;
+			
+			for (int o = 0; o < ownerCount; ++o)
+			{
+				Owner owner = ownerList[o];
+				
+				if (owner.key == excludedKey)
+					continue;
+				
+				for (int by = y0; by <= y1; ++by)
+				for (int bx = x0; bx <= x1; ++bx)
+					stamp += owner.published[bx + by * bw];
+			}
+			
+			return stamp;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Adds the units accepted by filter with a spot within range of pos to
+	 * into, not counting those owned by excluded, if that's not null.
+	 */
+	public void getUnits(
+		Position pos,
+		double range,
+		Filter<Unit> filter,
+		Player excluded,
+		Collection<Unit> into)
+	{
+		int ring = (int) Math.min(range, Math.max(w, h));
+		double rangeSq = range * range;
+		Search search = startSearch();
+		
+		try
+		{
+			gather(search, pos, ring, excluded);
+			
+			for (int i = 0; i < search.count; ++i)
+			{
+				Unit unit = search.found[i];
+				
+				if ((filter == null || filter.accept(unit))
+				 && getNearestDistSq(unit, pos) <= rangeSq)
+					into.add(unit);
+			}
+		}
+		finally
+		{
+			endSearch(search);
+		}
+	}
+	
+	/**
+	 * Copies into search the units in the buckets that hold units that
+	 * could be within ring of pos, not counting those owned by excluded,
+	 * if that's not null.
+	 */
+	private void gather(Search search, Position pos, int ring, Player excluded)
+	{
+		int excludedKey = excluded == null ? Integer.MIN_VALUE : excluded.getID();
+		
+		lock.readLock().lock();
+		
+		try
+		{
+			int x0 = Math.max(pos.x - ring - maxWidth + 1, 0) / BUCKET_SIZE;
+			int y0 = Math.max(pos.y - ring - maxHeight + 1, 0) / BUCKET_SIZE;
+			int x1 = Math.min(pos.x + ring, w - 1) / BUCKET_SIZE;
+			int y1 = Math.min(pos.y + ring, h - 1) / BUCKET_SIZE;
+			
+			for (int o = 0; o < ownerCount; ++o)
+			{
+				Owner owner = ownerList[o];
+				
+				if (owner.key == excludedKey)
+					continue;
+				
+				for (int by = y0; by <= y1; ++by)
+				for (int bx = x0; bx <= x1; ++bx)
+				{
+					int bucket = bx + by * bw;
+					
+					if (owner.sizes[bucket] != 0)
+						search.add(owner.buckets[bucket], owner.sizes[bucket]);
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Gets a Search for this thread that isn't in use.
+	 */
+	private Search startSearch()
+	{
+		Search search = searches.get();
+		
+		while (search.busy)
+		{
+			if (search.next == null)
+				search.next = new Search();
+			
+			search = search.next;
+		}
+		
+		search.busy = true;
+		return search;
+	}
+	
+	/**
+	 * Clears search, so it doesn't hold on to units, and lets it be used
+	 * again.
+	 */
+	private void endSearch(Search search)
+	{
+		Arrays.fill(search.found, 0, search.count, null);
+		search.count = 0;
+		search.best = null;
+		search.busy = false;
+	}
+	
+	/**
+	 * Makes unit the best candidate if it has a spot in the rings searched
+	 * that comes before the best candidate's.
+	 */
+	private void consider(Search search, Unit unit, Position pos, int minRing, int maxRing)
+	{
+		Position origin = unit.getPosition();
+		Footprint fp = unit.getFootprint();
+		
+		if (fp == Footprint.VEHICLE)
+		{
+			consider(search, unit, pos, origin.x, origin.y, minRing, maxRing);
+			return;
+		}
+		
+		for (int i = 0; i < fp.getOccupiedCount(); ++i)
+		{
+			Position spot = fp.getOccupied(i);
+			consider(search, unit, pos, origin.x + spot.x, origin.y + spot.y, minRing, maxRing);
+		}
+	}
+	
+	private void consider(
+		Search search,
+		Unit unit,
+		Position pos,
+		int x,
+		int y,
+		int minRing,
+		int maxRing)
+	{
+		int dx = x - pos.x;
+		int dy = y - pos.y;
+		int ring = Math.max(Math.abs(dx), Math.abs(dy));
+		
+		if (ring < minRing || ring > maxRing)
+			return;
+		
+		long distSq = (long) dx * dx + (long) dy * dy;
+		
+		/*
+		 * Grid.findClosest() goes round each ring by the top and bottom
+		 * rows, a column at a time left to right, and then by the sides,
+		 * a row at a time top to bottom, keeping the first of any equally
+		 * close spots.
+		 */
+		long order = Math.abs(dy) == ring
+			? ((long) ring * 2 << 32) + ((long) x << 1) + (dy < 0 ? 0 : 1)
+			: ((long) ring * 2 + 1 << 32) + ((long) y << 1) + (dx < 0 ? 0 : 1);
+		
+		if (search.best == null || distSq < search.bestDistSq
+		 || (distSq == search.bestDistSq && order < search.bestOrder))
+		{
+			search.best = unit;
+			search.bestDistSq = distSq;
+			search.bestOrder = order;
+		}
+	}
+	
+	/**
+	 * Passes each unit with a spot within range of pos to the visitor.
+	 */
+	public void visitUnits(Position pos, double range, RadiusVisitor visitor)
+	{
+		int ring = (int) Math.min(range, Math.max(w, h));
+		double rangeSq = range * range;
+		Search search = startSearch();
+		
+		try
+		{
+			gather(search, pos, ring, null);
+			
+			for (int i = 0; i < search.count; ++i)
+				if (getNearestDistSq(search.found[i], pos) <= rangeSq)
+					visitor.visitUnit(search.found[i]);
+		}
+		finally
+		{
+			endSearch(search);
+		}
+	}
+	
+	private static long getNearestDistSq(Unit unit, Position pos)
+	{
+		Position origin = unit.getPosition();
+		Footprint fp = unit.getFootprint();
+		
+		if (fp == Footprint.VEHICLE)
+			return distSq(origin.x - pos.x, origin.y - pos.y);
+		
+		long nearest = Long.MAX_VALUE;
+		
+		for (int i = 0; i < fp.getOccupiedCount(); ++i)
+		{
+			Position spot = fp.getOccupied(i);
+			nearest = Math.min(nearest, distSq(origin.x + spot.x - pos.x, origin.y + spot.y - pos.y));
+		}
+		
+		return nearest;
+	}
+	
+	private static long distSq(int dx, int dy)
+	{
+		return (long) dx * dx + (long) dy * dy;
+	}
+	
+	private void insert(int owner, int bucket, Unit unit)
+	{
+		Owner entry = owners.get(owner);
+		
+		if (entry == null)
+		{
+			entry = new Owner(owner, bw * bh);
+			owners.put(owner, entry);
+			
+			if (ownerCount == ownerList.length)
+				ownerList = Arrays.copyOf(ownerList, ownerCount * 2);
+			
+			ownerList[ownerCount++] = entry;
+		}
+		
+		Unit[][] buckets = entry.buckets;
+		int[] sizes = entry.sizes;
+		
+		Unit[] units = buckets[bucket];
+		
+		if (units == null)
+		{
+			units = new Unit[4];
+			buckets[bucket] = units;
+		}
+		else if (sizes[bucket] == units.length)
+		{
+			units = Arrays.copyOf(units, units.length * 2);
+			buckets[bucket] = units;
+		}
+		
+		units[sizes[bucket]++] = unit;
+		entry.stamps[bucket]++;
+	}
+	
+	private void delete(int owner, int bucket, Unit unit)
+	{
+		Owner entry = owners.get(owner);
+		Unit[] units = entry.buckets[bucket];
+		int[] sizes = entry.sizes;
+		int last = sizes[bucket] - 1;
+		
+		for (int i = 0; i <= last; ++i)
+		{
+			if (units[i] == unit)
+			{
+				units[i] = units[last];
+				units[last] = null;
+				sizes[bucket] = last;
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Unit not in its bucket");
+	}
+	
+	private int getBucket(Position pos)
+	{
+		return pos.x / BUCKET_SIZE + (pos.y / BUCKET_SIZE) * bw;
+	}
+	
+	private static int getOwnerKey(Player owner)
+	{
+		return owner == null ? NO_OWNER : owner.getID();
+	}
+}
@@ -50,7 +50,7 @@ public class Player
 		return resources;
 	}
 	
-	public boolean canAfford(Cost cost)
+	public synchronized boolean canAfford(Cost cost)
 	{
 		for (ResourceType type : ResourceType.values())
 		{
@@ -70,7 +70,7 @@ public class Player
 		return true;
 	}
 	
-	public void spend(Cost cost)
+	public synchronized void spend(Cost cost)
 	{
 		for (ResourceType type : ResourceType.values())
 		{
@@ -90,7 +90,7 @@ public class Player
 		}
 	}
 	
-	public void addResource(ResourceType type, int amount)
+	public synchronized void addResource(ResourceType type, int amount)
 	{
 		Integer currentAmount = resources.get(type);
 		
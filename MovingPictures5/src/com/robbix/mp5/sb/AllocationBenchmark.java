@@ -0,0 +1,187 @@
+package com.robbix.mp5.sb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import com.robbix.mp5.Engine;
+import com.robbix.mp5.Game;
+import com.robbix.mp5.RegionStepper;
+import com.robbix.mp5.player.Player;
+import com.robbix.mp5.sb.demo.CombatDemo;
+import com.robbix.utils.Utils;
+
+/**
+ * Runs the CombatDemo headless for a number of ticks, and reports how many
+ * bytes were allocated per tick, by all threads, over each window of ticks.
+ * Ticks shouldn't make garbage of their own, so once the battle settles
+ * down the allocation rate should fall to what the units themselves need -
+ * new tasks, animations and paths - and a rise points to a copy or a
+ * boxed value creeping back into the tick.
+ *
+ * Exits with status 1 if the rate over all ticks after the warm-up is
+ * above the limit, so it serves as a regression check. The default limit,
+ * DEFAULT_LIMIT, is the budget for what's still allocated while units are
+ * fighting: the Tasks each move and turn is made of, paths, weapon
+ * animations and splash damage, and, with worker threads, the Futures
+ * each phase is run with. Once the battle is over and the units left are
+ * idle, a tick allocates about 100 bytes, or about 1300 with workers.
+ *
+ * Allocation is counted for every thread, the Engine's, the
+ * RegionStepper's and the PathService's workers included, by what each
+ * thread allocated over the window. A thread that ends during a window
+ * takes its count with it, so the window is flagged.
+ *
+ * Options:
+ *   -resDir:<dir>     resource directory, default ./res
+ *   -tileSet:<name>   tile set used to load the map, default newTerraDirt
+ *   -ticks:<n>        ticks run after the warm-up, default 2000
+ *   -warmup:<n>       ticks run before measuring, default 200
+ *   -window:<n>       ticks per line reported, default 200
+ *   -threads:<n>      RegionStepper threads, default 0 to step serially
+ *   -seed:<n>         seed for the Game's random numbers, default 0
+ *   -limit:<n>        most bytes per tick allowed, default DEFAULT_LIMIT,
+ *                     or -1 for no limit
+ */
+public class AllocationBenchmark
+{
+	public static final long DEFAULT_LIMIT = 8192;
+	
+	public static void main(String[] args) throws IOException
+	{
+		File resDir = new File("./res");
+		String tileSetName = "newTerraDirt";
+		int ticks = 2000;
+		int warmup = 200;
+		int window = 200;
+		int threads = 0;
+		long seed = 0;
+		long limit = DEFAULT_LIMIT;
+		
+		for (String arg : args)
+		{
+			int colonIndex = Math.max(arg.indexOf(':'), 0);
+			String option = arg.substring(colonIndex + 1);
+			
+			if      (arg.startsWith("-resDir:"))  resDir      = new File(option);
+			else if (arg.startsWith("-tileSet:")) tileSetName = option;
+			else if (arg.startsWith("-ticks:"))   ticks       = Integer.parseInt(option);
+			else if (arg.startsWith("-warmup:"))  warmup      = Integer.parseInt(option);
+			else if (arg.startsWith("-window:"))  window      = Integer.parseInt(option);
+			else if (arg.startsWith("-threads:")) threads     = Integer.parseInt(option);
+			else if (arg.startsWith("-seed:"))    seed        = Long.parseLong(option);
+			else if (arg.startsWith("-limit:"))   limit       = Long.parseLong(option);
+		}
+		
+		com.sun.management.ThreadMXBean threadBean = getThreadBean();
+		
+		if (threadBean == null)
+		{
+			System.err.println("Thread allocation counts aren't supported by this JVM");
+			System.exit(2);
+		}
+		
+		CombatDemo demo = new CombatDemo();
+		Game game = Game.loadHeadless(resDir, demo.getMapName(), tileSetName);
+		
+		for (Player player : demo.getPlayers())
+			game.addPlayer(player);
+		
+		demo.placeUnits(game.getMap(), game.getUnitFactory());
+		Utils.setThreadRandom(new Random(seed));
+		
+		Engine engine = new Engine(game);
+		
+		if (threads > 0)
+		{
+			engine.setRegionStepper(new RegionStepper(
+				game.getMap(),
+				game.getUnitFactory(),
+				threads
+			));
+		}
+		
+		engine.step(warmup);
+		
+		System.out.printf("%8s %8s %14s%n", "ticks", "units", "bytes/tick");
+		
+		long total = 0;
+		
+		for (int done = 0; done < ticks; done += window)
+		{
+			int run = Math.min(window, ticks - done);
+			long[] ids = threadBean.getAllThreadIds();
+			long[] before = threadBean.getThreadAllocatedBytes(ids);
+			engine.step(run);
+			
+			long[] afterIds = threadBean.getAllThreadIds();
+			long[] after = threadBean.getThreadAllocatedBytes(afterIds);
+			long allocated = 0;
+			
+			for (int j = 0; j < afterIds.length; ++j)
+			{
+				int i = indexOf(ids, afterIds[j]);
+				
+				if (after[j] >= 0)
+					allocated += after[j] - (i == -1 || before[i] < 0 ? 0 : before[i]);
+			}
+			
+			int ended = 0;
+			
+			for (int i = 0; i < ids.length; ++i)
+			{
+				int j = indexOf(afterIds, ids[i]);
+				
+				if (before[i] >= 0 && (j == -1 || after[j] < 0))
+					ended++;
+			}
+			
+			total += allocated;
+			
+			System.out.printf(
+				"%8d %8d %14d%s%n",
+				warmup + done + run,
+				game.getMap().getUnitCount(),
+				allocated / run,
+				ended == 0 ? "" : "  (" + ended + " threads ended uncounted)"
+			);
+		}
+		
+		engine.dispose();
+		
+		long perTick = total / Math.max(ticks, 1);
+		System.out.printf("%8s %8s %14d%n", "all", "", perTick);
+		
+		if (limit >= 0 && perTick > limit)
+		{
+			System.err.println(perTick + " bytes per tick is over the limit of " + limit);
+			System.exit(1);
+		}
+	}
+	
+	private static com.sun.management.ThreadMXBean getThreadBean()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		
+		if (!threadBean.isThreadAllocatedMemorySupported())
+			return null;
+		
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		return threadBean;
+	}
+	
+	private static int indexOf(long[] ids, long id)
+	{
+		for (int i = 0; i < ids.length; ++i)
+			if (ids[i] == id)
+				return i;
+		
+		return -1;
+	}
+}
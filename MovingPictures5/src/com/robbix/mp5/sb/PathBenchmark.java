@@ -0,0 +1,283 @@
+package com.robbix.mp5.sb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.robbix.mp5.ai.AStar;
+import com.robbix.mp5.ai.HierarchicalPathfinder;
+import com.robbix.mp5.ai.JumpPointSearch;
+import com.robbix.mp5.ai.LandmarkHeuristic;
+import com.robbix.mp5.ai.Pathfinder;
+import com.robbix.mp5.ai.SearchSelector;
+import com.robbix.mp5.map.LayeredMap;
+import com.robbix.mp5.map.TileSet;
+import com.robbix.utils.CostMap;
+import com.robbix.utils.Position;
+
+/**
+ * Times path searches between random pairs of passable positions on each
+ * of the maps in res/terrain, or the maps named on the command line. The
+ * same searches are run by an AStar, an AStar guided by a
+ * LandmarkHeuristic, a JumpPointSearch, whichever of AStar, JPS and HPA*
+ * a SearchSelector picks for each search, and a HierarchicalPathfinder.
+ * The steps column gives the mean length of the paths found, so paths
+ * longer than A*'s show up there.
+ *
+ * Options:
+ *   -resDir:<dir>     resource directory, default ./res
+ *   -tileSet:<name>   tile set used to load the maps, default newTerraDirt
+ *   -searches:<n>     searches timed per map, default 1000
+ *   -seed:<n>         seed for choosing positions, default 0
+ *   -walls:<n>        random lines of wall put on each map first, default 0
+ *   -cost:<n>         cost of every passable position, default as loaded
+ *   -minDistance:<n>  least straight-line distance between the positions
+ *                     of a search, default 0
+ */
+public class PathBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		File resDir = new File("./res");
+		String tileSetName = "newTerraDirt";
+		int searches = 1000;
+		long seed = 0;
+		int walls = 0;
+		double cost = Double.NaN;
+		double minDistance = 0;
+		List<String> mapNames = new ArrayList<String>();
+		
+		for (String arg : args)
+		{
+			int colonIndex = Math.max(arg.indexOf(':'), 0);
+			String option = arg.substring(colonIndex + 1);
+			
+			if      (arg.startsWith("-resDir:"))   resDir      = new File(option);
+			else if (arg.startsWith("-tileSet:"))  tileSetName = option;
+			else if (arg.startsWith("-searches:")) searches    = Integer.parseInt(option);
+			else if (arg.startsWith("-seed:"))     seed        = Long.parseLong(option);
+			else if (arg.startsWith("-walls:"))    walls       = Integer.parseInt(option);
+			else if (arg.startsWith("-cost:"))     cost        = Double.parseDouble(option);
+			else if (arg.startsWith("-minDistance:")) minDistance = Double.parseDouble(option);
+			else                                   mapNames.add(arg);
+		}
+		
+		File terrainDir = new File(resDir, "terrain");
+		
+		if (mapNames.isEmpty())
+			for (File file : terrainDir.listFiles())
+				if (file.getName().endsWith(".txt"))
+					mapNames.add(file.getName().substring(0, file.getName().length() - 4));
+		
+		Collections.sort(mapNames);
+		
+		TileSet tileSet = TileSet.load(new File(resDir, "tileset"), tileSetName);
+		
+		System.out.printf(
+			"%-16s %-6s %9s %10s %10s %10s %8s %8s%n",
+			"map", "search", "searches", "found", "ms total", "us/search", "nodes", "steps"
+		);
+		
+		for (String mapName : mapNames)
+		{
+			LayeredMap map = LayeredMap.load(terrainDir, mapName, tileSet);
+			CostMap costMap = map.getTerrainCostMap().copy();
+			Random rand = new Random(seed);
+			
+			if (!Double.isNaN(cost))
+				setCost(costMap, cost);
+			
+			putWalls(costMap, walls, rand);
+			run(mapName, costMap, searches, minDistance, rand);
+		}
+	}
+	
+	private static void setCost(CostMap costMap, double cost)
+	{
+		for (int y = 0; y < costMap.h; ++y)
+		for (int x = 0; x < costMap.w; ++x)
+			if (!Double.isInfinite(costMap.get(x, y)))
+				costMap.set(x, y, cost);
+	}
+	
+	/**
+	 * Puts down lines of wall up to 24 long, across or down.
+	 */
+	private static void putWalls(CostMap costMap, int walls, Random rand)
+	{
+		for (int i = 0; i < walls; ++i)
+		{
+			int x = rand.nextInt(costMap.w);
+			int y = rand.nextInt(costMap.h);
+			int length = 4 + rand.nextInt(20);
+			boolean across = rand.nextBoolean();
+			
+			for (int j = 0; j < length; ++j)
+			{
+				int wx = across ? x + j : x;
+				int wy = across ? y : y + j;
+				
+				if (wx < costMap.w && wy < costMap.h)
+					costMap.setInfinite(wx, wy);
+			}
+		}
+	}
+	
+	private static void run(
+		String mapName,
+		CostMap costMap,
+		int searches,
+		double minDistance,
+		Random rand)
+	{
+		List<Position> open = new ArrayList<Position>();
+		
+		for (int y = 0; y < costMap.h; ++y)
+		for (int x = 0; x < costMap.w; ++x)
+			if (!Double.isInfinite(costMap.get(x, y)))
+				open.add(new Position(x, y));
+		
+		if (open.isEmpty())
+			return;
+		
+		Position[] starts = new Position[searches];
+		Position[] ends = new Position[searches];
+		
+		for (int i = 0, tries = 0; i < searches; ++tries)
+		{
+			starts[i] = open.get(rand.nextInt(open.size()));
+			ends[i] = open.get(rand.nextInt(open.size()));
+			
+			/*
+			 * Give up on the distance on maps too small for it.
+			 */
+			if (starts[i].getDistance(ends[i]) >= minDistance || tries > searches * 100)
+				++i;
+		}
+		
+		LandmarkHeuristic landmarks = new LandmarkHeuristic(costMap);
+		landmarks.rebuild();
+		
+		time(mapName, "A*", new AStar(), costMap, starts, ends);
+		time(mapName, "ALT", new AStar(landmarks), costMap, starts, ends);
+		time(mapName, "JPS", new JumpPointSearch(), costMap, starts, ends);
+		time(mapName, "auto", new Selected(), costMap, starts, ends);
+		time(mapName, "HPA*", new HierarchicalPathfinder(costMap), costMap, starts, ends);
+	}
+	
+	private static void time(
+		String mapName,
+		String searchName,
+		Pathfinder pathfinder,
+		CostMap costMap,
+		Position[] starts,
+		Position[] ends)
+	{
+		int searches = starts.length;
+		
+		/*
+		 * Warm up, then time.
+		 */
+		for (int i = 0; i < Math.min(searches, 100); ++i)
+			pathfinder.getPath(costMap, starts[i], ends[i]);
+		
+		int found = 0;
+		long expansions = 0;
+		long steps = 0;
+		long time = System.nanoTime();
+		
+		for (int i = 0; i < searches; ++i)
+		{
+			List<Position> path = pathfinder.getPath(costMap, starts[i], ends[i]);
+			
+			if (path != null)
+			{
+				found++;
+				steps += path.size() - 1;
+			}
+			
+			expansions += getExpansionCount(pathfinder);
+		}
+		
+		time = System.nanoTime() - time;
+		
+		System.out.printf(
+			"%-16s %-6s %9d %10d %10.1f %10.1f %8d %8d%n",
+			mapName,
+			searchName,
+			searches,
+			found,
+			time / 1e6,
+			time / 1e3 / searches,
+			expansions / searches,
+			steps / Math.max(found, 1)
+		);
+	}
+	
+	private static int getExpansionCount(Pathfinder pathfinder)
+	{
+		if (pathfinder instanceof AStar)
+			return ((AStar) pathfinder).getExpansionCount();
+		
+		if (pathfinder instanceof JumpPointSearch)
+			return ((JumpPointSearch) pathfinder).getExpansionCount();
+		
+		if (pathfinder instanceof Selected)
+			return ((Selected) pathfinder).getExpansionCount();
+		
+		/*
+		 * HierarchicalPathfinder doesn't count its expansions.
+		 */
+		return 0;
+	}
+	
+	/**
+	 * Runs each search as a JumpPointSearch, an AStar or a
+	 * HierarchicalPathfinder, as picked by a SearchSelector, the same way
+	 * Game.doApproach() does.
+	 */
+	private static class Selected implements Pathfinder
+	{
+		private SearchSelector selector = new SearchSelector();
+		private AStar aStar = new AStar();
+		private JumpPointSearch jumps = new JumpPointSearch();
+		private HierarchicalPathfinder hierarchy;
+		private int expansions;
+		
+		public List<Position> getPath(CostMap course, Position start, Position end)
+		{
+			return getPath(course, start, end, 0);
+		}
+		
+		public List<Position> getPath(CostMap course, Position start, Position end, double distance)
+		{
+			if (selector.useJumpPoints(course, start, end))
+			{
+				List<Position> path = jumps.getPath(course, start, end, distance);
+				expansions = jumps.getExpansionCount();
+				return path;
+			}
+			
+			if (selector.useHierarchy(course, start, end))
+			{
+				if (hierarchy == null || hierarchy.getCourse() != course)
+					hierarchy = new HierarchicalPathfinder(course);
+				
+				expansions = 0;
+				return hierarchy.getPath(course, start, end, distance);
+			}
+			
+			List<Position> path = aStar.getPath(course, start, end, distance);
+			expansions = aStar.getExpansionCount();
+			return path;
+		}
+		
+		public int getExpansionCount()
+		{
+			return expansions;
+		}
+	}
+}
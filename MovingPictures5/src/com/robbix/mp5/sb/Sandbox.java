@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
+import javax.management.JMException;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
@@ -60,6 +61,7 @@ import com.robbix.mp5.Engine;
 import com.robbix.mp5.Game;
 import com.robbix.mp5.GameListener;
 import com.robbix.mp5.MeteorShowerTrigger;
+import com.robbix.mp5.RegionStepper;
 import com.robbix.mp5.map.Fixture;
 import com.robbix.mp5.map.Ore;
 import com.robbix.mp5.player.Player;
@@ -152,6 +154,7 @@ public class Sandbox extends JFrame
 	private static JCheckBoxMenuItem showGridMenuItem;
 	private static JCheckBoxMenuItem showShadowsMenuItem;
 	private static JCheckBoxMenuItem showCostMapMenuItem;
+	private static JCheckBoxMenuItem showTickMetricsMenuItem;
 	private static JMenuItem pauseMenuItem;
 	private static JMenuItem stepMenuItem;
 	private static JMenuItem spriteLibMenuItem;
@@ -200,6 +203,7 @@ public class Sandbox extends JFrame
 		String demoName          = null;
 		String mapName           = "16-16-plain";
 		String tileSetName       = "newTerraDirt";
+		int stepThreads          = 0;
 		
 		for (String arg : args)
 		{
@@ -220,6 +224,7 @@ public class Sandbox extends JFrame
 			else if (arg.startsWith("-map:"))         mapName          = option;
 			else if (arg.startsWith("-tileSet:"))     tileSetName      = option;
 			else if (arg.startsWith("-resDir:"))      resDir           = new File(option);
+			else if (arg.startsWith("-stepThreads:")) stepThreads      = Integer.parseInt(option);
 		}
 		
 		Demo demo = null;
@@ -247,6 +252,19 @@ public class Sandbox extends JFrame
 		game.getSpriteLibrary().setAsyncModeEnabled(asyncLoadSprites);
 		engine = new Engine(game);
 		factory = game.getUnitFactory();
+		
+		if (stepThreads > 0)
+			engine.setRegionStepper(new RegionStepper(game.getMap(), factory, stepThreads));
+		
+		try
+		{
+			engine.getMetrics().register(mapName);
+		}
+		catch (JMException jme)
+		{
+			jme.printStackTrace();
+		}
+		
 		Game.game.setSoundOn(soundOn);
 		currentPlayer = game.getDefaultPlayer();
 		game.getSoundBank().setVolume(0.5f);
@@ -257,6 +275,7 @@ public class Sandbox extends JFrame
 		MyDisplayWindow windowInterface = new MyDisplayWindow();
 		panel = game.getDisplay();
 		panel.setDisplayWindow(windowInterface);
+		panel.setTickMetrics(engine.getMetrics());
 		panel.pushOverlay(new SelectUnitOverlay());
 		panel.showStatus(currentPlayer);
 		
@@ -278,6 +297,7 @@ public class Sandbox extends JFrame
 		showGridMenuItem       = new JCheckBoxMenuItem("Grid", panel.isShowingGrid());
 		showShadowsMenuItem    = new JCheckBoxMenuItem("Shadows", panel.isShowingShadows());
 		showCostMapMenuItem    = new JCheckBoxMenuItem("Cost Map", panel.isShowingCostMap());
+		showTickMetricsMenuItem= new JCheckBoxMenuItem("Tick Metrics", panel.isShowingTickMetrics());
 		scrollBarsMenuItem     = new JMenuItem("Scroll Bars");
 		frameRateMenuItem      = new JMenuItem("Frame Rate");
 		scrollSpeedMenuItem    = new JMenuItem("Scroll Speed");
@@ -380,6 +400,7 @@ public class Sandbox extends JFrame
 		showGridMenuItem      .addChangeListener((ChangeListener) listener);
 		showShadowsMenuItem   .addChangeListener((ChangeListener) listener);
 		showCostMapMenuItem   .addChangeListener((ChangeListener) listener);
+		showTickMetricsMenuItem.addChangeListener((ChangeListener) listener);
 		scrollSpeedMenuItem   .addActionListener(listener);
 		scrollBarsMenuItem    .addActionListener(listener);
 		frameRateMenuItem     .addActionListener(listener);
@@ -427,6 +448,7 @@ public class Sandbox extends JFrame
 		displayMenu.add(showGridMenuItem);
 		displayMenu.add(showShadowsMenuItem);
 		displayMenu.add(showCostMapMenuItem);
+		displayMenu.add(showTickMetricsMenuItem);
 //		displayMenu.add(scrollBarsMenuItem);
 //		displayMenu.add(frameRateMenuItem);
 //		displayMenu.add(scrollSpeedMenuItem);
@@ -550,6 +572,10 @@ public class Sandbox extends JFrame
 			{
 				panel.setShowCostMap(showCostMapMenuItem.isSelected());
 			}
+			else if (e.getSource() == showTickMetricsMenuItem)
+			{
+				panel.setShowTickMetrics(showTickMetricsMenuItem.isSelected());
+			}
 		}
 		
 		public void actionPerformed(ActionEvent e)
@@ -909,7 +935,13 @@ public class Sandbox extends JFrame
 				if (result != JOptionPane.YES_OPTION)
 					return;
 				
-				game.getMap().clearAllUnits();
+				game.submit(new Runnable()
+				{
+					public void run()
+					{
+						game.getMap().clearAllUnits();
+					}
+				});
 			}
 			else if (e.getSource() == addPlayerMenuItem)
 			{
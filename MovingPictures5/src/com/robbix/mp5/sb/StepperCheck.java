@@ -0,0 +1,181 @@
+package com.robbix.mp5.sb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.robbix.mp5.Engine;
+import com.robbix.mp5.Game;
+import com.robbix.mp5.RegionStepper;
+import com.robbix.mp5.player.Player;
+import com.robbix.mp5.sb.demo.CombatDemo;
+import com.robbix.mp5.unit.Unit;
+import com.robbix.utils.Utils;
+
+/**
+ * Runs the CombatDemo headless twice from the same seed, once with the
+ * Engine stepping units on its own thread and once with a RegionStepper
+ * with worker threads, and compares the units left on the map after each
+ * run. They should be exactly the same, as the Engine steps units through
+ * a single-threaded RegionStepper when it isn't given one.
+ *
+ * Each run is made in a JVM of its own, as serials, which units are
+ * stepped and staggered by, keep counting from one Game to the next.
+ *
+ * Exits with status 1 and prints the first difference if they aren't.
+ *
+ * Options:
+ *   -resDir:<dir>     resource directory, default ./res
+ *   -tileSet:<name>   tile set used to load the map, default newTerraDirt
+ *   -ticks:<n>        ticks run each way, default 1000
+ *   -threads:<n>      RegionStepper threads for the parallel run, default 4
+ *   -seed:<n>         seed for the Game's random numbers, default 0
+ */
+public class StepperCheck
+{
+	public static void main(String[] args) throws IOException
+	{
+		File resDir = new File("./res");
+		String tileSetName = "newTerraDirt";
+		int ticks = 1000;
+		int threads = 4;
+		long seed = 0;
+		int run = -1;
+		
+		for (String arg : args)
+		{
+			int colonIndex = Math.max(arg.indexOf(':'), 0);
+			String option = arg.substring(colonIndex + 1);
+			
+			if      (arg.startsWith("-resDir:"))  resDir      = new File(option);
+			else if (arg.startsWith("-tileSet:")) tileSetName = option;
+			else if (arg.startsWith("-ticks:"))   ticks       = Integer.parseInt(option);
+			else if (arg.startsWith("-threads:")) threads     = Integer.parseInt(option);
+			else if (arg.startsWith("-seed:"))    seed        = Long.parseLong(option);
+			else if (arg.startsWith("-run:"))     run         = Integer.parseInt(option);
+		}
+		
+		if (run != -1)
+		{
+			for (String unit : run(resDir, tileSetName, ticks, run, seed))
+				System.out.println(unit);
+			
+			return;
+		}
+		
+		List<String> serial = fork(args, 0);
+		List<String> parallel = fork(args, threads);
+		
+		for (int i = 0; i < Math.max(serial.size(), parallel.size()); ++i)
+		{
+			String s = i < serial.size()   ? serial.get(i)   : "none";
+			String p = i < parallel.size() ? parallel.get(i) : "none";
+			
+			if (!s.equals(p))
+			{
+				System.err.println("Unit " + i + " differs after " + ticks + " ticks");
+				System.err.println("  serial:   " + s);
+				System.err.println("  parallel: " + p);
+				System.exit(1);
+			}
+		}
+		
+		System.out.println(serial.size() + " units match after " + ticks + " ticks");
+	}
+	
+	/**
+	 * Runs this check in another JVM to make a single run with the given
+	 * number of threads, and gets what it prints.
+	 */
+	private static List<String> fork(String[] args, int threads) throws IOException
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(StepperCheck.class.getName());
+		
+		for (String arg : args)
+			command.add(arg);
+		
+		command.add("-run:" + threads);
+		
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		List<String> lines = new ArrayList<String>();
+		String line = null;
+		
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		
+		reader.close();
+		
+		try
+		{
+			if (process.waitFor() != 0)
+				throw new IOException("run with " + threads + " threads failed: " + lines);
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("interrupted waiting for run");
+		}
+		
+		return lines;
+	}
+	
+	/**
+	 * Runs the CombatDemo and describes each unit left on the map, in the
+	 * order they were placed.
+	 */
+	private static List<String> run(
+		File resDir,
+		String tileSetName,
+		int ticks,
+		int threads,
+		long seed)
+	throws IOException
+	{
+		CombatDemo demo = new CombatDemo();
+		Game game = Game.loadHeadless(resDir, demo.getMapName(), tileSetName);
+		
+		for (Player player : demo.getPlayers())
+			game.addPlayer(player);
+		
+		Utils.setThreadRandom(new Random(seed));
+		demo.placeUnits(game.getMap(), game.getUnitFactory());
+		
+		Engine engine = new Engine(game);
+		
+		if (threads > 0)
+		{
+			engine.setRegionStepper(new RegionStepper(
+				game.getMap(),
+				game.getUnitFactory(),
+				threads
+			));
+		}
+		
+		engine.step(ticks);
+		engine.dispose();
+		
+		List<String> units = new ArrayList<String>();
+		
+		for (Unit unit : game.getMap().getUnitIterator())
+		{
+			Player owner = unit.getOwner();
+			
+			units.add(unit.getType().getName()
+				+ " at " + unit.getPosition()
+				+ " facing " + unit.getDirection()
+				+ " hp " + unit.getHP()
+				+ " owner " + (owner == null ? "none" : owner.getID()));
+		}
+		
+		return units;
+	}
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import javax.swing.JComponent;
 
 import com.robbix.mp5.Game;
+import com.robbix.mp5.TickMetrics;
 import com.robbix.mp5.map.LayeredMap;
 import com.robbix.mp5.map.Tile;
 import com.robbix.mp5.map.TileSet;
@@ -33,6 +34,8 @@ import com.robbix.mp5.ui.obj.DisplayObject;
 import com.robbix.mp5.ui.overlay.InputOverlay;
 import com.robbix.mp5.unit.Command;
 import com.robbix.mp5.unit.Unit;
+import com.robbix.mp5.unit.UnitView;
+import com.robbix.mp5.unit.UnitViews;
 import com.robbix.utils.AnimatedCursor;
 import com.robbix.utils.CostMap;
 import com.robbix.utils.GridMetrics;
@@ -59,8 +62,12 @@ public class DisplayPanel extends JComponent
 	private BufferedImage cachedBackground = null;
 	private Object cacheLock = new Object();
 	private long lastRefreshTime = 0;
+	private Region dirtyRegion = null;
+	private int cachedScale, cachedXOffset, cachedYOffset;
 	
 	private static Font costMapFont = Font.decode("SansSerif-9");
+	private static Font metricsFont = Font.decode("Monospaced-11");
+	private static Color METRICS_BACKGROUND = new Color(0, 0, 0, 160);
 	private static Color BACKGROUND_BLUE = new Color(127, 127, 255);
 	private Color letterBoxColor = Color.BLACK;
 	
@@ -73,8 +80,6 @@ public class DisplayPanel extends JComponent
 	private LinkedList<InputOverlay> overlays;
 	private InputOverlay.ListenerAdapter adapter;
 	
-	private List<AmbientAnimation> animations = new LinkedList<AmbientAnimation>();
-	
 	private EnumMap<DisplayLayer, List<DisplayObject>> displayLayers;
 	
 	private DisplayPanelView view;
@@ -84,6 +89,14 @@ public class DisplayPanel extends JComponent
 	private boolean showTerrainCostMap = false;
 	private boolean showBackground = true;
 	private boolean showShadows = false;
+	private boolean showTickMetrics = false;
+	
+	private TickMetrics tickMetrics;
+	
+	/**
+	 * The UnitViews buffer being painted from, or -1 outside of painting.
+	 */
+	private int viewBuffer = -1;
 	
 	public DisplayPanel(Game game)
 	{
@@ -255,6 +268,31 @@ public class DisplayPanel extends JComponent
 		return showTubeConnectivity;
 	}
 	
+	/**
+	 * Sets the TickMetrics that repaints of this display are timed
+	 * against and that are drawn when showing tick metrics.
+	 */
+	public void setTickMetrics(TickMetrics tickMetrics)
+	{
+		this.tickMetrics = tickMetrics;
+	}
+	
+	public TickMetrics getTickMetrics()
+	{
+		return tickMetrics;
+	}
+	
+	public void setShowTickMetrics(boolean showTickMetrics)
+	{
+		this.showTickMetrics = showTickMetrics;
+		repaint();
+	}
+	
+	public boolean isShowingTickMetrics()
+	{
+		return showTickMetrics;
+	}
+	
 	public void setShowCostMap(boolean showCostMap)
 	{
 		this.showTerrainCostMap = showCostMap;
@@ -271,6 +309,7 @@ public class DisplayPanel extends JComponent
 		synchronized (cacheLock)
 		{
 			cachedBackground = null;
+			dirtyRegion = null;
 		}
 		
 		repaint();
@@ -278,12 +317,23 @@ public class DisplayPanel extends JComponent
 	
 	public void refresh(Position pos)
 	{
-		refresh();
+		refresh(new Region(pos));
 	}
 	
+	/**
+	 * Redraws just the terrain in region on the next repaint, instead of
+	 * all of it.
+	 */
 	public void refresh(Region region)
 	{
-		refresh();
+		synchronized (cacheLock)
+		{
+			dirtyRegion = dirtyRegion == null
+				? region
+				: dirtyRegion.getUnion(region);
+		}
+		
+		repaint();
 	}
 	
 	public void fireCommandButton(Command command)
@@ -374,21 +424,6 @@ public class DisplayPanel extends JComponent
 		return list;
 	}
 	
-	public void cueAnimation(AmbientAnimation animation)
-	{
-		animation.setDisplay(this);
-		
-		synchronized (animations)
-		{
-			animations.add(animation);
-		}
-	}
-	
-	public List<AmbientAnimation> getAnimations()
-	{
-		return animations;
-	}
-	
 	public void addDisplayObject(DisplayObject dObj, DisplayLayer layer)
 	{
 		synchronized (displayLayers)
@@ -686,12 +721,39 @@ public class DisplayPanel extends JComponent
 	 * Paint method and delegates.
 	 */
 	
+	/**
+	 * Gets the UnitView unit is to be painted from, or null if it wasn't on
+	 * the map at the end of the last tick. Only meaningful while painting.
+	 */
+	public UnitView getView(Unit unit)
+	{
+		return Game.game.getUnitViews().getView(unit, viewBuffer);
+	}
+	
 	/**
 	 * Paints the visible rect of the map, including terrain, units and
-	 * overlays.
+	 * overlays. Units are painted as they were at the end of the last
+	 * completed tick, from the Game's UnitViews.
 	 */
 	public void paintComponent(Graphics g0)
 	{
+		UnitViews views = Game.game.getUnitViews();
+		viewBuffer = views.acquire();
+		
+		try
+		{
+			paintFrame(g0);
+		}
+		finally
+		{
+			views.release(viewBuffer);
+			viewBuffer = -1;
+		}
+	}
+	
+	private void paintFrame(Graphics g0)
+	{
+		long paintStart = System.nanoTime();
 		DisplayGraphics g = new DisplayGraphics((Graphics2D) g0);
 		g.setGridMetrics(gm);
 		drawLetterBox(g);
@@ -720,15 +782,51 @@ public class DisplayPanel extends JComponent
 		
 		drawObjects(g, absRect);
 		
+		List<AmbientAnimation> animations = Game.game.getAnimations();
+		
 		synchronized (animations)
 		{
 			for (AmbientAnimation animation : animations)
 				if (absRect.intersects(animation.getBounds()) && gm.scale >= minShowUnitScale)
+				{
+					animation.setDisplay(this);
 					animation.paint(g);
+				}
 		}
 		
 		if (! overlays.isEmpty())
 			overlays.getFirst().paint(g);
+		
+		TickMetrics metrics = tickMetrics;
+		
+		if (metrics != null)
+		{
+			if (showTickMetrics)
+				drawTickMetrics(g, metrics);
+			
+			metrics.record(TickMetrics.Phase.REPAINT, System.nanoTime() - paintStart);
+		}
+	}
+	
+	/**
+	 * Draws a table of tick phase timings in the top-left corner.
+	 */
+	private void drawTickMetrics(DisplayGraphics g, TickMetrics metrics)
+	{
+		String[] lines = metrics.getPhaseSummary();
+		g.setFont(metricsFont);
+		int lineHeight = g.getFontMetrics().getHeight();
+		int width = 0;
+		
+		for (String line : lines)
+			width = max(width, g.getFontMetrics().stringWidth(line));
+		
+		g.setColor(METRICS_BACKGROUND);
+		g.fillRect(4, 4, width + 8, lines.length * lineHeight + 8);
+		g.setColor(Color.WHITE);
+		
+		for (int i = 0; i < lines.length; ++i)
+			g.drawString(lines[i], 8, 8 + (i + 1) * lineHeight - g.getFontMetrics().getDescent());
 	}
 	
 	/**
@@ -757,6 +855,10 @@ public class DisplayPanel extends JComponent
 	/**
 	 * Draws terrain (surface or cost map) depending on options using
 	 * Graphics g in the visible rect.
+	 *
+	 * The terrain is drawn into a cached image, which is drawn again from
+	 * scratch every second or when the view changes. Regions passed to
+	 * refresh(Region) in between are drawn over it where it is.
 	 */
 	private void drawTerrain(DisplayGraphics g, Rectangle rect)
 	{
@@ -766,26 +868,52 @@ public class DisplayPanel extends JComponent
 			region = map.getBounds().getIntersection(region);
 			long time = System.currentTimeMillis();
 			
-			if ((cachedBackground == null) || (time - lastRefreshTime > 1000))
+			if ((cachedBackground == null) || (time - lastRefreshTime > 1000)
+			 || cachedBackground.getWidth() != rect.width
+			 || cachedBackground.getHeight() != rect.height
+			 || cachedScale != gm.scale
+			 || cachedXOffset != gm.xOffset
+			 || cachedYOffset != gm.yOffset)
 			{
 				lastRefreshTime = time;
 				cachedBackground = new RImage(rect.width, rect.height, false);
-				Graphics2D bg = (Graphics2D) cachedBackground.getGraphics();
-				DisplayGraphics cg = new DisplayGraphics(bg);
-				cg.setGridMetrics(g.getGridMetrics());
-				cg.translate(min(0, -gm.xOffset), min(0, -gm.yOffset));
-				
-				if (showTerrainCostMap) drawCostMap(cg, region);
-								   else drawSurface(cg, region);
-				
-				cg.dispose();
+				cachedScale = gm.scale;
+				cachedXOffset = gm.xOffset;
+				cachedYOffset = gm.yOffset;
+				drawBackground(g, region);
 			}
+			else if (dirtyRegion != null)
+			{
+				/*
+				 * Dirty regions come from changes on the map, so they always
+				 * overlap it, though not necessarily the display.
+				 */
+				drawBackground(g, dirtyRegion.getIntersection(map.getBounds()));
+			}
+			
+			dirtyRegion = null;
 			
 			Rectangle letterBox = getLetterBoxRect();
 			g.drawImage(cachedBackground, letterBox.x, letterBox.y, null);
 		}
 	}
 	
+	/**
+	 * Draws the terrain in region into the cached background.
+	 */
+	private void drawBackground(DisplayGraphics g, Region region)
+	{
+		Graphics2D bg = (Graphics2D) cachedBackground.getGraphics();
+		DisplayGraphics cg = new DisplayGraphics(bg);
+		cg.setGridMetrics(g.getGridMetrics());
+		cg.translate(min(0, -gm.xOffset), min(0, -gm.yOffset));
+		
+		if (showTerrainCostMap) drawCostMap(cg, region);
+						   else drawSurface(cg, region);
+		
+		cg.dispose();
+	}
+	
 	/**
 	 * Draws the terrain costmap using Graphics g with in given visible Region.
 	 */
@@ -824,7 +952,7 @@ public class DisplayPanel extends JComponent
 		for (int x = region.x; x < region.getMaxX(); ++x)
 		for (int y = region.y; y < region.getMaxY(); ++y)
 		{
-			Tile tile = tiles.getTile(map.getTileCode(x, y));
+			Tile tile = tiles.getTile(map.getTileIndex(x, y));
 			
 			if (gm.scale >= minShowUnitScale)
 			{
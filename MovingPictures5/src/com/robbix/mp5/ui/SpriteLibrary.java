@@ -21,6 +21,7 @@ import com.robbix.mp5.unit.Activity;
 import com.robbix.mp5.unit.HealthBracket;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.mp5.unit.UnitType;
+import com.robbix.mp5.unit.UnitView;
 import com.robbix.utils.AutoArrayList;
 import com.robbix.utils.Direction;
 import com.robbix.utils.Utils;
@@ -513,8 +514,38 @@ public class SpriteLibrary implements Modular
 	 */
 	public Sprite getSprite(Unit unit)
 	{
-		SpriteSet set = getUnitSpriteSet(unit.getType());
-		SpriteGroup group = set.get(unit.getSpriteArgs());
+		return getSprite(
+			unit.getType(),
+			unit.getSpriteArgs(),
+			unit.getDirection(),
+			unit.getHealthBracket(),
+			unit.getAnimationFrame()
+		);
+	}
+	
+	/**
+	 * Gets the Sprite for a Unit as it was when view was captured.
+	 */
+	public Sprite getSprite(UnitView view)
+	{
+		return getSprite(
+			view.getType(),
+			view.getSpriteArgs(),
+			view.getDirection(),
+			view.getHealthBracket(),
+			view.getAnimationFrame()
+		);
+	}
+	
+	private Sprite getSprite(
+		UnitType type,
+		Object[] spriteArgs,
+		Direction dir,
+		HealthBracket bracket,
+		int animationFrame)
+	{
+		SpriteSet set = getUnitSpriteSet(type);
+		SpriteGroup group = set.get(spriteArgs);
 		
 		if (group.isEnumGroup())
 		{
@@ -522,11 +553,11 @@ public class SpriteLibrary implements Modular
 			
 			if (enumType.equals(Direction.class))
 			{
-				return group.getFrame(unit.getDirection());
+				return group.getFrame(dir);
 			}
 			else if (enumType.equals(HealthBracket.class))
 			{
-				return group.getFrame(unit.getHealthBracket());
+				return group.getFrame(bracket);
 			}
 			else
 			{
@@ -535,7 +566,7 @@ public class SpriteLibrary implements Modular
 		}
 		else
 		{
-			return group.getFrame(unit.getAnimationFrame()
+			return group.getFrame(animationFrame
 				% group.getFrameCount()
 			);
 			//FIXME: temporary, group looping should take care of looping
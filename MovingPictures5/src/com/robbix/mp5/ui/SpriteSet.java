@@ -375,4 +375,4 @@ public abstract class SpriteSet
 		
 		throw new IllegalArgumentException("No String in arg list");
 	}
-}
\ No newline at end of file
+}
@@ -6,6 +6,7 @@ import java.awt.geom.Rectangle2D;
 import com.robbix.mp5.ui.DisplayGraphics;
 import com.robbix.mp5.ui.SpriteGroup;
 import com.robbix.mp5.unit.Unit;
+import com.robbix.mp5.unit.UnitView;
 import com.robbix.utils.Position;
 import com.robbix.utils.Utils;
 
@@ -30,7 +31,8 @@ public class StatusLightDisplayObject extends DisplayObject
 	
 	public Rectangle2D getBounds()
 	{
-		Point2D absPoint = unit.getAbsPoint();
+		UnitView view = panel.getView(unit);
+		Point2D absPoint = view != null ? view.getAbsPoint() : unit.getAbsPoint();
 		return new Rectangle2D.Double(
 			absPoint.getX() - 0.5,
 			absPoint.getY() - 0.5,
@@ -44,18 +46,23 @@ public class StatusLightDisplayObject extends DisplayObject
 		if (panel.getScale() < panel.getMinimumShowUnitScale())
 			return;
 		
+		UnitView view = panel.getView(unit);
+		
+		if (view == null)
+			return;
+		
 		if (unit.isGuardPost() || unit.isStructure())
 		{
 			if (!panel.getCurrentPlayer().owns(unit))
 				return;
 			
-			Position pos = unit.getPosition();
+			Position pos = view.getPosition();
 			
-			if (unit.isIdle())
+			if (view.isIdle())
 			{
 				g.draw(panel.getSpriteLibrary().getSprite("aStructureStatus", "idle"), pos);
 			}
-			else if (unit.isDisabled())
+			else if (view.isDisabled())
 			{
 				SpriteGroup seq = panel.getSpriteLibrary().getAmbientSpriteGroup("aStructureStatus", "disabled");
 				int index = Utils.getTimeBasedIndex(100, seq.getSpriteCount());
@@ -8,6 +8,7 @@ import com.robbix.mp5.ui.Sprite;
 import com.robbix.mp5.ui.SpriteGroup;
 import com.robbix.mp5.ui.SpriteSet;
 import com.robbix.mp5.unit.Unit;
+import com.robbix.mp5.unit.UnitView;
 import com.robbix.utils.Position;
 import com.robbix.utils.RColor;
 import com.robbix.utils.Utils;
@@ -31,9 +32,14 @@ public class UnitDisplayObject extends DisplayObject
 		return !unit.isDead() && !unit.isFloating() && !unit.isDismissed();
 	}
 	
+	/**
+	 * Gets the bounds of the unit as it's painted, or as it is now if it
+	 * isn't being painted.
+	 */
 	public Rectangle2D getBounds()
 	{
-		Point2D absPoint = unit.getAbsPoint();
+		UnitView view = panel.getView(unit);
+		Point2D absPoint = view != null ? view.getAbsPoint() : unit.getAbsPoint();
 		return new Rectangle2D.Double(
 			absPoint.getX() - 0.5,
 			absPoint.getY() - 0.5,
@@ -44,20 +50,23 @@ public class UnitDisplayObject extends DisplayObject
 	
 	public void paint(DisplayGraphics g)
 	{
-		drawUnit(g, unit);
+		UnitView view = panel.getView(unit);
+		
+		if (view != null)
+			drawUnit(g, unit, view);
 	}
 	
-	private void drawUnit(DisplayGraphics g, Unit unit)
+	private void drawUnit(DisplayGraphics g, Unit unit, UnitView view)
 	{
 		if (!unit.isTurret() && panel.getScale() < panel.getMinimumShowUnitScale())
 		{
-			g.setColor(unit.getOwner().getColor());
-			g.fill(unit.getOccupiedBounds());
+			g.setColor(view.getOwner().getColor());
+			g.fill(view.getOccupiedBounds());
 			return;
 		}
 		
-		Point2D point = unit.getAbsPoint();
-		Sprite sprite = panel.getSpriteLibrary().getSprite(unit);
+		Point2D point = view.getAbsPoint();
+		Sprite sprite = panel.getSpriteLibrary().getSprite(view);
 		
 		if (panel.isShowingShadows() && !unit.isTurret())
 		{
@@ -73,9 +82,11 @@ public class UnitDisplayObject extends DisplayObject
 			);
 			g.drawImage(sprite.getShadow(), shadowPoint);
 			
-			if (unit.hasTurret())
+			UnitView turretView = unit.hasTurret() ? panel.getView(unit.getTurret()) : null;
+			
+			if (turretView != null)
 			{
-				Sprite turretSprite = panel.getSpriteLibrary().getSprite(unit.getTurret());
+				Sprite turretSprite = panel.getSpriteLibrary().getSprite(turretView);
 				
 				if (turretSprite != null && turretSprite != SpriteSet.BLANK_SPRITE)
 				{
@@ -90,37 +101,40 @@ public class UnitDisplayObject extends DisplayObject
 		
 		if (!unit.isTurret() && sprite == SpriteSet.BLANK_SPRITE)
 		{
-			g.setColor(unit.getOwner().getColor());
-			g.fill(unit.getOccupiedBounds());
+			g.setColor(view.getOwner().getColor());
+			g.fill(view.getOccupiedBounds());
 		}
 		else
 		{
-			RColor color = unit.getOwner() != null ? unit.getOwner().getColor() : null;
+			RColor color = view.getOwner() != null ? view.getOwner().getColor() : null;
 			g.draw(sprite, point, color);
 		}
 		
 		if (unit.hasTurret())
 		{
-			drawUnit(g, unit.getTurret());
+			UnitView turretView = panel.getView(unit.getTurret());
+			
+			if (turretView != null)
+				drawUnit(g, unit.getTurret(), turretView);
 		}
 		else if (unit.isGuardPost() || unit.isStructure())
 		{
-			drawStatusLight(g, unit);
+			drawStatusLight(g, unit, view);
 		}
 	}
 	
-	private void drawStatusLight(DisplayGraphics g, Unit unit)
+	private void drawStatusLight(DisplayGraphics g, Unit unit, UnitView view)
 	{
 		if (!panel.getCurrentPlayer().owns(unit))
 			return;
 		
-		Position pos = unit.getPosition();
+		Position pos = view.getPosition();
 		
-		if (unit.isIdle())
+		if (view.isIdle())
 		{
 			g.draw(panel.getSpriteLibrary().getSprite("aStructureStatus", "idle"), pos);
 		}
-		else if (unit.isDisabled())
+		else if (view.isDisabled())
 		{
 			SpriteGroup seq = panel.getSpriteLibrary().getAmbientSpriteGroup("aStructureStatus", "disabled");
 			int index = Utils.getTimeBasedIndex(100, seq.getSpriteCount());
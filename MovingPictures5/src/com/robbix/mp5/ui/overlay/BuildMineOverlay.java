@@ -70,13 +70,23 @@ public class BuildMineOverlay extends InputOverlay
 	{
 		Position center = fp.getCenter();
 		Position pos = getCursorPosition().subtract(center);
-		Position minerPos = pos.shift(1, 0);
-		Ore res = panel.getMap().getOre(pos.shift(1, 0));
+		final Position minerPos = pos.shift(1, 0);
+		final Ore res = panel.getMap().getOre(pos.shift(1, 0));
 		
 		if (panel.getMap().canPlaceUnit(pos) && res != null)
 		{
-			miner.assignNow(new BuildMineTask(getMine(res)));
-			Game.game.doMove(miner, minerPos, false);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (miner.isDead())
+						return;
+					
+					miner.assignNow(new BuildMineTask(getMine(res)));
+					Game.game.doMove(miner, minerPos, false);
+				}
+			});
+			
 			complete();
 		}
 		else
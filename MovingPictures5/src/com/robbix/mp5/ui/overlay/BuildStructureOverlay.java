@@ -58,13 +58,23 @@ public class BuildStructureOverlay extends InputOverlay
 		LayeredMap map = panel.getMap();
 		Footprint fp = structure.getFootprint();
 		Position center = structure.getFootprint().getCenter();
-		Position pos = getCursorPosition().subtract(center);
-		Position conVecPos = pos.shift(fp.getWidth(), fp.getHeight());
+		final Position pos = getCursorPosition().subtract(center);
+		final Position conVecPos = pos.shift(fp.getWidth(), fp.getHeight());
 		
 		if (map.canPlaceUnit(pos, fp) && map.canPlaceUnit(conVecPos))
 		{
-			conVec.assignNow(new ConVecConstructTask(structure, pos));
-			Game.game.doMove(conVec, conVecPos, false);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (conVec.isDead())
+						return;
+					
+					conVec.assignNow(new ConVecConstructTask(structure, pos));
+					Game.game.doMove(conVec, conVecPos, false);
+				}
+			});
+			
 			complete();
 		}
 		else
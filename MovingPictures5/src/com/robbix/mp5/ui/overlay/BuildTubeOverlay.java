@@ -84,13 +84,23 @@ public class BuildTubeOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Game.game.doEarthworkerBuild(crane, getCursorPosition(), Fixture.TUBE);
+		final Position pos = getCursorPosition();
+		
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				if (!crane.isDead())
+					Game.game.doEarthworkerBuild(crane, pos, Fixture.TUBE);
+			}
+		});
+		
 		complete();
 	}
 	
 	public void onAreaDragged()
 	{
-		List<Position> tubeRow = new ArrayList<Position>();
+		final List<Position> tubeRow = new ArrayList<Position>();
 		
 		if (isDragRegionLinear())
 		{
@@ -114,7 +124,15 @@ public class BuildTubeOverlay extends InputOverlay
 			reverseForCloserEnd(tubeRow, crane.getPosition());
 		}
 		
-		Game.game.doEarthworkerBuildRow(crane, tubeRow, Fixture.TUBE);
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				if (!crane.isDead())
+					Game.game.doEarthworkerBuildRow(crane, tubeRow, Fixture.TUBE);
+			}
+		});
+		
 		complete();
 	}
 	
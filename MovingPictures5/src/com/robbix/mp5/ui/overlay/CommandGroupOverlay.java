@@ -10,6 +10,7 @@ import com.robbix.mp5.ui.DisplayGraphics;
 import com.robbix.mp5.unit.Command;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.utils.JListDialog;
+import com.robbix.utils.Position;
 
 public class CommandGroupOverlay extends InputOverlay
 {
@@ -46,22 +47,42 @@ public class CommandGroupOverlay extends InputOverlay
 	{
 		if (command == Command.SELF_DESTRUCT)
 		{
-			for (Unit unit : units)
-				Game.game.selfDestruct(unit);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit unit : units)
+						if (!unit.isDead())
+							Game.game.selfDestruct(unit);
+				}
+			});
 			
 			complete();
 		}
 		else if (command == Command.KILL)
 		{
-			for (Unit unit : units)
-				Game.game.kill(unit);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit unit : units)
+						if (!unit.isDead())
+							Game.game.kill(unit);
+				}
+			});
 			
 			complete();
 		}
 		else if (command == Command.STOP)
 		{
-			for (Unit unit : units)
-				unit.cancelAssignments();
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit unit : units)
+						unit.cancelAssignments();
+				}
+			});
 		}
 		else if (command == Command.TRANSFER)
 		{
@@ -77,10 +98,16 @@ public class CommandGroupOverlay extends InputOverlay
 			if (result == null)
 				return;
 			
-			Player player = (Player) result;
+			final Player player = (Player) result;
 			
-			for (Unit unit : units)
-				unit.setOwner(player);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit unit : units)
+						unit.setOwner(player);
+				}
+			});
 			
 			complete();
 		}
@@ -88,7 +115,16 @@ public class CommandGroupOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Game.game.doGroupMove(units, getCursorPosition());
+		final Position pos = getCursorPosition();
+		
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				Game.game.doGroupMove(units, pos);
+			}
+		});
+		
 		Game.game.playSound("beep2");
 	}
 }
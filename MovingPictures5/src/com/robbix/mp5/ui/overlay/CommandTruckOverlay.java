@@ -57,26 +57,46 @@ public class CommandTruckOverlay extends InputOverlay
 	{
 		if (command == Command.SELF_DESTRUCT)
 		{
-			for (Unit truck : trucks)
-				Game.game.selfDestruct(truck);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit truck : trucks)
+						if (!truck.isDead())
+							Game.game.selfDestruct(truck);
+				}
+			});
 			
 			complete();
 		}
 		else if (command == Command.KILL)
 		{
-			for (Unit truck : trucks)
-				Game.game.kill(truck);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit truck : trucks)
+						if (!truck.isDead())
+							Game.game.kill(truck);
+				}
+			});
 			
 			complete();
 		}
 		else if (command == Command.DUMP)
 		{
-			for (Unit truck : trucks)
-				if (!truck.isCargoEmpty())
+			submit(new Runnable()
+			{
+				public void run()
 				{
-					Game.game.playSound("dump", truck.getPosition());
-					truck.interrupt(new DumpTask());
+					for (Unit truck : trucks)
+						if (!truck.isCargoEmpty() && !truck.isDead())
+						{
+							Game.game.playSound("dump", truck.getPosition());
+							truck.interrupt(new DumpTask());
+						}
 				}
+			});
 		}
 		else if (command == Command.PATROL)
 		{
@@ -96,60 +116,84 @@ public class CommandTruckOverlay extends InputOverlay
 			if (result == null)
 				return;
 			
-			Player player = (Player) result;
+			final Player player = (Player) result;
 			
-			for (Unit truck : trucks)
-				truck.setOwner(player);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit truck : trucks)
+						truck.setOwner(player);
+				}
+			});
 			
 			complete();
 		}
 		else if (command == Command.DOCK && trucks.length == 1)
 		{
-			Unit truck = trucks[0];
-			
-			if (truck.isCargoEmpty())
-				return;
-			
-			Position adj = truck.getPosition().shift(0, -1);
-			LayeredMap map = panel.getMap();
-			
-			if (map.getBounds().contains(adj))
+			submit(new Runnable()
 			{
-				Unit smelter = map.getUnit(adj);
-				
-				if (smelter != null && smelter.getType().getName().contains("Smelter"))
+				public void run()
 				{
-					if (!smelter.isDead() && !smelter.isDisabled())
-					{
-						truck.assignNow(new DockTask(smelter, Cargo.EMPTY));
-					}
+					dock(trucks[0]);
 				}
-			}
+			});
 		}
 		else if (command == Command.MINE && trucks.length == 1)
 		{
-			Unit truck = trucks[0];
-			
-			if (!truck.isCargoEmpty())
-				return;
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					mine(trucks[0]);
+				}
+			});
+		}
+	}
+	
+	private void dock(Unit truck)
+	{
+		if (truck.isDead() || truck.isCargoEmpty())
+			return;
+		
+		Position adj = truck.getPosition().shift(0, -1);
+		LayeredMap map = panel.getMap();
+		
+		if (map.getBounds().contains(adj))
+		{
+			Unit smelter = map.getUnit(adj);
 			
-			Position adj = truck.getPosition().shift(1, 0);
-			LayeredMap map = panel.getMap();
+			if (smelter != null && smelter.getType().getName().contains("Smelter"))
+			{
+				if (!smelter.isDead() && !smelter.isDisabled())
+				{
+					truck.assignNow(new DockTask(smelter, Cargo.EMPTY));
+				}
+			}
+		}
+	}
+	
+	private void mine(Unit truck)
+	{
+		if (truck.isDead() || !truck.isCargoEmpty())
+			return;
+		
+		Position adj = truck.getPosition().shift(1, 0);
+		LayeredMap map = panel.getMap();
+		
+		if (map.getBounds().contains(adj))
+		{
+			Unit mine = map.getUnit(adj);
+			Ore deposit = map.getOre(adj);
 			
-			if (map.getBounds().contains(adj))
+			if (mine != null && mine.getType().getName().contains("Mine"))
 			{
-				Unit mine = map.getUnit(adj);
-				Ore deposit = map.getOre(adj);
+				if (deposit == null)
+					throw new IllegalStateException("mine doesn't have deposit");
 				
-				if (mine != null && mine.getType().getName().contains("Mine"))
+				if (!mine.isDead() && !mine.isDisabled())
 				{
-					if (deposit == null)
-						throw new IllegalStateException("mine doesn't have deposit");
-					
-					if (!mine.isDead() && !mine.isDisabled())
-					{
-						truck.assignNow(new MineTask(deposit.getLoad()));
-					}
+					truck.assignNow(new MineTask(deposit.getLoad()));
 				}
 			}
 		}
@@ -157,10 +201,16 @@ public class CommandTruckOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Position pos = getCursorPosition();
+		final Position pos = getCursorPosition();
 		
-		for (Unit truck : trucks)		
-			Game.game.doMove(truck, pos);
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				for (Unit truck : trucks)
+					Game.game.doMove(truck, pos);
+			}
+		});
 		
 		Game.game.playSound("beep2");
 	}
@@ -57,11 +57,25 @@ public class CommandUnitOverlay extends InputOverlay
 		}
 		else if (command == Command.STOP)
 		{
-			unit.cancelAssignments();
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					unit.cancelAssignments();
+				}
+			});
 		}
 		else if (command == Command.SELF_DESTRUCT)
 		{
-			Game.game.selfDestruct(unit);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (!unit.isDead())
+						Game.game.selfDestruct(unit);
+				}
+			});
+			
 			complete();
 		}
 		else if (command == Command.BULLDOZE && unit.is("Dozer"))
@@ -98,13 +112,29 @@ public class CommandUnitOverlay extends InputOverlay
 			if (result == null)
 				return;
 			
-			Player player = (Player) result;
-			unit.setOwner(player);
+			final Player player = (Player) result;
+			
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					unit.setOwner(player);
+				}
+			});
+			
 			complete();
 		}
 		else if (command == Command.KILL)
 		{
-			Game.game.kill(unit);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (!unit.isDead())
+						Game.game.kill(unit);
+				}
+			});
+			
 			complete();
 		}
 		else if (command == Command.BUILD && unit.is("VehicleFactory"))
@@ -115,7 +145,7 @@ public class CommandUnitOverlay extends InputOverlay
 			if (option == null)
 				return;
 			
-			UnitType type = (UnitType) option;
+			final UnitType type = (UnitType) option;
 			Player owner = unit.getOwner();
 			
 			if (type.getCost() == null)
@@ -133,19 +163,27 @@ public class CommandUnitOverlay extends InputOverlay
 				return;
 			}
 			
-			owner.spend(type.getCost());
-			Unit newVehicle = Game.game.getUnitFactory().newUnit(type, owner);
+			if (getFactoryExit() == null)
+			{
+				JOptionPane.showMessageDialog(panel, "can't exit");
+				return;
+			}
 			
-			for (Position exitPos : unit.getFootprint().getFactoryExits(unit.getPosition()))
+			submit(new Runnable()
 			{
-				if (panel.getMap().canPlaceUnit(exitPos))
+				public void run()
 				{
+					Player owner = unit.getOwner();
+					Position exitPos = getFactoryExit();
+					
+					if (unit.isDead() || exitPos == null || !owner.canAfford(type.getCost()))
+						return;
+					
+					owner.spend(type.getCost());
+					Unit newVehicle = Game.game.getUnitFactory().newUnit(type, owner);
 					panel.getMap().putUnit(newVehicle, exitPos);
-					return;
 				}
-			}
-			
-			JOptionPane.showMessageDialog(panel, "can't exit");
+			});
 		}
 		else if (command == Command.BUILD && unit.is("StructureFactory"))
 		{
@@ -155,7 +193,7 @@ public class CommandUnitOverlay extends InputOverlay
 			if (option == null)
 				return;
 			
-			UnitType type = (UnitType) option;
+			final UnitType type = (UnitType) option;
 			Player owner = unit.getOwner();
 			
 			if (type.getCost() == null)
@@ -173,41 +211,85 @@ public class CommandUnitOverlay extends InputOverlay
 				return;
 			}
 			
-			owner.spend(type.getCost());
-			unit.setStructureKit(type.getName());
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					Player owner = unit.getOwner();
+					
+					if (unit.isDead() || !owner.canAfford(type.getCost()))
+						return;
+					
+					owner.spend(type.getCost());
+					unit.setStructureKit(type.getName());
+				}
+			});
 		}
 		else if (command == Command.DOCK && unit.is("ConVec"))
 		{
-			Position adj = unit.getPosition().shift(0, -1);
-			LayeredMap map = panel.getMap();
-			
-			if (map.getBounds().contains(adj))
+			submit(new Runnable()
 			{
-				Unit sFactory = map.getUnit(adj);
-				
-				if (sFactory != null
-			&& sFactory.is("StructureFactory")
-			&& !sFactory.isDead()
-			&& !sFactory.isDisabled())
+				public void run()
 				{
-					String kit = sFactory.getStructureKit();
-					sFactory.setStructureKit(null);
-					Cargo cargo = kit != null
-						? Cargo.newConVecCargo(kit)
-						: Cargo.EMPTY;
-					unit.assignNow(new DockTask(sFactory, cargo));
+					dock();
 				}
-			}
+			});
 		}
 		else if (command == Command.IDLE && unit.isStructure())
 		{
-			if (unit.isIdle())
+			submit(new Runnable()
 			{
-				unit.activate();
-			}
-			else
+				public void run()
+				{
+					if (unit.isIdle())
+					{
+						unit.activate();
+					}
+					else
+					{
+						unit.idle();
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Gets the first free exit of a vehicle factory, or null if there
+	 * isn't one.
+	 */
+	private Position getFactoryExit()
+	{
+		for (Position exitPos : unit.getFootprint().getFactoryExits(unit.getPosition()))
+			if (panel.getMap().canPlaceUnit(exitPos))
+				return exitPos;
+		
+		return null;
+	}
+	
+	private void dock()
+	{
+		if (unit.isDead())
+			return;
+		
+		Position adj = unit.getPosition().shift(0, -1);
+		LayeredMap map = panel.getMap();
+		
+		if (map.getBounds().contains(adj))
+		{
+			Unit sFactory = map.getUnit(adj);
+			
+			if (sFactory != null
+		&& sFactory.is("StructureFactory")
+		&& !sFactory.isDead()
+		&& !sFactory.isDisabled())
 			{
-				unit.idle();
+				String kit = sFactory.getStructureKit();
+				sFactory.setStructureKit(null);
+				Cargo cargo = kit != null
+					? Cargo.newConVecCargo(kit)
+					: Cargo.EMPTY;
+				unit.assignNow(new DockTask(sFactory, cargo));
 			}
 		}
 	}
@@ -216,7 +298,16 @@ public class CommandUnitOverlay extends InputOverlay
 	{
 		if (!(unit.isStructure() || unit.getType().isGuardPostType()))
 		{
-			Game.game.doMove(unit, getCursorPosition());
+			final Position pos = getCursorPosition();
+			
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					Game.game.doMove(unit, pos);
+				}
+			});
+			
 			Game.game.playSound("beep2");
 		}
 		else
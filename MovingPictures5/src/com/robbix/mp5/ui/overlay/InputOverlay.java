@@ -15,6 +15,7 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
 
+import com.robbix.mp5.Game;
 import com.robbix.mp5.map.LayeredMap;
 import com.robbix.mp5.ui.DisplayPanel;
 import com.robbix.mp5.ui.DisplayGraphics;
@@ -23,6 +24,7 @@ import com.robbix.mp5.unit.Footprint;
 import com.robbix.mp5.unit.HealthBracket;
 import com.robbix.mp5.unit.Unit;
 import com.robbix.mp5.unit.UnitType;
+import com.robbix.mp5.unit.UnitView;
 import com.robbix.utils.BorderRegion;
 import com.robbix.utils.ColorScheme;
 import com.robbix.utils.LShapedRegion;
@@ -100,6 +102,17 @@ implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener
 		panel.completeOverlay(this);
 	}
 	
+	/**
+	 * Has command carried out by the Engine at the start of the next tick.
+	 * Overlays handle input on the EDT, so anything they change in the Game
+	 * or its units goes through here. The Game may have changed by then,
+	 * so commands check again anything they depend on.
+	 */
+	protected void submit(Runnable command)
+	{
+		Game.game.submit(command);
+	}
+	
 	public void init()
 	{
 		panel.setAnimatedCursor(animatedCursor);
@@ -121,12 +134,14 @@ implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener
 	
 	public void drawSelectedUnitBox(DisplayGraphics g, Unit unit)
 	{
-		if (unit.isDead() || unit.isFloating()) return;
+		UnitView view = panel.getView(unit);
+		
+		if (view == null) return;
 		
 		if (panel.getScale() < 0)
 		{
 			g.setColor(Color.WHITE);
-			g.draw(unit.getPosition());
+			g.draw(view.getPosition());
 			return;
 		}
 		
@@ -139,7 +154,7 @@ implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener
 		/*
 		 * Draw borders
 		 */
-		Point2D absPoint = unit.getAbsPoint();
+		Point2D absPoint = view.getAbsPoint();
 		int nwCornerX = (int) (absPoint.getX() * tileSize);
 		int nwCornerY = (int) (absPoint.getY() * tileSize);
 		int neCornerX = nwCornerX + absWidth;
@@ -162,11 +177,11 @@ implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener
 		/*
 		 * Draw health bar
 		 */
-		double hpFactor = unit.getHP() / (double) unit.getType().getMaxHP();
+		double hpFactor = view.getHP() / (double) unit.getType().getMaxHP();
 		hpFactor = Math.min(hpFactor, 1.0f);
 		hpFactor = Math.max(hpFactor, 0.0f);
 		
-		boolean isRed = unit.getHealthBracket() == HealthBracket.RED;
+		boolean isRed = view.getHealthBracket() == HealthBracket.RED;
 		
 		int hpBarLength = absWidth - 14;
 		int hpLength = (int) (hpBarLength * hpFactor);
@@ -594,6 +609,10 @@ implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener
 		
 		private boolean ho() { return hasOverlay(); }
 		
+		/*
+		 * Input is handled without the Game's lock, so it never waits on a
+		 * tick. Overlays submit() whatever they change in the Game.
+		 */
 		public void mouseWheelMoved(MouseWheelEvent e) { if (ho()) overlay.mouseWheelMoved(e); }
 		public void mouseDragged   (MouseEvent e)      { if (ho()) overlay.mouseDragged(e);    }
 		public void mouseMoved     (MouseEvent e)      { if (ho()) overlay.mouseMoved(e);      }
@@ -35,8 +35,15 @@ public class PlaceBulldozeOverlay extends InputOverlay
 	
 	private void bulldoze()
 	{
-		Position pos = getCursorPosition();
-		panel.getMap().bulldoze(pos);
-		panel.refresh(pos);
+		final Position pos = getCursorPosition();
+		
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				panel.getMap().bulldoze(pos);
+				panel.refresh(pos);
+			}
+		});
 	}
 }
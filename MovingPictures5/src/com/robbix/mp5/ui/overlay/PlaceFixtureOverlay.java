@@ -42,12 +42,21 @@ public class PlaceFixtureOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Position pos = getCursorPosition();
+		final Position pos = getCursorPosition();
 		
 		if (panel.getMap().canPlaceFixture(fixture, pos))
 		{
-			panel.getMap().putFixture(fixture, pos);
-			panel.refresh();
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (panel.getMap().canPlaceFixture(fixture, pos))
+					{
+						panel.getMap().putFixture(fixture, pos);
+						panel.refresh();
+					}
+				}
+			});
 		}
 	}
 }
@@ -59,13 +59,24 @@ public class PlaceResourceOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Position pos = getCursorPosition();
+		final Position pos = getCursorPosition();
 		
 		if (panel.getMap().canPutOre(pos))
 		{
-			panel.getMap().putOre(res, pos);
+			final Ore placed = res;
 			res = (Ore)res.clone();
-			panel.refresh();
+			
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (panel.getMap().canPutOre(pos))
+					{
+						panel.getMap().putOre(placed, pos);
+						panel.refresh();
+					}
+				}
+			});
 		}
 	}
 	
@@ -80,8 +80,8 @@ public class PlaceUnitOverlay extends InputOverlay
 	private void attemptPlacement(boolean playErrorSound)
 	{
 		Position center = unit.getFootprint().getCenter();
-		Position pos = getCursorPosition().subtract(center);
-		LayeredMap map = panel.getMap();
+		final Position pos = getCursorPosition().subtract(center);
+		final LayeredMap map = panel.getMap();
 		
 		if (map.canPlaceUnit(pos, unit.getFootprint()))
 		{
@@ -98,8 +98,19 @@ public class PlaceUnitOverlay extends InputOverlay
 				}
 			}
 			
-			map.putUnit(unit, pos);
-			panel.refresh();
+			final Unit placed = unit;
+			
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (map.canPlaceUnit(pos, placed.getFootprint()))
+					{
+						map.putUnit(placed, pos);
+						panel.refresh();
+					}
+				}
+			});
 			
 			if (factory != null)
 			{
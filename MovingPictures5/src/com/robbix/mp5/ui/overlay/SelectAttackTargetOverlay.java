@@ -23,11 +23,19 @@ public class SelectAttackTargetOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Unit target = panel.getMap().getUnit(getCursorPosition());
+		final Unit target = panel.getMap().getUnit(getCursorPosition());
 		
 		if (target != null && !target.isAt(attacker.getPosition()))
 		{
-			Game.game.doAttack(attacker, target);
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					if (!attacker.isDead() && !target.isDead())
+						Game.game.doAttack(attacker, target);
+				}
+			});
+			
 			complete();
 		}
 	}
@@ -36,7 +36,7 @@ public class SelectBulldozeOverlay extends InputOverlay
 	public void onLeftClick()
 	{
 		Position pos = getCursorPosition();
-		dozer.assignNow(new BulldozeRegionTask(Arrays.asList(pos)));
+		assign(Arrays.asList(pos));
 		complete();
 	}
 	
@@ -51,10 +51,22 @@ public class SelectBulldozeOverlay extends InputOverlay
 		
 		reverseForCloserEnd(dozeArea, dozer.getPosition());
 		
-		dozer.assignNow(new BulldozeRegionTask(dozeArea));
+		assign(dozeArea);
 		complete();
 	}
 	
+	private void assign(final List<Position> dozeArea)
+	{
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				if (!dozer.isDead())
+					dozer.assignNow(new BulldozeRegionTask(dozeArea));
+			}
+		});
+	}
+	
 	private void reverseForCloserEnd(List<Position> tubeRow, Position pos)
 	{
 		double distance1 = pos.getDistance(tubeRow.get(0));
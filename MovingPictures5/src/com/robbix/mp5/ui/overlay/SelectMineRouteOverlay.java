@@ -61,8 +61,18 @@ public class SelectMineRouteOverlay extends InputOverlay
 		
 		if (mine != null && smelter != null)
 		{
-			for (Unit truck : trucks)
-				truck.assignNow(new MineRouteTask(mine, smelter));
+			final Unit mine = this.mine;
+			final Unit smelter = this.smelter;
+			
+			submit(new Runnable()
+			{
+				public void run()
+				{
+					for (Unit truck : trucks)
+						if (!truck.isDead())
+							truck.assignNow(new MineRouteTask(mine, smelter));
+				}
+			});
 			
 			complete();
 		}
@@ -1,6 +1,7 @@
 package com.robbix.mp5.ui.overlay;
 
 import com.robbix.mp5.Game;
+import com.robbix.utils.Position;
 
 public class SpawnMeteorOverlay extends InputOverlay
 {
@@ -11,6 +12,14 @@ public class SpawnMeteorOverlay extends InputOverlay
 	
 	public void onLeftClick()
 	{
-		Game.game.doSpawnMeteor(getCursorPosition());
+		final Position pos = getCursorPosition();
+		
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				Game.game.doSpawnMeteor(pos);
+			}
+		});
 	}
 }
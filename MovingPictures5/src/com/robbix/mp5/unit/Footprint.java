@@ -71,6 +71,11 @@ public class Footprint implements Iterable<Position>
 	 */
 	private Set<Position> occupiedSet;
 	
+	/**
+	 * The Positions in occupiedSet, for going through without an Iterator.
+	 */
+	private Position[] occupied;
+	
 	/**
 	 * The set of Positions in this Footprint where tubes are placed.
 	 */
@@ -99,6 +104,8 @@ public class Footprint implements Iterable<Position>
 		
 		for (Position occupied : inner)
 			occupiedSet.add(occupied);
+		
+		this.occupied = occupiedSet.toArray(new Position[occupiedSet.size()]);
 	}
 	
 	private Footprint(int w, int h)
@@ -164,6 +171,7 @@ public class Footprint implements Iterable<Position>
 		for (Position unoccupied : unoccupiedSet)
 			result.occupiedSet.remove(unoccupied);
 		
+		result.occupied = result.occupiedSet.toArray(new Position[result.occupiedSet.size()]);
 		return result;
 	}
 	
@@ -208,6 +216,25 @@ public class Footprint implements Iterable<Position>
 		return inner.hashCode() * 101;
 	}
 	
+	/**
+	 * Gets the number of Positions occupied by this Footprint that cannot
+	 * be occupied by any other Unit.
+	 */
+	public int getOccupiedCount()
+	{
+		return occupied.length;
+	}
+	
+	/**
+	 * Gets one of the Positions occupied by this Footprint, relative to its
+	 * origin, in the order iterator() gives them. Lets hot loops go through
+	 * them by index, without making an Iterator.
+	 */
+	public Position getOccupied(int i)
+	{
+		return occupied[i];
+	}
+	
 	/**
 	 * Iterates all Positions occupied by this Footprint that cannot
 	 * be occupied by any other Unit.
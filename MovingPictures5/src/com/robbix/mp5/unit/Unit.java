@@ -1,10 +1,8 @@
 package com.robbix.mp5.unit;
 
 import java.awt.geom.Point2D;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.ListIterator;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.robbix.mp5.ai.task.Task;
@@ -14,6 +12,7 @@ import com.robbix.mp5.player.Player;
 import com.robbix.utils.Direction;
 import com.robbix.utils.Position;
 import com.robbix.utils.Region;
+import com.robbix.utils.collect.IntSet;
 
 import static com.robbix.mp5.unit.Activity.*;
 
@@ -73,7 +72,7 @@ public class Unit extends Entity
 	private int animationFrame = 0;
 		
 	private LayeredMap container;
-	private Set<Position> reservations;
+	private IntSet reservations;
 	private int priority;
 	
 	private int serial;
@@ -84,6 +83,8 @@ public class Unit extends Entity
 	
 	private boolean dismissed;
 	
+	private UnitView[] views;
+	
 	public Unit(UnitType type)
 	{
 		this.serial = nextSerial.getAndIncrement();
@@ -92,7 +93,7 @@ public class Unit extends Entity
 		this.activity = MOVE;
 		this.hp = type.getMaxHP();
 		taskList = new LinkedList<Task>();
-		reservations = new HashSet<Position>();
+		reservations = new IntSet();
 		dir = Direction.E;
 		cargo = Cargo.EMPTY;
 		
@@ -144,6 +145,11 @@ public class Unit extends Entity
 		
 		if (turret != null)
 			turret.owner = owner;
+		
+		LayeredMap map = getContainer();
+		
+		if (map != null)
+			map.ownerChanged(chassis != null ? chassis : this);
 	}
 	
 	public void setHP(int hp)
@@ -696,7 +702,7 @@ public class Unit extends Entity
 	public void cancelAssignments()
 	{
 		while (!taskList.isEmpty() && taskList.getLast().isInterruptible())
-			taskList.removeLast();
+			taskList.removeLast().cancel(this);
 	}
 	
 	/**
@@ -821,14 +827,42 @@ public class Unit extends Entity
 	}
 	
 	/**
-	 * Friend method used to access mutable list of reserved positions
-	 * held by this unit.
+	 * Friend method used to access mutable set of reserved positions
+	 * held by this unit, packed with Position.pack().
 	 */
-	public Set<Position> getReservations()
+	public IntSet getReservations()
 	{
 		return reservations;
 	}
 	
+	/**
+	 * Gets this Unit's UnitView in the given UnitViews buffer, or null if
+	 * it's never been captured into it.
+	 */
+	public UnitView getView(int buffer)
+	{
+		UnitView[] views = this.views;
+		return views == null ? null : views[buffer];
+	}
+	
+	/**
+	 * Captures this Unit, and its turret if it has one, into their UnitViews
+	 * in the given buffer. Only called by UnitViews.
+	 */
+	void captureView(int buffer, int stamp)
+	{
+		if (views == null)
+			views = new UnitView[UnitViews.BUFFERS];
+		
+		if (views[buffer] == null)
+			views[buffer] = new UnitView(this);
+		
+		views[buffer].capture(stamp);
+		
+		if (turret != null)
+			turret.captureView(buffer, stamp);
+	}
+	
 	private static final String POS_NOT_SET =
 		"Position not set/Unit not attached to a UnitLayer";
 	
@@ -86,6 +86,19 @@ public class UnitFactory
 		return structTypes;
 	}
 	
+	/**
+	 * Gets the longest attack range of any type of Unit.
+	 */
+	public double getMaxAttackRange()
+	{
+		double max = 0;
+		
+		for (UnitType type : types.values())
+			max = Math.max(max, type.getAttackRange());
+		
+		return max;
+	}
+	
 	public UnitType getType(String name)
 	{
 		return types.get(name);
@@ -466,6 +479,11 @@ public class UnitFactory
 			this.myOwner = myOwner;
 		}
 		
+		public Player getOwner()
+		{
+			return myOwner;
+		}
+		
 		public boolean accept(Unit unit)
 		{
 			if (unit == null)
@@ -0,0 +1,130 @@
+package com.robbix.mp5.unit;
+
+import java.awt.geom.Point2D;
+
+import com.robbix.mp5.player.Player;
+import com.robbix.utils.Direction;
+import com.robbix.utils.Position;
+import com.robbix.utils.Region;
+
+/**
+ * What a Unit looked like at the end of a tick, so it can be drawn while
+ * the next tick is changing it. Captured by the Engine's thread and read
+ * by the displays, through UnitViews, which makes sure the two never use
+ * the same UnitView at once.
+ */
+public class UnitView
+{
+	private Unit unit;
+	private int stamp;
+	private Player owner;
+	private Position pos;
+	private int offX, offY;
+	private int spotSize;
+	private Direction dir;
+	private int hp;
+	private HealthBracket bracket;
+	private int animationFrame;
+	private Object[] spriteArgs;
+	private boolean idle;
+	private boolean disabled;
+	
+	UnitView(Unit unit)
+	{
+		this.unit = unit;
+		this.spriteArgs = new Object[unit.getSpriteArgs().length];
+	}
+	
+	/**
+	 * Copies the Unit's state, stamping it with the capture it was made in.
+	 */
+	void capture(int stamp)
+	{
+		this.stamp = stamp;
+		owner = unit.getOwner();
+		pos = unit.getPosition();
+		offX = unit.getXOffset();
+		offY = unit.getYOffset();
+		spotSize = unit.getMap().getSpotSize();
+		dir = unit.getDirection();
+		hp = unit.getHP();
+		bracket = unit.getHealthBracket();
+		animationFrame = unit.getAnimationFrame();
+		idle = unit.isIdle();
+		disabled = unit.isDisabled();
+		System.arraycopy(unit.getSpriteArgs(), 0, spriteArgs, 0, spriteArgs.length);
+	}
+	
+	public int getStamp()
+	{
+		return stamp;
+	}
+	
+	public Unit getUnit()
+	{
+		return unit;
+	}
+	
+	public UnitType getType()
+	{
+		return unit.getType();
+	}
+	
+	public Player getOwner()
+	{
+		return owner;
+	}
+	
+	public Position getPosition()
+	{
+		return pos;
+	}
+	
+	public Point2D getAbsPoint()
+	{
+		return new Point2D.Double(
+			pos.x + (offX / (double) spotSize),
+			pos.y + (offY / (double) spotSize)
+		);
+	}
+	
+	public Region getOccupiedBounds()
+	{
+		return unit.getFootprint().getInnerRegion().move(pos);
+	}
+	
+	public Direction getDirection()
+	{
+		return dir;
+	}
+	
+	public int getHP()
+	{
+		return hp;
+	}
+	
+	public HealthBracket getHealthBracket()
+	{
+		return bracket;
+	}
+	
+	public int getAnimationFrame()
+	{
+		return animationFrame;
+	}
+	
+	public Object[] getSpriteArgs()
+	{
+		return spriteArgs;
+	}
+	
+	public boolean isIdle()
+	{
+		return idle;
+	}
+	
+	public boolean isDisabled()
+	{
+		return disabled;
+	}
+}
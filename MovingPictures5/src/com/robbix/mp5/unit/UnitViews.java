@@ -0,0 +1,112 @@
+package com.robbix.mp5.unit;
+
+import java.util.List;
+
+import com.robbix.mp5.map.LayeredMap;
+
+/**
+ * Triple-buffered UnitViews of the units on a map, so displays can paint
+ * the last completed tick while the Engine runs the next one, without
+ * either waiting for the other.
+ *
+ * When a tick completes, the Engine captures every unit into a buffer that
+ * no display is painting from and publishes it as the latest. A display
+ * acquires the latest buffer for as long as it takes to paint, and
+ * releases it afterwards. One buffer is the latest and displays paint from
+ * at most one other, so there's always a third to capture into.
+ *
+ * Every capture has its own stamp. A unit's UnitView in a buffer only
+ * counts if it was stamped by the capture that filled the buffer, so units
+ * that were placed or removed since then aren't drawn.
+ */
+public class UnitViews
+{
+	public static final int BUFFERS = 3;
+	
+	private int latest = -1;
+	private int[] readers = new int[BUFFERS];
+	private int[] stamps = new int[BUFFERS];
+	private int nextStamp = 1;
+	
+	/**
+	 * Captures the units on map. Called by the Engine once a tick completes,
+	 * while it still holds the Game's monitor.
+	 */
+	public void capture(LayeredMap map)
+	{
+		int buffer = -1;
+		int stamp;
+		
+		synchronized (this)
+		{
+			for (int i = 0; i < BUFFERS; ++i)
+				if (i != latest && readers[i] == 0)
+					buffer = i;
+			
+			/*
+			 * Only if displays are painting from every other buffer, which
+			 * they don't, being painted one at a time on the EDT.
+			 */
+			if (buffer == -1)
+				return;
+			
+			stamp = nextStamp++;
+		}
+		
+		List<Unit> units = map.getUnitSnapshot();
+		
+		for (int i = 0; i < units.size(); ++i)
+		{
+			Unit unit = units.get(i);
+			
+			if (!unit.isDead() && !unit.isFloating())
+				unit.captureView(buffer, stamp);
+		}
+		
+		synchronized (this)
+		{
+			stamps[buffer] = stamp;
+			latest = buffer;
+		}
+	}
+	
+	/**
+	 * Gets the latest buffer for painting from, or -1 if nothing has been
+	 * captured yet. Every buffer acquired must be released.
+	 */
+	public synchronized int acquire()
+	{
+		if (latest != -1)
+			readers[latest]++;
+		
+		return latest;
+	}
+	
+	public synchronized void release(int buffer)
+	{
+		if (buffer != -1)
+			readers[buffer]--;
+	}
+	
+	/**
+	 * Gets unit's UnitView in an acquired buffer, or null if it wasn't on
+	 * the map when the buffer was captured.
+	 */
+	public UnitView getView(Unit unit, int buffer)
+	{
+		if (buffer == -1)
+			return null;
+		
+		UnitView view = unit.getView(buffer);
+		
+		if (view == null || view.getStamp() != getStamp(buffer))
+			return null;
+		
+		return view;
+	}
+	
+	private synchronized int getStamp(int buffer)
+	{
+		return stamps[buffer];
+	}
+}
@@ -22,8 +22,14 @@ import javax.imageio.ImageIO;
  * 
  * @author bort
  */
-public class CostMap extends Grid<Double>
+public class CostMap extends DoubleGrid
 {
+	/**
+	 * Incremented every time a cost is changed, so that anything derived
+	 * from this CostMap can tell when it's out of date.
+	 */
+	private volatile int version;
+	
 	/**
 	 * Loads a CostMap from a bitmap image. The CostMap will be the
 	 * same size as the bitmap is in pixels. The value at each position
@@ -83,6 +89,28 @@ public class CostMap extends Grid<Double>
 			throw new IllegalArgumentException(NEGATIVE_COST);
 	}
 	
+	/**
+	 * Creates a copy of the given CostMap, with the same version.
+	 */
+	public CostMap(CostMap that)
+	{
+		super(that);
+		this.version = that.version;
+	}
+	
+	public CostMap copy()
+	{
+		return new CostMap(this);
+	}
+	
+	/**
+	 * Gets a number that changes every time a cost in this CostMap is set.
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+	
 	public boolean isFree(Position pos)
 	{
 		return super.get(pos) == 0;
@@ -125,6 +153,7 @@ public class CostMap extends Grid<Double>
 			throw new IllegalArgumentException(NEGATIVE_COST);
 		
 		super.set(x, y, value);
+		version++;
 	}
 	
 	public void set(Position pos, double value)
@@ -133,6 +162,34 @@ public class CostMap extends Grid<Double>
 			throw new IllegalArgumentException(NEGATIVE_COST);
 		
 		super.set(pos, value);
+		version++;
+	}
+	
+	/**
+	 * Sets the cost at the given index, without checking bounds or sign.
+	 */
+	public void setAt(int index, double value)
+	{
+		super.setAt(index, value);
+		version++;
+	}
+	
+	public void fill(Region reg, double value)
+	{
+		if (value < 0.0)
+			throw new IllegalArgumentException(NEGATIVE_COST);
+		
+		super.fill(reg, value);
+		version++;
+	}
+	
+	public void fill(double value)
+	{
+		if (value < 0.0)
+			throw new IllegalArgumentException(NEGATIVE_COST);
+		
+		super.fill(value);
+		version++;
 	}
 	
 	public void setInfinite(Position pos)
@@ -143,6 +200,7 @@ public class CostMap extends Grid<Double>
 	public void setInfinite(int x, int y)
 	{
 		super.set(x, y, Double.POSITIVE_INFINITY);
+		version++;
 	}
 	
 	public void setZero(Position pos)
@@ -153,6 +211,7 @@ public class CostMap extends Grid<Double>
 	public void setZero(int x, int y)
 	{
 		super.set(x, y, 0.0);
+		version++;
 	}
 	
 	public void scale(double weight)
@@ -38,6 +38,12 @@ public enum Direction
 	SE ( 1,  1, 0.875,  "South-East"),
 	ESE( 0,  0, 0.9375, "East-South-East");
 	
+	/**
+	 * All Directions in order, as values() gives them, but without making
+	 * a copy of the array each time.
+	 */
+	private static final Direction[] VALUES = values();
+	
 	public static Direction getDefault()
 	{
 		return E;
@@ -106,7 +112,7 @@ public enum Direction
 	 */
 	public static Direction getDirection(int steps)
 	{
-		return values()[(steps % 16 + 16) % 16];
+		return VALUES[(steps % 16 + 16) % 16];
 	}
 	
 	/**
@@ -116,7 +122,7 @@ public enum Direction
 	 */
 	public static Direction getDirection(double angle)
 	{
-		return values()[revsTo16Steps(angle)];
+		return VALUES[revsTo16Steps(angle)];
 	}
 	
 	/**
@@ -126,7 +132,7 @@ public enum Direction
 	public static Direction getDirection(int dx, int dy)
 	{
 		// y-axis is inverted, so dy is inverted
-		return values()[revsTo16Steps(Math.atan2(-dy, dx) / (2 * PI))];
+		return VALUES[revsTo16Steps(Math.atan2(-dy, dx) / (2 * PI))];
 	}
 
 	/**
@@ -141,7 +147,7 @@ public enum Direction
 		if (dx == 0 && dy == 0)
 			return null;
 		
-		return values()[revsTo16Steps(Math.atan2(-dy, dx) / (2 * PI))];
+		return VALUES[revsTo16Steps(Math.atan2(-dy, dx) / (2 * PI))];
 	}
 	
 	/**
@@ -156,7 +162,7 @@ public enum Direction
 		// y-axis is inverted, so dy is inverted
 		int dx = b.x - a.x;
 		int dy = b.y - a.y;
-		return values()[revsTo8Steps(Math.atan2(-dy, dx) / (2 * PI))];
+		return VALUES[revsTo8Steps(Math.atan2(-dy, dx) / (2 * PI))];
 	}
 	
 	/**
@@ -277,7 +283,7 @@ public enum Direction
 	public Direction rotate(double angle)
 	{
 		int steps = revsTo16Steps(angle);
-		return values()[((ordinal() + steps) % 16 + 16) % 16];
+		return VALUES[((ordinal() + steps) % 16 + 16) % 16];
 	}
 	
 	/**
@@ -296,7 +302,7 @@ public enum Direction
 	 */
 	public Direction rotate(int steps)
 	{
-		return values()[((ordinal() + steps) % 16 + 16) % 16];
+		return VALUES[((ordinal() + steps) % 16 + 16) % 16];
 	}
 	
 	/**
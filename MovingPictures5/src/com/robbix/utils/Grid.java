@@ -454,7 +454,7 @@ public class Grid<T> implements RIterable<T>
 		}
 		
 		double closestDistance = Double.POSITIVE_INFINITY;
-		Position closestPos = null;
+		int closest = -1;
 		
 		int startX, stopX, startY, stopY;
 		boolean nEdge, sEdge, eEdge, wEdge;
@@ -477,23 +477,23 @@ public class Grid<T> implements RIterable<T>
 			if (nEdge || sEdge)
 				for (int x = startX; x <= stopX; ++x)
 				{
-					if (nEdge && cond.accept(get(x, startY)))
+					if (nEdge && cond.accept(cells[x + startY * w]))
 					{
 						double distSq = distanceSq(pos.x, pos.y, x, startY);
 						if (distSq < closestDistance)
 						{
 							closestDistance = distSq;
-							closestPos = new Position(x, startY);
+							closest = x + startY * w;
 						}
 					}
 					
-					if (sEdge && cond.accept(get(x, stopY)))
+					if (sEdge && cond.accept(cells[x + stopY * w]))
 					{
 						double distSq = distanceSq(pos.x, pos.y, x, stopY);
 						if (distSq < closestDistance)
 						{
 							closestDistance = distSq;
-							closestPos = new Position(x, stopY);
+							closest = x + stopY * w;
 						}
 					}
 				}
@@ -504,33 +504,29 @@ public class Grid<T> implements RIterable<T>
 			if (wEdge || eEdge)
 				for (int y = startY; y <= stopY; ++y) 
 				{
-					if (wEdge && cond.accept(get(startX, y)))
+					if (wEdge && cond.accept(cells[startX + y * w]))
 					{
 						double distSq = distanceSq(pos.x, pos.y, startX, y);
 						if (distSq < closestDistance)
 						{
 							closestDistance = distSq;
-							closestPos = new Position(startX, y);
+							closest = startX + y * w;
 						}
 					}
 					
-					if (eEdge && cond.accept(get(stopX, y)))
+					if (eEdge && cond.accept(cells[stopX + y * w]))
 					{
 						double distSq = distanceSq(pos.x, pos.y, stopX, y);
 						if (distSq < closestDistance)
 						{
 							closestDistance = distSq;
-							closestPos = new Position(stopX, y);
+							closest = stopX + y * w;
 						}
 					}
 				}
 
-			if (closestPos != null && maxIteration == -1)
-			{
-				double dy = Math.abs(pos.y - closestPos.y);
-				double dx = Math.abs(pos.x - closestPos.x);
-				maxIteration = (int) Math.sqrt(dx*dx + dy*dy);
-			}
+			if (closest != -1 && maxIteration == -1)
+				maxIteration = (int) Math.sqrt(closestDistance);
 			
 			boolean allOutOfBounds = !(nEdge || sEdge || wEdge || eEdge);
 			boolean finalIteration = maxIteration != -1
@@ -538,26 +534,14 @@ public class Grid<T> implements RIterable<T>
 			
 			if (finalIteration || allOutOfBounds)
 			{
-				if (closestPos == null)
-					return null;
-				
-				double distance = closestPos.getDistance(pos);
-				return distance <= maxDistance && distance >= minDistance
-					? closestPos
-					: null;
+				return getClosest(pos, closest, minDistance, maxDistance);
 			}
 
 			iteration++;
 		}
 		while (nEdge || sEdge || wEdge || eEdge);
 
-		if (closestPos == null)
-			return null;
-		
-		double distance = closestPos.getDistance(pos);
-		return distance <= maxDistance && distance >= minDistance
-			? closestPos
-			: null;
+		return getClosest(pos, closest, minDistance, maxDistance);
 	}
 	
 	/**
@@ -700,6 +684,27 @@ public class Grid<T> implements RIterable<T>
 	private static final String ZERO_DIM =
 		"Grid dimensions must both be greater than 0";
 	
+	/**
+	 * Gets the Position at index closest if its distance from pos is within
+	 * the given range, or null if not or if closest is -1. Used by
+	 * findClosest(), which works in indices until it has an answer.
+	 */
+	private Position getClosest(
+		Position pos,
+		int closest,
+		double minDistance,
+		double maxDistance)
+	{
+		if (closest == -1)
+			return null;
+		
+		Position closestPos = PositionCache.getInstance(w, h).get(closest);
+		double distance = closestPos.getDistance(pos);
+		return distance <= maxDistance && distance >= minDistance
+			? closestPos
+			: null;
+	}
+	
 	/**
 	 * Returns the square distance between two points. Used for comparisons
 	 * of distances since if {@code sqrt(a) > sqrt(b) then a > b}.
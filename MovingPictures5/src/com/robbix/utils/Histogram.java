@@ -0,0 +1,112 @@
+package com.robbix.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values, such as durations in nanoseconds.
+ *
+ * Values are counted in buckets with a resolution of 1/16th of their
+ * magnitude, so recording is constant time and never allocates, and
+ * percentiles are accurate to within about 6%. The maximum is exact.
+ *
+ * All methods are synchronized, so values can be recorded from one thread
+ * while being read from another.
+ */
+public class Histogram
+{
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+	
+	private long[] buckets;
+	private long count;
+	private long total;
+	private long max;
+	
+	public Histogram()
+	{
+		buckets = new long[BUCKET_COUNT];
+	}
+	
+	public synchronized void record(long value)
+	{
+		if (value < 0)
+			value = 0;
+		
+		buckets[getBucket(value)]++;
+		count++;
+		total += value;
+		
+		if (value > max)
+			max = value;
+	}
+	
+	public synchronized long getCount()
+	{
+		return count;
+	}
+	
+	public synchronized long getMax()
+	{
+		return max;
+	}
+	
+	public synchronized double getMean()
+	{
+		return count == 0 ? 0 : total / (double) count;
+	}
+	
+	/**
+	 * Gets the value below which the given fraction of recorded values fall,
+	 * for example 0.99 for the 99th percentile. Returns 0 if nothing has
+	 * been recorded.
+	 */
+	public synchronized long getPercentile(double fraction)
+	{
+		if (count == 0)
+			return 0;
+		
+		long rank = (long) Math.ceil(Math.min(Math.max(fraction, 0), 1) * count);
+		rank = Math.max(rank, 1);
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			seen += buckets[i];
+			
+			if (seen >= rank)
+				return Math.min(getUpperBound(i), max);
+		}
+		
+		return max;
+	}
+	
+	public synchronized void reset()
+	{
+		Arrays.fill(buckets, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+	
+	private static int getBucket(long value)
+	{
+		if (value < SUB_COUNT)
+			return (int) value;
+		
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) - SUB_COUNT;
+		return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+	
+	private static long getUpperBound(int bucket)
+	{
+		if (bucket < SUB_COUNT)
+			return bucket;
+		
+		int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+		long sub = bucket % SUB_COUNT;
+		long width = 1L << (exp - SUB_BITS);
+		return ((SUB_COUNT + sub) << (exp - SUB_BITS)) + width - 1;
+	}
+}
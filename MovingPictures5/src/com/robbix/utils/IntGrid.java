@@ -0,0 +1,385 @@
+package com.robbix.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A two-dimensional grid of ints, kept in one flat int array so
+ * they aren't boxed. Otherwise it works like a Grid.
+ *
+ * Elements in the grid are iterated left-to-right, then top-to-bottom, and
+ * find methods search in the same order.
+ *
+ * Each position also has an index into the array, i = x + (y * w), and the
+ * index accessors, getAt() and setAt(), don't check bounds. They're meant
+ * for hot loops that have already made sure their indices are on the grid.
+ *
+ * Grids of area 0 are invalid and cannot be instantiated.
+ *
+ * IndexOutOfBoundsExceptions can be thrown by any method that takes a Position
+ * or coordinates as arguments.
+ */
+public class IntGrid implements RIterable<Integer>
+{
+	/**
+	 * One-dimensional array that contains the elements of this IntGrid.
+	 *
+	 * To get an index in the array from coordinates: i = x + (y * w)
+	 *
+	 * To get coordinates from an index: x = i % w
+	 *                                   y = i / w
+	 */
+	private int[] cells;
+	
+	/**
+	 * The width of this IntGrid.
+	 */
+	public final int w;
+	
+	/**
+	 * The height of this IntGrid.
+	 */
+	public final int h;
+	
+	/**
+	 * The bounding Region that encompasses all positions in this IntGrid.
+	 */
+	private final Region bounds;
+	
+	public int getWidth()    { return w;      }
+	public int getHeight()   { return h;      }
+	public Region getBounds(){ return bounds; }
+	
+	/**
+	 * Creates a IntGrid of dimensions w by h with all values initially 0.
+	 *
+	 * @throws IllegalArgumentException if either w or h are less than 1.
+	 */
+	public IntGrid(int w, int h)
+	{
+		if (w < 1 || h < 1)
+			throw new IllegalArgumentException(ZERO_DIM);
+		
+		this.w = w;
+		this.h = h;
+		this.bounds = new Region(0, 0, w, h);
+		cells = new int[bounds.a];
+	}
+	
+	/**
+	 * Creates a IntGrid of dimensions w by h with all values set to initValue.
+	 *
+	 * @throws IllegalArgumentException If either w or h are less than 1.
+	 */
+	public IntGrid(int w, int h, int initValue)
+	{
+		this(w, h);
+		
+		Arrays.fill(cells, initValue);
+	}
+	
+	/**
+	 * Creates a IntGrid with dimensions of region.
+	 */
+	public IntGrid(Region region)
+	{
+		this(region.w, region.h);
+	}
+	
+	/**
+	 * Creates a IntGrid with dimensions of region
+	 * with all values set to initValue.
+	 */
+	public IntGrid(Region region, int initValue)
+	{
+		this(region.w, region.h, initValue);
+	}
+	
+	/**
+	 * Creates a new IntGrid of the same dimensions and containing the same
+	 * values in the same Positions as the given IntGrid. The two are
+	 * independent of each other.
+	 */
+	public IntGrid(IntGrid that)
+	{
+		this.w = that.w;
+		this.h = that.h;
+		this.bounds = that.bounds;
+		this.cells = Arrays.copyOf(that.cells, that.cells.length);
+	}
+	
+	/**
+	 * Gets the index of the given coordinates, for use with getAt() and
+	 * setAt(). Doesn't check bounds.
+	 */
+	public int index(int x, int y)
+	{
+		return x + y * w;
+	}
+	
+	/**
+	 * Gets the value at the given index, without checking bounds.
+	 */
+	public int getAt(int index)
+	{
+		return cells[index];
+	}
+	
+	/**
+	 * Sets the value at the given index, without checking bounds.
+	 */
+	public void setAt(int index, int value)
+	{
+		cells[index] = value;
+	}
+	
+	/**
+	 * Gets the value at the given coordinates.
+	 *
+	 * @throws IndexOutOfBoundsException If either coordinate is out of bounds.
+	 */
+	public int get(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= w || y >= h)
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+		
+		return cells[x + y * w];
+	}
+	
+	/**
+	 * Gets the value at the given Position.
+	 *
+	 * @throws IndexOutOfBoundsException If either coordinate is out of bounds.
+	 */
+	public int get(Position pos)
+	{
+		if (pos.x < 0 || pos.y < 0 || pos.x >= w || pos.y >= h)
+			throw new IndexOutOfBoundsException(pos.toString());
+		
+		return cells[pos.x + pos.y * w];
+	}
+	
+	/**
+	 * Sets the value at the given coordinates.
+	 *
+	 * @throws IndexOutOfBoundsException If either coordinate is out of bounds.
+	 */
+	public void set(int x, int y, int value)
+	{
+		if (x < 0 || y < 0 || x >= w || y >= h)
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+		
+		cells[x + y * w] = value;
+	}
+	
+	/**
+	 * Sets the value at the given Position.
+	 *
+	 * @throws IndexOutOfBoundsException If either coordinate is out of bounds.
+	 */
+	public void set(Position pos, int value)
+	{
+		if (pos.x < 0 || pos.y < 0 || pos.x >= w || pos.y >= h)
+			throw new IndexOutOfBoundsException(pos.toString());
+		
+		cells[pos.x + pos.y * w] = value;
+	}
+	
+	/**
+	 * Sets all values within the given Region to value.
+	 *
+	 * @throws IndexOutOfBoundsException If reg is not contained by this IntGrid.
+	 */
+	public void fill(Region reg, int value)
+	{
+		if (! bounds.contains(reg))
+			throw new IndexOutOfBoundsException(reg.toString());
+		
+		for (int y = reg.y; y < reg.getMaxY(); ++y)
+			Arrays.fill(cells, reg.x + y * w, reg.getMaxX() + y * w, value);
+	}
+	
+	/**
+	 * Sets all values in this IntGrid to the given value.
+	 */
+	public void fill(int value)
+	{
+		Arrays.fill(cells, value);
+	}
+	
+	/**
+	 * Returns true if this IntGrid contains at least one instance of value.
+	 */
+	public boolean contains(int value)
+	{
+		return find(value) != null;
+	}
+	
+	/**
+	 * Returns the Position of the first occurance of the given value or null
+	 * if this IntGrid does not contain the given value.
+	 */
+	public Position find(int value)
+	{
+		for (int i = 0; i < bounds.a; ++i)
+			if (cells[i] == value)
+				return new Position(i % w, i / w);
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the Position of the last occurance of the given value or null
+	 * if this IntGrid does not contain the given value.
+	 */
+	public Position findLast(int value)
+	{
+		for (int i = bounds.a - 1; i >= 0; --i)
+			if (cells[i] == value)
+				return new Position(i % w, i / w);
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the Positions of all occurances of the given value. Returned
+	 * list will be empty if this IntGrid does not contain the given value.
+	 */
+	public List<Position> findAll(int value)
+	{
+		List<Position> indicies = new ArrayList<Position>();
+		
+		for (int i = 0; i < bounds.a; ++i)
+			if (cells[i] == value)
+				indicies.add(new Position(i % w, i / w));
+		
+		return indicies;
+	}
+	
+	/**
+	 * Returns the Positions of all occurances of the given value in the
+	 * specified Region, left-to-right then top-to-bottom.
+	 */
+	public List<Position> findAll(int value, Region region)
+	{
+		if (!bounds.contains(region))
+			throw new IndexOutOfBoundsException(region.toString());
+		
+		List<Position> indicies = new ArrayList<Position>();
+		
+		for (int y = region.y; y < region.getMaxY(); ++y)
+		for (int x = region.x; x < region.getMaxX(); ++x)
+			if (cells[x + y * w] == value)
+				indicies.add(new Position(x, y));
+		
+		return indicies;
+	}
+	
+	/**
+	 * Returns a new IntGrid of the same dimensions and containing the same
+	 * values in the same Positions as this IntGrid.
+	 */
+	public IntGrid copy()
+	{
+		return new IntGrid(this);
+	}
+	
+	/**
+	 * Returns true if the given object is a IntGrid
+	 * and has the same dimensions and values as this IntGrid.
+	 */
+	public boolean equals(Object obj)
+	{
+		if (obj == this) return true;
+		if (! (obj instanceof IntGrid)) return false;
+		
+		IntGrid that = (IntGrid) obj;
+		
+		return this.w == that.w
+			&& this.h == that.h
+			&& Arrays.equals(this.cells, that.cells);
+	}
+	
+	public int hashCode()
+	{
+		return Arrays.hashCode(cells) ^ (w * 888) ^ (h * 28657);
+	}
+	
+	/**
+	 * Returns an iterator over all values in this IntGrid. Each value is
+	 * boxed as it's returned, so hot loops should use the index accessors.
+	 */
+	public RIterator<Integer> iterator()
+	{
+		return new ValueIterator(bounds);
+	}
+	
+	/**
+	 * Returns an iterator over all values in the given Region.
+	 *
+	 * @throws IndexOutOfBoundsException If reg is not contained by this
+	 *                                   IntGrid's bounding Region.
+	 */
+	public RIterator<Integer> iterator(Region reg)
+	{
+		if (! this.bounds.contains(reg))
+			throw new IndexOutOfBoundsException(reg.toString());
+		
+		return new ValueIterator(reg);
+	}
+	
+	public String toString()
+	{
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(w);
+		buffer.append(" wide by ");
+		buffer.append(h);
+		buffer.append(" high [\n");
+		
+		for (int y = 0; y < h; ++y)
+		{
+			for (int x = 0; x < w; ++x)
+			{
+				buffer.append(cells[x + y * w]);
+				buffer.append(", ");
+			}
+			
+			buffer.append('\n');
+		}
+		
+		buffer.append(']');
+		
+		return buffer.toString();
+	}
+	
+	private class ValueIterator extends RIterator<Integer>
+	{
+		private int index = 0;
+		private Region reg;
+		
+		public ValueIterator(Region reg)
+		{
+			this.reg = reg;
+		}
+		
+		public boolean hasNext()
+		{
+			return index < reg.a;
+		}
+		
+		public Integer next()
+		{
+			checkHasNext();
+			
+			final int xPrime = (index % reg.w) + reg.x;
+			final int yPrime = (index / reg.w) + reg.y;
+			index++;
+			
+			return cells[xPrime + yPrime * w];
+		}
+	}
+	
+	private static final String ZERO_DIM =
+		"Grid dimensions must both be greater than 0";
+}
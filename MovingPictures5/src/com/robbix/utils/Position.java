@@ -63,6 +63,47 @@ public class Position implements RIterable<Position>
 		return new Position(x - pos.x, y - pos.y);
 	}
 	
+	/**
+	 * Packs x and y into one int, 16 bits each, so a position can be kept
+	 * without a Position. Both must be in the range of a short, which any
+	 * position on a map is.
+	 */
+	public static int pack(int x, int y)
+	{
+		return (y << 16) | (x & 0xffff);
+	}
+	
+	/**
+	 * Gets the x-coordinate of a position packed by pack().
+	 */
+	public static int unpackX(int packed)
+	{
+		return (short) packed;
+	}
+	
+	/**
+	 * Gets the y-coordinate of a position packed by pack().
+	 */
+	public static int unpackY(int packed)
+	{
+		return packed >> 16;
+	}
+	
+	public static Position unpack(int packed)
+	{
+		return new Position(unpackX(packed), unpackY(packed));
+	}
+	
+	/**
+	 * Packs this Position into one int.
+	 *
+	 * @see #pack(int, int)
+	 */
+	public int pack()
+	{
+		return pack(x, y);
+	}
+	
 	public Point2D getCenterPoint()
 	{
 		return new Point2D.Double(x + 0.5, y + 0.5);
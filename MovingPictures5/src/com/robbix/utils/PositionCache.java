@@ -0,0 +1,207 @@
+package com.robbix.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One shared Position for each position on a grid of a given size, so that
+ * code that needs Positions in a loop doesn't have to make new ones.
+ *
+ * Positions on the grid are also numbered by index, i = x + (y * w), the
+ * same as in a Grid, and can be worked with as ints without any Positions
+ * at all. neighbor() steps from one index to the next in each of the 8
+ * directions, so neighbours can be visited in a plain loop:
+ *
+ *     for (int d = 0; d < 8; d += step)
+ *     {
+ *         int n = cache.neighbor(i, d);
+ *
+ *         if (n != -1)
+ *             ...
+ *     }
+ *
+ * with a step of 1 for all 8 neighbours or 2 for the 4 that share an edge.
+ * Directions are numbered from east, anti-clockwise - E, NE, N, NW, W, SW,
+ * S, SE - the order Direction.getIterator(E, 2) gives.
+ *
+ * Caches are shared by size and never change, so they can be used from any
+ * thread.
+ */
+public class PositionCache
+{
+	private static final int[] DX = { 1,  1,  0, -1, -1, -1,  0,  1};
+	private static final int[] DY = { 0, -1, -1, -1,  0,  1,  1,  1};
+	
+	private static final Map<Position, PositionCache> caches =
+		new HashMap<Position, PositionCache>();
+	
+	/**
+	 * Gets the cache for grids of dimensions w by h, making it if there
+	 * isn't one yet.
+	 *
+	 * @throws IllegalArgumentException If either w or h are less than 1.
+	 */
+	public static synchronized PositionCache getInstance(int w, int h)
+	{
+		Position size = new Position(w, h);
+		PositionCache cache = caches.get(size);
+		
+		if (cache == null)
+		{
+			cache = new PositionCache(w, h);
+			caches.put(size, cache);
+		}
+		
+		return cache;
+	}
+	
+	/**
+	 * Gets the cache for grids the size of region. The region's position
+	 * doesn't matter.
+	 */
+	public static PositionCache getInstance(Region region)
+	{
+		return getInstance(region.w, region.h);
+	}
+	
+	public final int w;
+	public final int h;
+	
+	private final Position[] positions;
+	
+	private PositionCache(int w, int h)
+	{
+		if (w < 1 || h < 1)
+			throw new IllegalArgumentException(ZERO_DIM);
+		
+		this.w = w;
+		this.h = h;
+		this.positions = new Position[w * h];
+		
+		for (int y = 0; y < h; ++y)
+		for (int x = 0; x < w; ++x)
+			positions[x + y * w] = new Position(x, y);
+	}
+	
+	public int getWidth()  { return w; }
+	public int getHeight() { return h; }
+	
+	/**
+	 * Gets the number of positions on the grid, and so one more than the
+	 * last index.
+	 */
+	public int getArea()
+	{
+		return positions.length;
+	}
+	
+	public boolean contains(int x, int y)
+	{
+		return x >= 0 && y >= 0 && x < w && y < h;
+	}
+	
+	/**
+	 * Gets the index of x, y. Doesn't check bounds.
+	 */
+	public int index(int x, int y)
+	{
+		return x + y * w;
+	}
+	
+	/**
+	 * Gets the index of pos. Doesn't check bounds.
+	 */
+	public int index(Position pos)
+	{
+		return pos.x + pos.y * w;
+	}
+	
+	public int getX(int index)
+	{
+		return index % w;
+	}
+	
+	public int getY(int index)
+	{
+		return index / w;
+	}
+	
+	/**
+	 * Gets the shared Position at the given index.
+	 *
+	 * @throws ArrayIndexOutOfBoundsException If index isn't on the grid.
+	 */
+	public Position get(int index)
+	{
+		return positions[index];
+	}
+	
+	/**
+	 * Gets the shared Position for x, y, or a new one if x, y isn't on the
+	 * grid.
+	 */
+	public Position get(int x, int y)
+	{
+		return contains(x, y) ? positions[x + y * w] : new Position(x, y);
+	}
+	
+	/**
+	 * Gets the Position dx, dy from pos, shared if it's on the grid. The
+	 * same as pos.shift(dx, dy), but without making a new Position.
+	 */
+	public Position shift(Position pos, int dx, int dy)
+	{
+		return get(pos.x + dx, pos.y + dy);
+	}
+	
+	/**
+	 * Gets the Position one step from pos in the given Direction, shared if
+	 * it's on the grid. The same as dir.apply(pos).
+	 *
+	 * @throws IllegalStateException If dir is a sixteenth-turn.
+	 */
+	public Position shift(Position pos, Direction dir)
+	{
+		return get(pos.x + dir.getDX(), pos.y + dir.getDY());
+	}
+	
+	/**
+	 * Gets the index of the neighbour of index in direction d, numbered
+	 * from east, anti-clockwise, or -1 if it's off the grid.
+	 */
+	public int neighbor(int index, int d)
+	{
+		int x = index % w + DX[d];
+		int y = index / w + DY[d];
+		
+		return contains(x, y) ? x + y * w : -1;
+	}
+	
+	/**
+	 * Gets the x-offset of direction d, numbered from east, anti-clockwise.
+	 */
+	public static int getDX(int d)
+	{
+		return DX[d];
+	}
+	
+	/**
+	 * Gets the y-offset of direction d, numbered from east, anti-clockwise.
+	 */
+	public static int getDY(int d)
+	{
+		return DY[d];
+	}
+	
+	/**
+	 * Returns true if direction d, numbered from east, anti-clockwise, is a
+	 * diagonal.
+	 */
+	public static boolean isDiagonal(int d)
+	{
+		return (d & 1) == 1;
+	}
+	
+	private static final String ZERO_DIM =
+		"Grid dimensions must both be greater than 0";
+}
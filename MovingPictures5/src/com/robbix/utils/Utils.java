@@ -77,12 +77,42 @@ public class Utils
 	 */
 	private static final Random RNG = new Random();
 	
+	/**
+	 * Per-thread override of RNG, so that work split across threads can
+	 * draw repeatable sequences.
+	 */
+	private static final ThreadLocal<Random> threadRNG = new ThreadLocal<Random>();
+	
+	/**
+	 * Makes randInt() and randFloat() on the calling thread draw from the
+	 * given generator, or from the global one again if null.
+	 *
+	 * Returns the generator previously set for the calling thread, if any.
+	 */
+	public static Random setThreadRandom(Random rng)
+	{
+		Random previous = threadRNG.get();
+		
+		if (rng == null)
+			threadRNG.remove();
+		else
+			threadRNG.set(rng);
+		
+		return previous;
+	}
+	
+	private static Random rng()
+	{
+		Random rng = threadRNG.get();
+		return rng != null ? rng : RNG;
+	}
+	
 	/**
 	 * Returns a random int between [low, high]
 	 */
 	public static int randInt(int low, int high)
 	{
-		return low + RNG.nextInt(high - low + 1);
+		return low + rng().nextInt(high - low + 1);
 	}
 	
 	/**
@@ -90,7 +120,7 @@ public class Utils
 	 */
 	public static double randFloat(double low, double high)
 	{
-		return low + RNG.nextDouble() * (high - low);
+		return low + rng().nextDouble() * (high - low);
 	}
 	
 	/**
@@ -0,0 +1,22 @@
+package com.robbix.utils.collect;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over ints, so they don't have to be boxed.
+ */
+public abstract class IntIterator
+{
+	public abstract boolean hasNext();
+	
+	public abstract int next();
+	
+	/**
+	 * Throws a NoSuchElementException if hasNext() returns false.
+	 */
+	protected void checkHasNext()
+	{
+		if (! hasNext())
+			throw new NoSuchElementException();
+	}
+}
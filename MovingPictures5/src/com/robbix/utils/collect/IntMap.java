@@ -0,0 +1,299 @@
+package com.robbix.utils.collect;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+
+import com.robbix.utils.RIterator;
+
+/**
+ * A map from ints to objects, kept in an int array of keys and an array of
+ * values with open addressing, like an IntSet. Keys aren't boxed and there's
+ * no entry object for each mapping. Meant for registries keyed by a serial
+ * number or a packed position.
+ *
+ * Null values aren't allowed, so get() returning null always means there's
+ * no mapping. Iteration order is not defined. The map can't be changed
+ * while it's being iterated over.
+ */
+public class IntMap<V>
+{
+	private int[] keys;
+	private V[] values;
+	private int mask;
+	private int size;
+	private V zeroValue;
+	private int modCount;
+	
+	public IntMap()
+	{
+		this(0);
+	}
+	
+	/**
+	 * Creates an IntMap that can hold expected mappings without growing.
+	 */
+	public IntMap(int expected)
+	{
+		int capacity = IntSet.getCapacity(expected);
+		keys = new int[capacity];
+		values = newArray(capacity);
+		mask = capacity - 1;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	public boolean containsKey(int key)
+	{
+		return get(key) != null;
+	}
+	
+	/**
+	 * Gets the value mapped to key, or null if there isn't one.
+	 */
+	public V get(int key)
+	{
+		if (key == 0)
+			return zeroValue;
+		
+		for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask)
+			if (keys[i] == key)
+				return values[i];
+		
+		return null;
+	}
+	
+	/**
+	 * Maps key to value, returning the value it was mapped to before, or
+	 * null if there wasn't one.
+	 *
+	 * @throws NullPointerException If value is null.
+	 */
+	public V put(int key, V value)
+	{
+		if (value == null)
+			throw new NullPointerException();
+		
+		if (key == 0)
+		{
+			V old = zeroValue;
+			zeroValue = value;
+			
+			if (old == null)
+			{
+				size++;
+				modCount++;
+			}
+			
+			return old;
+		}
+		
+		int i = slot(key);
+		
+		for (; keys[i] != 0; i = (i + 1) & mask)
+		{
+			if (keys[i] == key)
+			{
+				V old = values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modCount++;
+		
+		if (size * 2 > keys.length)
+			resize(keys.length * 2);
+		
+		return null;
+	}
+	
+	/**
+	 * Removes the mapping for key, returning the value it had, or null if
+	 * there wasn't one.
+	 */
+	public V remove(int key)
+	{
+		if (key == 0)
+		{
+			V old = zeroValue;
+			
+			if (old != null)
+			{
+				zeroValue = null;
+				size--;
+				modCount++;
+			}
+			
+			return old;
+		}
+		
+		for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask)
+		{
+			if (keys[i] == key)
+			{
+				V old = values[i];
+				shiftBack(i);
+				size--;
+				modCount++;
+				return old;
+			}
+		}
+		
+		return null;
+	}
+	
+	public void clear()
+	{
+		if (size == 0)
+			return;
+		
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		zeroValue = null;
+		size = 0;
+		modCount++;
+	}
+	
+	/**
+	 * Returns a new array of the keys in this map.
+	 */
+	public int[] keys()
+	{
+		int[] array = new int[size];
+		int n = 0;
+		
+		if (zeroValue != null)
+			array[n++] = 0;
+		
+		for (int i = 0; i < keys.length; ++i)
+			if (keys[i] != 0)
+				array[n++] = keys[i];
+		
+		return array;
+	}
+	
+	public RIterator<V> values()
+	{
+		return new ValueIterator();
+	}
+	
+	/**
+	 * Empties slot i, and moves back any mappings after it that can't be
+	 * found from their own slots with it empty.
+	 */
+	private void shiftBack(int i)
+	{
+		int j = i;
+		
+		while (true)
+		{
+			j = (j + 1) & mask;
+			
+			if (keys[j] == 0)
+				break;
+			
+			int home = slot(keys[j]);
+			
+			if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+				continue;
+			
+			keys[i] = keys[j];
+			values[i] = values[j];
+			i = j;
+		}
+		
+		keys[i] = 0;
+		values[i] = null;
+	}
+	
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		V[] oldValues = values;
+		keys = new int[capacity];
+		values = newArray(capacity);
+		mask = capacity - 1;
+		
+		for (int k = 0; k < oldKeys.length; ++k)
+		{
+			int key = oldKeys[k];
+			
+			if (key == 0)
+				continue;
+			
+			int i = slot(key);
+			
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+			
+			keys[i] = key;
+			values[i] = oldValues[k];
+		}
+	}
+	
+	private int slot(int key)
+	{
+		return IntSet.mix(key) & mask;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <V> V[] newArray(int capacity)
+	{
+		return (V[]) new Object[capacity];
+	}
+	
+	private class ValueIterator extends RIterator<V>
+	{
+		private int index = -1;
+		private int expectedModCount = modCount;
+		private boolean zeroDone = zeroValue == null;
+		
+		public ValueIterator()
+		{
+			advance();
+		}
+		
+		public boolean hasNext()
+		{
+			return !zeroDone || index < keys.length;
+		}
+		
+		public V next()
+		{
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			
+			checkHasNext();
+			
+			if (!zeroDone)
+			{
+				zeroDone = true;
+				return zeroValue;
+			}
+			
+			V value = values[index];
+			advance();
+			return value;
+		}
+		
+		private void advance()
+		{
+			do
+			{
+				index++;
+			}
+			while (index < keys.length && keys[index] == 0);
+		}
+	}
+}
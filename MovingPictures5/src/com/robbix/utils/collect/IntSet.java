@@ -0,0 +1,292 @@
+package com.robbix.utils.collect;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+
+/**
+ * A set of ints, kept in one int array with open addressing, so they
+ * aren't boxed and there's no entry object for each one. Meant for small
+ * sets made in numbers, like positions packed with Position.pack() or
+ * grid indices.
+ *
+ * 0 marks an empty slot, so whether 0 is in the set is kept separately.
+ * Collisions are resolved by probing the following slots, and removals
+ * shift the slots after them back, so there are no deleted markers to
+ * build up.
+ *
+ * Iteration order is not defined. The set can't be changed while it's
+ * being iterated over.
+ */
+public class IntSet
+{
+	private static final int MIN_CAPACITY = 4;
+	
+	private int[] keys;
+	private int mask;
+	private int size;
+	private boolean hasZero;
+	private int modCount;
+	
+	public IntSet()
+	{
+		this(MIN_CAPACITY);
+	}
+	
+	/**
+	 * Creates an IntSet that can hold expected ints without growing.
+	 */
+	public IntSet(int expected)
+	{
+		keys = new int[getCapacity(expected)];
+		mask = keys.length - 1;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	public boolean contains(int key)
+	{
+		if (key == 0)
+			return hasZero;
+		
+		for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask)
+			if (keys[i] == key)
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Adds key to this set, returning true if it wasn't there already.
+	 */
+	public boolean add(int key)
+	{
+		if (key == 0)
+		{
+			if (hasZero)
+				return false;
+			
+			hasZero = true;
+			size++;
+			modCount++;
+			return true;
+		}
+		
+		int i = slot(key);
+		
+		for (; keys[i] != 0; i = (i + 1) & mask)
+			if (keys[i] == key)
+				return false;
+		
+		keys[i] = key;
+		size++;
+		modCount++;
+		
+		if (size * 2 > keys.length)
+			resize(keys.length * 2);
+		
+		return true;
+	}
+	
+	/**
+	 * Removes key from this set, returning true if it was there.
+	 */
+	public boolean remove(int key)
+	{
+		if (key == 0)
+		{
+			if (!hasZero)
+				return false;
+			
+			hasZero = false;
+			size--;
+			modCount++;
+			return true;
+		}
+		
+		for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask)
+		{
+			if (keys[i] == key)
+			{
+				shiftBack(i);
+				size--;
+				modCount++;
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public void clear()
+	{
+		if (size == 0)
+			return;
+		
+		Arrays.fill(keys, 0);
+		hasZero = false;
+		size = 0;
+		modCount++;
+	}
+	
+	/**
+	 * Returns a new array of the ints in this set.
+	 */
+	public int[] toArray()
+	{
+		int[] array = new int[size];
+		int n = 0;
+		
+		if (hasZero)
+			array[n++] = 0;
+		
+		for (int i = 0; i < keys.length; ++i)
+			if (keys[i] != 0)
+				array[n++] = keys[i];
+		
+		return array;
+	}
+	
+	public IntIterator iterator()
+	{
+		return new KeyIterator();
+	}
+	
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+	
+	/**
+	 * Empties slot i, and moves back any keys after it that can't be found
+	 * from their own slots with it empty.
+	 */
+	private void shiftBack(int i)
+	{
+		int j = i;
+		
+		while (true)
+		{
+			j = (j + 1) & mask;
+			
+			if (keys[j] == 0)
+				break;
+			
+			int home = slot(keys[j]);
+			
+			/*
+			 * The key in j can stay if its home slot is cyclically in
+			 * (i, j] - the probe from there doesn't pass through i.
+			 */
+			if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+				continue;
+			
+			keys[i] = keys[j];
+			i = j;
+		}
+		
+		keys[i] = 0;
+	}
+	
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		keys = new int[capacity];
+		mask = capacity - 1;
+		
+		for (int k = 0; k < oldKeys.length; ++k)
+		{
+			int key = oldKeys[k];
+			
+			if (key == 0)
+				continue;
+			
+			int i = slot(key);
+			
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+			
+			keys[i] = key;
+		}
+	}
+	
+	private int slot(int key)
+	{
+		return mix(key) & mask;
+	}
+	
+	/**
+	 * Spreads the bits of key, so that keys that differ only in their high
+	 * bits, like packed positions in the same column, don't share slots.
+	 */
+	static int mix(int key)
+	{
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Gets the power of two capacity that holds expected keys at no more
+	 * than half full.
+	 */
+	static int getCapacity(int expected)
+	{
+		int capacity = MIN_CAPACITY;
+		
+		while (capacity < expected * 2)
+			capacity *= 2;
+		
+		return capacity;
+	}
+	
+	private class KeyIterator extends IntIterator
+	{
+		private int index = -1;
+		private int expectedModCount = modCount;
+		private boolean zeroDone = !hasZero;
+		
+		public KeyIterator()
+		{
+			advance();
+		}
+		
+		public boolean hasNext()
+		{
+			return !zeroDone || index < keys.length;
+		}
+		
+		public int next()
+		{
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			
+			checkHasNext();
+			
+			if (!zeroDone)
+			{
+				zeroDone = true;
+				return 0;
+			}
+			
+			int key = keys[index];
+			advance();
+			return key;
+		}
+		
+		private void advance()
+		{
+			do
+			{
+				index++;
+			}
+			while (index < keys.length && keys[index] == 0);
+		}
+	}
+}